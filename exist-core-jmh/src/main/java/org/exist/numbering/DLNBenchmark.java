@@ -0,0 +1,203 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.numbering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks the comparison of {@link DLN} node ids, which are at the heart of
+ * the structural joins and of sorting node sets into document order.
+ *
+ * The dataset is a fixed, (seeded) randomly shaped tree of node ids with a
+ * varying depth and fan-out, so that the node ids have a varying number of
+ * levels and level ids of a varying width.
+ */
+public class DLNBenchmark {
+
+    static final int NODES = 10_000;
+    static final int MAX_DEPTH = 8;
+    static final int MAX_FANOUT = 40;
+    static final long SEED = 0x5EED;
+
+    @State(Scope.Thread)
+    public static class NodeIdState {
+        DLN[] nodeIds;
+        DLN[] copies;
+        DLN[] shuffled;
+        DLN[] ancestors;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            final Random random = new Random(SEED);
+            final List<DLN> nodes = new ArrayList<>(NODES);
+            final DLN root = new DLN();
+            nodes.add(root);
+            int levelId = 0;
+            while (nodes.size() < NODES) {
+                levelId += 1 + random.nextInt(64);
+                final DLN child = (DLN) root.getChild(levelId);
+                nodes.add(child);
+                generate(random, child, 2, nodes);
+            }
+            nodeIds = nodes.toArray(new DLN[0]);
+            Arrays.sort(nodeIds);
+
+            copies = new DLN[nodeIds.length];
+            shuffled = new DLN[nodeIds.length];
+            ancestors = new DLN[nodeIds.length];
+            for (int i = 0; i < nodeIds.length; i++) {
+                copies[i] = new DLN(nodeIds[i]);
+                shuffled[i] = nodeIds[random.nextInt(nodeIds.length)];
+                // a node which precedes this one in document order, and is quite often its ancestor
+                final int preceding = Math.max(0, i - 1 - random.nextInt(8));
+                ancestors[i] = nodeIds[preceding];
+            }
+        }
+
+        private static void generate(final Random random, final DLN parent, final int depth, final List<DLN> nodes) {
+            if (depth > MAX_DEPTH) {
+                return;
+            }
+            final int fanout = 1 + random.nextInt(MAX_FANOUT / depth);
+            int levelId = 0;
+            for (int i = 0; i < fanout && nodes.size() < NODES; i++) {
+                // leave gaps between siblings, as happens after nodes were removed
+                levelId += 1 + random.nextInt(3);
+                final DLN child = (DLN) parent.getChild(levelId);
+                nodes.add(child);
+                if (random.nextInt(3) > 0) {
+                    generate(random, child, depth + 1, nodes);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int compareTo(final NodeIdState state) {
+        int result = 0;
+        final DLN[] nodeIds = state.nodeIds;
+        final DLN[] shuffled = state.shuffled;
+        for (int i = 0; i < nodeIds.length; i++) {
+            result += nodeIds[i].compareTo(shuffled[i]);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int equals(final NodeIdState state) {
+        int result = 0;
+        final DLN[] nodeIds = state.nodeIds;
+        final DLN[] copies = state.copies;
+        for (int i = 0; i < nodeIds.length; i++) {
+            if (nodeIds[i].equals(copies[i])) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int isDescendantOf(final NodeIdState state) {
+        int result = 0;
+        final DLN[] nodeIds = state.nodeIds;
+        final DLN[] ancestors = state.ancestors;
+        for (int i = 0; i < nodeIds.length; i++) {
+            if (nodeIds[i].isDescendantOf(ancestors[i])) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int computeRelation(final NodeIdState state) {
+        int result = 0;
+        final DLN[] nodeIds = state.nodeIds;
+        final DLN[] ancestors = state.ancestors;
+        for (int i = 0; i < nodeIds.length; i++) {
+            result += nodeIds[i].computeRelation(ancestors[i]);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int getTreeLevel(final NodeIdState state) {
+        int result = 0;
+        final DLN[] nodeIds = state.nodeIds;
+        for (int i = 0; i < nodeIds.length; i++) {
+            result += nodeIds[i].getTreeLevel();
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int isSiblingOf(final NodeIdState state) {
+        int result = 0;
+        final DLN[] nodeIds = state.nodeIds;
+        final DLN[] ancestors = state.ancestors;
+        for (int i = 0; i < nodeIds.length; i++) {
+            if (nodeIds[i].isSiblingOf(ancestors[i])) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int compareParentIds(final NodeIdState state) {
+        int result = 0;
+        final DLN[] nodeIds = state.nodeIds;
+        final DLN[] ancestors = state.ancestors;
+        for (int i = 0; i < nodeIds.length; i++) {
+            result += nodeIds[i].compareParentIds(ancestors[i]);
+        }
+        return result;
+    }
+
+    /**
+     * The equivalent of {@link #compareParentIds(NodeIdState)} before it was
+     * available, for comparison.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int compareGetParentIds(final NodeIdState state) {
+        int result = 0;
+        final DLN[] nodeIds = state.nodeIds;
+        final DLN[] ancestors = state.ancestors;
+        for (int i = 0; i < nodeIds.length; i++) {
+            result += nodeIds[i].getParentId().compareTo(ancestors[i].getParentId());
+        }
+        return result;
+    }
+}
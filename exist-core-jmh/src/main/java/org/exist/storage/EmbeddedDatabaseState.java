@@ -0,0 +1,68 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Base class for the JMH state of benchmarks which need
+ * a running database instance.
+ *
+ * The database uses temporary storage which is removed
+ * when the database is stopped.
+ */
+public abstract class EmbeddedDatabaseState {
+
+    private final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+    private Path tempDir;
+
+    protected void startDatabase() throws EXistException, DatabaseConfigurationException, IOException {
+        existEmbeddedServer.startDb();
+        tempDir = Files.createTempDirectory("exist-jmh");
+    }
+
+    protected void stopDatabase() {
+        existEmbeddedServer.stopDb();
+        FileUtils.deleteQuietly(tempDir);
+    }
+
+    public BrokerPool getBrokerPool() {
+        return existEmbeddedServer.getBrokerPool();
+    }
+
+    /**
+     * Get a directory for files which are
+     * created by the benchmark itself.
+     *
+     * @return the temporary directory
+     */
+    public Path getTempDir() {
+        return tempDir;
+    }
+}
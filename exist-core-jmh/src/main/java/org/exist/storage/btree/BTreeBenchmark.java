@@ -0,0 +1,184 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.exist.EXistException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.EmbeddedDatabaseState;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+import org.exist.xquery.TerminatedException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Benchmarks inserting, looking up and range scanning keys of a {@link BTree}.
+ *
+ * All benchmarks use the same fixed dataset of fixed width string keys,
+ * which are inserted in a (seeded) random order. The tree is not thread-safe
+ * without the locking of the callers, so these benchmarks must be run with a
+ * single thread.
+ */
+@Threads(1)
+public class BTreeBenchmark {
+
+    private static final byte FILE_ID = 0x7F;
+    private static final byte INSERT_FILE_ID = 0x7E;
+    private static final short FILE_VERSION = Short.MIN_VALUE;
+
+    static final int KEYS = 100_000;
+    static final int INSERTS = 10_000;
+    static final int RANGE = 1_000;
+    static final long SEED = 0x5EED;
+
+    static Value key(final int i) {
+        return new Value(String.format("key-%08d", i));
+    }
+
+    /**
+     * Produces a permutation of {@code 0 .. count - 1}, which is the same for every run.
+     *
+     * @param count the number of values
+     *
+     * @return the permutation
+     */
+    static int[] shuffled(final int count) {
+        final int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        final Random random = new Random(SEED);
+        for (int i = count - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+
+    static BTree create(final BrokerPool pool, final byte fileId, final Path file) throws DBException {
+        final BTree btree = new BTree(pool, fileId, FILE_VERSION, false, pool.getCacheManager(), file);
+        btree.create((short) -1);
+        return btree;
+    }
+
+    @State(Scope.Benchmark)
+    public static class BTreeState extends EmbeddedDatabaseState {
+        final Value[] keys = new Value[KEYS];
+        final int[] order = shuffled(KEYS);
+        BTree btree;
+        private int insertFile = 0;
+
+        @Setup(Level.Trial)
+        public void setUp() throws EXistException, DatabaseConfigurationException, IOException, DBException {
+            startDatabase();
+
+            for (int i = 0; i < KEYS; i++) {
+                keys[i] = key(i);
+            }
+
+            btree = create(getBrokerPool(), FILE_ID, getTempDir().resolve("btree.dbx"));
+            for (final int i : order) {
+                btree.addValue(keys[i], i);
+            }
+            btree.flush();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws DBException {
+            btree.close();
+            stopDatabase();
+        }
+
+        Path nextInsertFile() {
+            return getTempDir().resolve("insert-" + (insertFile++) + ".dbx");
+        }
+    }
+
+    /**
+     * An empty tree in a new file for each invocation of {@link #insert(BTreeState, InsertState)},
+     * so that creating, closing and deleting the file is not measured.
+     */
+    @State(Scope.Thread)
+    public static class InsertState {
+        private Path file;
+        BTree btree;
+
+        @Setup(Level.Invocation)
+        public void setUp(final BTreeState state) throws DBException {
+            file = state.nextInsertFile();
+            btree = create(state.getBrokerPool(), INSERT_FILE_ID, file);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws DBException {
+            try {
+                btree.close();
+            } finally {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = 0;
+
+        int next(final int bound) {
+            if (next >= bound) {
+                next = 0;
+            }
+            return next++;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSERTS)
+    public void insert(final BTreeState state, final InsertState insert) throws IOException, BTreeException {
+        for (int i = 0; i < INSERTS; i++) {
+            final int k = state.order[i];
+            insert.btree.addValue(state.keys[k], k);
+        }
+    }
+
+    @Benchmark
+    public long lookup(final BTreeState state, final Cursor cursor) throws IOException, BTreeException {
+        return state.btree.findValue(state.keys[state.order[cursor.next(KEYS)]]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RANGE)
+    public int rangeScan(final BTreeState state, final Cursor cursor) throws IOException, BTreeException, TerminatedException {
+        final int from = state.order[cursor.next(KEYS)] % (KEYS - RANGE - 1);
+        final IndexQuery query = new IndexQuery(IndexQuery.RANGE, state.keys[from], state.keys[from + RANGE]);
+        final int[] count = new int[1];
+        state.btree.query(query, (value, pointer) -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+}
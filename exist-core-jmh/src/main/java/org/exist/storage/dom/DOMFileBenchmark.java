@@ -0,0 +1,135 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.dom;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.DBBroker;
+import org.exist.storage.EmbeddedDatabaseState;
+import org.exist.storage.NativeBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.lock.ManagedLock;
+import org.exist.storage.txn.Txn;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.ReadOnlyException;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Benchmarks appending nodes to, and iterating the nodes of a document in, the {@link DOMFile}.
+ *
+ * The iteration uses a fixed generated document, which is stored once per trial.
+ */
+public class DOMFileBenchmark {
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("jmh");
+    private static final XmldbURI DOCUMENT_URI = XmldbURI.create("dom.xml");
+
+    static final int SECTIONS = 2_000;
+    static final int PARAGRAPHS = 5;
+    static final int APPENDS = 1_000;
+    static final int NODE_SIZE = 32;
+
+    static String document() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("<doc>");
+        for (int i = 0; i < SECTIONS; i++) {
+            builder.append("<section id=\"s").append(i).append("\">");
+            for (int j = 0; j < PARAGRAPHS; j++) {
+                builder.append("<p>paragraph ").append(j).append(" of section ").append(i).append("</p>");
+            }
+            builder.append("</section>");
+        }
+        builder.append("</doc>");
+        return builder.toString();
+    }
+
+    @State(Scope.Benchmark)
+    public static class DOMFileState extends EmbeddedDatabaseState {
+        final byte[] node = new byte[NODE_SIZE];
+
+        @Setup(Level.Trial)
+        public void setUp() throws EXistException, DatabaseConfigurationException, IOException, PermissionDeniedException, SAXException, LockException {
+            startDatabase();
+
+            for (int i = 0; i < NODE_SIZE; i++) {
+                node[i] = (byte) i;
+            }
+
+            try (final DBBroker broker = getBrokerPool().get(Optional.of(getBrokerPool().getSecurityManager().getSystemSubject()));
+                    final Txn transaction = getBrokerPool().getTransactionManager().beginTransaction()) {
+                final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+                broker.storeDocument(transaction, DOCUMENT_URI, new StringInputSource(document()), MimeType.XML_TYPE, collection);
+                transaction.commit();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            stopDatabase();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(APPENDS)
+    public void append(final DOMFileState state) throws EXistException, LockException, ReadOnlyException {
+        try (final DBBroker broker = state.getBrokerPool().get(Optional.of(state.getBrokerPool().getSecurityManager().getSystemSubject()));
+                final Txn transaction = state.getBrokerPool().getTransactionManager().beginTransaction()) {
+            final DOMFile domDb = ((NativeBroker) broker).getDOMFile();
+            try (final ManagedLock<ReentrantLock> domFileLock = state.getBrokerPool().getLockManager().acquireBtreeWriteLock(domDb.getLockName())) {
+                domDb.setOwnerObject(broker);
+                for (int i = 0; i < APPENDS; i++) {
+                    domDb.add(transaction, state.node);
+                }
+                domDb.closeDocument();
+            }
+            transaction.commit();
+        }
+    }
+
+    @Benchmark
+    public int iterate(final DOMFileState state) throws EXistException, PermissionDeniedException, IOException {
+        try (final DBBroker broker = state.getBrokerPool().get(Optional.of(state.getBrokerPool().getSecurityManager().getSystemSubject()));
+                final LockedDocument lockedDocument = broker.getXMLResource(COLLECTION_URI.append(DOCUMENT_URI), LockMode.READ_LOCK);
+                final INodeIterator iterator = broker.getNodeIterator((NodeHandle) lockedDocument.getDocument().getDocumentElement())) {
+            int count = 0;
+            while (iterator.hasNext()) {
+                if (iterator.next() == null) {
+                    break;
+                }
+                count++;
+            }
+            return count;
+        }
+    }
+}
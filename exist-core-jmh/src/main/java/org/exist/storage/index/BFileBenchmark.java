@@ -0,0 +1,137 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.index;
+
+import org.exist.EXistException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.EmbeddedDatabaseState;
+import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.Value;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+import org.exist.util.ReadOnlyException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Benchmarks storing and retrieving values of a {@link BFile}.
+ *
+ * All benchmarks use the same fixed dataset of keys and values, the values
+ * are of a fixed size so that an overwrite never has to relocate a value.
+ * The file is not thread-safe without the locking of the callers, so these
+ * benchmarks must be run with a single thread.
+ */
+@Threads(1)
+public class BFileBenchmark {
+
+    private static final byte FILE_ID = 0x7F;
+    private static final byte INSERT_FILE_ID = 0x7E;
+    private static final short FILE_VERSION = Short.MIN_VALUE;
+
+    static final int KEYS = 50_000;
+    static final int INSERTS = 10_000;
+    static final int VALUE_SIZE = 128;
+    static final long SEED = 0x5EED;
+
+    static BFile create(final BrokerPool pool, final byte fileId, final Path file) throws DBException {
+        final BFile bfile = new BFile(pool, fileId, FILE_VERSION, false, file, pool.getCacheManager(), 1.0, 0.01);
+        bfile.create();
+        return bfile;
+    }
+
+    @State(Scope.Benchmark)
+    public static class BFileState extends EmbeddedDatabaseState {
+        final Value[] keys = new Value[KEYS];
+        final byte[][] values = new byte[KEYS][];
+        final int[] order = new int[KEYS];
+        BFile bfile;
+        private int insertFile = 0;
+
+        @Setup(Level.Trial)
+        public void setUp() throws EXistException, DatabaseConfigurationException, IOException, DBException, ReadOnlyException {
+            startDatabase();
+
+            final Random random = new Random(SEED);
+            for (int i = 0; i < KEYS; i++) {
+                keys[i] = new Value(String.format("key-%08d", i));
+                values[i] = new byte[VALUE_SIZE];
+                random.nextBytes(values[i]);
+                order[i] = random.nextInt(KEYS);
+            }
+
+            bfile = create(getBrokerPool(), FILE_ID, getTempDir().resolve("values.dbx"));
+            for (int i = 0; i < KEYS; i++) {
+                bfile.put(keys[i], values[i], true);
+            }
+            bfile.flush();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws DBException {
+            bfile.close();
+            stopDatabase();
+        }
+
+        Path nextInsertFile() {
+            return getTempDir().resolve("insert-" + (insertFile++) + ".dbx");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = 0;
+
+        int next(final int bound) {
+            if (next >= bound) {
+                next = 0;
+            }
+            return next++;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSERTS)
+    public void insert(final BFileState state) throws DBException, ReadOnlyException {
+        final Path file = state.nextInsertFile();
+        try (final BFile bfile = create(state.getBrokerPool(), INSERT_FILE_ID, file)) {
+            for (int i = 0; i < INSERTS; i++) {
+                bfile.put(state.keys[i], state.values[i], false);
+            }
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    @Benchmark
+    public long overwrite(final BFileState state, final Cursor cursor) throws ReadOnlyException {
+        final int i = state.order[cursor.next(KEYS)];
+        return state.bfile.put(state.keys[i], state.values[(i + 1) % KEYS], true);
+    }
+
+    @Benchmark
+    public Value get(final BFileState state, final Cursor cursor) {
+        return state.bfile.get(state.keys[state.order[cursor.next(KEYS)]]);
+    }
+}
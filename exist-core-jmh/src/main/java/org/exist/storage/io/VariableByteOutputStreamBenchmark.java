@@ -0,0 +1,132 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Benchmarks the variable byte encoding of {@link VariableByteOutputStream}
+ * and the decoding of {@link VariableByteArrayInput}.
+ *
+ * The dataset is fixed, it mixes small values which encode into a single byte
+ * with larger values, as is typical for the document and node ids and the
+ * counts stored in the indexes.
+ */
+public class VariableByteOutputStreamBenchmark {
+
+    static final int VALUES = 10_000;
+    static final long SEED = 0x5EED;
+
+    @State(Scope.Thread)
+    public static class EncodingState {
+        final int[] ints = new int[VALUES];
+        final long[] longs = new long[VALUES];
+        final String[] strings = new String[VALUES / 10];
+        final VariableByteOutputStream os = new VariableByteOutputStream(VALUES * 9);
+        byte[] encodedInts;
+        final VariableByteArrayInput is = new VariableByteArrayInput();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            final Random random = new Random(SEED);
+            for (int i = 0; i < VALUES; i++) {
+                switch (i % 4) {
+                    case 0:
+                        ints[i] = random.nextInt(128);
+                        longs[i] = random.nextInt(128);
+                        break;
+                    case 1:
+                        ints[i] = random.nextInt(1 << 14);
+                        longs[i] = random.nextInt(1 << 21);
+                        break;
+                    case 2:
+                        ints[i] = random.nextInt(1 << 21);
+                        longs[i] = random.nextLong() >>> 24;
+                        break;
+                    default:
+                        ints[i] = random.nextInt() >>> 1;
+                        longs[i] = random.nextLong() >>> 1;
+                        break;
+                }
+            }
+
+            for (int i = 0; i < strings.length; i++) {
+                // mostly ASCII with the occasional multi-byte character
+                final StringBuilder builder = new StringBuilder("element-").append(i);
+                if (i % 8 == 0) {
+                    builder.append('\u00e9').append('\u4e2d');
+                }
+                strings[i] = builder.toString();
+            }
+
+            for (final int value : ints) {
+                os.writeInt(value);
+            }
+            encodedInts = os.toByteArray();
+            os.clear();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int writeInt(final EncodingState state) {
+        state.os.clear();
+        for (final int value : state.ints) {
+            state.os.writeInt(value);
+        }
+        return state.os.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int writeLong(final EncodingState state) {
+        state.os.clear();
+        for (final long value : state.longs) {
+            state.os.writeLong(value);
+        }
+        return state.os.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES / 10)
+    public int writeUTF(final EncodingState state) throws IOException {
+        state.os.clear();
+        for (final String value : state.strings) {
+            state.os.writeUTF(value);
+        }
+        return state.os.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long readInt(final EncodingState state) throws IOException {
+        state.is.initialize(state.encodedInts, 0, state.encodedInts.length);
+        long sum = 0;
+        for (int i = 0; i < VALUES; i++) {
+            sum += state.is.readInt();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.exist.EXistException;
+import org.exist.storage.EmbeddedDatabaseState;
+import org.exist.storage.dom.UpdateValueLoggable;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.storage.txn.TxnStart;
+import org.exist.util.DatabaseConfigurationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Benchmarks the write throughput of the {@link Journal}.
+ *
+ * The benchmarks write either small records, or records which carry a fixed
+ * size payload like those written when a node is updated, and measure the
+ * cost of committing an (empty) transaction, which includes flushing the
+ * journal. Running the commit benchmark with several threads shows the
+ * effect of batch commit.
+ */
+public class JournalBenchmark {
+
+    static final int VALUE_SIZE = 256;
+    static final long SEED = 0x5EED;
+
+    @State(Scope.Benchmark)
+    public static class JournalState extends EmbeddedDatabaseState {
+        final byte[] value = new byte[VALUE_SIZE];
+        final byte[] oldValue = new byte[VALUE_SIZE];
+        JournalManager journalManager;
+        TransactionManager transactionManager;
+        Txn transaction;
+
+        @Setup(Level.Trial)
+        public void setUp() throws EXistException, DatabaseConfigurationException, IOException {
+            startDatabase();
+
+            final Random random = new Random(SEED);
+            random.nextBytes(value);
+            random.nextBytes(oldValue);
+
+            journalManager = getBrokerPool().getJournalManager().orElseThrow(() -> new IllegalStateException("Journalling is not enabled"));
+            transactionManager = getBrokerPool().getTransactionManager();
+
+            // all records written by the write benchmarks belong to a single transaction
+            transaction = transactionManager.beginTransaction();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            transaction.close();
+            stopDatabase();
+        }
+    }
+
+    @Benchmark
+    public void writeSmall(final JournalState state) throws JournalException {
+        state.journalManager.journal(new TxnStart(state.transaction.getId()));
+    }
+
+    @Benchmark
+    public void writeValue(final JournalState state) throws JournalException {
+        state.journalManager.journal(new UpdateValueLoggable(state.transaction, 1, (short) 1, state.value, state.oldValue, 0));
+    }
+
+    @Benchmark
+    public void commit(final JournalState state) throws TransactionException {
+        try (final Txn transaction = state.transactionManager.beginTransaction()) {
+            transaction.commit();
+        }
+    }
+}
@@ -25,11 +25,13 @@ import org.exist.EXistException;
 import org.exist.backup.restore.AppRestoreUtils;
 import org.exist.backup.restore.RestoreHandler;
 import org.exist.backup.restore.listener.RestoreListener;
+import org.exist.indexing.IndexManager;
 import org.exist.security.Account;
 import org.exist.security.PermissionDeniedException;
 import org.exist.security.SecurityManager;
 import org.exist.security.internal.Password;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.DBException;
 import org.exist.storage.txn.Txn;
 import org.exist.util.EXistInputSource;
 import org.exist.util.FileUtils;
@@ -75,10 +77,10 @@ public class Restore {
             totalNrOfFiles += backupDescriptor.getNumberOfFiles();
         }
 
-        // continue restore
+        // continue restore, deferring the index entries of the restored documents until all are stored
         final XMLReaderPool parserPool = broker.getBrokerPool().getParserPool();
         XMLReader reader = null;
-        try {
+        try (final IndexManager.BulkLoad bulkLoad = broker.getBrokerPool().getIndexManager().startBulkLoad(broker)) {
             reader = parserPool.borrowXMLReader();
             listener.started(totalNrOfFiles);
 
@@ -98,6 +100,8 @@ public class Restore {
                 }
             }
 
+        } catch (final DBException e) {
+            throw new EXistException("Failed to write the index entries of the restored documents: " + e.getMessage(), e);
         } finally {
             listener.finished();
 
@@ -27,10 +27,12 @@ import org.exist.Database;
 import org.exist.backup.restore.SystemImportHandler;
 import org.exist.backup.restore.listener.RestoreListener;
 import org.exist.config.ConfigurationException;
+import org.exist.indexing.IndexManager;
 import org.exist.security.AuthenticationException;
 import org.exist.security.PermissionDeniedException;
 import org.exist.security.Subject;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.DBException;
 import org.exist.storage.txn.TransactionException;
 import org.exist.storage.txn.Txn;
 import org.exist.util.EXistInputSource;
@@ -81,7 +83,7 @@ public class SystemImport {
 
             final XMLReaderPool parserPool = broker.getBrokerPool().getParserPool();
 	        XMLReader reader = null;
-	        try {
+	        try (final IndexManager.BulkLoad bulkLoad = broker.getBrokerPool().getIndexManager().startBulkLoad(broker)) {
                 reader = parserPool.borrowXMLReader();
 
                 listener.started(0);
@@ -96,6 +98,8 @@ public class SystemImport {
 	                reader.setContentHandler(handler);
 	                reader.parse(is);
 	            }
+	        } catch (final DBException e) {
+	            throw new IOException("Failed to write the index entries of the imported documents: " + e.getMessage(), e);
 	        } finally {
 	            listener.finished();
 
@@ -34,6 +34,7 @@ import org.exist.numbering.NodeId;
 import org.exist.security.SecurityManager;
 import org.exist.security.*;
 import org.exist.storage.*;
+import org.exist.storage.dom.DOMFile;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
 import org.exist.storage.lock.EnsureContainerLocked;
@@ -612,13 +613,15 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Resource, Do
      * Returns the estimated size of the data in this document.
      *
      * As an estimation, the number of pages occupied by the document
-     * is multiplied with the current page size.
+     * is multiplied with the page size of the DOM file.
      * @return the estimated size of the data in this document.
      *
      */
     @EnsureContainerLocked(mode=READ_LOCK)
     public long getContentLength() {
-        final long length = pageCount * pool.getPageSize();
+        final Object domDb = pool.getConfiguration().getProperty(DOMFile.getConfigKeyForFile());
+        final int pageSize = domDb instanceof DOMFile ? ((DOMFile) domDb).getFileHeader().getPageSize() : pool.getPageSize();
+        final long length = pageCount * pageSize;
         return (length < 0) ? 0 : length;
     }
 
@@ -0,0 +1,1001 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.dom.persistent;
+
+import org.exist.dom.QName;
+import org.exist.numbering.DLN;
+import org.exist.numbering.NodeId;
+import org.exist.xquery.Expression;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+import org.w3c.dom.Node;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+/**
+ * A node set for large results, which stores its nodes in packed primitive arrays instead
+ * of keeping a {@link NodeProxy} object per node.
+ *
+ * Nodes are grouped by document. Node ids are kept in their binary {@link DLN} encoding and
+ * are prefix-compressed: only the bytes following the prefix shared with the preceding node id
+ * of the same document are stored. The first node of a document and every
+ * {@link #RESTART_INTERVAL}th node store their complete id, so a node can be decoded without
+ * reading the whole document. {@link NodeProxy} objects are only created on the fly when the
+ * set is iterated or a node is looked up.
+ *
+ * Intersection, union, difference and the parent/child and ancestor/descendant selections
+ * are computed by merging the packed representations, if the other set is a PackedNodeSet
+ * as well. The set only keeps the document, node id, node type and internal address of a node,
+ * context nodes and matches are dropped when a node is added. Use it only where those are
+ * not tracked, i.e. with {@link Expression#NO_CONTEXT_ID}. The one exception is
+ * {@link #setSelfAsContext(int)}, which is applied to the nodes when they are decoded.
+ * Document nodes cannot be stored.
+ *
+ * Like {@link NewArrayNodeSet}, the set is cheapest to build if nodes are added in document order.
+ * Otherwise, it is sorted and duplicates are removed before it is read.
+ */
+public class PackedNodeSet extends AbstractNodeSet {
+
+    private static final int INITIAL_SIZE = 64;
+
+    /**
+     * Every RESTART_INTERVAL nodes, the complete node id is stored,
+     * instead of just the bytes following the prefix shared with
+     * the preceding node id.
+     */
+    private static final int RESTART_INTERVAL = 16;
+
+    /**
+     * The length of a shared prefix is stored in a single byte.
+     */
+    private static final int MAX_PREFIX_LENGTH = 0xFF;
+
+    /**
+     * The name shared by all nodes in the set, or null if unknown.
+     */
+    private final QName qname;
+
+    private int size = 0;
+    private boolean isSorted = true;
+    private int state = 0;
+    private int itemType = Type.ANY_TYPE;
+
+    /**
+     * The context ids for which each node is its own context node.
+     */
+    private int[] selfContextIds = null;
+
+    private int documentCount = 0;
+    private DocumentImpl[] documents = new DocumentImpl[16];
+    private int[] documentIds = new int[16];
+
+    /**
+     * The index of the first node of each document.
+     */
+    private int[] documentNodesOffset = new int[16];
+
+    /**
+     * The offset into {@link #idData} of the id of the
+     * first node of each document.
+     */
+    private int[] documentDataOffset = new int[16];
+
+    // one entry per node
+    private short[] nodeUnits = new short[INITIAL_SIZE];
+    private byte[] prefixLengths = new byte[INITIAL_SIZE];
+    private byte[] nodeTypes = new byte[INITIAL_SIZE];
+    private long[] addresses = new long[INITIAL_SIZE];
+
+    /**
+     * The offset into {@link #idData} of the id of every
+     * {@link #RESTART_INTERVAL}th node.
+     */
+    private int[] restartOffsets = new int[INITIAL_SIZE / RESTART_INTERVAL + 1];
+
+    /**
+     * The node ids, minus the prefix shared with the preceding node id.
+     */
+    private byte[] idData = new byte[INITIAL_SIZE * 2];
+    private int idDataLength = 0;
+
+    // the complete id of the last node added
+    private byte[] lastId = new byte[16];
+    private int lastLength = 0;
+
+    private byte[] scratch = new byte[16];
+
+    public PackedNodeSet() {
+        this(null);
+    }
+
+    /**
+     * @param qname the name shared by all nodes which will be added to the set,
+     *     or null if the nodes are not known to have the same name
+     */
+    public PackedNodeSet(@Nullable final QName qname) {
+        this.qname = qname;
+    }
+
+    @Override
+    public void add(final NodeProxy proxy) {
+        add(proxy.getOwnerDocument(), proxy.getNodeId(), proxy.getNodeType(), proxy.getInternalAddress());
+    }
+
+    /**
+     * Add a node to the set without creating a {@link NodeProxy} for it.
+     *
+     * @param doc the document containing the node
+     * @param nodeId the id of the node
+     * @param nodeType the DOM type of the node
+     * @param address the internal address of the node
+     */
+    public void add(final DocumentImpl doc, final NodeId nodeId, final short nodeType, final long address) {
+        if (nodeId == NodeId.DOCUMENT_NODE) {
+            throw new IllegalArgumentException("A packed node set cannot store document nodes");
+        }
+        if (scratch.length < nodeId.size()) {
+            scratch = new byte[nodeId.size()];
+        }
+        nodeId.serialize(scratch, 0);
+        append(doc, scratch, nodeId.units(), nodeType, address);
+    }
+
+    @Override
+    public void addAll(final NodeSet other) {
+        if (other instanceof PackedNodeSet) {
+            final PackedNodeSet packed = (PackedNodeSet) other;
+            packed.sort();
+            final NodeCursor cursor = packed.new NodeCursor();
+            while (cursor.next()) {
+                cursor.appendTo(this);
+            }
+        } else {
+            for (final NodeProxy proxy : other) {
+                add(proxy);
+            }
+        }
+    }
+
+    private void append(final DocumentImpl doc, final byte[] id, final int units, final short nodeType,
+            final long address) {
+        final int length = DLN.byteLength(units);
+        final int docId = doc.getDocId();
+        final boolean newDocument = documentCount == 0 || documentIds[documentCount - 1] != docId;
+        if (newDocument) {
+            if (documentCount > 0 && documentIds[documentCount - 1] > docId) {
+                isSorted = false;
+            }
+        } else if (isSorted) {
+            final int cmp = DLN.compare(id, length, lastId, lastLength);
+            if (cmp == 0) {
+                // same as the last node added
+                return;
+            } else if (cmp < 0) {
+                isSorted = false;
+            }
+        }
+
+        ensureCapacity(length);
+        if (newDocument) {
+            addDocument(doc);
+        }
+
+        int prefix = 0;
+        if (!newDocument && size % RESTART_INTERVAL != 0) {
+            final int limit = Math.min(Math.min(length, lastLength), MAX_PREFIX_LENGTH);
+            while (prefix < limit && id[prefix] == lastId[prefix]) {
+                prefix++;
+            }
+        }
+        if (size % RESTART_INTERVAL == 0) {
+            restartOffsets[size / RESTART_INTERVAL] = idDataLength;
+        }
+        System.arraycopy(id, prefix, idData, idDataLength, length - prefix);
+        idDataLength += length - prefix;
+        nodeUnits[size] = (short) units;
+        prefixLengths[size] = (byte) prefix;
+        nodeTypes[size] = (byte) nodeType;
+        addresses[size] = address;
+        size++;
+
+        if (lastId.length < length) {
+            lastId = new byte[length];
+        }
+        System.arraycopy(id, 0, lastId, 0, length);
+        lastLength = length;
+
+        checkItemType(NodeProxy.nodeType2XQuery(nodeType));
+        state = (state == Integer.MAX_VALUE ? 0 : state + 1);
+    }
+
+    private void ensureCapacity(final int idLength) {
+        if (size == nodeUnits.length) {
+            final int newLength = size << 1;
+            nodeUnits = Arrays.copyOf(nodeUnits, newLength);
+            prefixLengths = Arrays.copyOf(prefixLengths, newLength);
+            nodeTypes = Arrays.copyOf(nodeTypes, newLength);
+            addresses = Arrays.copyOf(addresses, newLength);
+            restartOffsets = Arrays.copyOf(restartOffsets, newLength / RESTART_INTERVAL + 1);
+        }
+        if (idDataLength + idLength > idData.length) {
+            idData = Arrays.copyOf(idData, Math.max(idData.length << 1, idDataLength + idLength));
+        }
+    }
+
+    private void addDocument(final DocumentImpl doc) {
+        if (documentCount == documents.length) {
+            final int newLength = documentCount << 1;
+            documents = Arrays.copyOf(documents, newLength);
+            documentIds = Arrays.copyOf(documentIds, newLength);
+            documentNodesOffset = Arrays.copyOf(documentNodesOffset, newLength);
+            documentDataOffset = Arrays.copyOf(documentDataOffset, newLength);
+        }
+        documents[documentCount] = doc;
+        documentIds[documentCount] = doc.getDocId();
+        documentNodesOffset[documentCount] = size;
+        documentDataOffset[documentCount] = idDataLength;
+        documentCount++;
+    }
+
+    private void checkItemType(final int type) {
+        if (itemType == Type.NODE || itemType == type) {
+            return;
+        }
+        if (itemType == Type.ANY_TYPE) {
+            itemType = type;
+        } else {
+            itemType = Type.NODE;
+        }
+    }
+
+    /**
+     * Sorts the nodes into document order and removes duplicates,
+     * if they were not added in document order.
+     */
+    private void sort() {
+        if (isSorted) {
+            return;
+        }
+        final NodeProxy[] nodes = new NodeProxy[size];
+        final NodeCursor cursor = new NodeCursor();
+        for (int i = 0; cursor.next(); i++) {
+            nodes[i] = cursor.getNode();
+        }
+        Arrays.sort(nodes);
+
+        size = 0;
+        documentCount = 0;
+        idDataLength = 0;
+        lastLength = 0;
+        itemType = Type.ANY_TYPE;
+        isSorted = true;
+        for (final NodeProxy node : nodes) {
+            add(node);
+        }
+    }
+
+    private int findDocument(final int docId) {
+        int low = 0;
+        int high = documentCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midVal = documentIds[mid];
+            if (midVal < docId) {
+                low = mid + 1;
+            } else if (midVal > docId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the index of the document the node at the given index belongs to.
+     */
+    private int findDocumentOfNode(final int index) {
+        int low = 0;
+        int high = documentCount - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (documentNodesOffset[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int documentEnd(final int documentIndex) {
+        return documentIndex + 1 < documentCount ? documentNodesOffset[documentIndex + 1] : size;
+    }
+
+    /**
+     * Returns the index of the given node, or -1 if it is not in the set.
+     */
+    private int indexOf(final int docId, final NodeId nodeId) {
+        final int documentIndex = findDocument(docId);
+        if (documentIndex < 0 || nodeId == NodeId.DOCUMENT_NODE) {
+            return -1;
+        }
+        final int length = nodeId.size();
+        final byte[] id = new byte[length];
+        nodeId.serialize(id, 0);
+
+        final int first = documentNodesOffset[documentIndex];
+        final int end = documentEnd(documentIndex);
+        final NodeCursor cursor = new NodeCursor();
+
+        // find the last block of nodes whose first node does not come after the id
+        int low = first / RESTART_INTERVAL;
+        int high = (end - 1) / RESTART_INTERVAL;
+        int block = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            cursor.seek(Math.max(mid * RESTART_INTERVAL, first));
+            final int cmp = DLN.compare(cursor.bits, cursor.length, id, length);
+            if (cmp == 0) {
+                return cursor.pos;
+            } else if (cmp < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+
+        // scan the block
+        cursor.seek(Math.max(block * RESTART_INTERVAL, first));
+        final int blockEnd = Math.min((block + 1) * RESTART_INTERVAL, end);
+        while (cursor.next() && cursor.pos < blockEnd) {
+            final int cmp = DLN.compare(cursor.bits, cursor.length, id, length);
+            if (cmp == 0) {
+                return cursor.pos;
+            } else if (cmp > 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private NodeProxy nodeAt(final int index) {
+        final NodeCursor cursor = new NodeCursor();
+        cursor.seek(index);
+        return cursor.getNode();
+    }
+
+    @Override
+    public NodeSetIterator iterator() {
+        sort();
+        return new PackedNodeSetIterator();
+    }
+
+    @Override
+    public SequenceIterator iterate() {
+        sort();
+        return new PackedNodeSetIterator();
+    }
+
+    @Override
+    public SequenceIterator unorderedIterator() {
+        sort();
+        return new PackedNodeSetIterator();
+    }
+
+    @Override
+    public boolean contains(final NodeProxy proxy) {
+        sort();
+        return indexOf(proxy.getOwnerDocument().getDocId(), proxy.getNodeId()) > -1;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean hasOne() {
+        sort();
+        return size == 1;
+    }
+
+    @Override
+    public int getLength() {
+        sort();
+        return size;
+    }
+
+    @Override
+    public long getItemCountLong() {
+        return getLength();
+    }
+
+    @Override
+    public int getItemType() {
+        return itemType;
+    }
+
+    @Override
+    public Node item(final int pos) {
+        final NodeProxy p = get(pos);
+        return p == null ? null : p.getNode();
+    }
+
+    @Override
+    public Item itemAt(final int pos) {
+        return get(pos);
+    }
+
+    @Override
+    public NodeProxy get(final int pos) {
+        sort();
+        if (pos < 0 || pos >= size) {
+            return null;
+        }
+        return nodeAt(pos);
+    }
+
+    @Override
+    public NodeProxy get(final NodeProxy proxy) {
+        return get(proxy.getOwnerDocument(), proxy.getNodeId());
+    }
+
+    @Override
+    public NodeProxy get(final DocumentImpl doc, final NodeId nodeId) {
+        sort();
+        final int index = indexOf(doc.getDocId(), nodeId);
+        return index < 0 ? null : nodeAt(index);
+    }
+
+    @Override
+    public int getSizeHint(final DocumentImpl doc) {
+        sort();
+        final int documentIndex = findDocument(doc.getDocId());
+        if (documentIndex < 0) {
+            return super.getSizeHint(doc);
+        }
+        return documentEnd(documentIndex) - documentNodesOffset[documentIndex];
+    }
+
+    @Override
+    public DocumentSet getDocumentSet() {
+        sort();
+        final DefaultDocumentSet docs = new DefaultDocumentSet(documentCount);
+        for (int i = 0; i < documentCount; i++) {
+            docs.add(documents[i], false);
+        }
+        return docs;
+    }
+
+    @Override
+    public NodeSet intersection(final NodeSet other) {
+        if (!canMerge(other)) {
+            return super.intersection(other);
+        }
+        final PackedNodeSet packed = (PackedNodeSet) other;
+        sort();
+        packed.sort();
+        final PackedNodeSet result = new PackedNodeSet(commonName(packed));
+        final NodeCursor left = new NodeCursor();
+        final NodeCursor right = packed.new NodeCursor();
+        boolean hasLeft = left.next();
+        boolean hasRight = right.next();
+        while (hasLeft && hasRight) {
+            final int cmp = left.compareTo(right);
+            if (cmp == 0) {
+                left.appendTo(result);
+                hasLeft = left.next();
+                hasRight = right.next();
+            } else if (cmp < 0) {
+                hasLeft = left.getDocId() < right.getDocId() ? left.skipToDocument(right.getDocId()) : left.next();
+            } else {
+                hasRight = right.getDocId() < left.getDocId() ? right.skipToDocument(left.getDocId()) : right.next();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public NodeSet union(final NodeSet other) {
+        if (!canMerge(other)) {
+            return super.union(other);
+        }
+        if (isEmpty()) {
+            return other;
+        } else if (other.isEmpty()) {
+            return this;
+        }
+        final PackedNodeSet packed = (PackedNodeSet) other;
+        sort();
+        packed.sort();
+        final PackedNodeSet result = new PackedNodeSet(commonName(packed));
+        final NodeCursor left = new NodeCursor();
+        final NodeCursor right = packed.new NodeCursor();
+        boolean hasLeft = left.next();
+        boolean hasRight = right.next();
+        while (hasLeft && hasRight) {
+            final int cmp = left.compareTo(right);
+            if (cmp <= 0) {
+                left.appendTo(result);
+                hasLeft = left.next();
+                if (cmp == 0) {
+                    hasRight = right.next();
+                }
+            } else {
+                right.appendTo(result);
+                hasRight = right.next();
+            }
+        }
+        for (; hasLeft; hasLeft = left.next()) {
+            left.appendTo(result);
+        }
+        for (; hasRight; hasRight = right.next()) {
+            right.appendTo(result);
+        }
+        return result;
+    }
+
+    @Override
+    public NodeSet except(final NodeSet other) {
+        if (!canMerge(other)) {
+            return super.except(other);
+        }
+        final PackedNodeSet packed = (PackedNodeSet) other;
+        sort();
+        packed.sort();
+        final PackedNodeSet result = new PackedNodeSet(qname);
+        final NodeCursor left = new NodeCursor();
+        final NodeCursor right = packed.new NodeCursor();
+        boolean hasLeft = left.next();
+        boolean hasRight = right.next();
+        while (hasLeft) {
+            final int cmp = hasRight ? left.compareTo(right) : -1;
+            if (cmp < 0) {
+                left.appendTo(result);
+                hasLeft = left.next();
+            } else if (cmp == 0) {
+                hasLeft = left.next();
+                hasRight = right.next();
+            } else {
+                hasRight = right.getDocId() < left.getDocId() ? right.skipToDocument(left.getDocId()) : right.next();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public NodeSet selectParentChild(final NodeSet al, final int mode, final int contextId) {
+        if (contextId != Expression.NO_CONTEXT_ID || !canMerge(al)) {
+            return super.selectParentChild(al, mode, contextId);
+        }
+        return join((PackedNodeSet) al, mode, true, false);
+    }
+
+    @Override
+    public NodeSet selectAncestorDescendant(final NodeSet al, final int mode, final boolean includeSelf,
+            final int contextId, final boolean copyMatches) {
+        if (contextId != Expression.NO_CONTEXT_ID || !canMerge(al)) {
+            return super.selectAncestorDescendant(al, mode, includeSelf, contextId, copyMatches);
+        }
+        return join((PackedNodeSet) al, mode, false, includeSelf);
+    }
+
+    /**
+     * Structural join of this set, containing the potential descendants, with the given set
+     * of potential ancestors. Both sets are merged in document order, keeping a stack of the
+     * ancestors of the current node.
+     *
+     * @param ancestors the potential ancestors
+     * @param mode {@link NodeSet#DESCENDANT} to return the descendants having an ancestor, or
+     *     {@link NodeSet#ANCESTOR} to return the ancestors having a descendant
+     * @param childOnly only consider parent/child relations
+     * @param includeSelf a node is its own ancestor
+     * @return the selected nodes
+     */
+    private NodeSet join(final PackedNodeSet ancestors, final int mode, final boolean childOnly,
+            final boolean includeSelf) {
+        if (mode != NodeSet.DESCENDANT && mode != NodeSet.ANCESTOR) {
+            throw new IllegalArgumentException("Bad 'mode' argument");
+        }
+        sort();
+        ancestors.sort();
+        final PackedNodeSet result = new PackedNodeSet(mode == NodeSet.DESCENDANT ? qname : ancestors.qname);
+        final BitSet selected = mode == NodeSet.ANCESTOR ? new BitSet(ancestors.size) : null;
+        final AncestorStack stack = new AncestorStack();
+        final NodeCursor descendant = new NodeCursor();
+        final NodeCursor ancestor = ancestors.new NodeCursor();
+        boolean hasDescendant = descendant.next();
+        boolean hasAncestor = ancestor.next();
+        while (hasDescendant) {
+            if (hasAncestor) {
+                final int cmp = ancestor.compareTo(descendant);
+                if (cmp < 0 || (cmp == 0 && includeSelf)) {
+                    if (stack.isEmpty() && ancestor.getDocId() < descendant.getDocId()) {
+                        hasAncestor = ancestor.skipToDocument(descendant.getDocId());
+                    } else {
+                        stack.push(ancestor);
+                        hasAncestor = ancestor.next();
+                    }
+                    continue;
+                }
+            }
+
+            stack.popNonAncestors(descendant);
+            if (stack.isEmpty()) {
+                if (!hasAncestor) {
+                    // no ancestors left
+                    break;
+                }
+                if (descendant.getDocId() < ancestor.getDocId()) {
+                    hasDescendant = descendant.skipToDocument(ancestor.getDocId());
+                    continue;
+                }
+            } else if (mode == NodeSet.DESCENDANT) {
+                if (!childOnly || stack.isParentOf(descendant)) {
+                    descendant.appendTo(result);
+                }
+            } else if (childOnly) {
+                if (stack.isParentOf(descendant)) {
+                    stack.selectTop(selected);
+                }
+            } else {
+                stack.selectAll(selected);
+            }
+            hasDescendant = descendant.next();
+        }
+
+        if (selected != null) {
+            final NodeCursor cursor = ancestors.new NodeCursor();
+            for (int i = selected.nextSetBit(0); i > -1; i = selected.nextSetBit(i + 1)) {
+                cursor.seek(i);
+                cursor.appendTo(result);
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private QName commonName(final PackedNodeSet other) {
+        return qname != null && qname.equals(other.qname) ? qname : null;
+    }
+
+    @Override
+    public void setSelfAsContext(final int contextId) {
+        if (selfContextIds == null) {
+            selfContextIds = new int[] { contextId };
+        } else if (Arrays.stream(selfContextIds).noneMatch(id -> id == contextId)) {
+            selfContextIds = Arrays.copyOf(selfContextIds, selfContextIds.length + 1);
+            selfContextIds[selfContextIds.length - 1] = contextId;
+        }
+    }
+
+    @Override
+    public void clearContext(final int contextId) {
+        if (selfContextIds != null) {
+            final int[] remaining = Arrays.stream(selfContextIds).filter(id -> id != contextId).toArray();
+            selfContextIds = remaining.length == 0 ? null : remaining;
+        }
+    }
+
+    /**
+     * The merge based set operations do not preserve context nodes, so
+     * they can only be used if neither set has any.
+     */
+    private boolean canMerge(final NodeSet other) {
+        return other instanceof PackedNodeSet && selfContextIds == null &&
+                ((PackedNodeSet) other).selfContextIds == null;
+    }
+
+    @Override
+    public int getState() {
+        return state;
+    }
+
+    @Override
+    public boolean hasChanged(final int previousState) {
+        return state != previousState;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PackedNodeSet#" + super.toString();
+    }
+
+    /**
+     * Decodes the nodes of the set one after the other.
+     */
+    private final class NodeCursor {
+        private int pos = -1;
+        private int documentIndex = -1;
+        private int documentEnd = 0;
+
+        private int offset = 0;
+        private int suffixLength = 0;
+
+        // the decoded id of the current node
+        private byte[] bits = new byte[16];
+        private int units;
+        private int length;
+
+        private NodeProxy node = null;
+
+        /**
+         * Moves to the next node.
+         *
+         * @return false if there are no more nodes
+         */
+        boolean next() {
+            if (pos + 1 >= size) {
+                pos = size;
+                return false;
+            }
+            ++pos;
+            offset += suffixLength;
+            if (pos == documentEnd) {
+                ++documentIndex;
+                documentEnd = documentEnd(documentIndex);
+            }
+            decode();
+            return true;
+        }
+
+        /**
+         * Moves to the node at the given index.
+         */
+        void seek(final int index) {
+            if (pos > -1 && pos <= index && index - pos < RESTART_INTERVAL) {
+                while (pos < index) {
+                    next();
+                }
+                return;
+            }
+            // start at the closest preceding node whose complete id is stored
+            documentIndex = findDocumentOfNode(index);
+            documentEnd = documentEnd(documentIndex);
+            final int documentStart = documentNodesOffset[documentIndex];
+            final int restart = index - index % RESTART_INTERVAL;
+            if (restart <= documentStart) {
+                pos = documentStart;
+                offset = documentDataOffset[documentIndex];
+            } else {
+                pos = restart;
+                offset = restartOffsets[restart / RESTART_INTERVAL];
+            }
+            decode();
+            while (pos < index) {
+                next();
+            }
+        }
+
+        /**
+         * Moves to the first node of the first document
+         * whose id is equal to or greater than docId.
+         *
+         * @return false if there is no such document
+         */
+        boolean skipToDocument(final int docId) {
+            int index = findDocument(docId);
+            if (index < 0) {
+                index = -(index + 1);
+            }
+            if (index >= documentCount) {
+                pos = size;
+                return false;
+            }
+            seek(documentNodesOffset[index]);
+            return true;
+        }
+
+        private void decode() {
+            units = nodeUnits[pos];
+            length = DLN.byteLength(units);
+            final int prefix = prefixLengths[pos] & 0xFF;
+            suffixLength = length - prefix;
+            if (bits.length < length) {
+                bits = Arrays.copyOf(bits, Math.max(length, bits.length << 1));
+            }
+            System.arraycopy(idData, offset, bits, prefix, suffixLength);
+            node = null;
+        }
+
+        int getDocId() {
+            return documentIds[documentIndex];
+        }
+
+        int compareTo(final NodeCursor other) {
+            final int docId = getDocId();
+            final int otherDocId = other.getDocId();
+            if (docId != otherDocId) {
+                return docId < otherDocId ? -1 : 1;
+            }
+            return DLN.compare(bits, length, other.bits, other.length);
+        }
+
+        NodeProxy getNode() {
+            if (node == null) {
+                node = new NodeProxy(documents[documentIndex], new DLN(units, bits, 0), nodeTypes[pos], addresses[pos]);
+                if (qname != null) {
+                    node.setQName(qname);
+                }
+                if (selfContextIds != null) {
+                    for (final int contextId : selfContextIds) {
+                        node.addContextNode(contextId, node);
+                    }
+                }
+            }
+            return node;
+        }
+
+        void appendTo(final PackedNodeSet target) {
+            target.append(documents[documentIndex], bits, units, nodeTypes[pos], addresses[pos]);
+        }
+    }
+
+    /**
+     * The ancestors of the current node during a structural join,
+     * together with the position of each ancestor in its set.
+     */
+    private static final class AncestorStack {
+        private int docId = -1;
+        private int top = -1;
+        private byte[][] ids = new byte[8][];
+        private int[] units = new int[8];
+        private int[] positions = new int[8];
+        private boolean[] selected = new boolean[8];
+
+        boolean isEmpty() {
+            return top < 0;
+        }
+
+        void push(final NodeCursor node) {
+            popNonAncestors(node);
+            if (++top == ids.length) {
+                final int newLength = top << 1;
+                ids = Arrays.copyOf(ids, newLength);
+                units = Arrays.copyOf(units, newLength);
+                positions = Arrays.copyOf(positions, newLength);
+                selected = Arrays.copyOf(selected, newLength);
+            }
+            if (ids[top] == null || ids[top].length < node.length) {
+                ids[top] = new byte[Math.max(node.length, 16)];
+            }
+            System.arraycopy(node.bits, 0, ids[top], 0, node.length);
+            units[top] = node.units;
+            positions[top] = node.pos;
+            selected[top] = false;
+        }
+
+        /**
+         * Removes all entries which are neither ancestors of the node
+         * nor the node itself. They cannot be ancestors of any following
+         * node either.
+         */
+        void popNonAncestors(final NodeCursor node) {
+            if (node.getDocId() != docId) {
+                docId = node.getDocId();
+                top = -1;
+                return;
+            }
+            while (top > -1 && DLN.computeRelation(node.bits, node.units, ids[top], units[top]) < 0) {
+                top--;
+            }
+        }
+
+        boolean isParentOf(final NodeCursor node) {
+            return DLN.computeRelation(node.bits, node.units, ids[top], units[top]) == NodeId.IS_CHILD;
+        }
+
+        void selectTop(final BitSet selection) {
+            selected[top] = true;
+            selection.set(positions[top]);
+        }
+
+        /**
+         * Selects all entries on the stack. Once an entry is selected, all entries below
+         * it have been selected as well, so we can stop at the first selected one.
+         */
+        void selectAll(final BitSet selection) {
+            for (int i = top; i > -1 && !selected[i]; i--) {
+                selected[i] = true;
+                selection.set(positions[i]);
+            }
+        }
+    }
+
+    private final class PackedNodeSetIterator implements NodeSetIterator, SequenceIterator {
+        private final NodeCursor cursor = new NodeCursor();
+        private int position = 0;
+
+        private NodeProxy nodeAt(final int index) {
+            if (cursor.pos != index) {
+                cursor.seek(index);
+            }
+            return cursor.getNode();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < size;
+        }
+
+        @Override
+        public NodeProxy next() {
+            if (position >= size) {
+                throw new NoSuchElementException();
+            }
+            return nodeAt(position++);
+        }
+
+        @Override
+        public Item nextItem() {
+            if (position >= size) {
+                return null;
+            }
+            return nodeAt(position++);
+        }
+
+        @Override
+        public NodeProxy peekNode() {
+            if (position >= size) {
+                return null;
+            }
+            return nodeAt(position);
+        }
+
+        @Override
+        public long skippable() {
+            return size - position;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final long skip = Math.min(n, size - position);
+            position += skip;
+            return skip;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setPosition(final NodeProxy proxy) {
+            final int index = indexOf(proxy.getOwnerDocument().getDocId(), proxy.getNodeId());
+            position = index < 0 ? size : index;
+        }
+    }
+}
@@ -38,6 +38,8 @@ import org.xmldb.api.base.XMLDBException;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -68,6 +70,7 @@ public abstract class AbstractExistHttpServlet extends HttpServlet {
     private Authenticator authenticator;
     private Subject defaultUser = null;
     private boolean internalOnly = false;
+    private VirtualThreadDispatcher virtualThreadDispatcher = null;
     
     @Override
     public void init(ServletConfig config) throws ServletException {
@@ -86,8 +89,20 @@ public abstract class AbstractExistHttpServlet extends HttpServlet {
         doGeneralExistServletConfig(config);
     }
     
+    @Override
+    public void service(final ServletRequest request, final ServletResponse response) throws ServletException, IOException {
+        if (virtualThreadDispatcher != null) {
+            virtualThreadDispatcher.dispatch(request, response, super::service);
+        } else {
+            super.service(request, response);
+        }
+    }
+
     @Override
     public void destroy() {
+        if (virtualThreadDispatcher != null) {
+            virtualThreadDispatcher.shutdown();
+        }
         super.destroy();
         BrokerPool.stopAll(false);
     }
@@ -212,6 +227,12 @@ public abstract class AbstractExistHttpServlet extends HttpServlet {
         if(param != null) {
             internalOnly = Boolean.parseBoolean(param);
         }
+
+        // handle requests on virtual threads (requires async-supported to be enabled for the servlet)
+        final String virtualThreads = config.getInitParameter(VirtualThreadDispatcher.VIRTUAL_THREADS_PARAM);
+        if(virtualThreads != null && Boolean.parseBoolean(virtualThreads.trim())) {
+            virtualThreadDispatcher = VirtualThreadDispatcher.create(config.getServletName());
+        }
     }
     
     protected Subject authenticate(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -0,0 +1,199 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http.servlets;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Moves the handling of HTTP requests from the thread of the servlet
+ * container onto a virtual thread.
+ *
+ * Each request is put into asynchronous mode and handed to an executor
+ * which starts a new virtual thread per request, the container thread is
+ * then immediately returned to its pool. A request which blocks for a long
+ * time, e.g. whilst waiting for a broker or a lock, then only occupies a
+ * cheap virtual thread and not one of the limited threads of the container.
+ *
+ * Virtual threads are only available from Java 21, they are looked up
+ * reflectively so that this class may also be loaded on older versions
+ * of Java, where {@link #create(String)} simply returns null.
+ *
+ * Requests which are not dispatched directly from the container, i.e.
+ * forwards and includes, requests for which asynchronous processing has
+ * not been enabled, and requests which are already running on a virtual
+ * thread are handled on the calling thread.
+ */
+@ThreadSafe
+public class VirtualThreadDispatcher {
+
+    private static final Logger LOG = LogManager.getLogger(VirtualThreadDispatcher.class);
+
+    /**
+     * Name of the servlet init-param which enables the virtual thread mode.
+     */
+    public static final String VIRTUAL_THREADS_PARAM = "virtual-threads";
+
+    @Nullable private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findMethod(Executors.class, "newVirtualThreadPerTaskExecutor");
+    @Nullable private static final Method IS_VIRTUAL = findMethod(Thread.class, "isVirtual");
+
+    private final String name;
+    private final ExecutorService executor;
+
+    VirtualThreadDispatcher(final String name, final ExecutorService executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a dispatcher which handles each request on a new virtual thread.
+     *
+     * @param name the name of the servlet, used for logging
+     *
+     * @return the dispatcher, or null if virtual threads are not supported by this JVM
+     */
+    public static @Nullable VirtualThreadDispatcher create(final String name) {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            LOG.warn("{}: virtual threads were requested, but are not supported by Java {}. Requests will be handled by the threads of the servlet container.", name, System.getProperty("java.version"));
+            return null;
+        }
+
+        try {
+            final ExecutorService executor = (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            LOG.info("{}: requests will be handled on virtual threads", name);
+            return new VirtualThreadDispatcher(name, executor);
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            // e.g. virtual threads are a preview feature which has not been enabled
+            final Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            LOG.warn("{}: unable to create virtual threads, requests will be handled by the threads of the servlet container: {}", name, cause.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Determines if a thread is a virtual thread.
+     *
+     * @param thread the thread
+     *
+     * @return true if the thread is a virtual thread
+     */
+    public static boolean isVirtual(final Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            return false;
+        }
+    }
+
+    @Nullable
+    private static Method findMethod(final Class<?> clazz, final String methodName) {
+        try {
+            return clazz.getMethod(methodName);
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Handles a request, on a virtual thread if possible.
+     *
+     * @param request the request
+     * @param response the response
+     * @param handler the handler for the request
+     *
+     * @throws IOException if the handler is invoked on the calling thread and raises an I/O error
+     * @throws ServletException if the handler is invoked on the calling thread and raises a servlet error
+     */
+    public void dispatch(final ServletRequest request, final ServletResponse response, final RequestHandler handler) throws IOException, ServletException {
+        if (request.getDispatcherType() != DispatcherType.REQUEST
+                || !request.isAsyncSupported()
+                || request.isAsyncStarted()
+                || isVirtual(Thread.currentThread())) {
+            handler.handle(request, response);
+            return;
+        }
+
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        // the duration of a request is governed by the query timeouts, not by the container
+        asyncContext.setTimeout(0);
+
+        try {
+            executor.execute(() -> handle(asyncContext, handler));
+        } catch (final RejectedExecutionException e) {
+            // the dispatcher has been shutdown
+            handle(asyncContext, handler);
+        }
+    }
+
+    private void handle(final AsyncContext asyncContext, final RequestHandler handler) {
+        final ServletResponse response = asyncContext.getResponse();
+        try {
+            handler.handle(asyncContext.getRequest(), response);
+        } catch (final IOException | ServletException | RuntimeException e) {
+            LOG.error("{}: error whilst handling request: {}", name, e.getMessage(), e);
+            if (!response.isCommitted() && response instanceof HttpServletResponse) {
+                try {
+                    ((HttpServletResponse) response).sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                } catch (final IOException | IllegalStateException ioe) {
+                    LOG.warn("{}: unable to send error response: {}", name, ioe.getMessage());
+                }
+            }
+        } finally {
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Stops accepting requests.
+     *
+     * Requests which are already running are not interrupted.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Handles a request.
+     */
+    @FunctionalInterface
+    public interface RequestHandler {
+        void handle(ServletRequest request, ServletResponse response) throws IOException, ServletException;
+    }
+}
@@ -36,6 +36,7 @@ import org.exist.http.servlets.Authenticator;
 import org.exist.http.servlets.BasicAuthenticator;
 import org.exist.http.servlets.HttpRequestWrapper;
 import org.exist.http.servlets.HttpResponseWrapper;
+import org.exist.http.servlets.VirtualThreadDispatcher;
 import org.exist.security.AuthenticationException;
 import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
@@ -128,6 +129,7 @@ public class XQueryURLRewrite extends HttpServlet {
     private boolean sendChallenge = true;
     private RewriteConfig rewriteConfig;
     private Authenticator authenticator;
+    @Nullable private VirtualThreadDispatcher virtualThreadDispatcher;
 
     @Override
     public void init(final ServletConfig filterConfig) {
@@ -145,6 +147,20 @@ public class XQueryURLRewrite extends HttpServlet {
         if (optSendChallenge != null) {
             sendChallenge = optSendChallenge.equalsIgnoreCase("true");
         }
+
+        final String optVirtualThreads = filterConfig.getInitParameter(VirtualThreadDispatcher.VIRTUAL_THREADS_PARAM);
+        if (optVirtualThreads != null && optVirtualThreads.equalsIgnoreCase("true")) {
+            virtualThreadDispatcher = VirtualThreadDispatcher.create(filterConfig.getServletName());
+        }
+    }
+
+    @Override
+    public void service(final ServletRequest request, final ServletResponse response) throws ServletException, IOException {
+        if (virtualThreadDispatcher != null) {
+            virtualThreadDispatcher.dispatch(request, response, super::service);
+        } else {
+            super.service(request, response);
+        }
     }
 
     @Override
@@ -624,6 +640,9 @@ public class XQueryURLRewrite extends HttpServlet {
 
     @Override
     public void destroy() {
+        if (virtualThreadDispatcher != null) {
+            virtualThreadDispatcher.shutdown();
+        }
         config = null;
     }
 
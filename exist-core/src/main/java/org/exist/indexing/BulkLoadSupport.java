@@ -0,0 +1,42 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing;
+
+import org.exist.storage.DBBroker;
+import org.exist.storage.btree.DBException;
+
+/**
+ * Interface to be implemented by an index if it can defer writing the entries of
+ * stored documents while a large number of documents is loaded, e.g. by a restore,
+ * and write them in one go afterwards. See {@link IndexManager#startBulkLoad(DBBroker)}.
+ *
+ * Only the entries of the documents stored by the broker which started the bulk load
+ * are deferred, other brokers keep writing their entries directly. The bulk loads of a
+ * broker may be nested: its entries are written when the outermost one finishes. Until
+ * then, the deferred entries are not visible to queries.
+ */
+public interface BulkLoadSupport {
+
+    void startBulkLoad(DBBroker broker) throws DBException;
+
+    void finishBulkLoad(DBBroker broker) throws DBException;
+}
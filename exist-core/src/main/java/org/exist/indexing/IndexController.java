@@ -39,10 +39,14 @@ import org.exist.xquery.XQueryContext;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.exist.security.PermissionDeniedException;
 
 /**
@@ -190,10 +194,83 @@ public class IndexController {
 
     /**
      * Flushes all index workers.
+     *
+     * When storing a document and {@link IndexManager#PROPERTY_FLUSH_THREADS} is configured, the workers
+     * which are {@link IndexWorker#isConcurrentFlushSafe() safe to flush concurrently} are flushed in
+     * parallel on the index manager's flush threads, while the calling thread flushes the others.
+     * The method returns once all workers have been flushed.
      */
     public void flush() {
-        indexWorkers.values().forEach(IndexWorker::flush);
-    }  
+        final ExecutorService executor = currentMode == ReindexMode.STORE ?
+                broker.getBrokerPool().getIndexManager().getFlushExecutor() : null;
+        if (executor == null || indexWorkers.size() < 2) {
+            indexWorkers.values().forEach(IndexWorker::flush);
+            return;
+        }
+
+        final List<Future<?>> flushes = new ArrayList<>(indexWorkers.size());
+        Throwable error = null;
+        try {
+            for (final IndexWorker indexWorker : indexWorkers.values()) {
+                if (indexWorker.isConcurrentFlushSafe()) {
+                    flushes.add(executor.submit(indexWorker::flush));
+                }
+            }
+            for (final IndexWorker indexWorker : indexWorkers.values()) {
+                if (!indexWorker.isConcurrentFlushSafe()) {
+                    indexWorker.flush();
+                }
+            }
+        } catch (final RuntimeException | Error e) {
+            error = e;
+        }
+
+        // the workers are reused for the next document, so always wait for all flushes
+        for (final Future<?> flush : flushes) {
+            final Throwable flushError = awaitFlush(flush);
+            if (flushError != null) {
+                if (error == null) {
+                    error = flushError;
+                } else {
+                    error.addSuppressed(flushError);
+                }
+            }
+        }
+
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    /**
+     * Wait for a flush to finish, even if the thread is interrupted.
+     *
+     * @param flush the flush
+     * @return the exception thrown by the flush, or null
+     */
+    private static @Nullable Throwable awaitFlush(final Future<?> flush) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    flush.get();
+                    return null;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException e) {
+                    return e.getCause();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
     /**
      * Remove all indexes defined on the specified collection.
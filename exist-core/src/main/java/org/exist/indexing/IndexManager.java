@@ -32,12 +32,18 @@ import org.exist.storage.DBBroker;
 import org.exist.storage.btree.DBException;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.NamedThreadFactory;
 import org.w3c.dom.Element;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
@@ -56,12 +62,25 @@ public class IndexManager implements BrokerPoolService {
 
     public final static String PROPERTY_INDEXER_MODULES = "indexer.modules";
 
+    public static final String FLUSH_THREADS_ATTRIBUTE = "flush-threads";
+    public final static String PROPERTY_FLUSH_THREADS = "indexer.flush-threads";
+
+    /** the number of flushes which may wait for a flush thread, per thread */
+    private static final int FLUSH_QUEUE_SIZE_PER_THREAD = 4;
+
     private final BrokerPool pool;
 
     private final Map<String, Index> indexers = new ConcurrentHashMap<>();
 
     private Configuration.IndexModuleConfig modConfigs[];
     private Path dataDir;
+    private int flushThreads;
+
+    /**
+     * Flushes the index workers in parallel when storing a document, or null if
+     * {@link #PROPERTY_FLUSH_THREADS} is not configured.
+     */
+    @Nullable private volatile ExecutorService flushExecutor;
 
     private AtomicLong configurationTimestamp = new AtomicLong(System.currentTimeMillis());
 
@@ -99,6 +118,7 @@ public class IndexManager implements BrokerPoolService {
         this.modConfigs = (Configuration.IndexModuleConfig[])
                 configuration.getProperty(PROPERTY_INDEXER_MODULES);
         this.dataDir = (Path) configuration.getProperty(BrokerPool.PROPERTY_DATA_DIR);
+        this.flushThreads = Math.max(0, configuration.getInteger(PROPERTY_FLUSH_THREADS));
         configurationChanged();
     }
 
@@ -129,6 +149,15 @@ public class IndexManager implements BrokerPoolService {
                     structural.setName(StructuralIndex.STRUCTURAL_INDEX_ID);
                 }
             }
+            if (flushThreads > 0) {
+                // when all flush threads are busy and the queue is full, the storing thread
+                // flushes the worker itself. This also covers flushes after shutdown.
+                flushExecutor = new ThreadPoolExecutor(flushThreads, flushThreads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(flushThreads * FLUSH_QUEUE_SIZE_PER_THREAD),
+                        new NamedThreadFactory(pool, "index.flush"),
+                        (flush, executor) -> flush.run());
+                LOG.info("Flushing index workers on {} threads", flushThreads);
+            }
         } catch(final DatabaseConfigurationException e) {
             throw new BrokerPoolServiceException(e);
         } finally {
@@ -222,6 +251,15 @@ public class IndexManager implements BrokerPoolService {
         return indexers.get(indexName);
     }
 
+    /**
+     * Returns all registered indexes.
+     *
+     * @return the indexes
+     */
+    public synchronized List<Index> getIndexes() {
+        return new ArrayList<>(indexers.values());
+    }
+
     /**
      * Returns a set of IndexWorkers, one for each registered index. The
      * returned IndexWorkers are used by the DBBroker instances to perform the
@@ -236,6 +274,16 @@ public class IndexManager implements BrokerPoolService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns the executor on which the index workers are flushed in parallel when
+     * storing a document, see {@link IndexController#flush()}.
+     *
+     * @return the executor, or null if the workers should be flushed on the calling thread
+     */
+    @Nullable ExecutorService getFlushExecutor() {
+        return flushExecutor;
+    }
+
     /**
      * Shutdowns all registered indexes by calling {@link org.exist.indexing.Index#close()}
      * on them.
@@ -245,6 +293,17 @@ public class IndexManager implements BrokerPoolService {
      */
     @Override
     public void stopSystem(final DBBroker systemBroker) throws BrokerPoolServiceException {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            try {
+                if (!flushExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOG.warn("Index flush threads did not terminate");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushExecutor = null;
+        }
         for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
             final Index index = i.next();
             try {
@@ -302,4 +361,73 @@ public class IndexManager implements BrokerPoolService {
             }
         }
     }
+
+    /**
+     * Start a bulk load on all registered indexes implementing {@link BulkLoadSupport}.
+     * Until the returned bulk load is closed, these indexes defer the entries of the
+     * documents stored by the broker, and then write them in one go.
+     *
+     * @param broker the broker which stores the documents
+     *
+     * @return the bulk load, to be closed once all documents have been stored
+     * @throws DBException in case of an eXist-db error
+     */
+    public BulkLoad startBulkLoad(final DBBroker broker) throws DBException {
+        final BulkLoad bulkLoad = new BulkLoad(broker);
+        try {
+            for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+                final Index index = i.next();
+                if (index instanceof BulkLoadSupport) {
+                    ((BulkLoadSupport) index).startBulkLoad(broker);
+                    bulkLoad.indexes.add((BulkLoadSupport) index);
+                }
+            }
+        } catch (final DBException e) {
+            try {
+                bulkLoad.close();
+            } catch (final DBException ce) {
+                e.addSuppressed(ce);
+            }
+            throw e;
+        }
+        return bulkLoad;
+    }
+
+    /**
+     * A bulk load started by {@link #startBulkLoad(DBBroker)}.
+     */
+    public static class BulkLoad implements AutoCloseable {
+
+        private final DBBroker broker;
+        private final List<BulkLoadSupport> indexes = new ArrayList<>();
+
+        private BulkLoad(final DBBroker broker) {
+            this.broker = broker;
+        }
+
+        /**
+         * Finish the bulk load, writing the deferred index entries.
+         *
+         * @throws DBException in case of an eXist-db error
+         */
+        @Override
+        public void close() throws DBException {
+            DBException error = null;
+            for (final BulkLoadSupport index : indexes) {
+                try {
+                    index.finishBulkLoad(broker);
+                } catch (final DBException e) {
+                    if (error == null) {
+                        error = e;
+                    } else {
+                        error.addSuppressed(e);
+                    }
+                }
+            }
+            indexes.clear();
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
 }
@@ -174,6 +174,18 @@ public interface IndexWorker {
      */
     void flush();
 
+    /**
+     * Returns true if {@link #flush()} may be called on a thread other than the one owning the broker
+     * when storing a document, see {@link IndexController#flush()}. This requires that the flush does
+     * not use the broker, e.g. to evaluate XQuery expressions, and only acquires locks on the index's
+     * own files.
+     *
+     * @return true if the worker can be flushed concurrently with the other workers, false by default
+     */
+    default boolean isConcurrentFlushSafe() {
+        return false;
+    }
+
     /**
      * Remove all indexes for the given collection, its subcollections and
      * all resources..
@@ -57,6 +57,19 @@ public interface StructuralIndex {
     public NodeSet findAncestorsByTagName(byte type, QName qname, int axis,
             DocumentSet docs, NodeSet contextSet, int contextId);
 
+    /**
+     * Find all elements selected by a path of child and descendant steps, starting at the
+     * document nodes of the given document set. In contrast to calling
+     * {@link #findDescendantsByTagName(byte, QName, int, DocumentSet, NodeSet, int)} once per step,
+     * the whole path is evaluated together, without computing node sets for the intermediate steps.
+     *
+     * @param path the steps of the path, the first step being relative to the document node
+     * @param docs the documents to search
+     * @param parent the expression on whose behalf the index is queried, or null
+     * @return the elements selected by the last step, in document order
+     */
+    public NodeSet findDescendantsByPath(StructuralPathStep[] path, DocumentSet docs, Expression parent);
+
     /**
      * Find all nodes matching a given node test, axis and type. Used to evaluate wildcard
      * expressions like //*, //pfx:*.
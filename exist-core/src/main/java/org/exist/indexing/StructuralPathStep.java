@@ -0,0 +1,97 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing;
+
+import org.exist.dom.QName;
+import org.exist.xquery.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single step in a path pattern passed to
+ * {@link StructuralIndex#findDescendantsByPath(StructuralPathStep[], org.exist.dom.persistent.DocumentSet, org.exist.xquery.Expression)}.
+ * A step selects nodes of the given type and name along a child or descendant axis. It may carry
+ * conditions, i.e. further steps relative to the selected node which must return at least
+ * one node, as in <code>article[author]</code> or <code>div[@type]</code>.
+ */
+public class StructuralPathStep {
+
+    private final byte type;
+    private final QName qname;
+    private final int axis;
+    private List<StructuralPathStep> conditions = null;
+
+    /**
+     * @param type the node type, one of {@link org.exist.storage.ElementValue#ELEMENT} or
+     *             {@link org.exist.storage.ElementValue#ATTRIBUTE}
+     * @param qname the node name
+     * @param axis the axis relative to the previous step: {@link Constants#CHILD_AXIS},
+     *             {@link Constants#DESCENDANT_AXIS} or, for attributes,
+     *             {@link Constants#ATTRIBUTE_AXIS}
+     */
+    public StructuralPathStep(final byte type, final QName qname, final int axis) {
+        this.type = type;
+        this.qname = qname;
+        this.axis = axis;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public QName getQName() {
+        return qname;
+    }
+
+    public int getAxis() {
+        return axis;
+    }
+
+    /**
+     * Add an existence condition: nodes selected by this step are only returned if the
+     * condition step selects at least one node relative to them.
+     *
+     * @param condition the condition step
+     */
+    public void addCondition(final StructuralPathStep condition) {
+        if (conditions == null) {
+            conditions = new ArrayList<>(2);
+        }
+        conditions.add(condition);
+    }
+
+    public List<StructuralPathStep> getConditions() {
+        return conditions == null ? Collections.emptyList() : conditions;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder();
+        buf.append(Constants.AXISSPECIFIERS[axis]).append("::").append(qname);
+        for (final StructuralPathStep condition : getConditions()) {
+            buf.append('[').append(condition).append(']');
+        }
+        return buf.toString();
+    }
+}
@@ -76,6 +76,16 @@ public class Cache implements CacheMXBean {
         return cache.getFails();
     }
 
+    @Override
+    public int getEvictions() {
+        return cache.getEvictions();
+    }
+
+    @Override
+    public int getReloads() {
+        return cache.getReloads();
+    }
+
     @Override
     public String getCacheName() {
         return cache.getName();
@@ -40,5 +40,9 @@ public interface CacheMXBean extends PerInstanceMBean {
 
     int getFails();
 
+    int getEvictions();
+
+    int getReloads();
+
     String getCacheName();
 }
\ No newline at end of file
@@ -23,6 +23,7 @@ package org.exist.management;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
+import java.util.Map;
 
 public class CacheManager implements CacheManagerMXBean {
     private final String instanceId;
@@ -65,4 +66,24 @@ public class CacheManager implements CacheManagerMXBean {
     public long getCurrentSize() {
         return manager.getCurrentSize();
     }
+
+    @Override
+    public boolean isAdaptive() {
+        return manager.isAdaptive();
+    }
+
+    @Override
+    public Map<String, Integer> getAllocation() {
+        return manager.getAllocation();
+    }
+
+    @Override
+    public Map<String, Double> getMarginalGains() {
+        return manager.getMarginalGains();
+    }
+
+    @Override
+    public long getRebalances() {
+        return manager.getRebalances();
+    }
 }
@@ -23,6 +23,8 @@ package org.exist.management;
 
 import org.exist.management.impl.PerInstanceMBean;
 
+import java.util.Map;
+
 public interface CacheManagerMXBean extends PerInstanceMBean {
 
     long getMaxTotal();
@@ -30,4 +32,12 @@ public interface CacheManagerMXBean extends PerInstanceMBean {
     long getMaxSingle();
 
     long getCurrentSize();
+
+    boolean isAdaptive();
+
+    Map<String, Integer> getAllocation();
+
+    Map<String, Double> getMarginalGains();
+
+    long getRebalances();
 }
@@ -0,0 +1,83 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+public class OffHeapPageCache implements OffHeapPageCacheMXBean {
+    private final String instanceId;
+    private final org.exist.storage.cache.OffHeapPageCache cache;
+
+    public OffHeapPageCache(final String instanceId, final org.exist.storage.cache.OffHeapPageCache cache) {
+        this.instanceId = instanceId;
+        this.cache = cache;
+    }
+
+    public static String getAllInstancesQuery() {
+        return "org.exist.management." + '*' + ":type=CacheManager.OffHeapPageCache";
+    }
+
+    private static ObjectName getName(final String instanceId) throws MalformedObjectNameException {
+        return new ObjectName("org.exist.management." + instanceId + ":type=CacheManager.OffHeapPageCache");
+    }
+
+    @Override
+    public ObjectName getName() throws MalformedObjectNameException {
+        return getName(instanceId);
+    }
+
+    @Override
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public long getCapacity() {
+        return cache.getCapacity();
+    }
+
+    @Override
+    public long getAllocated() {
+        return cache.getAllocated();
+    }
+
+    @Override
+    public long getPages() {
+        return cache.getPages();
+    }
+
+    @Override
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    @Override
+    public long getFails() {
+        return cache.getFails();
+    }
+
+    @Override
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+}
@@ -50,6 +50,7 @@ import org.apache.logging.log4j.Logger;
 import org.exist.dom.QName;
 import org.exist.management.Cache;
 import org.exist.management.CacheManager;
+import org.exist.management.OffHeapPageCache;
 import org.exist.management.impl.*;
 import org.exist.dom.memtree.MemTreeBuilder;
 import org.exist.start.CompatibleJavaVersionCheck;
@@ -98,11 +99,14 @@ public class JMXtoXML {
         putCategory("locking", LockTable.getAllInstancesQuery());
         putCategory("disk", DiskUsage.getAllInstancesQuery());
         putCategory("collectioncaches", CollectionCache.getAllInstancesQuery());
+        putCategory("journal", Journal.getAllInstancesQuery());
         putCategory("caches",
                 CacheManager.getAllInstancesQuery(),
-                Cache.getAllInstancesQuery()
+                Cache.getAllInstancesQuery(),
+                OffHeapPageCache.getAllInstancesQuery()
         );
         putCategory("binarystreamcaches", BinaryValues.getAllInstancesQuery());
+        putCategory("keystatistics", IndexKeyStatistics.getAllInstancesQuery());
         putCategory("processes", ProcessReport.getAllInstancesQuery());
         putCategory("sanity", SanityReport.getAllInstancesQuery());
 
@@ -408,6 +412,13 @@ public class JMXtoXML {
         } else if (object instanceof Object[]) {
             serialize(builder, (Object[]) object);
 
+        } else if (object instanceof long[]) {
+            final StringJoiner values = new StringJoiner(" ");
+            for (final long l : (long[]) object) {
+                values.add(Long.toString(l));
+            }
+            builder.characters(values.toString());
+
         } else {
             builder.characters(object.toString());
         }
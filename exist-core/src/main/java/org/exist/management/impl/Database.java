@@ -29,6 +29,7 @@ import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
 import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerWaitStatistics;
 import org.exist.storage.DBBroker;
 
 public class Database implements DatabaseMXBean {
@@ -87,6 +88,21 @@ public class Database implements DatabaseMXBean {
         return pool.total();
     }
 
+    @Override
+    public int getWaitingForBroker() {
+        return pool.countWaitingForBroker();
+    }
+
+    @Override
+    public long getBrokerAcquireTimeout() {
+        return pool.getAcquireTimeout();
+    }
+
+    @Override
+    public BrokerWaitStatistics getBrokerWaitStatistics() {
+        return pool.getBrokerWaitStatistics();
+    }
+
     @Override
     public List<ActiveBroker> getActiveBrokersMap() {
         final List<ActiveBroker> brokersList = new ArrayList<>();
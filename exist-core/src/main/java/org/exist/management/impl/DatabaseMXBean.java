@@ -21,6 +21,8 @@
  */
 package org.exist.management.impl;
 
+import org.exist.storage.BrokerWaitStatistics;
+
 import java.util.List;
 
 public interface DatabaseMXBean extends PerInstanceMBean {
@@ -36,6 +38,12 @@ public interface DatabaseMXBean extends PerInstanceMBean {
     int getActiveBrokers();
 
     int getTotalBrokers();
+
+    int getWaitingForBroker();
+
+    long getBrokerAcquireTimeout();
+
+    BrokerWaitStatistics getBrokerWaitStatistics();
     
     long getReservedMem();
 
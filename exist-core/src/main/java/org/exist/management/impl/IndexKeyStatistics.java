@@ -0,0 +1,80 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.BrokerPool;
+import org.exist.storage.statistics.KeyStatistics;
+import org.exist.storage.statistics.KeyStatisticsRegistry;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class IndexKeyStatistics implements IndexKeyStatisticsMXBean {
+
+    private static final int HISTOGRAM_BUCKETS = 10;
+
+    private final BrokerPool pool;
+    private final String instanceId;
+
+    public IndexKeyStatistics(final BrokerPool pool) {
+        this.pool = pool;
+        this.instanceId = pool.getId();
+    }
+
+    public static String getAllInstancesQuery() {
+        return getName("*");
+    }
+
+    private static String getName(final String instanceId) {
+        return "org.exist.management." + instanceId + ":type=IndexKeyStatistics";
+    }
+
+    @Override
+    public ObjectName getName() throws MalformedObjectNameException {
+        return new ObjectName(getName(instanceId));
+    }
+
+    @Override
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public List<KeyStatisticsInfo> getKeyStatistics() {
+        final List<KeyStatisticsInfo> results = new ArrayList<>();
+        for (final KeyStatisticsRegistry registry : KeyStatisticsRegistry.getAll(pool)) {
+            for (final Map.Entry<String, KeyStatistics> entry : registry.getAll().entrySet()) {
+                final KeyStatistics stats = entry.getValue();
+                final List<String> histogram = new ArrayList<>();
+                for (final byte[] bound : stats.getHistogram(HISTOGRAM_BUCKETS)) {
+                    histogram.add(KeyStatistics.toString(bound));
+                }
+                results.add(new KeyStatisticsInfo(registry.getIndexName(), entry.getKey(), stats.getCount(),
+                        stats.getDistinctCount(), histogram));
+            }
+        }
+        return results;
+    }
+}
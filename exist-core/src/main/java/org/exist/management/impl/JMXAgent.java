@@ -85,7 +85,9 @@ public final class JMXAgent implements Agent {
                 new DiskUsage(instance),
                 new ProcessReport(instance),
                 new BinaryValues(instance),
-                new CollectionCache(instance)
+                new IndexKeyStatistics(instance),
+                new CollectionCache(instance),
+                new Journal(instance)
         );
 
         for (final PerInstanceMBean perInstanceMBean : perInstanceMBeans) {
@@ -0,0 +1,60 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.management.impl;
+
+import org.exist.storage.journal.BatchCommitStatistics;
+
+/**
+ * JMX MXBean interface for examining the Journal
+ */
+public interface JournalMXBean extends PerInstanceMBean {
+
+    /**
+     * Determines if batch commit is enabled for the Journal
+     *
+     * @return true if batch commit is enabled
+     */
+    boolean isBatchCommit();
+
+    /**
+     * Get the maximum time that the batch commit waits for a batch to fill up
+     *
+     * @return the maximum wait in milliseconds
+     */
+    long getBatchCommitMaxWait();
+
+    /**
+     * Get the number of waiting commits which causes the batch commit to flush immediately
+     *
+     * @return the batch size
+     */
+    int getBatchCommitSize();
+
+    /**
+     * Get a statistics snapshot of the batch commit, including
+     * histograms of the commit latency and the batch size
+     *
+     * @return Statistics for the batch commit, or null if batch commit is not enabled
+     */
+    BatchCommitStatistics getBatchCommitStatistics();
+}
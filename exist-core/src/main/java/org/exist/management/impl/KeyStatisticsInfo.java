@@ -0,0 +1,90 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import java.util.List;
+
+/**
+ * Simple bean to hold JMX info about the keys of an indexed name.
+ */
+public class KeyStatisticsInfo {
+
+    private final String index;
+    private final String name;
+    private final long count;
+    private final long distinctCount;
+    private final List<String> histogram;
+
+    public KeyStatisticsInfo(final String index, final String name, final long count, final long distinctCount,
+            final List<String> histogram) {
+        this.index = index;
+        this.name = name;
+        this.count = count;
+        this.distinctCount = distinctCount;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Get the name of the index.
+     *
+     * @return the name of the index
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the indexed name.
+     *
+     * @return the name of the indexed element, attribute or field
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of nodes in the index.
+     *
+     * @return the number of nodes
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the estimated number of distinct keys.
+     *
+     * @return the estimated number of distinct keys
+     */
+    public long getDistinctCount() {
+        return distinctCount;
+    }
+
+    /**
+     * Get the upper bounds of the buckets of an equi-depth histogram of the keys.
+     *
+     * @return the upper bound of each bucket, in ascending order
+     */
+    public List<String> getHistogram() {
+        return histogram;
+    }
+}
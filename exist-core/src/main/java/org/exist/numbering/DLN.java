@@ -257,6 +257,11 @@ public class DLN extends DLNBase implements NodeId {
     @Override
     public boolean isDescendantOf(final NodeId ancestor) {
         final DLN other = (DLN) ancestor;
+        // a descendant is on a deeper level: if both levels are known, use them
+        // to reject most candidates without looking at the bits
+        if (levelCount > -1 && other.levelCount > -1 && levelCount <= other.levelCount) {
+            return false;
+        }
         return startsWith(other) && bitIndex > other.bitIndex
             && isLevelSeparator(other.bitIndex + 1);
     }
@@ -285,12 +290,30 @@ public class DLN extends DLNBase implements NodeId {
             return getLevelCount(0) == 1 ? IS_CHILD : IS_DESCENDANT;
         }
         
-        if (startsWith(other)) {
-            if (bitIndex == other.bitIndex) {
+        return computeRelation(bits, units(), other.bits, other.units());
+    }
+
+    /**
+     * Computes the relationship between two node ids given in their binary
+     * encoding, as returned by {@link #serialize(byte[], int)}. Unlike
+     * {@link #computeRelation(NodeId)}, this does not require a DLN object
+     * for either of the ids.
+     *
+     * @param bits the encoded id of the node
+     * @param units the number of bits used by the node's id
+     * @param ancestorBits the encoded id of the potential ancestor
+     * @param ancestorUnits the number of bits used by the ancestor's id
+     * @return one of {@link #IS_SELF}, {@link #IS_CHILD}, {@link #IS_DESCENDANT}
+     *     or -1 if the node is not a descendant-or-self of the ancestor
+     */
+    public static int computeRelation(final byte[] bits, final int units,
+            final byte[] ancestorBits, final int ancestorUnits) {
+        if (startsWith(bits, units - 1, ancestorBits, ancestorUnits - 1)) {
+            if (units == ancestorUnits) {
                 return IS_SELF;
             }
-            if (bitIndex > other.bitIndex && isLevelSeparator(other.bitIndex + 1)) {
-                if (getLevelCount(other.bitIndex + 2) == 1) {
+            if (units > ancestorUnits && isLevelSeparator(bits, ancestorUnits)) {
+                if (getLevelCount(bits, units - 1, ancestorUnits + 1) == 1) {
                     return IS_CHILD;
                 }
                 return IS_DESCENDANT;
@@ -301,8 +324,59 @@ public class DLN extends DLNBase implements NodeId {
 
     @Override
     public boolean isSiblingOf(final NodeId sibling) {
-        final NodeId parent = getParentId();
-        return sibling.isChildOf(parent);
+        final int last = this == DOCUMENT_NODE ? 0 : lastLevelOffset();
+        if (last == 0) {
+            final NodeId parent = getParentId();
+            return sibling.isChildOf(parent);
+        }
+        // same as sibling.isChildOf(getParentId()), using the leading bits
+        // of this id as the parent id instead of copying them
+        final DLN other = (DLN) sibling;
+        final int parentBitIndex = last - 2;
+        return startsWith(other.bits, other.bitIndex, bits, parentBitIndex)
+            && getLevelCount(other.bits, other.bitIndex, parentBitIndex + 2) == 1;
+    }
+
+    @Override
+    public int compareParentIds(final NodeId other) {
+        final DLN otherId = (DLN) other;
+        if (this == DOCUMENT_NODE || otherId == DOCUMENT_NODE) {
+            return getParentId().compareTo(other.getParentId());
+        }
+        final DLN documentNode = (DLN) DOCUMENT_NODE;
+
+        // the parent id consists of the bits before the separator of the last level
+        final int last = lastLevelOffset();
+        final byte[] parentBits = last == 0 ? documentNode.bits : bits;
+        final int parentUnits = last == 0 ? documentNode.units() : last - 1;
+
+        final int otherLast = otherId.lastLevelOffset();
+        final byte[] otherParentBits = otherLast == 0 ? documentNode.bits : otherId.bits;
+        final int otherParentUnits = otherLast == 0 ? documentNode.units() : otherLast - 1;
+
+        final int len1 = byteLength(parentUnits);
+        final int len2 = byteLength(otherParentUnits);
+        final int limit = len1 <= len2 ? len1 : len2;
+        for (int i = 0; i < limit; i++) {
+            final int b1 = maskedByte(parentBits, parentUnits, i);
+            final int b2 = maskedByte(otherParentBits, otherParentUnits, i);
+            if (b1 != b2) {
+                return b1 - b2;
+            }
+        }
+        return len1 - len2;
+    }
+
+    /**
+     * Returns the byte at index of an id consisting of the first units bits,
+     * with the bits following the id cleared.
+     */
+    private static int maskedByte(final byte[] bits, final int units, final int index) {
+        final int remaining = units & 7;
+        if (remaining != 0 && index == units >>> 3) {
+            return bits[index] & BIT_MASK[remaining - 1];
+        }
+        return bits[index] & 0xFF;
     }
 
     /**
@@ -320,19 +394,41 @@ public class DLN extends DLNBase implements NodeId {
             return 1;
         }
         final DLN other = (DLN) otherId;
-        final int a1len = bits.length;
-        final int a2len = other.bits.length;
-        final int limit = a1len <= a2len ? a1len : a2len;
-        final byte[] obits = other.bits;
-        
+        return compare(bits, bits.length, other.bits, other.bits.length);
+    }
+
+    /**
+     * Compares two node ids given in their binary encoding, as returned by
+     * {@link #serialize(byte[], int)}, in document order.
+     *
+     * @param bits1 the encoded first id
+     * @param len1 the number of bytes used by the first id, see {@link #size()}
+     * @param bits2 the encoded second id
+     * @param len2 the number of bytes used by the second id
+     * @return a negative value, zero or a positive value if the first id
+     *     comes before, is equal to or comes after the second
+     */
+    public static int compare(final byte[] bits1, final int len1, final byte[] bits2, final int len2) {
+        final int limit = len1 <= len2 ? len1 : len2;
         for(int i = 0; i < limit; i++) {
-            final byte b1 = bits[i];
-            final byte b2 = obits[i];
+            final byte b1 = bits1[i];
+            final byte b2 = bits2[i];
             if(b1 != b2) {
                 return (b1 & 0xFF) - (b2 & 0xFF);
             }
         }
-        return (a1len - a2len);
+        return (len1 - len2);
+    }
+
+    /**
+     * Returns the number of bytes needed to encode an
+     * id of the given number of bits.
+     *
+     * @param units the number of bits used by the id
+     * @return the number of bytes
+     */
+    public static int byteLength(final int units) {
+        return (units + 7) >>> 3;
     }
 
     @Override
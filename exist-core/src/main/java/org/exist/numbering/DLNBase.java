@@ -98,6 +98,10 @@ public class DLNBase {
     // for appending new bits
     protected int bitIndex = -1;
 
+    // the number of levels, or -1 if not yet known. Computing
+    // it requires a walk over all bits, so it is cached once known
+    protected int levelCount = -1;
+
     public DLNBase() {
         bits = new byte[1];
     }
@@ -106,6 +110,7 @@ public class DLNBase {
         this.bits = new byte[dln.bits.length];
         System.arraycopy(dln.bits, 0, this.bits, 0, dln.bits.length);
         this.bitIndex = dln.bitIndex;
+        this.levelCount = dln.levelCount;
     }
 
     public DLNBase(final int units, final byte[] data, final int startOffset) {
@@ -231,6 +236,7 @@ public class DLNBase {
      * @param levelId the level id
      */
     protected void setCurrentLevelId(int levelId) {
+        levelCount = -1;
         final int units = getUnitsRequired(levelId);
         final int numBits = bitWidth(units);
         if (units > 1) {
@@ -300,6 +306,10 @@ public class DLNBase {
     }
 
     public boolean isLevelSeparator(final int index) {
+        return isLevelSeparator(bits, index);
+    }
+
+    protected static boolean isLevelSeparator(final byte[] bits, final int index) {
         return (bits[index >> UNIT_SHIFT] & (1 << ((7 - index) & 7))) == 0;
     }
     
@@ -311,6 +321,24 @@ public class DLNBase {
      * @return the number of levels in this id
      */
     public int getLevelCount(final int startOffset) {
+        if (startOffset == 0) {
+            if (levelCount < 0) {
+                levelCount = getLevelCount(bits, bitIndex, 0);
+            }
+            return levelCount;
+        }
+        return getLevelCount(bits, bitIndex, startOffset);
+    }
+
+    /**
+     * Returns the number of levels in the id encoded by the given bits.
+     *
+     * @param bits the encoded id
+     * @param bitIndex the index of the last bit used by the id
+     * @param startOffset the offset (in number of bits) to start counting
+     * @return the number of levels in the id
+     */
+    protected static int getLevelCount(final byte[] bits, final int bitIndex, final int startOffset) {
         int bit = startOffset;
         int count = 0;
         while (bit > -1 && bit <= bitIndex) {
@@ -416,6 +444,7 @@ public class DLNBase {
      * @param value the value of the bit to set, i.e. 1 (true) or 0 (false)
      */
     private void setNextBit(final boolean value) {
+        levelCount = -1;
         ++bitIndex;
         if ((bitIndex >> UNIT_SHIFT) >= bits.length) {
             final byte[] new_bits = new byte[bits.length + 1];
@@ -538,17 +567,32 @@ public class DLNBase {
      * @return true if this DLN starts with the same bit sequence as the other
      */
     public boolean startsWith(final DLNBase other) {
-        if (other.bitIndex > bitIndex) {
+        return startsWith(bits, bitIndex, other.bits, other.bitIndex);
+    }
+
+    /**
+     * Checks if the id encoded by bits starts with the
+     * bit sequence of the id encoded by prefix.
+     *
+     * @param bits the encoded id to check
+     * @param bitIndex the index of the last bit used by bits
+     * @param prefix the encoded id to look for
+     * @param prefixBitIndex the index of the last bit used by prefix
+     * @return true if bits starts with the same bit sequence as prefix
+     */
+    protected static boolean startsWith(final byte[] bits, final int bitIndex,
+            final byte[] prefix, final int prefixBitIndex) {
+        if (prefixBitIndex > bitIndex) {
             return false;
         }
-        final int bytes = other.bitIndex / 8;
-        final int remaining = other.bitIndex % 8;
+        final int bytes = prefixBitIndex / 8;
+        final int remaining = prefixBitIndex % 8;
         for (int i = 0; i < bytes; i++) {
-            if (bits[i] != other.bits[i]) {
+            if (bits[i] != prefix[i]) {
                 return false;
             }
         }
-        return (bits[bytes] & BIT_MASK[remaining]) == (other.bits[bytes] & BIT_MASK[remaining]);
+        return (bits[bytes] & BIT_MASK[remaining]) == (prefix[bytes] & BIT_MASK[remaining]);
     }
 
     public String debug() {
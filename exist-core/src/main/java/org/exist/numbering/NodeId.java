@@ -167,6 +167,21 @@ public interface NodeId extends Comparable<NodeId> {
 
     boolean isSiblingOf(NodeId sibling);
 
+    /**
+     * Compares the parent id of this node with the parent id of
+     * the other node. The result is the same as for
+     * <code>getParentId().compareTo(other.getParentId())</code>, but
+     * implementations may avoid creating the parent ids.
+     *
+     * @param other the node whose parent id should be compared
+     * @return a negative value, zero or a positive value if the parent of
+     *     this node comes before, is the same as or comes after the parent
+     *     of the other node
+     */
+    default int compareParentIds(final NodeId other) {
+        return getParentId().compareTo(other.getParentId());
+    }
+
     /**
      * Returns the level within the document tree at which
      * this node occurs.
@@ -24,15 +24,25 @@ package org.exist.source;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.exist.security.Subject;
 import org.exist.storage.DBBroker;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
 
+import javax.annotation.Nullable;
+
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * A simple source object wrapping around a single string value.
+ *
+ * The key of the source is a hash of its content, so that the compiled query is
+ * shared through the {@link org.exist.storage.XQueryPool} by all callers which
+ * pass the same string. If the caller declares a static context before compiling
+ * the query, the key also covers that static context, see
+ * {@link #StringSource(String, String, String, Map)}.
  * 
  * @author wolf
  */
@@ -45,6 +55,39 @@ public class StringSource extends AbstractSource {
         this.content = content;
     }
 
+    /**
+     * Creates the source of a query which is compiled in a static context declared
+     * by the caller, so that the same string compiled in a different static context
+     * does not share the compiled query, whose names and imports are resolved
+     * whilst compiling.
+     *
+     * @param content the query
+     * @param baseURI the base URI declared before compiling, or null
+     * @param moduleLoadPath the module load path declared before compiling, or null
+     * @param namespaces the namespaces declared before compiling, or null
+     */
+    public StringSource(final String content, @Nullable final String baseURI, @Nullable final String moduleLoadPath,
+            @Nullable final Map<String, String> namespaces) {
+        super(hashKey(staticContext(baseURI, moduleLoadPath, namespaces) + content));
+        this.content = content;
+    }
+
+    private static String staticContext(@Nullable final String baseURI, @Nullable final String moduleLoadPath,
+            @Nullable final Map<String, String> namespaces) {
+        if (baseURI == null && moduleLoadPath == null && (namespaces == null || namespaces.isEmpty())) {
+            // the default static context, keyed like a plain string
+            return "";
+        }
+        final StringBuilder builder = new StringBuilder();
+        builder.append(baseURI).append('\u0000').append(moduleLoadPath).append('\u0000');
+        if (namespaces != null) {
+            for (final Map.Entry<String, String> namespace : new TreeMap<>(namespaces).entrySet()) {
+                builder.append(namespace.getKey()).append('=').append(namespace.getValue()).append('\u0000');
+            }
+        }
+        return builder.append('\u0000').toString();
+    }
+
     @Override
     public String path() {
         return null;
@@ -87,6 +87,8 @@ import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -206,6 +208,21 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
     @ConfigurationFieldAsAttribute("max")
     private final int maxBrokers;
 
+    /**
+     * The maximum time in milliseconds to wait for a broker to become available, or -1 to wait indefinitely
+     */
+    @ConfigurationFieldAsAttribute("acquire-timeout")
+    private final long acquireTimeout;
+
+    /**
+     * One permit for each broker which may be handed out. Threads waiting for
+     * a broker queue on the semaphore in FIFO order, and each released broker
+     * wakes exactly one of them.
+     */
+    private final Semaphore brokerPermits;
+
+    private final BrokerWaitRecorder brokerWaits = new BrokerWaitRecorder();
+
     /**
      * The number of inactive brokers for the database instance
      */
@@ -419,6 +436,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         this.minBrokers = conf.getProperty(PROPERTY_MIN_CONNECTIONS, minBrokers);
         this.maxBrokers = conf.getProperty(PROPERTY_MAX_CONNECTIONS, maxBrokers);
         LOG.info("database instance '{}' will have between {} and {} brokers", instanceName, nf.format(this.minBrokers), nf.format(this.maxBrokers));
+        this.brokerPermits = new Semaphore(this.maxBrokers, true);
+
+        this.acquireTimeout = conf.getProperty(PROPERTY_ACQUIRE_TIMEOUT, DEFAULT_ACQUIRE_TIMEOUT);
+        if (this.acquireTimeout >= 0) {
+            LOG.info("database instance '{}' will wait at most {} ms for a broker", instanceName, nf.format(this.acquireTimeout));
+        }
 
         this.majorSyncPeriod = conf.getProperty(PROPERTY_SYNC_PERIOD, DEFAULT_SYNCH_PERIOD);
         LOG.info("database instance '{}' will be synchronized every {} ms", instanceName, nf.format(/*this.*/majorSyncPeriod));
@@ -905,6 +928,33 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return brokersCount;
     }
 
+    /**
+     * Returns the maximum time to wait for a broker to become available.
+     *
+     * @return The timeout in milliseconds, or -1 if threads wait indefinitely
+     */
+    public long getAcquireTimeout() {
+        return acquireTimeout;
+    }
+
+    /**
+     * Returns the number of threads which are waiting for a broker to become available.
+     *
+     * @return The number of waiting threads
+     */
+    public int countWaitingForBroker() {
+        return brokerPermits.getQueueLength();
+    }
+
+    /**
+     * Returns statistics about the time threads waited to obtain a broker.
+     *
+     * @return The broker wait statistics
+     */
+    public BrokerWaitStatistics getBrokerWaitStatistics() {
+        return brokerWaits.snapshot(brokerPermits.getQueueLength());
+    }
+
     /**
      * Returns whether the database instance has been configured.
      *
@@ -1253,26 +1303,82 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             }
         }
 
+        acquirePermit(subject);
+        return lease(subject);
+    }
+
+    /**
+     * Attempts to reserve brokers without waiting, for example for the
+     * workers of a query which is evaluated in parallel. Each reserved
+     * broker must be taken by a call to {@link #getReserved(Optional)}, or
+     * returned by {@link #cancelReservation(int)}.
+     *
+     * Reservations are only made if the brokers are available immediately,
+     * and no other threads are waiting for a broker.
+     *
+     * @param count the number of brokers to reserve
+     *
+     * @return true if the brokers were reserved, false otherwise
+     */
+    public boolean tryReserve(final int count) {
+        if(!isInstanceConfigured() || serviceModeUser != null) {
+            return false;
+        }
+        // NOTE: a zero timeout still honours the fairness of the semaphore
+        return tryAcquirePermits(count, 0);
+    }
+
+    /**
+     * Returns brokers which were reserved by {@link #tryReserve(int)}, but are not needed.
+     *
+     * @param count the number of reserved brokers to return
+     */
+    public void cancelReservation(final int count) {
+        brokerPermits.release(count);
+    }
+
+    /**
+     * Returns an active broker for the database instance, which has
+     * previously been reserved by {@link #tryReserve(int)}.
+     *
+     * @param subject Optionally a subject to set on the broker, if a user is not provided then the
+     *                current user assigned to the broker will be re-used
+     * @return The broker
+     * @throws EXistException If the instance is not available (stopped or not configured)
+     */
+    public DBBroker getReserved(final Optional<Subject> subject) throws EXistException {
+        Objects.requireNonNull(subject, "Subject cannot be null, use BrokerPool#getBroker() instead");
+
+        if(!isInstanceConfigured() || activeBrokers.containsKey(Thread.currentThread())) {
+            // the reservation is not needed, either there is no broker to take, or the thread already has one
+            brokerPermits.release();
+            return get(subject);
+        }
+
+        return lease(subject);
+    }
+
+    /**
+     * Takes a broker from the pool, the caller must hold a permit.
+     *
+     * @param subject the subject to set on the broker, or the guest user if empty
+     *
+     * @return The broker
+     * @throws EXistException if a new broker could not be created
+     */
+    private DBBroker lease(final Optional<Subject> subject) throws EXistException {
         synchronized(this) {
             //Are there any available brokers ?
             if(inactiveBrokers.isEmpty()) {
-                //There are no available brokers. If allowed...
-                if(brokersCount < maxBrokers)
-                //... create one
-                {
+                //There are no available brokers, but as we hold a permit we are allowed to create one
+                try {
                     createBroker();
-                } else
-                    //... or wait until there is one available
-                    while(inactiveBrokers.isEmpty()) {
-                        LOG.debug("waiting for a broker to become available");
-                        try {
-                            this.wait();
-                        } catch(final InterruptedException e) {
-                            //nothing to be done!
-                        }
-                    }
+                } catch(final EXistException | RuntimeException e) {
+                    brokerPermits.release();
+                    throw e;
+                }
             }
-            broker = inactiveBrokers.pop();
+            final DBBroker broker = inactiveBrokers.pop();
             broker.prepare();
 
             //activate the broker
@@ -1297,13 +1403,69 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 brokerLeaseChangeTrace.get(broker.getId()).add(TraceableBrokerLeaseChange.get(new TraceableBrokerLeaseChange.BrokerInfo(broker.getId(), broker.getReferenceCount())));
             }
 
-            //Inform the other threads that we have a new-comer
-            // TODO: do they really need to be informed here???????
-            this.notifyAll();
             return broker;
         }
     }
 
+    /**
+     * Waits for a permit to take a broker from the pool.
+     *
+     * Waiting threads are served in the order in which they arrived. If an
+     * acquire timeout is configured, the wait is limited to that time.
+     *
+     * @param subject the subject on whose behalf the broker is requested
+     *
+     * @throws EXistException if no broker became available within the acquire timeout
+     */
+    private void acquirePermit(final Optional<Subject> subject) throws EXistException {
+        final String caller = subject.map(Subject::getName).orElse(SecurityManager.GUEST_USER);
+        final long start = System.nanoTime();
+        boolean acquired = tryAcquirePermits(1, 0);
+        final boolean contended = !acquired;
+        if (!acquired) {
+            LOG.debug("waiting for a broker to become available");
+            if (acquireTimeout < 0) {
+                brokerPermits.acquireUninterruptibly();
+                acquired = true;
+            } else {
+                acquired = tryAcquirePermits(1, TimeUnit.MILLISECONDS.toNanos(acquireTimeout));
+            }
+        }
+
+        if (!acquired) {
+            brokerWaits.timedOut(caller);
+            throw new EXistException("database instance '" + instanceName + "' has no broker available after waiting " + acquireTimeout + " ms; all " + maxBrokers + " brokers are in use");
+        }
+        brokerWaits.acquired(caller, System.nanoTime() - start, contended);
+    }
+
+    /**
+     * Attempts to acquire permits for brokers, in the order in which threads arrived.
+     *
+     * @param permits the number of permits to acquire
+     * @param timeout the maximum time to wait in nanoseconds
+     *
+     * @return true if the permits were acquired
+     */
+    private boolean tryAcquirePermits(final int permits, final long timeout) {
+        final long deadline = System.nanoTime() + timeout;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    // NOTE: tryAcquire() without a timeout would barge ahead of waiting threads
+                    return brokerPermits.tryAcquire(permits, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * Releases a broker for the database instance. If it is no more used, make if invactive.
      * If there are pending system maintenance tasks,
@@ -1376,6 +1538,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             }
 
             inactiveBrokers.push(broker);
+            brokerPermits.release();
             watchdog.ifPresent(wd -> wd.remove(broker));
 
             if(LOG.isTraceEnabled()) {
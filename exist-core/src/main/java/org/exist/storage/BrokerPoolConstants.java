@@ -61,6 +61,7 @@ public interface BrokerPoolConstants {
     String MAX_CONNECTIONS_ATTRIBUTE = "max";
     String SYNC_PERIOD_ATTRIBUTE = "sync-period";
     String SHUTDOWN_DELAY_ATTRIBUTE = "wait-before-shutdown";
+    String ACQUIRE_TIMEOUT_ATTRIBUTE = "acquire-timeout";
     String NODES_BUFFER_ATTRIBUTE = "nodesBuffer";
 
     //Various configuration property keys (set by the configuration manager)
@@ -70,6 +71,7 @@ public interface BrokerPoolConstants {
     String PROPERTY_MAX_CONNECTIONS = "db-connection.pool.max";
     String PROPERTY_SYNC_PERIOD = "db-connection.pool.sync-period";
     String PROPERTY_SHUTDOWN_DELAY = "wait-before-shutdown";
+    String PROPERTY_ACQUIRE_TIMEOUT = "db-connection.pool.acquire-timeout";
     String DISK_SPACE_MIN_PROPERTY = "db-connection.diskSpaceMin";
 
     //TODO : move elsewhere ?
@@ -84,6 +86,12 @@ public interface BrokerPoolConstants {
 
     String PROPERTY_RECOVERY_GROUP_COMMIT = "db-connection.recovery.group-commit";
     String RECOVERY_GROUP_COMMIT_ATTRIBUTE = "group-commit";
+    String PROPERTY_RECOVERY_BATCH_COMMIT = "db-connection.recovery.batch-commit";
+    String RECOVERY_BATCH_COMMIT_ATTRIBUTE = "batch-commit";
+    String PROPERTY_RECOVERY_BATCH_COMMIT_MAX_WAIT = "db-connection.recovery.batch-commit-max-wait";
+    String RECOVERY_BATCH_COMMIT_MAX_WAIT_ATTRIBUTE = "batch-commit-max-wait";
+    String PROPERTY_RECOVERY_BATCH_COMMIT_SIZE = "db-connection.recovery.batch-commit-size";
+    String RECOVERY_BATCH_COMMIT_SIZE_ATTRIBUTE = "batch-commit-size";
     String PROPERTY_RECOVERY_FORCE_RESTART = "db-connection.recovery.force-restart";
     String RECOVERY_FORCE_RESTART_ATTRIBUTE = "force-restart";
 
@@ -94,6 +102,7 @@ public interface BrokerPoolConstants {
      */
     long DEFAULT_SYNCH_PERIOD = 120000;
     long DEFAULT_MAX_SHUTDOWN_WAIT = 45000;
+    long DEFAULT_ACQUIRE_TIMEOUT = -1;
     //TODO : move this default setting to org.exist.collections.CollectionCache ?
     int DEFAULT_COLLECTION_BUFFER_SIZE = 64;
     int DEFAULT_PAGE_SIZE = 4096;
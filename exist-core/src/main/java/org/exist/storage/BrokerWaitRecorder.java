@@ -0,0 +1,117 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import net.jcip.annotations.ThreadSafe;
+import org.exist.util.Log2Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the time threads waited to obtain a broker from the {@link BrokerPool}.
+ *
+ * Recording is lock-free, so that it does not add contention to the broker handout.
+ */
+@ThreadSafe
+final class BrokerWaitRecorder {
+
+    /**
+     * The maximum number of callers which are tracked individually, any further callers are
+     * accounted to {@link #OTHER_CALLERS}.
+     */
+    static final int MAX_CALLERS = 256;
+    static final String OTHER_CALLERS = "*";
+
+    private static final int WAIT_BUCKETS = 32;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final Log2Histogram waitMicros = new Log2Histogram(WAIT_BUCKETS);
+    private final Map<String, CallerWaits> callers = new ConcurrentHashMap<>();
+
+    /**
+     * Record that a broker was handed out.
+     *
+     * @param caller the name of the caller
+     * @param waitNanos the time the caller waited for the broker
+     * @param wasContended true if the caller had to wait as all brokers were in use
+     */
+    void acquired(final String caller, final long waitNanos, final boolean wasContended) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(waitNanos);
+        acquisitions.increment();
+        if (wasContended) {
+            contended.increment();
+        }
+        waitMicros.record(micros);
+
+        final CallerWaits waits = caller(caller);
+        waits.acquisitions.increment();
+        waits.totalWaitMicros.add(micros);
+        waits.maxWaitMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Record that a caller gave up waiting for a broker.
+     *
+     * @param caller the name of the caller
+     */
+    void timedOut(final String caller) {
+        timeouts.increment();
+        caller(caller).timeouts.increment();
+    }
+
+    BrokerWaitStatistics snapshot(final int waiting) {
+        final List<BrokerWaitStatistics.CallerWaitStatistics> callerStatistics = new ArrayList<>(callers.size());
+        for (final Map.Entry<String, CallerWaits> entry : callers.entrySet()) {
+            final CallerWaits waits = entry.getValue();
+            callerStatistics.add(new BrokerWaitStatistics.CallerWaitStatistics(entry.getKey(), waits.acquisitions.sum(),
+                    waits.timeouts.sum(), waits.totalWaitMicros.sum(), waits.maxWaitMicros.get()));
+        }
+        return new BrokerWaitStatistics(acquisitions.sum(), contended.sum(), timeouts.sum(), waiting, waitMicros.snapshot(),
+                callerStatistics);
+    }
+
+    private CallerWaits caller(final String caller) {
+        final CallerWaits waits = callers.get(caller);
+        if (waits != null) {
+            return waits;
+        }
+        if (callers.size() >= MAX_CALLERS) {
+            return callers.computeIfAbsent(OTHER_CALLERS, k -> new CallerWaits());
+        }
+        return callers.computeIfAbsent(caller, k -> new CallerWaits());
+    }
+
+    private static final class CallerWaits {
+        final LongAdder acquisitions = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder totalWaitMicros = new LongAdder();
+        final AtomicLong maxWaitMicros = new AtomicLong();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.util.Log2Histogram;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+
+/**
+ * Snapshot of the time threads waited to obtain a broker from the {@link BrokerPool}.
+ *
+ * Exposed via JMX, see {@link org.exist.management.impl.DatabaseMXBean}.
+ */
+public class BrokerWaitStatistics {
+    private final long acquisitions;
+    private final long contended;
+    private final long timeouts;
+    private final int waiting;
+    private final Log2Histogram.Snapshot waitMicros;
+    private final List<CallerWaitStatistics> callers;
+
+    /**
+     * @param acquisitions the number of brokers handed out
+     * @param contended the number of brokers which could not be handed out immediately
+     * @param timeouts the number of requests which gave up waiting for a broker
+     * @param waiting the number of threads currently waiting for a broker
+     * @param waitMicros the histogram of the time waited for a broker, in microseconds
+     * @param callers the wait statistics per caller
+     */
+    @ConstructorProperties({"acquisitions", "contended", "timeouts", "waiting", "waitMicros", "callers"})
+    public BrokerWaitStatistics(final long acquisitions, final long contended, final long timeouts, final int waiting,
+            final Log2Histogram.Snapshot waitMicros, final List<CallerWaitStatistics> callers) {
+        this.acquisitions = acquisitions;
+        this.contended = contended;
+        this.timeouts = timeouts;
+        this.waiting = waiting;
+        this.waitMicros = waitMicros;
+        this.callers = callers;
+    }
+
+    /**
+     * Returns the number of brokers handed out to threads which did not already hold a broker.
+     *
+     * @return the number of acquisitions
+     */
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    /**
+     * Returns the number of acquisitions which had to wait as all brokers were in use.
+     *
+     * @return the number of contended acquisitions
+     */
+    public long getContended() {
+        return contended;
+    }
+
+    /**
+     * Returns the number of requests which gave up waiting for a broker.
+     *
+     * @return the number of timeouts
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Returns the number of threads currently waiting for a broker.
+     *
+     * @return the number of waiting threads
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * Returns the histogram of the time waited for a broker.
+     *
+     * @return the wait time histogram, in microseconds
+     */
+    public Log2Histogram.Snapshot getWaitMicros() {
+        return waitMicros;
+    }
+
+    /**
+     * Returns the wait statistics per caller, i.e. per user
+     * on whose behalf the broker was requested.
+     *
+     * @return the wait statistics per caller
+     */
+    public List<CallerWaitStatistics> getCallers() {
+        return callers;
+    }
+
+    /**
+     * The time a single caller waited to obtain a broker.
+     */
+    public static class CallerWaitStatistics {
+        private final String caller;
+        private final long acquisitions;
+        private final long timeouts;
+        private final long totalWaitMicros;
+        private final long maxWaitMicros;
+
+        /**
+         * @param caller the name of the caller
+         * @param acquisitions the number of brokers handed out to the caller
+         * @param timeouts the number of requests of the caller which gave up waiting for a broker
+         * @param totalWaitMicros the total time the caller waited for a broker, in microseconds
+         * @param maxWaitMicros the longest time the caller waited for a broker, in microseconds
+         */
+        @ConstructorProperties({"caller", "acquisitions", "timeouts", "totalWaitMicros", "maxWaitMicros"})
+        public CallerWaitStatistics(final String caller, final long acquisitions, final long timeouts,
+                final long totalWaitMicros, final long maxWaitMicros) {
+            this.caller = caller;
+            this.acquisitions = acquisitions;
+            this.timeouts = timeouts;
+            this.totalWaitMicros = totalWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+        }
+
+        public String getCaller() {
+            return caller;
+        }
+
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getTotalWaitMicros() {
+            return totalWaitMicros;
+        }
+
+        public long getMaxWaitMicros() {
+            return maxWaitMicros;
+        }
+    }
+}
@@ -23,6 +23,8 @@ package org.exist.storage;
 
 import org.exist.storage.cache.Cache;
 
+import java.util.Map;
+
 public interface CacheManager {
 
     /**
@@ -64,6 +66,37 @@ public interface CacheManager {
      */
     void checkDistribution();
 
+    /**
+     * Returns true if the pages are distributed between the caches
+     * according to the benefit each cache gains from additional pages.
+     *
+     * @return true if adaptive cache balancing is enabled
+     */
+    boolean isAdaptive();
+
+    /**
+     * Returns the number of pages currently allocated to each cache,
+     * keyed by the cache name and type.
+     *
+     * @return the current allocation of pages
+     */
+    Map<String, Integer> getAllocation();
+
+    /**
+     * Returns the estimated marginal gain of each cache, i.e. the
+     * number of additional hits per check interval the cache is
+     * expected to gain if it were larger, keyed by the cache name
+     * and type. Empty unless adaptive cache balancing is enabled.
+     *
+     * @return the marginal gain of each cache
+     */
+    Map<String, Double> getMarginalGains();
+
+    /**
+     * @return the number of times pages have been moved between caches
+     */
+    long getRebalances();
+
     /**
      * @return Maximum size of all Caches (unit of measurement is implementation defined)
      */
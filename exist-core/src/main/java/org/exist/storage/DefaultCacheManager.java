@@ -27,14 +27,18 @@ import org.apache.logging.log4j.Logger;
 import org.exist.management.Agent;
 import org.exist.management.AgentFactory;
 import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.OffHeapPageCache;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
 
 import java.text.NumberFormat;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -44,6 +48,11 @@ import java.util.List;
  *
  * The class computes the available memory in terms of pages.
  *
+ * If adaptive cache balancing is enabled, the shrink heuristics above are replaced by a periodic rebalancing of the pages between the caches. At
+ * each check interval, the marginal gain of every resizable cache is estimated as the number of pages which had to be reloaded shortly after
+ * they had been evicted (see {@link Cache#getReloads()}), i.e. the number of hits the cache would have gained if it had been larger. Pages are
+ * then moved from the cache with the lowest gain to the cache with the highest gain.
+ *
  * @author  wolf
  */
 public class DefaultCacheManager implements CacheManager, BrokerPoolService
@@ -77,6 +86,25 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     public static final String  SHRINK_THRESHOLD_ATTRIBUTE     		 	= "cacheShrinkThreshold";
     public static final String  SHRINK_THRESHOLD_PROPERTY      			= "db-connection.cache-shrink-threshold";
 
+    public static final String  CACHE_BALANCING_STATIC                      = "static";
+    public static final String  CACHE_BALANCING_ADAPTIVE                    = "adaptive";
+    public static final String  DEFAULT_CACHE_BALANCING                     = CACHE_BALANCING_STATIC;
+    public static final String  CACHE_BALANCING_ATTRIBUTE                   = "cacheBalancing";
+    public static final String  PROPERTY_CACHE_BALANCING                    = "db-connection.cache-balancing";
+
+    public static final long    DEFAULT_OFF_HEAP_CACHE_SIZE                 = 0;
+    public static final String  OFF_HEAP_CACHE_SIZE_ATTRIBUTE               = "offHeapCacheSize";
+    public static final String  PROPERTY_OFF_HEAP_CACHE_SIZE                = "db-connection.off-heap-cache-size";
+
+    /** The fraction of the total memory which is moved between caches by a single rebalancing step. */
+    public final static double  REBALANCE_STEP                  = 0.05;
+
+    /** The weight of the most recent check interval when computing the marginal gain of a cache. */
+    public final static double  GAIN_SMOOTHING                  = 0.5;
+
+    /** The factor by which the gain of a cache has to exceed the gain of another cache before pages are moved between them. */
+    public final static double  GAIN_HYSTERESIS                 = 1.25;
+
     /** Caches maintained by this class. */
     private List<Cache>         caches                          = new ArrayList<>();
 
@@ -108,6 +136,18 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
     private String              instanceName;
 
+    /** True if pages are redistributed between the caches according to their marginal gain. */
+    private final boolean       adaptive;
+
+    /** The balancing state of each cache, only used if {@link #adaptive} is true. */
+    private final Map<Cache, Balance> balances                  = new IdentityHashMap<>();
+
+    /** The number of times pages have been moved between the caches. */
+    private long                rebalances                      = 0;
+
+    /** The second level cache for pages held outside of the heap, or null if disabled. */
+    private final OffHeapPageCache offHeapPageCache;
+
     public DefaultCacheManager( BrokerPool pool )
     {
         this.instanceName = pool.getId();
@@ -126,6 +166,16 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
         shrinkThreshold = configuration.getInteger( SHRINK_THRESHOLD_PROPERTY );
 
+        adaptive = CACHE_BALANCING_ADAPTIVE.equals( configuration.getProperty( PROPERTY_CACHE_BALANCING ) );
+
+        final Long offHeapCacheSize = (Long)configuration.getProperty( PROPERTY_OFF_HEAP_CACHE_SIZE );
+        if( offHeapCacheSize != null && offHeapCacheSize > 0 ) {
+            offHeapPageCache = new OffHeapPageCache( offHeapCacheSize );
+            LOG.info("Off-heap page cache: {}k", NumberFormat.getNumberInstance().format(offHeapCacheSize / 1024L));
+        } else {
+            offHeapPageCache = null;
+        }
+
         totalMem        = cacheSize * 1024L * 1024L;
 
         final Boolean checkMaxCache = (Boolean)configuration.getProperty( PROPERTY_CACHE_CHECK_MAX_SIZE );
@@ -149,24 +199,31 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
         this.maxCacheSize   = (int)( totalPageCount * MAX_MEM_USE );
         final NumberFormat nf     = NumberFormat.getNumberInstance();
 
-        LOG.info("Cache settings: {}k; totalPages: {}; maxCacheSize: {}; cacheShrinkThreshold: {}", nf.format(totalMem / 1024L), nf.format(totalPageCount), nf.format(maxCacheSize), nf.format(shrinkThreshold));
+        LOG.info("Cache settings: {}k; totalPages: {}; maxCacheSize: {}; cacheShrinkThreshold: {}; cacheBalancing: {}", nf.format(totalMem / 1024L), nf.format(totalPageCount), nf.format(maxCacheSize), nf.format(shrinkThreshold), adaptive ? CACHE_BALANCING_ADAPTIVE : CACHE_BALANCING_STATIC);
 
         registerMBean();
+        if( offHeapPageCache != null ) {
+            registerMBean( offHeapPageCache );
+        }
     }
 
     @Override
-    public void registerCache( Cache cache )
+    public synchronized void registerCache( Cache cache )
     {
         currentPageCount += cache.getBuffers();
         caches.add( cache );
+        if( adaptive ) {
+            balances.put( cache, new Balance( cache.getReloads() ) );
+        }
         cache.setCacheManager( this );
         registerMBean( cache );
     }
 
 
     @Override
-    public void deregisterCache( Cache cache )
+    public synchronized void deregisterCache( Cache cache )
     {
+        balances.remove( cache );
         for (final Iterator<Cache> cacheIt = caches.iterator(); cacheIt.hasNext(); ) {
             if (cache == cacheIt.next()) {
                 cache.setCacheManager( null );
@@ -243,6 +300,11 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     @Override
     public void checkCaches()
     {
+        if( adaptive ) {
+            rebalance();
+            return;
+        }
+
         final int   minSize = (int)( totalPageCount * MIN_SHRINK_FACTOR );
         Cache cache;
         int   load;
@@ -252,6 +314,10 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
             for (Cache cach : caches) {
                 cache = (Cache) cach;
 
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Cache: {} (a {}); size: {}; used: {}; hits: {}; fails: {}; evictions: {}", cache.getName(), cache.getClass().getName(), cache.getBuffers(), cache.getUsedBuffers(), cache.getHits(), cache.getFails(), cache.getEvictions());
+                }
+
                 if (cache.getGrowthFactor() > 1.0) {
                     load = cache.getLoad();
 
@@ -274,6 +340,11 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     @Override
     public void checkDistribution()
     {
+        if( adaptive ) {
+            rebalance();
+            return;
+        }
+
         if( lastRequest == null ) {
             return;
         }
@@ -300,6 +371,120 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     }
 
 
+    /**
+     * Moves pages from the cache with the lowest marginal gain to the cache with the highest marginal gain. Pages which are not allocated to
+     * any cache are handed out first.
+     */
+    synchronized void rebalance()
+    {
+        final int   minSize  = getDefaultInitialSize();
+        Cache       receiver = null;
+        double      maxGain  = 0;
+
+        for( final Cache cache : caches ) {
+            final Balance balance = balances.get( cache );
+
+            if( balance == null || cache.getGrowthFactor() <= 1.0 ) {
+                continue;
+            }
+            final int reloads = cache.getReloads();
+            balance.gain        = ( GAIN_SMOOTHING * ( reloads - balance.reloads ) ) + ( ( 1.0 - GAIN_SMOOTHING ) * balance.gain );
+            balance.reloads     = reloads;
+
+            if( LOG.isDebugEnabled() ) {
+                LOG.debug("Cache: {} (a {}); size: {}; used: {}; marginal gain: {}", cache.getName(), cache.getClass().getName(), cache.getBuffers(), cache.getUsedBuffers(), balance.gain);
+            }
+
+            if( balance.gain > maxGain && cache.getBuffers() < maxCacheSize ) {
+                maxGain  = balance.gain;
+                receiver = cache;
+            }
+        }
+
+        // less than one reload per check interval is not worth the cost of a resize
+        if( receiver == null || maxGain < 1.0 ) {
+            return;
+        }
+
+        Cache       donor    = null;
+        double      minGain  = Double.MAX_VALUE;
+
+        for( final Cache cache : caches ) {
+            final Balance balance = balances.get( cache );
+
+            if( balance == null || cache == receiver || cache.getGrowthFactor() <= 1.0 ) {
+                continue;
+            }
+
+            if( balance.gain < minGain && cache.getBuffers() > minSize ) {
+                minGain = balance.gain;
+                donor   = cache;
+            }
+        }
+
+        final int step   = Math.min( Math.max( minSize, (int)( totalPageCount * REBALANCE_STEP ) ), maxCacheSize - receiver.getBuffers() );
+        int       pages  = Math.min( step, Math.max( 0, totalPageCount - currentPageCount ) );
+
+        if( pages < step && donor != null && maxGain > minGain * GAIN_HYSTERESIS ) {
+            final int taken = Math.min( step - pages, donor.getBuffers() - minSize );
+            resize( donor, donor.getBuffers() - taken );
+            pages += taken;
+        }
+
+        if( pages > 0 ) {
+            resize( receiver, receiver.getBuffers() + pages );
+            rebalances++;
+        }
+    }
+
+    private void resize( final Cache cache, final int newSize )
+    {
+        if( LOG.isDebugEnabled() ) {
+            final NumberFormat nf = NumberFormat.getNumberInstance();
+            LOG.debug("Rebalancing cache {} (a {}) from {} to {}", cache.getName(), cache.getClass().getName(), nf.format(cache.getBuffers()), nf.format(newSize));
+        }
+        currentPageCount -= cache.getBuffers();
+        cache.resize( newSize );
+        currentPageCount += newSize;
+    }
+
+    @Override
+    public boolean isAdaptive()
+    {
+        return( adaptive );
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getAllocation()
+    {
+        final Map<String, Integer> allocation = new LinkedHashMap<>();
+        for( final Cache cache : caches ) {
+            allocation.merge( getAllocationKey( cache ), cache.getBuffers(), Integer::sum );
+        }
+        return( allocation );
+    }
+
+    @Override
+    public synchronized Map<String, Double> getMarginalGains()
+    {
+        final Map<String, Double> gains = new LinkedHashMap<>();
+        for( final Map.Entry<Cache, Balance> entry : balances.entrySet() ) {
+            gains.merge( getAllocationKey( entry.getKey() ), entry.getValue().gain, Double::sum );
+        }
+        return( gains );
+    }
+
+    @Override
+    public synchronized long getRebalances()
+    {
+        return( rebalances );
+    }
+
+    private static String getAllocationKey( final Cache cache )
+    {
+        return( cache.getName() + '/' + cache.getType() );
+    }
+
     /**
      * @return Maximum size of all Caches in pages
      */
@@ -331,6 +516,16 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
         return( totalMem );
     }
 
+    /**
+     * Returns the second level cache which holds pages outside of the heap.
+     *
+     * @return the off-heap page cache, or null if it is not enabled
+     */
+    public OffHeapPageCache getOffHeapPageCache()
+    {
+        return( offHeapPageCache );
+    }
+
     /**
      * Returns the default initial size for all caches.
      *
@@ -342,6 +537,23 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     }
 
 
+    /**
+     * The balancing state of a cache.
+     */
+    private static final class Balance
+    {
+        /** The value of {@link Cache#getReloads()} at the last check interval. */
+        int    reloads;
+
+        /** The smoothed number of reloads per check interval. */
+        double gain = 0;
+
+        Balance( final int reloads )
+        {
+            this.reloads = reloads;
+        }
+    }
+
     private void registerMBean() {
         final Agent agent = AgentFactory.getInstance();
         try {
@@ -351,6 +563,15 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
         }
     }
 
+    private void registerMBean(final OffHeapPageCache offHeapPageCache) {
+        final Agent agent = AgentFactory.getInstance();
+        try {
+            agent.addMBean(new org.exist.management.OffHeapPageCache(instanceName, offHeapPageCache));
+        } catch (final DatabaseConfigurationException e) {
+            LOG.warn("Exception while registering JMX OffHeapPageCache MBean.", e);
+        }
+    }
+
     private void registerMBean(final Cache cache) {
         final Agent agent = AgentFactory.getInstance();
         try {
@@ -47,6 +47,7 @@ import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.ManagedLock;
+import org.exist.storage.statistics.KeyStatisticsRegistry;
 import org.exist.storage.txn.Txn;
 import org.exist.xquery.Constants;
 import org.exist.xquery.Constants.Comparison;
@@ -125,6 +126,14 @@ public class NativeValueIndex implements ContentLoadingObserver {
     public static final short FILE_FORMAT_VERSION_ID = 14;
     public static final String FILE_KEY_IN_CONFIG = "db-connection.values";
 
+    public static final String STATISTICS_FILE_NAME = "values.stats";
+    public static final String STATISTICS_KEY_IN_CONFIG = "db-connection.values.statistics";
+
+    /**
+     * Name of the key statistics of the generic (path based) value index.
+     */
+    public static final String GENERIC_STATISTICS = "*";
+
     private static final double DEFAULT_VALUE_CACHE_GROWTH = 1.25;
     private static final double DEFAULT_VALUE_VALUE_THRESHOLD = 0.04;
 
@@ -149,6 +158,11 @@ public class NativeValueIndex implements ContentLoadingObserver {
     @GuardedBy("dbValues#getLock()") final BFile dbValues;
     private final Configuration config;
 
+    /**
+     * The distribution of the keys of this value index, shared by all brokers.
+     */
+    private final KeyStatisticsRegistry statistics;
+
     /**
      * A collection of key-value pairs that pending modifications for this value index.
      * The keys are {@link org.exist.xquery.value.AtomicValue atomic values}
@@ -190,6 +204,14 @@ public class NativeValueIndex implements ContentLoadingObserver {
             config.setProperty(getConfigKeyForFile(), nativeFile);
         }
         dbValues = nativeFile;
+
+        KeyStatisticsRegistry keyStatistics = (KeyStatisticsRegistry) config.getProperty(STATISTICS_KEY_IN_CONFIG);
+        if (keyStatistics == null) {
+            keyStatistics = new KeyStatisticsRegistry("values", dataDir.resolve(STATISTICS_FILE_NAME));
+            keyStatistics.load();
+            config.setProperty(STATISTICS_KEY_IN_CONFIG, keyStatistics);
+        }
+        statistics = keyStatistics;
         caseSensitive = Optional.ofNullable((Boolean) config.getProperty(NativeValueIndex.PROPERTY_INDEX_CASE_SENSITIVE)).orElse(false);
 
         broker.addContentLoadingObserver(getInstance());
@@ -207,6 +229,16 @@ public class NativeValueIndex implements ContentLoadingObserver {
         return (this);
     }
 
+    /**
+     * Returns the distribution of the keys of this value index.
+     *
+     * @return the key statistics, named by {@link KeyStatisticsRegistry#nameOf(QName)} for
+     *     the keys of the qname index, and {@link #GENERIC_STATISTICS} for the other keys
+     */
+    public KeyStatisticsRegistry getKeyStatistics() {
+        return statistics;
+    }
+
     @Override
     public void setDocument(final DocumentImpl document) {
         final boolean documentChanged = (this.doc == null && document != null) || this.doc.getDocId() != document.getDocId();
@@ -349,6 +381,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
     public void sync() {
         try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             dbValues.flush();
+            statistics.save();
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(dbValues.getFile()), e);
             //TODO : throw an exception ? -pb
@@ -413,6 +446,8 @@ public class NativeValueIndex implements ContentLoadingObserver {
                 if (dbValues.append(v, os.data()) == BFile.UNKNOWN_ADDRESS) {
                     LOG.warn("Could not append index data for key '{}'", key);
                     //TODO : throw exception ?
+                } else {
+                    updateStatistics(key, gidsCount);
                 }
             } catch (final EXistException | IOException e) {
                 LOG.error(e.getMessage(), e);
@@ -449,6 +484,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
             final T key = entry.getKey();
             final List<NodeId> storedGIDList = entry.getValue();
             final List<NodeId> newGIDList = new ArrayList<>();
+            int removed = 0;
             os.clear();
 
             try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
@@ -490,6 +526,8 @@ public class NativeValueIndex implements ContentLoadingObserver {
                                 // in the list of removed nodes
                                 if (!containsNode(storedGIDList, nodeId)) {
                                     newGIDList.add(nodeId);
+                                } else {
+                                    removed++;
                                 }
                             }
                         }
@@ -532,6 +570,8 @@ public class NativeValueIndex implements ContentLoadingObserver {
                     if (dbValues.update(value.getAddress(), searchKey, os.data()) == BFile.UNKNOWN_ADDRESS) {
                         LOG.error("Could not update index data for value '{}'", searchKey);
                         //TODO: throw exception ?
+                    } else if (removed > 0) {
+                        updateStatistics(key, -removed);
                     }
                 } else {
 
@@ -552,6 +592,73 @@ public class NativeValueIndex implements ContentLoadingObserver {
         pending.changes.clear();
     }
 
+    /**
+     * Records that nodes have been stored with, or removed from, a key of the index.
+     *
+     * @param key a key of the pending changes, either an atomic value or a {@link QNameKey}
+     * @param occurrences the number of nodes stored with the key, negative if nodes have been removed
+     */
+    private void updateStatistics(final Object key, final int occurrences) {
+        final String name;
+        final AtomicValue value;
+        if (key instanceof QNameKey) {
+            name = KeyStatisticsRegistry.nameOf(((QNameKey) key).qname);
+            value = ((QNameKey) key).value;
+        } else {
+            name = GENERIC_STATISTICS;
+            value = (AtomicValue) key;
+        }
+        try {
+            final byte[] data = ((Indexable) value).serializeValue(0);
+            if (occurrences > 0) {
+                statistics.get(name).add(data, occurrences);
+            } else {
+                statistics.get(name).remove(data, -occurrences);
+            }
+        } catch (final EXistException e) {
+            LOG.debug("Unable to update key statistics: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Callback for an index entry which is about to be removed, to remove its
+     * nodes from the key statistics.
+     */
+    private boolean removeStatistics(final Value key, final Value value) {
+        final byte[] data = key.getData();
+        final String name;
+        final int offset;
+        if (data[SimpleValue.OFFSET_IDX_TYPE] == IndexType.QNAME.val) {
+            final SymbolTable symbols = broker.getBrokerPool().getSymbols();
+            final QName qname = new QName(
+                    symbols.getName(ByteConversion.byteToShort(data, QNameValue.OFFSET_LOCAL_NAME)),
+                    symbols.getNamespace(ByteConversion.byteToShort(data, QNameValue.OFFSET_NS_URI)),
+                    data[QNameValue.OFFSET_QNAME_TYPE]);
+            name = KeyStatisticsRegistry.nameOf(qname);
+            offset = QNameValue.OFFSET_VALUE;
+        } else {
+            name = GENERIC_STATISTICS;
+            offset = SimpleValue.OFFSET_VALUE;
+        }
+
+        int removed = 0;
+        try {
+            final VariableByteArrayInput is = new VariableByteArrayInput(value.getData());
+            while (is.available() > 0) {
+                is.readInt();
+                removed += is.readInt();
+                is.skipBytes(is.readFixedInt());
+            }
+        } catch (final IOException e) {
+            LOG.debug("Unable to update key statistics: {}", e.getMessage());
+            return true;
+        }
+        if (removed > 0) {
+            statistics.get(name).remove(Arrays.copyOfRange(data, offset, data.length), removed);
+        }
+        return true;
+    }
+
     private static boolean containsNode(final List<NodeId> list, final NodeId nodeId) {
         return list.stream().anyMatch(nodeId::equals);
     }
@@ -564,14 +671,18 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
             // remove generic index
             Value ref = new SimpleValue(collection.getId());
-            dbValues.removeAll(null, new IndexQuery(IndexQuery.TRUNC_RIGHT, ref));
+            IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, ref);
+            dbValues.find(query, this::removeStatistics);
+            dbValues.removeAll(null, query);
 
             // remove QName index
             ref = new QNameValue(collection.getId());
-            dbValues.removeAll(null, new IndexQuery(IndexQuery.TRUNC_RIGHT, ref));
+            query = new IndexQuery(IndexQuery.TRUNC_RIGHT, ref);
+            dbValues.find(query, this::removeStatistics);
+            dbValues.removeAll(null, query);
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(dbValues.getFile()), e);
-        } catch (final BTreeException | IOException e) {
+        } catch (final BTreeException | IOException | TerminatedException e) {
             LOG.error(e.getMessage(), e);
         }
     }
@@ -607,6 +718,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
             final VariableByteArrayInput is = new VariableByteArrayInput(value.getData());
             boolean changed = false;
+            int removed = 0;
             os.clear();
 
             while (is.available() > 0) {
@@ -627,12 +739,16 @@ public class NativeValueIndex implements ContentLoadingObserver {
                     // data are related to our document:
                     // skip them (remove them)
                     is.skipBytes(size);
+                    removed += gidsCount;
                     changed = true;
                 }
             }
 
             //Store new data, if relevant
             if (changed) {
+                if (removed > 0) {
+                    updateStatistics(key, -removed);
+                }
 
                 if (os.data().size() == 0) {
 
@@ -1065,7 +1181,9 @@ public class NativeValueIndex implements ContentLoadingObserver {
     public void closeAndRemove() throws DBException {
         try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             config.setProperty(getConfigKeyForFile(), null);
+            config.setProperty(STATISTICS_KEY_IN_CONFIG, null);
             dbValues.closeAndRemove();
+            statistics.remove();
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(dbValues.getFile()), e);
         }
@@ -1075,7 +1193,9 @@ public class NativeValueIndex implements ContentLoadingObserver {
     public void close() throws DBException {
         try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             config.setProperty(getConfigKeyForFile(), null);
+            config.setProperty(STATISTICS_KEY_IN_CONFIG, null);
             dbValues.close();
+            statistics.save();
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(dbValues.getFile()), e);
         }
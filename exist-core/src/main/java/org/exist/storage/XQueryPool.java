@@ -56,7 +56,12 @@ import org.exist.xquery.*;
  * {@link org.exist.source.Source} objects from which they were created.
  *
  * For each XQuery, a maximum of {@link #DEFAULT_MAX_QUERY_STACK_SIZE} compiled
- * expressions are kept in the pool.
+ * expressions are kept in the pool. A compiled expression holds the state of its
+ * evaluation, so it can only be used by one thread at a time, and a further copy
+ * is compiled whenever all pooled copies are in use. Copies which are returned
+ * while the pool already holds the maximum number for their source are discarded,
+ * so that a frequently used query, and the library modules it imports, are not
+ * held in memory more often than configured.
  *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
@@ -127,7 +132,12 @@ public class XQueryPool implements BrokerPoolService {
                 deque = new ArrayDeque<>(maxQueryStackSize);
             }
 
-            deque.offerFirst(compiledXQuery);
+            if (deque.size() < maxQueryStackSize) {
+                deque.offerFirst(compiledXQuery);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("{} copies of {} are already pooled, discarding the returned copy", deque.size(),
+                        source.pathOrShortIdentifier());
+            }
 
             return deque;
         });
@@ -224,7 +224,7 @@ public class BTree extends Paged implements Lockable {
     }
 
     protected void initCache() {
-        this.cache = new BTreeCache<>(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5,
+        this.cache = new BTreeTwoQueueCache<>(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5,
             0, Cache.CacheType.BTREE);
         cacheManager.registerCache(cache);
     }
@@ -736,6 +736,210 @@ public class BTree extends Paged implements Lockable {
         return last;
     }
 
+    /**
+     * Check if the tree contains any keys.
+     *
+     * @return true if the tree consists of a single, empty leaf page
+     */
+    public boolean isEmpty() {
+        final BTreeNode root = getRootNode();
+        return root.pageHeader.getStatus() == LEAF && root.nKeys == 0;
+    }
+
+    /**
+     * Create a builder which fills the tree bottom-up from keys added in ascending
+     * order. Used by {@link BulkLoader}. The tree has to be empty.
+     *
+     * @param fillFactor the fraction of each page to fill, between 0 and 1
+     * @return the builder
+     * @throws BTreeException if the tree is not empty
+     */
+    protected BottomUpBuilder newBottomUpBuilder(final double fillFactor) throws BTreeException {
+        if (fillFactor <= 0 || fillFactor > 1.0) {
+            throw new IllegalArgumentException("fillFactor should be <= 1 > 0");
+        }
+        if (!isEmpty()) {
+            throw new BTreeException("Bottom-up build requires an empty tree: " + FileUtils.fileName(getFile()));
+        }
+        return new BottomUpBuilder(fillFactor);
+    }
+
+    /**
+     * Builds the tree from keys which arrive in ascending order: the leaf pages are written one
+     * after the other, each filled up to the fill factor, and the branch pages above them are
+     * filled the same way while the leaves are being written. This avoids the page splits caused
+     * by inserting the keys one by one, and reads none of the pages back.
+     *
+     * The empty root leaf of the tree becomes the first leaf page. All other pages are appended
+     * to the file. Page updates are not written to the journal, as in {@link #rebuild()}.
+     */
+    protected final class BottomUpBuilder {
+
+        /** the data length up to which pages are filled */
+        private final int maxDataLen;
+
+        /** the node being filled on each level of the tree, with the leaves at index 0 */
+        private final List<BTreeNode> nodes = new ArrayList<>();
+        /** the data length of the node being filled on each level */
+        private int[] dataLens = new int[4];
+
+        private Value lastKey = null;
+
+        private BottomUpBuilder(final double fillFactor) {
+            this.maxDataLen = (int) (fileHeader.getWorkSize() * fillFactor);
+            final BTreeNode root = getRootNode();
+            // the root will be written by the builder, keep the cache from writing it in between
+            cache.remove(root);
+            nodes.add(root);
+        }
+
+        /**
+         * Add a key to the tree.
+         *
+         * @param key the key, which must be greater than all keys added before
+         * @param pointer the pointer to associate with it
+         *
+         * @throws IOException if an I/O error occurs
+         * @throws BTreeException if the key is out of order or too large for a page
+         */
+        public void add(final Value key, final long pointer) throws IOException, BTreeException {
+            if (lastKey != null && key.compareTo(lastKey) <= 0) {
+                throw new BTreeException("Keys have to be added in ascending order: " + FileUtils.fileName(getFile()));
+            }
+            BTreeNode leaf = nodes.get(0);
+            int len = getLeafEntryLen(leaf, key);
+            if (leaf.nKeys > 0 && dataLens[0] + len > maxDataLen) {
+                leaf = startNode(0, key);
+                len = getLeafEntryLen(leaf, key);
+            }
+            if (dataLens[0] + len > fileHeader.getWorkSize()) {
+                throw new BTreeException("Key too large for a page: " + key.getLength() + " bytes");
+            }
+            leaf.resizeKeys(leaf.nKeys + 1);
+            leaf.keys[leaf.nKeys] = key;
+            leaf.pageHeader.setValueCount((short) ++leaf.nKeys);
+            leaf.resizePtrs(leaf.nPtrs + 1);
+            leaf.ptrs[leaf.nPtrs++] = pointer;
+            dataLens[0] += len;
+            lastKey = key;
+        }
+
+        /**
+         * Write the pages which are still being filled, and make the topmost of them the root.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        public void finish() throws IOException {
+            BTreeNode root = null;
+            for (final BTreeNode node : nodes) {
+                writeNode(node);
+                root = node;
+            }
+            setRootNode(root);
+        }
+
+        /**
+         * The data length a key adds to a leaf, as computed by {@link BTreeNode#recalculateDataLen()}.
+         */
+        private int getLeafEntryLen(final BTreeNode leaf, final Value key) {
+            int len = 8 + key.getLength();
+            if (fileHeader.getFixedKeyLen() < 0) {
+                len += 2;
+            }
+            if (leaf.nKeys > 0) {
+                int prefix = key.commonPrefix(leaf.keys[leaf.nKeys - 1]);
+                if (prefix < 0 || prefix > Byte.MAX_VALUE) {
+                    prefix = 0;
+                }
+                len += 1 - prefix;
+            }
+            return len;
+        }
+
+        /**
+         * Close the node being filled on the given level and start a new one.
+         *
+         * @param level the level, 0 for the leaves
+         * @param firstKey the smallest key which will be stored below the new node
+         * @return the new node
+         */
+        private BTreeNode startNode(final int level, final Value firstKey) throws IOException, BTreeException {
+            final BTreeNode prev = nodes.get(level);
+            final BTreeNode next = createNode(prev.pageHeader.getStatus());
+            // link the new node into its parent before the previous one is written, as this
+            // may create the parent of the previous one
+            addChild(level + 1, firstKey, prev, next);
+            if (level == 0) {
+                prev.pageHeader.setNextPage(next.page.getPageNum());
+            }
+            writeNode(prev);
+            nodes.set(level, next);
+            dataLens[level] = level == 0 ? 0 : 2;
+            return next;
+        }
+
+        /**
+         * Add a child to the branch being filled on the given level.
+         *
+         * @param level the level of the branch
+         * @param separator the smallest key stored below the child
+         * @param left the preceding child, which becomes the first child if the branch does not exist yet
+         * @param child the child to add
+         */
+        private void addChild(final int level, final Value separator, final BTreeNode left, final BTreeNode child)
+                throws IOException, BTreeException {
+            if (level == nodes.size()) {
+                final BTreeNode branch = createNode(BRANCH);
+                branch.setPointers(new long[] { left.page.getPageNum() });
+                left.setParent(branch);
+                nodes.add(branch);
+                if (level == dataLens.length) {
+                    dataLens = Arrays.copyOf(dataLens, level * 2);
+                }
+                dataLens[level] = 2 + 8;
+            }
+            BTreeNode branch = nodes.get(level);
+            int len = 8 + separator.getLength();
+            if (fileHeader.getFixedKeyLen() < 0) {
+                len += 2;
+            }
+            if (branch.nKeys > 0 && dataLens[level] + len > maxDataLen) {
+                // the separator moves up to the parent of the new branch, which starts without keys
+                branch = startNode(level, separator);
+                branch.resizePtrs(1);
+                branch.ptrs[branch.nPtrs++] = child.page.getPageNum();
+                dataLens[level] += 8;
+            } else {
+                if (dataLens[level] + len > fileHeader.getWorkSize()) {
+                    throw new BTreeException("Key too large for a page: " + separator.getLength() + " bytes");
+                }
+                branch.resizeKeys(branch.nKeys + 1);
+                branch.keys[branch.nKeys] = separator;
+                branch.pageHeader.setValueCount((short) ++branch.nKeys);
+                branch.resizePtrs(branch.nPtrs + 1);
+                branch.ptrs[branch.nPtrs++] = child.page.getPageNum();
+                dataLens[level] += len;
+            }
+            child.setParent(branch);
+        }
+
+        private BTreeNode createNode(final byte status) throws IOException {
+            final BTreeNode node = new BTreeNode(getFreePage(false), true);
+            node.pageHeader.setStatus(status);
+            node.setParent(null);
+            return node;
+        }
+
+        private void writeNode(final BTreeNode node) throws IOException {
+            if (node.pageHeader.getStatus() == BRANCH) {
+                node.prefix = Value.EMPTY_VALUE;
+                node.growPrefix();
+            }
+            node.recalculateDataLen();
+            node.write();
+        }
+    }
+
     /* -------------------------------------------------------------------------
      * Methods used by recovery and transaction management
      * ---------------------------------------------------------------------- */
@@ -0,0 +1,376 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.util.FileUtils;
+import org.exist.util.io.TemporaryFileManager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Loads a large number of keys into a {@link BTree}. Inserting keys one by one in random
+ * order splits pages all over the tree. The bulk loader instead collects the keys and sorts
+ * them, spilling sorted runs to temporary files whenever the keys collected in memory exceed
+ * the memory limit. On {@link #finish()} the runs are merged: an empty tree is then built
+ * bottom-up from the sorted keys, with every page filled up to the fill factor. If the tree
+ * already contains keys, the sorted keys are inserted in ascending order, so that consecutive
+ * inserts hit the same, cached pages.
+ *
+ * If a key is added more than once, the pointer added last wins, as with
+ * {@link BTree#addValue(Value, long)}.
+ *
+ * The bulk loader is not thread safe, callers have to hold the lock on the tree while adding
+ * keys and finishing.
+ */
+public class BulkLoader implements Closeable {
+
+    private final static Logger LOG = LogManager.getLogger(BulkLoader.class);
+
+    public final static double DEFAULT_FILL_FACTOR = 0.9;
+
+    public final static long DEFAULT_MEMORY_LIMIT = 32 * 1024 * 1024;
+
+    /** estimated memory used by an entry in addition to its key data */
+    private final static int ENTRY_OVERHEAD = 64;
+
+    private final BTree btree;
+    private final double fillFactor;
+    private final long memoryLimit;
+
+    private Entry[] entries = new Entry[1024];
+    private int entryCount = 0;
+    private long memoryUsed = 0;
+
+    /** the sorted runs spilled to temporary files, in the order they were written */
+    private final List<Path> runs = new ArrayList<>();
+
+    public BulkLoader(final BTree btree) {
+        this(btree, DEFAULT_FILL_FACTOR, DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * @param btree the tree to load the keys into
+     * @param fillFactor the fraction of each page to fill when building the tree, between 0 and 1
+     * @param memoryLimit the approximate number of bytes of keys to sort in memory
+     */
+    public BulkLoader(final BTree btree, final double fillFactor, final long memoryLimit) {
+        if (fillFactor <= 0 || fillFactor > 1.0) {
+            throw new IllegalArgumentException("fillFactor should be <= 1 > 0");
+        }
+        this.btree = btree;
+        this.fillFactor = fillFactor;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Add a key to be loaded into the tree.
+     *
+     * @param key the key
+     * @param pointer the pointer to associate with it
+     *
+     * @throws IOException if the keys could not be written to a temporary file
+     */
+    public void add(final Value key, final long pointer) throws IOException {
+        if (entryCount == entries.length) {
+            entries = Arrays.copyOf(entries, entryCount * 2);
+        }
+        entries[entryCount++] = new Entry(key, pointer);
+        memoryUsed += key.getLength() + ENTRY_OVERHEAD;
+        if (memoryUsed > memoryLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * @return true if no keys were added since the loader was created or last finished
+     */
+    public boolean isEmpty() {
+        return entryCount == 0 && runs.isEmpty();
+    }
+
+    /**
+     * Load all keys added so far into the tree. The loader can be used again afterwards.
+     *
+     * @return the number of distinct keys loaded
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the tree
+     */
+    public long finish() throws IOException, BTreeException {
+        if (isEmpty()) {
+            return 0;
+        }
+        try (final Merge merge = new Merge()) {
+            long count = 0;
+            if (btree.isEmpty()) {
+                final BTree.BottomUpBuilder builder = btree.newBottomUpBuilder(fillFactor);
+                while (merge.next()) {
+                    builder.add(merge.key, merge.pointer);
+                    count++;
+                }
+                builder.finish();
+            } else {
+                while (merge.next()) {
+                    btree.addValue(merge.key, merge.pointer);
+                    count++;
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Loaded {} keys into {} from {} runs", count, FileUtils.fileName(btree.getFile()), merge.runCount);
+            }
+            return count;
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Discard all keys added since the last call to {@link #finish()}.
+     */
+    @Override
+    public void close() {
+        clear();
+    }
+
+    private void clear() {
+        entries = new Entry[1024];
+        entryCount = 0;
+        memoryUsed = 0;
+        for (final Path run : runs) {
+            TemporaryFileManager.getInstance().returnTemporaryFile(run);
+        }
+        runs.clear();
+    }
+
+    /**
+     * Sort the keys in memory, keeping the last of several equal keys.
+     *
+     * @return the number of sorted, distinct entries
+     */
+    private int sortEntries() {
+        // the sort is stable, so equal keys stay in the order they were added
+        Arrays.sort(entries, 0, entryCount);
+        int distinct = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (i + 1 < entryCount && entries[i].key.equals(entries[i + 1].key)) {
+                continue;
+            }
+            entries[distinct++] = entries[i];
+        }
+        return distinct;
+    }
+
+    /**
+     * Write the keys collected in memory to a temporary file as a sorted run.
+     */
+    private void spill() throws IOException {
+        final int count = sortEntries();
+        final Path run = TemporaryFileManager.getInstance().getTemporaryFile();
+        runs.add(run);
+        try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+            os.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                final Value key = entries[i].key;
+                os.writeShort(key.getLength());
+                os.write(key.data(), key.start(), key.getLength());
+                os.writeLong(entries[i].pointer);
+            }
+        }
+        Arrays.fill(entries, 0, entryCount, null);
+        entryCount = 0;
+        memoryUsed = 0;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final Value key;
+        final long pointer;
+
+        Entry(final Value key, final long pointer) {
+            this.key = key;
+            this.pointer = pointer;
+        }
+
+        @Override
+        public int compareTo(final Entry other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    /**
+     * A sorted sequence of keys: either a run in a temporary file or the keys left in memory.
+     */
+    private abstract static class Run implements Comparable<Run> {
+        /** the position of the run, later runs contain the keys added later */
+        final int position;
+        Value key;
+        long pointer;
+
+        Run(final int position) {
+            this.position = position;
+        }
+
+        abstract boolean next() throws IOException;
+
+        void close() throws IOException {
+        }
+
+        @Override
+        public int compareTo(final Run other) {
+            final int cmp = key.compareTo(other.key);
+            return cmp != 0 ? cmp : Integer.compare(position, other.position);
+        }
+    }
+
+    private static final class FileRun extends Run {
+        private final DataInputStream is;
+        private int remaining;
+
+        FileRun(final int position, final Path file) throws IOException {
+            super(position);
+            this.is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            this.remaining = is.readInt();
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            final byte[] data = new byte[is.readUnsignedShort()];
+            is.readFully(data);
+            key = new Value(data);
+            pointer = is.readLong();
+            return true;
+        }
+
+        @Override
+        void close() throws IOException {
+            is.close();
+        }
+    }
+
+    private static final class MemoryRun extends Run {
+        private final Entry[] entries;
+        private final int count;
+        private int next = 0;
+
+        MemoryRun(final int position, final Entry[] entries, final int count) {
+            super(position);
+            this.entries = entries;
+            this.count = count;
+        }
+
+        @Override
+        boolean next() {
+            if (next == count) {
+                return false;
+            }
+            key = entries[next].key;
+            pointer = entries[next++].pointer;
+            return true;
+        }
+    }
+
+    /**
+     * Merges the runs into a single sorted sequence of distinct keys.
+     */
+    private final class Merge implements Closeable {
+        private final PriorityQueue<Run> queue;
+        private final List<Run> open = new ArrayList<>();
+        final int runCount;
+
+        Value key;
+        long pointer;
+
+        Merge() throws IOException {
+            for (final Path run : runs) {
+                open.add(new FileRun(open.size(), run));
+            }
+            if (entryCount > 0) {
+                open.add(new MemoryRun(open.size(), entries, sortEntries()));
+            }
+            runCount = open.size();
+            queue = new PriorityQueue<>(Math.max(1, runCount));
+            for (final Run run : open) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+        }
+
+        /**
+         * Advance to the next distinct key. Of several equal keys, the one from the latest run is used.
+         *
+         * @return false if there are no more keys
+         */
+        boolean next() throws IOException {
+            Run run = queue.poll();
+            if (run == null) {
+                return false;
+            }
+            Value nextKey = run.key;
+            long nextPointer = run.pointer;
+            while (true) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+                run = queue.peek();
+                if (run == null || !run.key.equals(nextKey)) {
+                    break;
+                }
+                queue.poll();
+                nextPointer = run.pointer;
+            }
+            key = nextKey;
+            pointer = nextPointer;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException error = null;
+            for (final Run run : open) {
+                try {
+                    run.close();
+                } catch (final IOException e) {
+                    if (error == null) {
+                        error = e;
+                    } else {
+                        error.addSuppressed(e);
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Page store which serves reads and in-place writes from regions of the file
+ * that are memory mapped via {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+ *
+ * The file is divided into fixed size regions which are mapped lazily
+ * on first access. Only regions which lie completely within the file
+ * are mapped, so that mapping never grows the file and each region is
+ * mapped exactly once. Accesses to the partial region at the end of the
+ * file, including writes which extend the file, are performed through the
+ * {@link FileChannel}. As the mapping and the channel share the operating
+ * system's page cache, both views of the file remain coherent.
+ *
+ * Pages are therefore read straight from the page cache without a seek
+ * and read system call pair per page.
+ *
+ * The mappings are released when the store is closed. If the JVM does not
+ * allow buffers to be unmapped explicitly, they are only released once they
+ * have been garbage collected. At most {@link #MAX_MAPPED_SIZE} bytes of a
+ * file are mapped, the rest of a larger file is accessed through the channel.
+ */
+final class MappedPageStore implements PageStore {
+
+    /**
+     * Size of a mapped region, 16 MB. This is a multiple of any
+     * supported page size so that pages do not straddle regions.
+     */
+    static final int REGION_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Maximum number of bytes of a file which are mapped, 8 GB.
+     */
+    static final long MAX_MAPPED_SIZE = 8L * 1024 * 1024 * 1024;
+
+    private static final int MAX_REGIONS = (int) (MAX_MAPPED_SIZE / REGION_SIZE);
+
+    private static final Logger LOG = LogManager.getLogger(MappedPageStore.class);
+
+    /**
+     * Releases a mapping, or null if the JVM does not allow it.
+     */
+    private static final Unmapper UNMAPPER = lookupUnmapper();
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mapMode;
+    private MappedByteBuffer[] regions = new MappedByteBuffer[0];
+    private long length;
+
+    MappedPageStore(final RandomAccessFile raf, final boolean readOnly) throws IOException {
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.mapMode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        this.length = channel.size();
+    }
+
+    @Override
+    public void read(long offset, final byte[] buf, int bufOffset, int len) throws IOException {
+        while (len > 0) {
+            final int regionPos = (int) (offset % REGION_SIZE);
+            final int count = Math.min(len, REGION_SIZE - regionPos);
+            final MappedByteBuffer region = getRegion(offset);
+            if (region != null) {
+                final ByteBuffer view = region.duplicate();
+                view.position(regionPos);
+                view.get(buf, bufOffset, count);
+            } else {
+                readFromChannel(offset, buf, bufOffset, count);
+            }
+            offset += count;
+            bufOffset += count;
+            len -= count;
+        }
+    }
+
+    private void readFromChannel(final long offset, final byte[] buf, final int bufOffset, final int len) throws IOException {
+        final ByteBuffer dst = ByteBuffer.wrap(buf, bufOffset, len);
+        long position = offset;
+        while (dst.hasRemaining()) {
+            final int count = channel.read(dst, position);
+            if (count < 0) {
+                // past the end of the file
+                Arrays.fill(buf, dst.position(), bufOffset + len, (byte) 0);
+                break;
+            }
+            position += count;
+        }
+    }
+
+    @Override
+    public void write(long offset, final byte[] buf, int bufOffset, int len) throws IOException {
+        while (len > 0) {
+            final int regionPos = (int) (offset % REGION_SIZE);
+            final int count = Math.min(len, REGION_SIZE - regionPos);
+            final MappedByteBuffer region = getRegion(offset);
+            if (region != null) {
+                final ByteBuffer view = region.duplicate();
+                view.position(regionPos);
+                view.put(buf, bufOffset, count);
+            } else {
+                writeToChannel(offset, buf, bufOffset, count);
+            }
+            offset += count;
+            bufOffset += count;
+            len -= count;
+        }
+    }
+
+    private void writeToChannel(final long offset, final byte[] buf, final int bufOffset, final int len) throws IOException {
+        final ByteBuffer src = ByteBuffer.wrap(buf, bufOffset, len);
+        long position = offset;
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+        if (position > length) {
+            length = position;
+        }
+    }
+
+    /**
+     * Get the mapped region containing the offset, mapping it if necessary.
+     *
+     * @param offset an absolute offset within the region
+     *
+     * @return the mapped region, or null if the region does not lie completely within the file
+     *     or beyond {@link #MAX_MAPPED_SIZE}
+     */
+    private MappedByteBuffer getRegion(final long offset) throws IOException {
+        final long idx = offset / REGION_SIZE;
+        if (idx < regions.length && regions[(int) idx] != null) {
+            return regions[(int) idx];
+        }
+
+        // only map whole regions, the partial region at the end of the file is accessed through the channel
+        if (idx >= MAX_REGIONS || (idx + 1) * REGION_SIZE > length) {
+            return null;
+        }
+
+        if (idx >= regions.length) {
+            regions = Arrays.copyOf(regions, (int) idx + 1);
+        }
+        final MappedByteBuffer region = channel.map(mapMode, idx * REGION_SIZE, REGION_SIZE);
+        regions[(int) idx] = region;
+        return region;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (final MappedByteBuffer region : regions) {
+                if (region == null) {
+                    continue;
+                }
+                if (mapMode == FileChannel.MapMode.READ_WRITE) {
+                    region.force();
+                }
+                unmap(region);
+            }
+        } finally {
+            regions = new MappedByteBuffer[0];
+            raf.close();
+        }
+    }
+
+    private static void unmap(final MappedByteBuffer region) {
+        if (UNMAPPER == null) {
+            // released when the buffer is garbage collected
+            return;
+        }
+        try {
+            UNMAPPER.unmap(region);
+        } catch (final Exception e) {
+            LOG.warn("Unable to unmap region of database file: {}", e.getMessage(), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Unmapper {
+        void unmap(MappedByteBuffer buffer) throws Exception;
+    }
+
+    private static Unmapper lookupUnmapper() {
+        try {
+            // Java 9 and later
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            final Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            // fall through
+        }
+        try {
+            // Java 8
+            final Method cleaner = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+            cleaner.setAccessible(true);
+            final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            clean.setAccessible(true);
+            return buffer -> {
+                final Object c = cleaner.invoke(buffer);
+                if (c != null) {
+                    clean.invoke(c);
+                }
+            };
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            LOG.info("Mapped regions of database files can not be unmapped explicitly: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.exist.start.CompatibleJavaVersionCheck;
+import org.exist.start.StartException;
+import org.exist.storage.index.BFile;
+import org.exist.util.ByteConversion;
+import org.exist.util.FileUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static org.exist.storage.btree.Paged.*;
+
+/**
+ * Offline utility to increase the page size of a {@link Paged} file, e.g.
+ * to move <code>dom.dbx</code> from 4 KB to 16 KB pages.
+ *
+ * Every page is copied with its page number unchanged into a larger page, so
+ * all storage addresses held elsewhere in the database remain valid. The
+ * additional space in each page is used once the page is next modified.
+ * The page size can only be increased, and files which contain values spanning
+ * multiple pages of a {@link BFile} (e.g. large entries in <code>collections.dbx</code>)
+ * cannot be converted, as the chunk size of such values is implied by
+ * the page size. <code>values.dbx</code> is recreated with the configured
+ * page size by a reindex instead.
+ *
+ * The database must have been cleanly shutdown before converting a file.
+ * The original file is kept with a <code>.bak</code> suffix.
+ */
+public class PageSizeConverter {
+
+    public static final String BACKUP_SUFFIX = ".bak";
+
+    private PageSizeConverter() {
+    }
+
+    /**
+     * Convert a paged file to a larger page size.
+     *
+     * @param file the paged file to convert
+     * @param newPageSize the new page size in bytes
+     *
+     * @return true if the file was converted, false if it already had the page size
+     *
+     * @throws IOException if the file cannot be converted
+     */
+    public static boolean convert(final Path file, final int newPageSize) throws IOException {
+        if (!isValidPageSize(newPageSize)) {
+            throw new IOException("Page size must be a power of two between " + MIN_PAGE_SIZE + " and " + MAX_PAGE_SIZE + ": " + newPageSize);
+        }
+
+        final Path backup = file.resolveSibling(FileUtils.fileName(file) + BACKUP_SUFFIX);
+        final Path converted = file.resolveSibling(FileUtils.fileName(file) + ".converting");
+
+        try (final RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+            final byte[] fixedHeader = new byte[OFFSET_REMAINDER];
+            in.readFully(fixedHeader);
+            final short headerSize = ByteConversion.byteToShort(fixedHeader, OFFSET_HEADER_SIZE);
+            final int pageSize = ByteConversion.byteToInt(fixedHeader, OFFSET_PAGE_SIZE);
+            final long totalCount = ByteConversion.byteToLong(fixedHeader, OFFSET_TOTAL_COUNT);
+            final int pageHeaderSize = fixedHeader[OFFSET_PAGE_HEADER_SIZE];
+            final int workSize = pageSize - pageHeaderSize;
+
+            if (pageSize == newPageSize) {
+                return false;
+            }
+            if (newPageSize < pageSize) {
+                throw new IOException(FileUtils.fileName(file) + " has a page size of " + pageSize + " bytes, the page size can only be increased");
+            }
+
+            // check that every page can be copied before writing anything
+            final byte[] pageHeader = new byte[pageHeaderSize];
+            for (long pageNum = 0; pageNum < totalCount; pageNum++) {
+                Arrays.fill(pageHeader, (byte) 0);
+                read(in, headerSize + (pageNum * pageSize), pageHeader, 0, pageHeaderSize);
+                if (pageHeader[0] == BFile.MULTI_PAGE) {
+                    throw new IOException(FileUtils.fileName(file) + " contains a value spanning multiple pages at page " + pageNum + ", it has to be recreated instead, e.g. by backup and restore");
+                }
+                final int dataLen = ByteConversion.byteToInt(pageHeader, PageHeader.LENGTH_PAGE_STATUS);
+                if (dataLen < 0 || dataLen > workSize) {
+                    throw new IOException(FileUtils.fileName(file) + " has an invalid data length of " + dataLen + " at page " + pageNum);
+                }
+            }
+
+            try (final RandomAccessFile out = new RandomAccessFile(converted.toFile(), "rw")) {
+                out.setLength(0);
+
+                // the file header occupies one page
+                final byte[] header = new byte[newPageSize];
+                read(in, 0, header, 0, headerSize);
+                ByteConversion.shortToByte((short) newPageSize, header, OFFSET_HEADER_SIZE);
+                ByteConversion.intToByte(newPageSize, header, OFFSET_PAGE_SIZE);
+                out.write(header);
+
+                final byte[] page = new byte[newPageSize];
+                for (long pageNum = 0; pageNum < totalCount; pageNum++) {
+                    Arrays.fill(page, (byte) 0);
+                    final long offset = headerSize + (pageNum * pageSize);
+                    read(in, offset, page, 0, pageHeaderSize);
+                    final int dataLen = ByteConversion.byteToInt(page, PageHeader.LENGTH_PAGE_STATUS);
+                    read(in, offset + pageHeaderSize, page, pageHeaderSize, dataLen);
+                    out.write(page);
+                }
+                out.getFD().sync();
+            }
+        } catch (final IOException e) {
+            Files.deleteIfExists(converted);
+            throw e;
+        }
+
+        Files.move(file, backup, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(converted, file);
+        return true;
+    }
+
+    /**
+     * Read from the file, any bytes beyond the end of
+     * the file, i.e. of pages which have been allocated
+     * but never written, are left as zero.
+     */
+    private static void read(final RandomAccessFile in, final long offset, final byte[] buf, final int bufOffset, final int len) throws IOException {
+        in.seek(offset);
+        int read = 0;
+        while (read < len) {
+            final int count = in.read(buf, bufOffset + read, len - read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+    }
+
+    public static void main(final String[] args) {
+        try {
+            CompatibleJavaVersionCheck.checkForCompatibleJavaVersion();
+        } catch (final StartException e) {
+            if (e.getMessage() != null && !e.getMessage().isEmpty()) {
+                System.err.println(e.getMessage());
+            }
+            System.exit(e.getErrorCode());
+        }
+
+        if (args.length < 2) {
+            System.out.println("\nUsage: " + PageSizeConverter.class.getName() + " page-size [dbx-file]+\n");
+            System.out.println("Increases the page size of the given database files. The database");
+            System.out.println("must have been shutdown cleanly. The original files are kept with a");
+            System.out.println(BACKUP_SUFFIX + " suffix.\n");
+            System.out.println("Example call to use 16 KB pages for the DOM store:\n");
+            System.out.println(PageSizeConverter.class.getName() + " 16384 data/dom.dbx");
+            return;
+        }
+
+        final int pageSize;
+        try {
+            pageSize = Integer.parseInt(args[0]);
+        } catch (final NumberFormatException e) {
+            System.err.println("Invalid page size: " + args[0]);
+            System.exit(1);
+            return;
+        }
+
+        int status = 0;
+        for (int i = 1; i < args.length; i++) {
+            final Path file = Paths.get(args[i]);
+            try {
+                System.out.printf("Converting %15s ...", FileUtils.fileName(file));
+                if (convert(file, pageSize)) {
+                    System.out.println("Done");
+                } else {
+                    System.out.println("Unchanged");
+                }
+            } catch (final IOException e) {
+                System.out.println("Failed");
+                System.err.println(e.getMessage());
+                status = 1;
+            }
+        }
+        System.exit(status);
+    }
+}
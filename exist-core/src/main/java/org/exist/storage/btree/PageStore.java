@@ -0,0 +1,75 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import java.io.IOException;
+
+/**
+ * Low-level access to the bytes of a {@link Paged} file.
+ *
+ * Paged only ever reads and writes whole page headers, pages or
+ * the file header at absolute offsets, so implementations
+ * are free to choose how those bytes are moved to and from the disk.
+ *
+ * Implementations are not thread-safe, callers must hold the lock of
+ * the owning paged file.
+ */
+interface PageStore extends AutoCloseable {
+
+    /**
+     * Read bytes at the given absolute offset. Any bytes
+     * which lie beyond the end of the file are returned as zero.
+     *
+     * @param offset the absolute offset in the file
+     * @param buf the buffer to read into
+     * @param bufOffset the offset in the buffer to start writing at
+     * @param len the number of bytes to read
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void read(long offset, byte[] buf, int bufOffset, int len) throws IOException;
+
+    /**
+     * Write bytes at the given absolute offset, extending
+     * the file if required.
+     *
+     * @param offset the absolute offset in the file
+     * @param buf the buffer to write from
+     * @param bufOffset the offset in the buffer to start reading from
+     * @param len the number of bytes to write
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void write(long offset, byte[] buf, int bufOffset, int len) throws IOException;
+
+    /**
+     * Get the current length of the file.
+     *
+     * @return the length of the file in bytes
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    long length() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -75,6 +75,8 @@ package org.exist.storage.btree;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.DefaultCacheManager;
+import org.exist.storage.cache.OffHeapPageCache;
 import org.exist.storage.journal.Lsn;
 import org.exist.util.ByteConversion;
 import org.exist.util.FileUtils;
@@ -91,6 +93,9 @@ import java.nio.channels.NonWritableChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  *  Paged is a paged file foundation that is used by the BTree class and
@@ -121,20 +126,56 @@ public abstract class Paged implements AutoCloseable {
     public static final int OFFSET_RECORD_COUNT = OFFSET_MAX_KEY_SIZE + LENGTH_MAX_KEY_SIZE; //43
     public static final int OFFSET_REMAINDER = OFFSET_RECORD_COUNT + LENGTH_RECORD_COUNT; //51
 
+    /**
+     * Names of the paged files, e.g. <code>dom.dbx</code>, whose pages should
+     * be accessed through memory mapped regions rather than by seek and read/write.
+     */
+    public static final String PROPERTY_MEMORY_MAPPED_FILES = "db-connection.memory-mapped-files";
+    public static final String MEMORY_MAPPED_FILES_ATTRIBUTE = "memoryMappedFiles";
+
+    /**
+     * Page sizes for individual paged files, keyed by file name, e.g. <code>dom.dbx</code>.
+     * The page size is only applied when a file is created, existing files
+     * always use the page size recorded in their file header.
+     */
+    public static final String PROPERTY_FILE_PAGE_SIZES = "db-connection.file-page-sizes";
+    public static final String FILE_PAGE_SIZES_ATTRIBUTE = "filePageSizes";
+
+    public static final int MIN_PAGE_SIZE = 4096;
+    /**
+     * The file header occupies one page and its size is recorded as a short,
+     * so this is the largest page size that can be used.
+     */
+    public static final int MAX_PAGE_SIZE = 16384;
+
     protected final static Logger LOG = LogManager.getLogger(Paged.class);
 
     protected final static byte DELETED = 127;
     protected final static byte OVERFLOW = 126;
     protected final static byte UNUSED = 0;
 
+    /**
+     * @deprecated Each paged file has its own page size, see {@link FileHeader#getPageSize()}.
+     */
+    @Deprecated
     protected static int PAGE_SIZE = 4096;
 
     protected final short fileVersion;
     private final FileHeader fileHeader;
-    private final byte[] tempPageData;
-    private final byte[] tempHeaderData;
+    private byte[] tempPageData;
+    private byte[] tempHeaderData;
+
+    private final List<String> memoryMappedFiles;
+    private final Map<String, Integer> filePageSizes;
+
+    private PageStore store;
+
+    /**
+     * Second level cache for the pages of this file, or null if not enabled.
+     */
+    private final OffHeapPageCache offHeapPageCache;
+    private int offHeapPageCacheId = -1;
 
-    private RandomAccessFile raf;
     private Path file;
     private boolean readOnly = false;
     private boolean fileIsNew = false;
@@ -144,16 +185,63 @@ public abstract class Paged implements AutoCloseable {
         this.fileHeader = createFileHeader(pool.getPageSize());
         this.tempPageData = new byte[fileHeader.pageSize];
         this.tempHeaderData = new byte[fileHeader.pageHeaderSize];
+        if (pool.getConfiguration() == null) {
+            this.memoryMappedFiles = Collections.emptyList();
+            this.filePageSizes = Collections.emptyMap();
+        } else {
+            this.memoryMappedFiles = pool.getConfiguration().getProperty(PROPERTY_MEMORY_MAPPED_FILES, Collections.emptyList());
+            this.filePageSizes = pool.getConfiguration().getProperty(PROPERTY_FILE_PAGE_SIZES, Collections.emptyMap());
+        }
+        final DefaultCacheManager cacheManager = pool.getCacheManager();
+        this.offHeapPageCache = cacheManager == null ? null : cacheManager.getOffHeapPageCache();
     }
 
+    /**
+     * @deprecated Each paged file has its own page size, see {@link FileHeader#setPageSize(int)}.
+     *
+     * @param pageSize the page size
+     */
+    @Deprecated
     public final static void setPageSize(final int pageSize) {
         PAGE_SIZE = pageSize;
     }
 
+    /**
+     * @deprecated Each paged file has its own page size, see {@link FileHeader#getPageSize()}.
+     *
+     * @return the page size
+     */
+    @Deprecated
     public final static int getPageSize() {
         return PAGE_SIZE;
     }
 
+    /**
+     * Check that a page size can be used for a paged file.
+     *
+     * @param pageSize the page size in bytes
+     *
+     * @return true if the page size is a power of two between
+     *     {@link #MIN_PAGE_SIZE} and {@link #MAX_PAGE_SIZE}
+     */
+    public static boolean isValidPageSize(final int pageSize) {
+        return pageSize >= MIN_PAGE_SIZE && pageSize <= MAX_PAGE_SIZE && Integer.bitCount(pageSize) == 1;
+    }
+
+    /**
+     * Called whenever the page size or page header size in the
+     * file header changes, i.e. when the file header is read from disk.
+     */
+    private void pageLayoutChanged() {
+        invalidateOffHeapPages();
+        if (tempPageData.length != fileHeader.pageSize) {
+            tempPageData = new byte[fileHeader.pageSize];
+        }
+        if (tempHeaderData.length != fileHeader.pageHeaderSize) {
+            tempHeaderData = new byte[fileHeader.pageHeaderSize];
+        }
+    }
+
     public final boolean isReadOnly() {
         return readOnly;
     }
@@ -165,8 +253,9 @@ public abstract class Paged implements AutoCloseable {
      */
     @Override
     public void close() throws DBException {
+        invalidateOffHeapPages();
         try {
-            raf.close();
+            store.close();
         } catch (final IOException e) {
             throw new DBException("An error occurred whilst closing the database file '"
                     + file == null ? "null" : FileUtils.fileName(file) + "': " + e.getMessage());
@@ -242,14 +331,36 @@ public abstract class Paged implements AutoCloseable {
      * @throws IOException if an I/O error occurs
      */
     public void backupToStream(final OutputStream os) throws IOException {
-        raf.seek(0);
         final byte[] buf = new byte[4096];
-        int len;
-        while ((len = raf.read(buf)) > 0) {
+        final long length = store.length();
+        long offset = 0;
+        while (offset < length) {
+            final int len = (int) Math.min(buf.length, length - offset);
+            store.read(offset, buf, 0, len);
             os.write(buf, 0, len);
+            offset += len;
         }
     }
 
+    /**
+     * Removes the pages of this file from the off-heap page cache.
+     */
+    private void invalidateOffHeapPages() {
+        if (offHeapPageCacheId >= 0) {
+            offHeapPageCache.invalidate(offHeapPageCacheId);
+        }
+    }
+
+    /**
+     * Returns true if the pages of this file are accessed
+     * through memory mapped regions.
+     *
+     * @return true if the file is memory mapped
+     */
+    public final boolean isMemoryMapped() {
+        return store instanceof MappedPageStore;
+    }
+
     /**
      * getPath returns the file object for this Paged.
      *
@@ -397,7 +508,16 @@ public abstract class Paged implements AutoCloseable {
     protected final void setFile(final Path file) throws DBException {
         this.file = file;
         fileIsNew = !Files.exists(file);
+        if (fileIsNew) {
+            final Integer pageSize = filePageSizes.get(FileUtils.fileName(file));
+            if (pageSize != null && pageSize != fileHeader.getPageSize()) {
+                LOG.info("Creating database file {} with a page size of {} bytes", FileUtils.fileName(file), pageSize);
+                fileHeader.setPageSize(pageSize);
+                fileHeader.setHeaderSize(pageSize.shortValue());
+            }
+        }
         try {
+            RandomAccessFile raf;
             if ((!Files.exists(file)) || Files.isWritable(file)) {
                 try {
                     raf = new RandomAccessFile(file.toFile(), "rw");
@@ -417,6 +537,18 @@ public abstract class Paged implements AutoCloseable {
                 readOnly = true;
                 raf = new RandomAccessFile(file.toFile(), "r");
             }
+
+            if (offHeapPageCache != null) {
+                invalidateOffHeapPages();
+                offHeapPageCacheId = offHeapPageCache.register();
+            }
+
+            if (memoryMappedFiles.contains(FileUtils.fileName(file))) {
+                LOG.info("Using memory mapped page access for database file {}", FileUtils.fileName(file));
+                store = new MappedPageStore(raf, readOnly);
+            } else {
+                store = new RandomAccessPageStore(raf);
+            }
         } catch (final IOException e) {
             LOG.warn("An exception occurred while opening database file {}: {}", file.toAbsolutePath().toString(), e.getMessage(), e);
         }
@@ -535,7 +667,7 @@ public abstract class Paged implements AutoCloseable {
         pageHeader.dataLen = fileHeader.workSize;
         if (data.length != pageHeader.dataLen) {
             //TODO : where to get this 64 from ?
-            if (pageHeader.dataLen != getPageSize() - 64) {
+            if (pageHeader.dataLen != fileHeader.pageSize - fileHeader.pageHeaderSize) {
                 LOG.warn("ouch: {} != {}", fileHeader.workSize, data.length);
             }
             pageHeader.dataLen = data.length;
@@ -575,7 +707,7 @@ public abstract class Paged implements AutoCloseable {
         private long totalCount;
         private int workSize;
 
-        private final byte[] buf;
+        private byte[] buf;
 
         public FileHeader(final long pageCount, final int pageSize) {
             this.pageSize = pageSize;
@@ -711,10 +843,16 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public final synchronized void read() throws IOException {
-            raf.seek(0);
-            raf.read(buf);
+            // the header size is recorded in the header itself
+            store.read(0, buf, 0, OFFSET_REMAINDER);
+            final short storedHeaderSize = ByteConversion.byteToShort(buf, OFFSET_HEADER_SIZE);
+            if (storedHeaderSize > buf.length) {
+                buf = new byte[storedHeaderSize];
+            }
+            store.read(0, buf, 0, storedHeaderSize);
             read(buf);
             calculateWorkSize();
+            pageLayoutChanged();
             dirty = false;
         }
 
@@ -772,6 +910,9 @@ public abstract class Paged implements AutoCloseable {
          */
         public final void setHeaderSize(final short headerSize) {
             this.headerSize = headerSize;
+            if (headerSize > buf.length) {
+                buf = new byte[headerSize];
+            }
             dirty = true;
         }
 
@@ -813,6 +954,7 @@ public abstract class Paged implements AutoCloseable {
         public final void setPageHeaderSize(final byte pageHeaderSize) {
             this.pageHeaderSize = pageHeaderSize;
             calculateWorkSize();
+            pageLayoutChanged();
             dirty = true;
         }
 
@@ -824,6 +966,7 @@ public abstract class Paged implements AutoCloseable {
         public final void setPageSize(final int pageSize) {
             this.pageSize = pageSize;
             calculateWorkSize();
+            pageLayoutChanged();
             dirty = true;
         }
 
@@ -848,9 +991,8 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public final synchronized void write() throws IOException {
-            raf.seek(0);
             write(buf);
-            raf.write(buf);
+            store.write(0, buf, 0, headerSize);
             dirty = false;
         }
     }
@@ -943,17 +1085,16 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public byte[] read() throws IOException {
+            if (offHeapPageCacheId >= 0) {
+                return readCached();
+            }
             try {
-                if (raf.getFilePointer() != offset) {
-                    raf.seek(offset);
-                }
-                Arrays.fill(tempHeaderData, (byte)0);
-                raf.read(tempHeaderData);
+                store.read(offset, tempHeaderData, 0, tempHeaderData.length);
                 // Read in the header
                 header.read(tempHeaderData, 0);
                 // Read the working data
                 final byte[] workData = new byte[header.dataLen];
-                raf.read(workData);
+                store.read(offset + tempHeaderData.length, workData, 0, workData.length);
                 return workData;
             } catch(final Exception e) {
                 LOG.warn("error while reading page: {}", getPageInfo(), e);
@@ -961,6 +1102,24 @@ public abstract class Paged implements AutoCloseable {
             }
         }
 
+        /**
+         * Reads the page through the off-heap page cache. The whole
+         * page is read, so that the cache holds a complete copy of it.
+         */
+        private byte[] readCached() throws IOException {
+            try {
+                if (!offHeapPageCache.get(offHeapPageCacheId, pageNum, tempPageData)) {
+                    store.read(offset, tempPageData, 0, tempPageData.length);
+                    offHeapPageCache.put(offHeapPageCacheId, pageNum, tempPageData);
+                }
+                header.read(tempPageData, 0);
+                return Arrays.copyOfRange(tempPageData, fileHeader.pageHeaderSize, fileHeader.pageHeaderSize + header.dataLen);
+            } catch(final Exception e) {
+                LOG.warn("error while reading page: {}", getPageInfo(), e);
+                throw new IOException(e.getMessage());
+            }
+        }
+
         public void setPageNum(final long pageNum) {
             this.pageNum = pageNum;
             offset = fileHeader.headerSize + (pageNum * fileHeader.pageSize);
@@ -986,10 +1145,10 @@ public abstract class Paged implements AutoCloseable {
                     System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
                 }
             }
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
+            store.write(offset, tempPageData, 0, tempPageData.length);
+            if (offHeapPageCacheId >= 0) {
+                offHeapPageCache.put(offHeapPageCacheId, pageNum, tempPageData);
             }
-            raf.write(tempPageData);
         }
 
         @Override
@@ -1009,11 +1168,8 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public void dumpPage() throws IOException {
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
-            }
             final byte[] data = new byte[fileHeader.pageSize];
-            raf.read(data);
+            store.read(offset, data, 0, data.length);
             LOG.debug("Contents of page {}: {}", pageNum, hexDump(data));
         }
     }
@@ -0,0 +1,76 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Page store which accesses the file through a {@link RandomAccessFile},
+ * i.e. every page is transferred by a seek and read/write pair.
+ *
+ * This is the default page store.
+ */
+final class RandomAccessPageStore implements PageStore {
+
+    private final RandomAccessFile raf;
+
+    RandomAccessPageStore(final RandomAccessFile raf) {
+        this.raf = raf;
+    }
+
+    @Override
+    public void read(final long offset, final byte[] buf, final int bufOffset, final int len) throws IOException {
+        if (raf.getFilePointer() != offset) {
+            raf.seek(offset);
+        }
+        int read = 0;
+        while (read < len) {
+            final int count = raf.read(buf, bufOffset + read, len - read);
+            if (count < 0) {
+                // past the end of the file
+                Arrays.fill(buf, bufOffset + read, bufOffset + len, (byte) 0);
+                break;
+            }
+            read += count;
+        }
+    }
+
+    @Override
+    public void write(final long offset, final byte[] buf, final int bufOffset, final int len) throws IOException {
+        if (raf.getFilePointer() != offset) {
+            raf.seek(offset);
+        }
+        raf.write(buf, bufOffset, len);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return raf.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -58,6 +58,12 @@ public class Accounting {
     /** total cache misses during the lifetime of the cache */
     private int misses = 0;
     
+    /** total pages replaced during the lifetime of the cache */
+    private int evictions = 0;
+
+    /** total pages reloaded shortly after being replaced during the lifetime of the cache */
+    private int reloads = 0;
+
     /** the current size of the cache */
     private int totalSize = 0;
     
@@ -126,6 +132,8 @@ public class Accounting {
      * @param cacheable object
      */
     public void replacedPage(Cacheable cacheable) {
+        ++evictions;
+
         if (System.currentTimeMillis() - checkPeriodStart > checkPeriod) {
             map.clear();
             thrashing = 0;
@@ -138,10 +146,33 @@ public class Accounting {
         
         if (map.get(cacheable.getKey()) != null) {
             ++thrashing;
+            ++reloads;
         } else
             {map.put(cacheable.getKey(), DUMMY);}
     }
     
+    /**
+     * Returns the number of total pages replaced.
+     * @return number of total pages replaced
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of total pages which were reloaded
+     * shortly after being replaced, i.e. the number of misses
+     * which could have been avoided by a larger cache.
+     *
+     * Contrary to {@link #getThrashing()}, this is not reset
+     * at the end of a check period.
+     *
+     * @return number of total pages reloaded
+     */
+    public int getReloads() {
+        return reloads;
+    }
+
     /**
      * Return the current amount of trashing.
      * @return current amount of trashing
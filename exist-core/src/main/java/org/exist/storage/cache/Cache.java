@@ -166,6 +166,26 @@ public interface Cache<T extends Cacheable> {
      */
     int getFails();
 
+    /**
+     * Get the number of times where an object has been
+     * evicted from the cache to make room for another.
+     *
+     * @return number of times where an object has been
+     * evicted from the cache
+     */
+    int getEvictions();
+
+    /**
+     * Get the number of times where an object had to be
+     * loaded again shortly after it had been evicted from
+     * the cache, i.e. the number of misses which could have
+     * been avoided if the cache was larger.
+     *
+     * @return number of times where an object has been
+     * reloaded after eviction
+     */
+    int getReloads();
+
     /**
      * Get the load factor if the cache
      *
@@ -159,6 +159,16 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 	public int getFails() {
 		return accounting.getMisses();
 	}
+
+	@Override
+	public int getEvictions() {
+		return accounting.getEvictions();
+	}
+
+	@Override
+	public int getReloads() {
+		return accounting.getReloads();
+	}
  
     public int getThrashing() {
         return accounting.getThrashing();
@@ -0,0 +1,363 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A second level cache which holds copies of database pages
+ * outside of the Java heap.
+ *
+ * The page caches of the database files ({@link Cache}) hold
+ * deserialized pages on the heap, which makes large caches expensive
+ * for the garbage collector. The off-heap page cache instead keeps the
+ * raw page images in direct memory, so that a page which was evicted
+ * from the heap can be reloaded by a memory copy rather than a read
+ * from disk. The cache is shared by all database files, and is written
+ * through, i.e. every page written to a file is also written to the
+ * cache, so that it never holds stale pages.
+ *
+ * Direct memory is allocated lazily in chunks, up to the capacity of
+ * the cache. Pages of each page size are kept in their own slots, which
+ * are split over a number of segments with their own lock to reduce
+ * contention. Within a segment, pages are replaced by the CLOCK policy.
+ *
+ * Note that the JVM limits the amount of direct memory, if the capacity
+ * exceeds the heap size then -XX:MaxDirectMemorySize must be raised
+ * accordingly.
+ */
+@ThreadSafe
+public final class OffHeapPageCache {
+
+    private static final Logger LOG = LogManager.getLogger(OffHeapPageCache.class);
+
+    /**
+     * The maximum size of a chunk of direct memory.
+     */
+    static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * The number of bits of the key which hold the page number.
+     */
+    private static final int PAGE_NUM_BITS = 40;
+    private static final long MAX_PAGE_NUM = (1L << PAGE_NUM_BITS) - 1;
+
+    private final long capacity;
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicInteger nextFileId = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, Segment[]> segments = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile boolean directMemoryExhausted = false;
+
+    /**
+     * @param capacity the maximum amount of direct memory to use, in bytes
+     */
+    public OffHeapPageCache(final long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Register a database file with the cache.
+     *
+     * @return the id of the file, to be used when accessing the cache
+     */
+    public int register() {
+        return nextFileId.getAndIncrement() & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Retrieve a page from the cache.
+     *
+     * @param fileId the id of the file, as returned by {@link #register()}
+     * @param pageNum the number of the page
+     * @param page the buffer to copy the page into, its length is the page size
+     *
+     * @return true if the page was found in the cache, false otherwise
+     */
+    public boolean get(final int fileId, final long pageNum, final byte[] page) {
+        if (pageNum > MAX_PAGE_NUM) {
+            return false;
+        }
+        final long key = key(fileId, pageNum);
+        final Segment[] sizeClass = segments.get(page.length);
+        if (sizeClass != null && segment(sizeClass, key).get(key, page)) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Store a page in the cache, replacing any previous
+     * copy of the page.
+     *
+     * @param fileId the id of the file, as returned by {@link #register()}
+     * @param pageNum the number of the page
+     * @param page the page, its length is the page size
+     */
+    public void put(final int fileId, final long pageNum, final byte[] page) {
+        if (pageNum > MAX_PAGE_NUM) {
+            return;
+        }
+        final long key = key(fileId, pageNum);
+        final Segment[] sizeClass = segments.computeIfAbsent(page.length, this::newSizeClass);
+        segment(sizeClass, key).put(key, page);
+    }
+
+    /**
+     * Remove all pages of a file from the cache.
+     *
+     * @param fileId the id of the file, as returned by {@link #register()}
+     */
+    public void invalidate(final int fileId) {
+        for (final Segment[] sizeClass : segments.values()) {
+            for (final Segment segment : sizeClass) {
+                segment.invalidate(fileId);
+            }
+        }
+    }
+
+    /**
+     * @return the maximum amount of direct memory used by the cache, in bytes
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the amount of direct memory currently allocated by the cache, in bytes
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * @return the number of pages currently held by the cache
+     */
+    public long getPages() {
+        long pages = 0;
+        for (final Segment[] sizeClass : segments.values()) {
+            for (final Segment segment : sizeClass) {
+                pages += segment.size();
+            }
+        }
+        return pages;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getFails() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private Segment[] newSizeClass(final int pageSize) {
+        // spread the memory over the segments, but never use more than a chunk at a time
+        final long perSegment = Math.min(MAX_CHUNK_SIZE, capacity / SEGMENTS);
+        final int pagesPerChunk = (int) Math.max(1, perSegment / pageSize);
+        final Segment[] sizeClass = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            sizeClass[i] = new Segment(pageSize, pagesPerChunk);
+        }
+        return sizeClass;
+    }
+
+    private static long key(final int fileId, final long pageNum) {
+        return ((long) fileId << PAGE_NUM_BITS) | pageNum;
+    }
+
+    private static Segment segment(final Segment[] sizeClass, final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return sizeClass[(int) (h & (SEGMENTS - 1))];
+    }
+
+    private final class Segment {
+        private final int pageSize;
+        private final int pagesPerChunk;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        @GuardedBy("lock") private final Long2IntOpenHashMap index = new Long2IntOpenHashMap();
+        @GuardedBy("lock") private final List<ByteBuffer> chunks = new ArrayList<>();
+        @GuardedBy("lock") private long[] keys = new long[0];
+        @GuardedBy("lock") private final BitSet referenced = new BitSet();
+        @GuardedBy("lock") private final IntArrayList free = new IntArrayList();
+        @GuardedBy("lock") private int hand = 0;
+
+        Segment(final int pageSize, final int pagesPerChunk) {
+            this.pageSize = pageSize;
+            this.pagesPerChunk = pagesPerChunk;
+            this.index.defaultReturnValue(-1);
+        }
+
+        boolean get(final long key, final byte[] page) {
+            lock.lock();
+            try {
+                final int slot = index.get(key);
+                if (slot < 0) {
+                    return false;
+                }
+                final ByteBuffer chunk = chunks.get(slot / pagesPerChunk);
+                chunk.position((slot % pagesPerChunk) * pageSize);
+                chunk.get(page, 0, pageSize);
+                referenced.set(slot);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(final long key, final byte[] page) {
+            lock.lock();
+            try {
+                int slot = index.get(key);
+                if (slot < 0) {
+                    slot = allocate();
+                    if (slot < 0) {
+                        return;
+                    }
+                    keys[slot] = key;
+                    index.put(key, slot);
+                }
+                final ByteBuffer chunk = chunks.get(slot / pagesPerChunk);
+                chunk.position((slot % pagesPerChunk) * pageSize);
+                chunk.put(page, 0, pageSize);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void invalidate(final int fileId) {
+            lock.lock();
+            try {
+                for (final ObjectIterator<Long2IntMap.Entry> it = index.long2IntEntrySet().fastIterator(); it.hasNext(); ) {
+                    final Long2IntMap.Entry entry = it.next();
+                    if ((int) (entry.getLongKey() >>> PAGE_NUM_BITS) == fileId) {
+                        referenced.clear(entry.getIntValue());
+                        free.add(entry.getIntValue());
+                        it.remove();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return index.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Find a slot for a new page, either a free slot, a slot in a
+         * newly allocated chunk, or the slot of the page to be replaced.
+         *
+         * @return the slot, or -1 if no memory could be allocated
+         */
+        @GuardedBy("lock")
+        private int allocate() {
+            if (!free.isEmpty()) {
+                return free.removeInt(free.size() - 1);
+            }
+
+            final long chunkSize = (long) pagesPerChunk * pageSize;
+            if (!directMemoryExhausted) {
+                if (allocated.addAndGet(chunkSize) <= capacity && allocateChunk(chunkSize)) {
+                    final int first = keys.length;
+                    final long[] newKeys = new long[first + pagesPerChunk];
+                    System.arraycopy(keys, 0, newKeys, 0, first);
+                    keys = newKeys;
+                    for (int slot = keys.length - 1; slot > first; slot--) {
+                        free.add(slot);
+                    }
+                    return first;
+                }
+                allocated.addAndGet(-chunkSize);
+            }
+
+            if (index.isEmpty()) {
+                return -1;
+            }
+
+            // every slot holds a page, CLOCK: clear the reference bits until an unreferenced page is found
+            while (true) {
+                if (hand >= keys.length) {
+                    hand = 0;
+                }
+                final int slot = hand++;
+                if (referenced.get(slot)) {
+                    referenced.clear(slot);
+                } else {
+                    index.remove(keys[slot]);
+                    evictions.increment();
+                    return slot;
+                }
+            }
+        }
+
+        @GuardedBy("lock")
+        private boolean allocateChunk(final long chunkSize) {
+            try {
+                chunks.add(ByteBuffer.allocateDirect((int) chunkSize));
+                return true;
+            } catch (final OutOfMemoryError e) {
+                if (!directMemoryExhausted) {
+                    directMemoryExhausted = true;
+                    LOG.warn("Unable to allocate direct memory for the off-heap page cache, -XX:MaxDirectMemorySize may be too small: {}", e.getMessage());
+                }
+                return false;
+            }
+        }
+    }
+}
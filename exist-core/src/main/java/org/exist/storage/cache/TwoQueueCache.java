@@ -0,0 +1,462 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.CacheManager;
+import org.exist.util.hashtable.SequencedLongHashMap;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A scan resistant cache based on the 2Q replacement policy.
+ *
+ * New items are first placed in a small FIFO probation queue. Items which
+ * are evicted from the probation queue are remembered (by key only) in a
+ * ghost queue, and if they are added again whilst still remembered they are
+ * admitted to the main queue. The main queue is managed by the CLOCK policy,
+ * i.e. each item has a reference bit which is set on access and cleared
+ * as the clock hand passes over it, an item is evicted if its reference bit is
+ * not set when the hand reaches it.
+ *
+ * A large scan therefore only cycles through the probation queue, and does
+ * not displace the working set held in the main queue. Callers may also
+ * admit an item straight into the main queue by adding it with an initial
+ * reference count greater than one, as is done for example for the inner
+ * pages of a B+-tree.
+ *
+ * Contrary to the other {@link Cache} implementations, this cache is safe
+ * for use by concurrent threads. Looking up an item does not take a lock,
+ * only adding and removing items does.
+ *
+ * @param <T> The type that implements {@link Cacheable}
+ */
+@ThreadSafe
+public class TwoQueueCache<T extends Cacheable> implements Cache<T> {
+    private final static Logger LOG = LogManager.getLogger(TwoQueueCache.class);
+
+    /**
+     * The fraction of the cache size which is used for the probation queue.
+     */
+    static final double PROBATION_FACTOR = 0.25;
+
+    /**
+     * The number of evicted keys to remember, as a fraction of the cache size.
+     */
+    static final double GHOST_FACTOR = 0.5;
+
+    private final static Object DUMMY = new Object();
+
+    private final String name;
+    private final CacheType type;
+    private final double growthFactor;
+
+    private final ConcurrentHashMap<Long, Node<T>> index;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    @GuardedBy("lock") private final ArrayDeque<Node<T>> probation = new ArrayDeque<>();
+    @GuardedBy("lock") private final ArrayDeque<Node<T>> main = new ArrayDeque<>();
+    @GuardedBy("lock") private final SequencedLongHashMap<Object> ghosts;
+    @GuardedBy("lock") private final Accounting accounting;
+    @GuardedBy("lock") private int probationCount = 0;
+    @GuardedBy("lock") private int mainCount = 0;
+    @GuardedBy("lock") private int removedCount = 0;
+    @GuardedBy("lock") private int hitsOld = 0;
+
+    private volatile int size;
+    private volatile CacheManager cacheManager = null;
+
+    public TwoQueueCache(final String name, final int size, final double growthFactor, final double growthThreshold, final CacheType type) {
+        this.name = name;
+        this.size = size;
+        this.growthFactor = growthFactor;
+        this.type = type;
+        this.index = new ConcurrentHashMap<>(size * 2);
+        this.ghosts = new SequencedLongHashMap<>(ghostCapacity(size) * 2);
+        this.accounting = new Accounting(growthThreshold);
+        this.accounting.setTotalSize(size);
+    }
+
+    private static int probationCapacity(final int size) {
+        return Math.max(1, (int) (size * PROBATION_FACTOR));
+    }
+
+    private static int ghostCapacity(final int size) {
+        return Math.max(1, (int) (size * GHOST_FACTOR));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheType getType() {
+        return type;
+    }
+
+    @Override
+    public void add(final T item) {
+        add(item, 1);
+    }
+
+    @Override
+    public void add(final T item, final int initialRefCount) {
+        final long key = item.getKey();
+        boolean replaced = false;
+
+        lock.lock();
+        try {
+            Node<T> node = index.get(key);
+            if (node != null) {
+                node.item = item;
+                node.referenced = true;
+                return;
+            }
+
+            final boolean remembered = ghosts.remove(key) != null;
+            node = new Node<>(item, remembered || initialRefCount > 1);
+            index.put(key, node);
+            if (node.inMain) {
+                main.offer(node);
+                mainCount++;
+            } else {
+                probation.offer(node);
+                probationCount++;
+            }
+
+            while (index.size() > size) {
+                if (!evictOne(key)) {
+                    // every item is pinned, temporarily allow the cache to exceed its size
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("{}: unable to evict an item, all items are in use", name);
+                    }
+                    break;
+                }
+                replaced = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (replaced) {
+            final boolean resizeNeeded;
+            lock.lock();
+            try {
+                accounting.replacedPage(item);
+                resizeNeeded = accounting.resizeNeeded();
+            } finally {
+                lock.unlock();
+            }
+
+            final CacheManager manager = cacheManager;
+            if (growthFactor > 1.0 && resizeNeeded && manager != null) {
+                manager.requestMem(this);
+            }
+        }
+    }
+
+    /**
+     * Evict one item from the cache.
+     *
+     * @param incomingKey the key of the item being added, which must not be evicted
+     *
+     * @return true if an item was evicted
+     */
+    @GuardedBy("lock")
+    private boolean evictOne(final long incomingKey) {
+        if (probationCount > probationCapacity(size) || mainCount == 0) {
+            return evictFromProbation(incomingKey) || evictFromMain(incomingKey);
+        } else {
+            return evictFromMain(incomingKey) || evictFromProbation(incomingKey);
+        }
+    }
+
+    @GuardedBy("lock")
+    private boolean evictFromProbation(final long incomingKey) {
+        for (int remaining = probation.size(); remaining > 0; remaining--) {
+            final Node<T> node = probation.poll();
+            if (node.removed) {
+                removedCount--;
+                continue;
+            }
+
+            final T item = node.item;
+            if (item.getKey() == incomingKey || !item.allowUnload()) {
+                probation.offer(node);
+                continue;
+            }
+
+            probationCount--;
+            evict(node);
+
+            // remember the key, so that we can recognise it if it is added again
+            if (ghosts.size() >= ghostCapacity(size)) {
+                ghosts.removeFirst();
+            }
+            ghosts.put(item.getKey(), DUMMY);
+            return true;
+        }
+        return false;
+    }
+
+    @GuardedBy("lock")
+    private boolean evictFromMain(final long incomingKey) {
+        // the first sweep clears the reference bits, and respects the items which should be retained
+        for (int sweep = 0; sweep < 2; sweep++) {
+            final boolean evictRetained = sweep > 0;
+            for (int remaining = main.size() * 2; remaining > 0; remaining--) {
+                final Node<T> node = main.poll();
+                if (node == null) {
+                    return false;
+                }
+                if (node.removed) {
+                    removedCount--;
+                    continue;
+                }
+
+                final T item = node.item;
+                if (node.referenced) {
+                    node.referenced = false;
+                    main.offer(node);
+                    continue;
+                }
+
+                if (item.getKey() == incomingKey || !item.allowUnload() || (!evictRetained && retain(item))) {
+                    main.offer(node);
+                    continue;
+                }
+
+                mainCount--;
+                evict(node);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @GuardedBy("lock")
+    private void evict(final Node<T> node) {
+        final T item = node.item;
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("{} evicting {}", name, item.getKey());
+        }
+        item.sync(true);
+        node.removed = true;
+        index.remove(item.getKey(), node);
+        evictions.increment();
+    }
+
+    /**
+     * Determines if an item should be retained in the main
+     * queue in preference to other items.
+     *
+     * @param item the item
+     *
+     * @return true if the item should only be evicted if there is
+     *     no other choice.
+     */
+    protected boolean retain(final T item) {
+        return false;
+    }
+
+    @Override
+    public T get(final T item) {
+        return get(item.getKey());
+    }
+
+    @Override
+    public T get(final long key) {
+        final Node<T> node = index.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        node.referenced = true;
+        return node.item;
+    }
+
+    @Override
+    public void remove(final T item) {
+        lock.lock();
+        try {
+            final Node<T> node = index.remove(item.getKey());
+            if (node == null) {
+                return;
+            }
+            node.removed = true;
+            if (node.inMain) {
+                mainCount--;
+            } else {
+                probationCount--;
+            }
+
+            // removed nodes are dropped lazily from the queues, compact them if they start to dominate
+            if (++removedCount > size) {
+                probation.removeIf(n -> n.removed);
+                main.removeIf(n -> n.removed);
+                removedCount = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        lock.lock();
+        try {
+            boolean flushed = false;
+            for (final Node<T> node : index.values()) {
+                final T item = node.item;
+                if (item.isDirty()) {
+                    flushed = flushed | item.sync(false);
+                }
+            }
+            return flushed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean hasDirtyItems() {
+        for (final Node<T> node : index.values()) {
+            if (node.item.isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getBuffers() {
+        return size;
+    }
+
+    @Override
+    public int getUsedBuffers() {
+        return index.size();
+    }
+
+    @Override
+    public int getHits() {
+        return (int) hits.sum();
+    }
+
+    @Override
+    public int getFails() {
+        return (int) misses.sum();
+    }
+
+    @Override
+    public int getEvictions() {
+        return (int) evictions.sum();
+    }
+
+    @Override
+    public int getReloads() {
+        lock.lock();
+        try {
+            return accounting.getReloads();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    @Override
+    public void setCacheManager(final CacheManager manager) {
+        this.cacheManager = manager;
+    }
+
+    @Override
+    public void resize(final int newSize) {
+        lock.lock();
+        try {
+            this.size = newSize;
+            while (index.size() > newSize) {
+                if (!evictOne(Long.MIN_VALUE)) {
+                    break;
+                }
+            }
+            while (ghosts.size() > ghostCapacity(newSize)) {
+                ghosts.removeFirst();
+            }
+            accounting.reset();
+            accounting.setTotalSize(newSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getLoad() {
+        lock.lock();
+        try {
+            final int currentHits = getHits();
+            if (hitsOld == 0) {
+                hitsOld = currentHits;
+                return Integer.MAX_VALUE;
+            }
+            final int load = currentHits - hitsOld;
+            hitsOld = currentHits;
+            return load;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Node<T> {
+        /**
+         * NOTE: may be replaced if an item with the same key is added
+         */
+        volatile T item;
+
+        /**
+         * The reference bit for the CLOCK policy of the main queue
+         */
+        volatile boolean referenced;
+
+        final boolean inMain;
+        boolean removed;
+
+        Node(final T item, final boolean inMain) {
+            this.item = item;
+            this.inMain = inMain;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.io.Writer;
 import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
@@ -64,7 +65,7 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
+import org.exist.storage.cache.TwoQueueCache;
 import org.exist.storage.journal.JournalException;
 import org.exist.storage.journal.LogEntryTypes;
 import org.exist.storage.journal.Loggable;
@@ -196,7 +197,7 @@ public class DOMFile extends BTree implements Lockable {
         fileHeader = (BTreeFileHeader)getFileHeader();
         fileHeader.setPageCount(0);
         fileHeader.setTotalCount(0);
-        dataCache = new LRUCache<>(getFileName(), 256, 0.0, 1.0, Cache.CacheType.DATA);
+        dataCache = new TwoQueueCache<>(getFileName(), 256, 0.0, 1.0, Cache.CacheType.DATA);
         cacheManager.registerCache(dataCache);
         final Path file = dataDir.resolve(getFileName());
         setFile(file);
@@ -3195,6 +3196,10 @@ public class DOMFile extends BTree implements Lockable {
                     len = 0;
                     return;
                 }
+                if (data.length < fileHeader.getWorkSize()) {
+                    // page was written with a smaller page size, see PageSizeConverter
+                    data = Arrays.copyOf(data, fileHeader.getWorkSize());
+                }
             } catch (final IOException ioe) {
                 LOG.error(ioe);
                 ioe.printStackTrace();
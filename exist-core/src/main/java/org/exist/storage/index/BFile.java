@@ -37,7 +37,7 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
+import org.exist.storage.cache.TwoQueueCache;
 import org.exist.storage.io.VariableByteArrayInput;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
@@ -146,10 +146,9 @@ public class BFile extends BTree {
         super(pool, fileId, fileVersion, recoveryEnabled, cacheManager, file);
         lockManager = pool.getLockManager();
         fileHeader = (BFileHeader) getFileHeader();
-        dataCache = new LRUCache<>(FileUtils.fileName(file), 64, cacheGrowth, thresholdData, Cache.CacheType.DATA);
+        dataCache = new TwoQueueCache<>(FileUtils.fileName(file), 64, cacheGrowth, thresholdData, Cache.CacheType.DATA);
         cacheManager.registerCache(dataCache);
         minFree = PAGE_MIN_FREE;
-        maxValueSize = fileHeader.getWorkSize() / 2;
         
         if(exists()) {
             open(fileVersion);
@@ -159,6 +158,9 @@ public class BFile extends BTree {
             }
             create();
         }
+
+        // NOTE: the work size is only known once the file header has been read
+        maxValueSize = fileHeader.getWorkSize() / 2;
     }
 
     /**
@@ -2502,7 +2504,12 @@ public class BFile extends BTree {
                 LOG.debug("not a data-page: {}", p.getPageInfo(), e);
                 throw e;
             }
-            this.data = data;
+            if (data.length < fileHeader.getWorkSize() && p.getPageHeader().getStatus() == RECORD) {
+                // page was written with a smaller page size, see PageSizeConverter
+                this.data = Arrays.copyOf(data, fileHeader.getWorkSize());
+            } else {
+                this.data = data;
+            }
             page = p;
             ph = (BFilePageHeader) page.getPageHeader();
             if(initialize) {
@@ -0,0 +1,88 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.exist.util.Log2Histogram;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the batch commit statistics of the {@link JournalManager}.
+ *
+ * Exposed via JMX, see {@link org.exist.management.impl.JournalMXBean}.
+ */
+public class BatchCommitStatistics {
+    private final long commitCount;
+    private final long batchCount;
+    private final Log2Histogram.Snapshot commitLatencyMicros;
+    private final Log2Histogram.Snapshot batchSize;
+
+    /**
+     * @param commitCount the number of commits which waited on the batch committer
+     * @param batchCount the number of batches flushed by the batch committer
+     * @param commitLatencyMicros the histogram of the time commits waited to become durable, in microseconds
+     * @param batchSize the histogram of the number of commits flushed per batch
+     */
+    @ConstructorProperties({"commitCount", "batchCount", "commitLatencyMicros", "batchSize"})
+    public BatchCommitStatistics(final long commitCount, final long batchCount, final Log2Histogram.Snapshot commitLatencyMicros, final Log2Histogram.Snapshot batchSize) {
+        this.commitCount = commitCount;
+        this.batchCount = batchCount;
+        this.commitLatencyMicros = commitLatencyMicros;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of commits which waited on the batch committer.
+     *
+     * @return the number of commits
+     */
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * Returns the number of batches flushed by the batch committer.
+     *
+     * @return the number of batches
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Returns the histogram of the time commits waited to become durable.
+     *
+     * @return the commit latency histogram, in microseconds
+     */
+    public Log2Histogram.Snapshot getCommitLatencyMicros() {
+        return commitLatencyMicros;
+    }
+
+    /**
+     * Returns the histogram of the number of commits flushed per batch.
+     *
+     * @return the batch size histogram
+     */
+    public Log2Histogram.Snapshot getBatchSize() {
+        return batchSize;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.util.Log2Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Batch commit for the {@link Journal}.
+ *
+ * Rather than each committing transaction forcing its own
+ * flush (and fsync) of the journal, committing transactions
+ * enqueue themselves and wait, whilst a single flusher thread
+ * flushes the journal on behalf of a whole batch of them.
+ *
+ * The flusher waits for at most {@code maxWait} after the first
+ * commit of a batch arrives, or until {@code batchSize} commits
+ * are waiting, whichever happens first.
+ */
+@ThreadSafe
+final class BatchCommitter implements Runnable {
+    private static final Logger LOG = LogManager.getLogger(BatchCommitter.class);
+
+    static final long DEFAULT_MAX_WAIT = 5;  // ms
+    static final int DEFAULT_BATCH_SIZE = 64;
+
+    private static final int LATENCY_BUCKETS = 26;  // up to ~33 seconds in microseconds
+
+    private final Supplier<Lsn> flush;
+    private final long maxWaitNanos;
+    private final int batchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition commitsPending = lock.newCondition();
+    private final Condition batchFlushed = lock.newCondition();
+
+    @GuardedBy("lock") private boolean running = false;
+    @GuardedBy("lock") private int pending = 0;
+    @GuardedBy("lock") private Lsn durableLsn = Lsn.LSN_INVALID;
+    @GuardedBy("lock") private long flushFailures = 0;
+    @GuardedBy("lock") private RuntimeException lastFailure;
+
+    private final Log2Histogram commitLatency = new Log2Histogram(LATENCY_BUCKETS);
+    private final Log2Histogram batchSizes;
+    private volatile long batches = 0;
+
+    /**
+     * @param flush flushes the journal, returning the LSN up to which the journal has been flushed
+     * @param maxWait the maximum time in milliseconds to wait for a batch to fill up
+     * @param batchSize the number of waiting commits which causes a batch to be flushed immediately
+     */
+    BatchCommitter(final Supplier<Lsn> flush, final long maxWait, final int batchSize) {
+        this.flush = flush;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWait));
+        this.batchSize = Math.max(1, batchSize);
+        this.batchSizes = new Log2Histogram(65 - Long.numberOfLeadingZeros(this.batchSize));
+    }
+
+    /**
+     * Start the flusher.
+     *
+     * @param thread a factory for the thread which should run the flusher
+     */
+    void start(final Function<Runnable, Thread> thread) {
+        lock.lock();
+        try {
+            running = true;
+        } finally {
+            lock.unlock();
+        }
+        final Thread flusher = thread.apply(this);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stop the flusher. Any commits which are still waiting
+     * are flushed before the flusher exits, commits which arrive
+     * afterwards are rejected by {@link #awaitDurable(Lsn)}.
+     */
+    void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            commitsPending.signalAll();
+            while (pending > 0) {
+                batchFlushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the journal has been flushed up to and including {@code lsn}.
+     *
+     * @param lsn the LSN of the commit record
+     *
+     * @return true once the journal has been flushed up to {@code lsn}, or false
+     *     if the flusher has stopped, in which case the caller has to flush the
+     *     journal itself
+     *
+     * @throws JournalException if the flush on behalf of this commit failed,
+     *     or the thread was interrupted whilst waiting
+     */
+    boolean awaitDurable(final Lsn lsn) throws JournalException {
+        final long start = System.nanoTime();
+
+        lock.lock();
+        try {
+            if (durableLsn.compareTo(lsn) >= 0) {
+                return true;
+            }
+
+            if (!running) {
+                return false;
+            }
+
+            final long failures = flushFailures;
+            if (++pending == 1 || pending >= batchSize) {
+                commitsPending.signal();
+            }
+
+            while (durableLsn.compareTo(lsn) < 0) {
+                if (flushFailures != failures) {
+                    throw new JournalException("Batch commit failed to flush the journal: " + lastFailure.getMessage(), lastFailure);
+                }
+                try {
+                    batchFlushed.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JournalException("Interrupted whilst waiting for batch commit", e);
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+            commitLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+    }
+
+    @Override
+    public void run() {
+        lock.lock();
+        try {
+            while (running || pending > 0) {
+                while (running && pending == 0) {
+                    commitsPending.awaitUninterruptibly();
+                }
+                if (pending == 0) {
+                    continue;
+                }
+
+                // give the batch a chance to fill up
+                long remaining = maxWaitNanos;
+                while (running && pending < batchSize && remaining > 0) {
+                    try {
+                        remaining = commitsPending.awaitNanos(remaining);
+                    } catch (final InterruptedException e) {
+                        // no-op, flush what we have
+                        remaining = 0;
+                    }
+                }
+
+                final int batch = pending;
+                pending = 0;
+
+                lock.unlock();
+                Lsn flushed = null;
+                RuntimeException failure = null;
+                try {
+                    flushed = flush.get();
+                } catch (final RuntimeException e) {
+                    LOG.error("Batch commit failed to flush the journal: {}", e.getMessage(), e);
+                    failure = e;
+                } finally {
+                    lock.lock();
+                }
+
+                if (failure != null) {
+                    lastFailure = failure;
+                    flushFailures++;
+                } else if (flushed.compareTo(durableLsn) > 0) {
+                    durableLsn = flushed;
+                }
+                batches++;
+                batchSizes.record(batch);
+                batchFlushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getMaxWait() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    BatchCommitStatistics getStatistics() {
+        final Log2Histogram.Snapshot latency = commitLatency.snapshot();
+        return new BatchCommitStatistics(latency.getCount(), batches, latency, batchSizes.snapshot());
+    }
+}
@@ -31,6 +31,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import net.jcip.annotations.GuardedBy;
@@ -66,6 +67,17 @@ import static org.exist.util.ThreadUtils.newInstanceThread;
  * A buffer is used to temporarily buffer journal entries. To guarantee consistency, the buffer will be flushed
  * and the journal is synced after every commit or whenever a db page is written to disk.
  *
+ * Writing an entry to the buffer does not take the journal's monitor. Instead each writer atomically
+ * reserves a range of the buffer, which also determines the LSN of the entry, and then serializes
+ * its entry into that range in parallel with other writers. Only flushing the buffer (and switching
+ * the journal file) is done under the monitor, by sealing the buffer against further reservations,
+ * waiting for the in-flight writers to complete, and then writing it out whilst writers carry on
+ * in a second spare buffer.
+ *
+ * A writer never takes the monitor whilst it holds a reservation, so the thread sealing the buffer
+ * releases the monitor (see {@link #awaitWriters()}) whilst it waits for the in-flight writers,
+ * and the last of those writers to complete notifies it.
+ *
  * Each journal file has the following format:
  *
  * <pre>{@code
@@ -173,6 +185,12 @@ public final class Journal implements Closeable {
      */
     public static final int BUFFER_SIZE = 1024 * 1024;  // 1 MB in bytes
 
+    /**
+     * the maximum time in milliseconds to wait for a notification
+     * from the in-flight writers of a sealed buffer before checking again
+     */
+    private static final long WRITERS_WAIT_MS = 10;
+
     /**
      * Seed used for xxhash-64 checksums calculated
      * by the journal.
@@ -229,9 +247,16 @@ public final class Journal implements Closeable {
     @GuardedBy("this") private short currentJournalFileNumber = -1;
 
     /**
-     * temp buffer
+     * the segment of the buffer which is currently accepting entries,
+     * or null if the journal has been shut down
      */
-    @GuardedBy("this") private ByteBuffer currentBuffer;
+    private volatile Segment segment;
+
+    /**
+     * the buffer which is not currently accepting entries, it is
+     * swapped with the buffer of the {@link #segment} on flush
+     */
+    @GuardedBy("this") private ByteBuffer spareBuffer;
 
     /**
      * the last LSN written by the JournalManager
@@ -251,7 +276,7 @@ public final class Journal implements Closeable {
     /**
      * set to true while recovery is in progress
      */
-    @GuardedBy("this") private boolean inRecovery = false;
+    private volatile boolean inRecovery = false;
 
     /**
      * true if the journal has been initialised
@@ -309,7 +334,8 @@ public final class Journal implements Closeable {
         final Path lck = dir.resolve(LCK_FILE);
         this.fileLock = new FileLock(pool, lck);
 
-        this.currentBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.segment = new Segment(ByteBuffer.allocateDirect(BUFFER_SIZE), currentJournalFileNumber, 0, 0);
+        this.spareBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
     }
 
     public synchronized void initialize() throws EXistException, ReadOnlyException {
@@ -327,14 +353,13 @@ public final class Journal implements Closeable {
     /**
      * Write a log entry to the journal.
      *
+     * Many threads may write entries concurrently, the journal's monitor
+     * is only taken when the buffer is full and has to be flushed.
+     *
      * @param entry the journal entry to write
      * @throws JournalException if the entry could not be written
      */
-    public synchronized void writeToLog(final Loggable entry) throws JournalException {
-        if (currentBuffer == null) {
-            throw new JournalException("Database is shut down.");
-        }
-
+    public void writeToLog(final Loggable entry) throws JournalException {
         SanityCheck.ASSERT(!inRecovery, "Write to log during recovery. Should not happen!");
         final int size = entry.getLogSize();
 
@@ -343,39 +368,61 @@ public final class Journal implements Closeable {
         }
 
         final int required = size + LOG_ENTRY_BASE_LEN;
-        if (required > currentBuffer.remaining()) {
-            flushToLog(false);
+        Segment current = segment;
+        int offset = current == null ? -1 : current.reserve(required);
+        while (offset < 0) {
+            synchronized (this) {
+                while (segment == current && current != null && current.isSealed()) {
+                    // another thread is sealing the buffer and waiting for its writers
+                    awaitWriters();
+                }
+                if (segment == current && current != null) {
+                    // the buffer is full
+                    flushToLog(false);
+                    if (segment == current) {
+                        throw new JournalException("Buffer overflow while writing log record: " + entry.dump());
+                    }
+                }
+                current = segment;
+                if (current == null) {
+                    throw new JournalException("Database is shut down.");
+                }
+                offset = current.reserve(required);
+            }
         }
 
-        try {
-            // TODO(AR) this is needed as the journal is initialised by starting a transaction for loading the SymbolTable... before recovery! which is likely wrong!!! as Recovery Cannot run if the Journal file has been switched!
-            final long pos = channel != null ? channel.position() : 0;
-
-            currentLsn = new Lsn(currentJournalFileNumber, pos + currentBuffer.position() + 1);
-        } catch (final IOException e) {
-            throw new JournalException("Unable to create LSN for: " + entry.dump());
-        }
-        entry.setLsn(currentLsn);
+        // NOTE: the LSN is the position in the journal file at which the entry will be written (+1)
+        entry.setLsn(current.lsn(offset));
 
         try {
-            final int currentBufferEntryOffset = currentBuffer.position();
+            final ByteBuffer buffer = current.buffer.duplicate();
+            buffer.limit(offset + required);
+            buffer.position(offset);
 
             // write entryHeader
-            currentBuffer.put(entry.getLogType());
-            currentBuffer.putLong(entry.getTransactionId());
-            currentBuffer.putShort((short) size);
+            buffer.put(entry.getLogType());
+            buffer.putLong(entry.getTransactionId());
+            buffer.putShort((short) size);
 
             // write entry data
-            entry.write(currentBuffer);
+            entry.write(buffer);
 
             // write backlink
-            currentBuffer.putShort((short) (size + LOG_ENTRY_HEADER_LEN));
+            buffer.putShort((short) (size + LOG_ENTRY_HEADER_LEN));
 
             // write checksum
-            final long checksum = xxHash64.hash(currentBuffer, currentBufferEntryOffset, currentBuffer.position() - currentBufferEntryOffset, XXHASH64_SEED);
-            currentBuffer.putLong(checksum);
+            final long checksum = xxHash64.hash(buffer, offset, buffer.position() - offset, XXHASH64_SEED);
+            buffer.putLong(checksum);
         } catch (final BufferOverflowException e) {
             throw new JournalException("Buffer overflow while writing log record: " + entry.dump(), e);
+        } finally {
+            // NOTE: we must always complete our reservation, otherwise the next flush would wait forever
+            if (current.complete(required)) {
+                // we were the last writer of a sealed segment, and no longer hold a reservation, so may take the monitor
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
         }
 
         // NOTE: we don't track operations on txnStart or checkpoints!
@@ -418,7 +465,8 @@ public final class Journal implements Closeable {
         flushBuffer();
 
         try {
-            if (forceSync || (fsync && syncOnCommit && currentLsn.compareTo(lastSyncLsn) > 0)) {
+            // NOTE: the channel is not yet open for transactions which commit before recovery
+            if (channel != null && (forceSync || (fsync && syncOnCommit && currentLsn.compareTo(lastSyncLsn) > 0))) {
                 sync();
                 lastSyncLsn = currentLsn;
             }
@@ -435,35 +483,118 @@ public final class Journal implements Closeable {
         }
     }
 
+    /**
+     * Flush the current buffer to disk on behalf of one or more
+     * committed transactions, see {@link #flushToLog(boolean)}.
+     *
+     * @return the LSN up to which the journal has been flushed.
+     */
+    public synchronized Lsn flushToLogForCommit() {
+        flushToLog(true, false);
+
+        final Segment current = segment;
+        if ((channel == null || inRecovery) && current != null && current.length() > 0) {
+            // nothing can be flushed yet, so there is nothing to wait for
+            return current.lsn(current.length() - 1);
+        }
+        return currentLsn;
+    }
+
     private void sync() throws IOException {
         channel.force(true);
     }
 
     /**
      * Flush the buffer to disk.
+     *
+     * Writers which arrive whilst the buffer is being written
+     * to disk carry on in the spare buffer.
      */
+    @GuardedBy("this")
     private void flushBuffer() {
-        if (currentBuffer == null || channel == null) {
+        final Segment full = segment;
+        if (full == null || channel == null) {
             return; // the db has probably been shut down already or not fully initialized
         }
 
-        try {
-            if (currentBuffer.position() > 0) {
-                currentBuffer.flip();
-                final int size = currentBuffer.remaining();
-                while (currentBuffer.hasRemaining()) {
-                    channel.write(currentBuffer);
-                }
+        final int length = seal(full);
+        if (length < 0) {
+            return; // flushed by another thread whilst we waited for the writers
+        }
+        if (length == 0) {
+            segment = new Segment(full.buffer, full.fileNumber, full.base, 0);
+            return;
+        }
 
-                lastLsnWritten = currentLsn;
-            }
+        final ByteBuffer next = spareBuffer;
+        spareBuffer = full.buffer;
+        segment = new Segment(next, full.fileNumber, full.base + length, 0);
+
+        try {
+            writeSegment(full, length);
         } catch (final IOException e) {
             LOG.warn("Flushing log file failed!", e);
-        } finally {
-            currentBuffer.clear();
         }
     }
 
+    /**
+     * Seal a segment against further reservations, and wait
+     * for the writers which have already reserved space in it.
+     *
+     * The monitor is released whilst waiting, so another thread
+     * may replace the segment in the meantime.
+     *
+     * @param sealing the current segment to seal
+     *
+     * @return the length of the sealed segment, or -1 if the
+     *     segment was replaced by another thread whilst waiting
+     */
+    @GuardedBy("this")
+    private int seal(final Segment sealing) {
+        final int length = sealing.seal();
+        while (!sealing.isComplete()) {
+            awaitWriters();
+        }
+        if (segment != sealing) {
+            return -1;
+        }
+        if (length > 0) {
+            currentLsn = sealing.lsn(length - 1);
+        }
+        return length;
+    }
+
+    /**
+     * Wait for the in-flight writers of a sealed segment, releasing the
+     * monitor until the last of them notifies us, or for at most
+     * {@link #WRITERS_WAIT_MS}.
+     */
+    @GuardedBy("this")
+    private void awaitWriters() {
+        try {
+            wait(WRITERS_WAIT_MS);
+        } catch (final InterruptedException e) {
+            // the writers must still be waited for, restore the interrupt for the caller
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @GuardedBy("this")
+    private void writeSegment(final Segment sealed, final int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+
+        final ByteBuffer buffer = sealed.buffer.duplicate();
+        buffer.limit(length);
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        lastLsnWritten = sealed.lsn(length - 1);
+    }
+
     /**
      * Write a checkpoint record to the journal and flush it. If switchLogFiles is true,
      * a new journal will be started, but only if the file is larger than
@@ -508,6 +639,27 @@ public final class Journal implements Closeable {
      */
     public synchronized void setCurrentJournalFileNumber(final short currentJournalFileNumber) {
         this.currentJournalFileNumber = currentJournalFileNumber;
+
+        // entries from now on are numbered against the new file number
+        Segment current;
+        int pending = 0;
+        while ((current = segment) != null && (pending = seal(current)) < 0) {
+            // replaced whilst waiting for the writers, seal the replacement
+        }
+        if (current != null) {
+            segment = new Segment(current.buffer, currentJournalFileNumber, channelPosition(), pending);
+        }
+    }
+
+    @GuardedBy("this")
+    private long channelPosition() {
+        // TODO(AR) the journal is initialised by starting a transaction for loading the SymbolTable... before recovery! which is likely wrong!!! as Recovery Cannot run if the Journal file has been switched!
+        try {
+            return channel != null && channel.isOpen() ? channel.position() : 0;
+        } catch (final IOException e) {
+            LOG.warn("Unable to determine the position of the journal: {}", e.getMessage(), e);
+            return 0;
+        }
     }
 
     /**
@@ -573,7 +725,18 @@ public final class Journal implements Closeable {
             LOG.debug("Creating new journal: {}", newJournalFile.toAbsolutePath().toString());
         }
 
+        Segment current;
+        int pending = 0;
+        while ((current = segment) != null && (pending = seal(current)) < 0) {
+            // replaced whilst waiting for the writers, seal the replacement
+        }
         try {
+            if (pending > 0 && channel != null) {
+                // entries which have already been given an LSN in the current journal file belong in it
+                writeSegment(current, pending);
+                pending = 0;
+            }
+
             // close current journal file
             close();
 
@@ -584,6 +747,10 @@ public final class Journal implements Closeable {
             currentJournalFileNumber = newJournalFileNumber;
         } catch (final IOException e) {
             throw new LogException("Failed to open new journal: " + newJournalFile.toAbsolutePath().toString(), e);
+        } finally {
+            if (current != null) {
+                segment = new Segment(current.buffer, currentJournalFileNumber, channelPosition(), pending);
+            }
         }
     }
 
@@ -724,7 +891,7 @@ public final class Journal implements Closeable {
             return;
         }
 
-        if (currentBuffer == null) {
+        if (segment == null) {
             return; // the db has probably shut down already
         }
 
@@ -737,7 +904,24 @@ public final class Journal implements Closeable {
                     LOG.error("An error occurred whilst writing a checkpoint to the Journal: {}", e.getMessage(), e);
                 }
             }
-            flushBuffer();
+        }
+
+        // no further entries may be written
+        Segment last;
+        int length = 0;
+        while ((last = segment) != null && (length = seal(last)) < 0) {
+            // replaced whilst waiting for the writers, seal the replacement
+        }
+        if (last == null) {
+            return; // shut down by another thread whilst we waited for the writers
+        }
+        segment = null;
+        if (!BrokerPool.FORCE_CORRUPTION && channel != null) {
+            try {
+                writeSegment(last, length);
+            } catch (final IOException e) {
+                LOG.warn("Flushing log file failed!", e);
+            }
         }
 
         try {
@@ -747,7 +931,7 @@ public final class Journal implements Closeable {
         }
         channel = null;
         fileLock.release();
-        currentBuffer = null;
+        spareBuffer = null;
     }
 
     /**
@@ -776,6 +960,125 @@ public final class Journal implements Closeable {
         return String.format("%010x", fileNum) + '.' + LOG_FILE_SUFFIX;
     }
 
+    /**
+     * A region of the journal buffer which accepts entries, starting
+     * at a known position in a known journal file.
+     *
+     * Space is reserved in the segment lock-free, until the segment is
+     * sealed by the thread flushing the journal.
+     */
+    @ThreadSafe
+    private static final class Segment {
+        private static final int SEALED = Integer.MIN_VALUE;
+
+        private final ByteBuffer buffer;
+        private final short fileNumber;
+        private final long base;
+
+        /**
+         * the number of bytes reserved, and the {@link #SEALED} flag
+         */
+        private final AtomicInteger reserved;
+
+        /**
+         * the number of bytes written by the writers which reserved them
+         */
+        private final AtomicInteger completed;
+
+        /**
+         * true once the segment is sealed, and the sealing thread may be waiting for the writers
+         */
+        private volatile boolean awaited;
+
+        /**
+         * @param buffer the buffer to write the entries into
+         * @param fileNumber the number of the journal file that the entries will be written to
+         * @param base the position in the journal file that the start of the buffer will be written to
+         * @param start the number of bytes at the start of the buffer which are already occupied
+         */
+        Segment(final ByteBuffer buffer, final short fileNumber, final long base, final int start) {
+            this.buffer = buffer;
+            this.fileNumber = fileNumber;
+            this.base = base;
+            this.reserved = new AtomicInteger(start);
+            this.completed = new AtomicInteger(start);
+        }
+
+        /**
+         * Reserve space for an entry.
+         *
+         * @param length the number of bytes to reserve
+         *
+         * @return the offset of the reserved space in the buffer, or -1 if the segment
+         *     is sealed or does not have enough space remaining
+         */
+        int reserve(final int length) {
+            while (true) {
+                final int current = reserved.get();
+                if ((current & SEALED) != 0 || current + length > buffer.capacity()) {
+                    return -1;
+                }
+                if (reserved.compareAndSet(current, current + length)) {
+                    return current;
+                }
+            }
+        }
+
+        /**
+         * Signal that the writer has finished writing its reserved space.
+         *
+         * @param length the number of bytes that were reserved
+         *
+         * @return true if this was the last writer of the sealed segment,
+         *     and the sealing thread may be waiting to be notified
+         */
+        boolean complete(final int length) {
+            final int done = completed.addAndGet(length);
+            final int current = reserved.get();
+            return (current & SEALED) != 0 && done == (current & ~SEALED) && awaited;
+        }
+
+        /**
+         * Seal the segment against further reservations. The writers which have
+         * already reserved space may still be in-flight, see {@link #isComplete()}.
+         *
+         * @return the number of bytes occupied in the buffer
+         */
+        int seal() {
+            final int length = reserved.getAndUpdate(current -> current | SEALED) & ~SEALED;
+            // NOTE: set after sealing and before checking completion, so that the last writer cannot miss it
+            awaited = true;
+            return length;
+        }
+
+        boolean isSealed() {
+            return (reserved.get() & SEALED) != 0;
+        }
+
+        /**
+         * Determine if all writers which reserved space in the segment have completed.
+         *
+         * @return true if the segment is sealed and has no in-flight writers
+         */
+        boolean isComplete() {
+            final int current = reserved.get();
+            return (current & SEALED) != 0 && completed.get() == (current & ~SEALED);
+        }
+
+        /**
+         * Get the number of bytes reserved in the buffer.
+         *
+         * @return the number of bytes reserved
+         */
+        int length() {
+            return reserved.get() & ~SEALED;
+        }
+
+        Lsn lsn(final int offset) {
+            return new Lsn(fileNumber, base + offset + 1);
+        }
+    }
+
     private static class RemoveRunnable implements Runnable {
         private final SeekableByteChannel channel;
         private final Path path;
@@ -43,6 +43,7 @@ import org.exist.storage.BrokerPoolServiceException;
 import org.exist.storage.recovery.RecoveryManager;
 import org.exist.util.Configuration;
 import org.exist.util.ReadOnlyException;
+import org.exist.util.ThreadUtils;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -60,9 +61,13 @@ public class JournalManager implements BrokerPoolService {
     private static final Logger LOG = LogManager.getLogger(JournalManager.class);
 
     @GuardedBy("this") private Path journalDir;
-    @GuardedBy("this") private boolean groupCommits;
-    @GuardedBy("this") private Journal journal;
-    @GuardedBy("this") private boolean journallingDisabled = false;
+    private volatile boolean groupCommits;
+    @GuardedBy("this") private boolean batchCommits;
+    @GuardedBy("this") private long batchCommitMaxWait;
+    @GuardedBy("this") private int batchCommitSize;
+    private volatile BatchCommitter batchCommitter;
+    private volatile Journal journal;
+    private volatile boolean journallingDisabled = false;
     @GuardedBy("this") private boolean initialized = false;
 
     private final List<JournalListener> journalListeners = new CopyOnWriteArrayList<>();
@@ -72,8 +77,17 @@ public class JournalManager implements BrokerPoolService {
         this.journalDir = (Path) Optional.ofNullable(configuration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR))
                 .orElse(configuration.getProperty(BrokerPool.PROPERTY_DATA_DIR));
         this.groupCommits = configuration.getProperty(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, false);
+        this.batchCommits = configuration.getProperty(BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT, false);
+        this.batchCommitMaxWait = (Long) Optional.ofNullable(configuration.getProperty(BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT_MAX_WAIT))
+                .orElse(BatchCommitter.DEFAULT_MAX_WAIT);
+        this.batchCommitSize = (Integer) Optional.ofNullable(configuration.getProperty(BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT_SIZE))
+                .orElse(BatchCommitter.DEFAULT_BATCH_SIZE);
+        if (groupCommits && batchCommits) {
+            LOG.warn("Both group-commit and batch-commit are enabled, group-commit is ignored");
+            this.groupCommits = false;
+        }
         if (LOG.isDebugEnabled()) {
-            LOG.debug("GroupCommits = {}", groupCommits);
+            LOG.debug("GroupCommits = {}, BatchCommits = {}, MaxWait = {}ms, BatchSize = {}", groupCommits, batchCommits, batchCommitMaxWait, batchCommitSize);
         }
     }
 
@@ -84,6 +98,11 @@ public class JournalManager implements BrokerPoolService {
                 this.journal = new Journal(pool, journalDir);
                 this.journal.initialize();
                 this.initialized = true;
+
+                if (batchCommits) {
+                    this.batchCommitter = new BatchCommitter(journal::flushToLogForCommit, batchCommitMaxWait, batchCommitSize);
+                    this.batchCommitter.start(flusher -> ThreadUtils.newInstanceThread(pool, "journal.batch-commit", flusher));
+                }
             } catch(final EXistException | ReadOnlyException e) {
                 throw new BrokerPoolServiceException(e);
             }
@@ -97,13 +116,15 @@ public class JournalManager implements BrokerPoolService {
     /**
      * Write a single entry to the journal
      *
+     * Entries may be written concurrently by many threads.
+     *
      * @see Journal#writeToLog(Loggable)
      *
      * @param loggable The entry to write in the journal
      *
      * @throws JournalException of the journal entry cannot be written
      */
-    public synchronized void journal(final Loggable loggable) throws JournalException {
+    public void journal(final Loggable loggable) throws JournalException {
         if (!journallingDisabled) {
             journal.writeToLog(loggable);
         }
@@ -112,6 +133,12 @@ public class JournalManager implements BrokerPoolService {
     /**
      * Write a group of entrys to the journal
      *
+     * If batch commit is enabled, the calling thread waits until
+     * the batch committer has flushed the journal on behalf of
+     * this and any other concurrently committing transactions.
+     * Otherwise, unless group commit is enabled, the journal is
+     * flushed immediately.
+     *
      * @see Journal#writeToLog(Loggable)
      * @see Journal#flushToLog(boolean)
      *
@@ -119,12 +146,26 @@ public class JournalManager implements BrokerPoolService {
      *
      * @throws JournalException of the journal group cannot be written
      */
-    public synchronized void journalGroup(final Loggable loggable) throws JournalException {
-        if (!journallingDisabled) {
-            journal.writeToLog(loggable);
-            if (!groupCommits) {
-                journal.flushToLog(true);
+    public void journalGroup(final Loggable loggable) throws JournalException {
+        if (journallingDisabled) {
+            return;
+        }
+
+        journal.writeToLog(loggable);
+
+        final BatchCommitter committer = batchCommitter;
+        if (committer != null) {
+            if (!committer.awaitDurable(loggable.getLsn())) {
+                // the committer was stopped by a concurrent shutdown
+                synchronized (this) {
+                    if (initialized) {
+                        journal.flushToLog(true, true);
+                    }
+                    // otherwise the journal was flushed on shutdown
+                }
             }
+        } else if (!groupCommits) {
+            journal.flushToLog(true);
         }
     }
 
@@ -180,6 +221,10 @@ public class JournalManager implements BrokerPoolService {
      * @param checkpoint Whether to write a checkpoint before shutdown
      */
     public synchronized void shutdown(final long transactionId, final boolean checkpoint) {
+        if (batchCommitter != null) {
+            batchCommitter.shutdown();
+            batchCommitter = null;
+        }
         if(initialized) {
             journal.shutdown(transactionId, checkpoint);
             initialized = false;
@@ -197,6 +242,42 @@ public class JournalManager implements BrokerPoolService {
 
 
 
+    /**
+     * Determines if batch commit is enabled.
+     *
+     * @return true if batch commit is enabled
+     */
+    public boolean isBatchCommit() {
+        return batchCommitter != null;
+    }
+
+    /**
+     * Get the maximum time that the batch commit waits for a batch to fill up.
+     *
+     * @return the maximum wait in milliseconds
+     */
+    public synchronized long getBatchCommitMaxWait() {
+        return batchCommitMaxWait;
+    }
+
+    /**
+     * Get the number of waiting commits which causes the batch commit to flush immediately.
+     *
+     * @return the batch size
+     */
+    public synchronized int getBatchCommitSize() {
+        return batchCommitSize;
+    }
+
+    /**
+     * Get a statistics snapshot of the batch commit.
+     *
+     * @return the statistics, or {@link Optional#empty()} if batch commit is not enabled
+     */
+    public Optional<BatchCommitStatistics> getBatchCommitStatistics() {
+        return Optional.ofNullable(batchCommitter).map(BatchCommitter::getStatistics);
+    }
+
     public RecoveryManager.JournalRecoveryAccessor getRecoveryAccessor(final RecoveryManager recoveryManager) {
         return recoveryManager.new JournalRecoveryAccessor(
                 journal::setInRecovery, journal::getFiles, journal::getFile, journal::setCurrentJournalFileNumber,
@@ -116,6 +116,18 @@ public class DataGuide {
         return temp.getMaxDepth();
     }
 
+    /**
+     * Returns the number of elements with the given name, summed
+     * up over all paths leading to the element.
+     *
+     * @param qname the name of the element
+     *
+     * @return the number of elements
+     */
+    public long getNodeCount(QName qname) {
+        return root.getNodeCount(qname);
+    }
+
     public String toString() {
         final List<StringBuilder> paths = new ArrayList<>();
         root.dump(new StringBuilder(), paths);
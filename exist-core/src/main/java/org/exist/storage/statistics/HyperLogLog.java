@@ -0,0 +1,125 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.statistics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct keys added to it
+ * using a fixed amount of memory. With the 4096 registers used here, the standard
+ * error of the estimate is about 1.6%.
+ *
+ * Keys cannot be removed from a sketch, so after removals the estimate is an
+ * upper bound of the number of distinct keys.
+ */
+public class HyperLogLog {
+
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     * Adds a key to the sketch.
+     *
+     * @param key the key
+     */
+    public void add(final byte[] key) {
+        final long hash = hash(key);
+        final int register = (int) (hash >>> (64 - PRECISION));
+        final int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct keys added to the sketch
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (final byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        final double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // linear counting is more accurate for small cardinalities
+            return Math.round(REGISTERS * Math.log((double) REGISTERS / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds all keys of another sketch to this one.
+     *
+     * @param other the other sketch
+     */
+    public void merge(final HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Removes all keys from the sketch.
+     */
+    public void clear() {
+        for (int i = 0; i < REGISTERS; i++) {
+            registers[i] = 0;
+        }
+    }
+
+    public void write(final DataOutput os) throws IOException {
+        os.write(registers);
+    }
+
+    public void read(final DataInput is) throws IOException {
+        is.readFully(registers);
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the key, followed by the finalizer of MurmurHash3
+     * to spread the bits of short keys.
+     */
+    private static long hash(final byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (final byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb3fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -30,6 +30,7 @@ import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
 import org.exist.storage.btree.DBException;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
@@ -70,6 +71,20 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
         return dataGuide.getMaxParentDepth(qname);
     }
 
+    /**
+     * Returns the number of elements with the given name in the database.
+     *
+     * @param qname the name of the element
+     *
+     * @return the number of elements, or -1 if the name does not denote an element
+     */
+    public long getNodeCount(QName qname) {
+        if (qname.getNameType() != ElementValue.ELEMENT) {
+            return -1;
+        }
+        return dataGuide.getNodeCount(qname);
+    }
+
     protected void mergeStats(DataGuide other) {
         dataGuide = other.mergeInto(dataGuide);
     }
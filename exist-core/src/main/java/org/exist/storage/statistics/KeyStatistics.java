@@ -0,0 +1,267 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.statistics;
+
+import net.jcip.annotations.ThreadSafe;
+import org.exist.EXistException;
+import org.exist.storage.ValueIndexFactory;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.AtomicValue;
+
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Describes the distribution of the keys stored in an index for a single name,
+ * e.g. the keys of the range index on an element.
+ *
+ * The statistics consist of the number of keys, a {@link HyperLogLog} sketch of the
+ * number of distinct keys and a uniform random sample of the keys, from which an
+ * equi-depth histogram is derived. Long keys are truncated in the sample. Keys are
+ * compared as unsigned byte arrays, so they have to be serialized in an order
+ * preserving way, e.g. by {@link org.exist.storage.Indexable#serializeValue(int)}.
+ *
+ * The statistics are maintained incrementally as keys are added and removed. The
+ * distinct count cannot be decreased on removal, it is reset once all keys are removed.
+ */
+@ThreadSafe
+public class KeyStatistics {
+
+    /**
+     * The maximum number of keys in the sample.
+     */
+    static final int SAMPLE_SIZE = 512;
+
+    /**
+     * Keys in the sample are truncated to this number of bytes.
+     */
+    static final int MAX_SAMPLE_KEY_LENGTH = 256;
+
+    private long count = 0;
+    private final HyperLogLog distinct = new HyperLogLog();
+
+    // reservoir sample of the keys
+    private final byte[][] sample = new byte[SAMPLE_SIZE][];
+    private int sampleSize = 0;
+    private long seen = 0;
+    private long random = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Records that a key has been stored in the index.
+     *
+     * @param key the serialized key
+     * @param occurrences the number of nodes stored with the key
+     */
+    public synchronized void add(final byte[] key, final int occurrences) {
+        count += occurrences;
+        distinct.add(key);
+
+        seen++;
+        if (sampleSize < SAMPLE_SIZE) {
+            sample[sampleSize++] = sampleKey(key);
+        } else {
+            final long r = Long.remainderUnsigned(nextRandom(), seen);
+            if (r < SAMPLE_SIZE) {
+                sample[(int) r] = sampleKey(key);
+            }
+        }
+    }
+
+    /**
+     * Records that a key has been removed from the index.
+     *
+     * @param key the serialized key
+     * @param occurrences the number of nodes removed with the key
+     */
+    public synchronized void remove(final byte[] key, final int occurrences) {
+        count = Math.max(0, count - occurrences);
+        if (count == 0) {
+            clear();
+            return;
+        }
+        final byte[] sampled = sampleKey(key);
+        for (int i = 0; i < sampleSize; i++) {
+            if (Arrays.equals(sample[i], sampled)) {
+                sample[i] = sample[--sampleSize];
+                sample[sampleSize] = null;
+                seen = Math.max(sampleSize, seen - 1);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public synchronized void clear() {
+        count = 0;
+        distinct.clear();
+        Arrays.fill(sample, null);
+        sampleSize = 0;
+        seen = 0;
+    }
+
+    /**
+     * @return the number of nodes stored in the index
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the estimated number of distinct keys
+     */
+    public synchronized long getDistinctCount() {
+        return count == 0 ? 0 : Math.max(1, Math.min(count, distinct.estimate()));
+    }
+
+    /**
+     * Estimates the fraction of the nodes which are selected by an equality comparison,
+     * assuming that all keys occur equally often.
+     *
+     * @return the estimated selectivity, or -1 if there are no keys
+     */
+    public synchronized double estimateEquals() {
+        final long distinctCount = getDistinctCount();
+        return distinctCount == 0 ? -1 : 1.0 / distinctCount;
+    }
+
+    /**
+     * Estimates the fraction of the nodes whose key is in the given range.
+     *
+     * @param lower the lower bound, or null if the range is open to the left
+     * @param upper the upper bound, or null if the range is open to the right
+     * @param inclusive true if keys equal to one of the bounds are in the range
+     *
+     * @return the estimated selectivity, or -1 if there are no keys
+     */
+    public synchronized double estimateRange(@Nullable final byte[] lower, @Nullable final byte[] upper,
+            final boolean inclusive) {
+        if (sampleSize == 0) {
+            return -1;
+        }
+        int matches = 0;
+        for (int i = 0; i < sampleSize; i++) {
+            final byte[] key = sample[i];
+            if (lower != null) {
+                final int cmp = compare(key, lower);
+                if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                    continue;
+                }
+            }
+            if (upper != null) {
+                final int cmp = compare(key, upper);
+                if (cmp > 0 || (cmp == 0 && !inclusive)) {
+                    continue;
+                }
+            }
+            matches++;
+        }
+        return (double) matches / sampleSize;
+    }
+
+    /**
+     * Computes an equi-depth histogram of the keys, i.e. the upper bounds of buckets
+     * which each hold about the same number of keys.
+     *
+     * @param buckets the maximum number of buckets
+     *
+     * @return the inclusive upper bound of each bucket, in ascending order
+     */
+    public synchronized byte[][] getHistogram(final int buckets) {
+        if (sampleSize == 0 || buckets < 1) {
+            return new byte[0][];
+        }
+        final byte[][] sorted = Arrays.copyOf(sample, sampleSize);
+        Arrays.sort(sorted, KeyStatistics::compare);
+
+        final int n = Math.min(buckets, sorted.length);
+        final byte[][] bounds = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            bounds[i] = sorted[(int) (((long) (i + 1) * sorted.length) / n) - 1];
+        }
+        return bounds;
+    }
+
+    public synchronized void write(final DataOutput os) throws IOException {
+        os.writeLong(count);
+        os.writeLong(seen);
+        distinct.write(os);
+        os.writeInt(sampleSize);
+        for (int i = 0; i < sampleSize; i++) {
+            os.writeShort(sample[i].length);
+            os.write(sample[i]);
+        }
+    }
+
+    public synchronized void read(final DataInput is) throws IOException {
+        count = is.readLong();
+        seen = is.readLong();
+        distinct.read(is);
+        sampleSize = is.readInt();
+        for (int i = 0; i < sampleSize; i++) {
+            sample[i] = new byte[is.readUnsignedShort()];
+            is.readFully(sample[i]);
+        }
+    }
+
+    /**
+     * Returns the string value of a key serialized by {@link org.exist.storage.Indexable#serializeValue(int)}.
+     *
+     * @param key the serialized key
+     *
+     * @return the string value, or null if the key cannot be deserialized, e.g. because it has been truncated
+     */
+    public static @Nullable String toString(final byte[] key) {
+        try {
+            return ((AtomicValue) ValueIndexFactory.deserialize(key, 0, key.length)).getStringValue();
+        } catch (final EXistException | XPathException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static byte[] sampleKey(final byte[] key) {
+        return key.length > MAX_SAMPLE_KEY_LENGTH ? Arrays.copyOf(key, MAX_SAMPLE_KEY_LENGTH) : key;
+    }
+
+    private long nextRandom() {
+        // xorshift64*
+        random ^= random >>> 12;
+        random ^= random << 25;
+        random ^= random >>> 27;
+        return random * 0x2545f4914f6cdd1dL;
+    }
+
+    static int compare(final byte[] k1, final byte[] k2) {
+        final int len = Math.min(k1.length, k2.length);
+        for (int i = 0; i < len; i++) {
+            final int cmp = (k1[i] & 0xff) - (k2[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return k1.length - k2.length;
+    }
+}
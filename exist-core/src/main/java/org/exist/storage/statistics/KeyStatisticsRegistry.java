@@ -0,0 +1,206 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.statistics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.QName;
+import org.exist.indexing.Index;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.ElementValue;
+import org.exist.storage.NativeValueIndex;
+import org.exist.util.FileUtils;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link KeyStatistics} of an index, one for each indexed name, and
+ * persists them to a file next to the index.
+ */
+public class KeyStatisticsRegistry {
+
+    private final static Logger LOG = LogManager.getLogger(KeyStatisticsRegistry.class);
+
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    private final String indexName;
+    private final Path file;
+    private final Map<String, KeyStatistics> statistics = new ConcurrentHashMap<>();
+    private volatile boolean dirty = false;
+
+    /**
+     * @param indexName the name of the index, used for reporting
+     * @param file the file the statistics are persisted to
+     */
+    public KeyStatisticsRegistry(final String indexName, final Path file) {
+        this.indexName = indexName;
+        this.file = file;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * Returns the statistics for a name, creating them if necessary.
+     *
+     * @param name the indexed name, see {@link #nameOf(QName)}
+     *
+     * @return the statistics
+     */
+    public KeyStatistics get(final String name) {
+        dirty = true;
+        return statistics.computeIfAbsent(name, n -> new KeyStatistics());
+    }
+
+    /**
+     * Returns the statistics for a name, if there are any.
+     *
+     * @param name the indexed name, see {@link #nameOf(QName)}
+     *
+     * @return the statistics, or null
+     */
+    public @Nullable KeyStatistics find(final String name) {
+        return statistics.get(name);
+    }
+
+    /**
+     * @return the statistics of all names, ordered by name
+     */
+    public Map<String, KeyStatistics> getAll() {
+        return new TreeMap<>(statistics);
+    }
+
+    /**
+     * Removes all statistics.
+     */
+    public void clear() {
+        statistics.clear();
+        dirty = true;
+    }
+
+    /**
+     * Loads the statistics from the file, if it exists.
+     */
+    public void load() {
+        statistics.clear();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (is.readInt() != FILE_FORMAT_VERSION) {
+                LOG.warn("Ignoring key statistics in {} written by a different version", FileUtils.fileName(file));
+                return;
+            }
+            final int size = is.readInt();
+            for (int i = 0; i < size; i++) {
+                final String name = is.readUTF();
+                final KeyStatistics stats = new KeyStatistics();
+                stats.read(is);
+                statistics.put(name, stats);
+            }
+        } catch (final IOException e) {
+            LOG.warn("Unable to read key statistics from {}: {}", FileUtils.fileName(file), e.getMessage(), e);
+            statistics.clear();
+        }
+        dirty = false;
+    }
+
+    /**
+     * Writes the statistics to the file, if they have changed since they were last loaded or saved.
+     */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        final Path tmp = file.resolveSibling(FileUtils.fileName(file) + ".tmp");
+        try {
+            try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                final Map<String, KeyStatistics> all = getAll();
+                os.writeInt(FILE_FORMAT_VERSION);
+                os.writeInt(all.size());
+                for (final Map.Entry<String, KeyStatistics> entry : all.entrySet()) {
+                    os.writeUTF(entry.getKey());
+                    entry.getValue().write(os);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            dirty = true;
+            LOG.warn("Unable to write key statistics to {}: {}", FileUtils.fileName(file), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the file of the statistics.
+     */
+    public void remove() {
+        statistics.clear();
+        dirty = false;
+        FileUtils.deleteQuietly(file);
+    }
+
+    /**
+     * Returns the name under which the keys of nodes with the given name are recorded.
+     *
+     * @param qname the name of the indexed element or attribute
+     *
+     * @return the name of the statistics
+     */
+    public static String nameOf(final QName qname) {
+        final String name = qname.toURIQualifiedName();
+        return qname.getNameType() == ElementValue.ATTRIBUTE ? "@" + name : name;
+    }
+
+    /**
+     * Returns the key statistics of all indexes of a database which maintain them.
+     *
+     * @param pool the database
+     *
+     * @return the key statistics of each index
+     */
+    public static List<KeyStatisticsRegistry> getAll(final BrokerPool pool) {
+        final List<KeyStatisticsRegistry> registries = new ArrayList<>();
+        final Object values = pool.getConfiguration().getProperty(NativeValueIndex.STATISTICS_KEY_IN_CONFIG);
+        if (values instanceof KeyStatisticsRegistry) {
+            registries.add((KeyStatisticsRegistry) values);
+        }
+        if (pool.getIndexManager() != null) {
+            for (final Index index : pool.getIndexManager().getIndexes()) {
+                if (index instanceof KeyStatisticsProvider) {
+                    registries.add(((KeyStatisticsProvider) index).getKeyStatistics());
+                }
+            }
+        }
+        return registries;
+    }
+}
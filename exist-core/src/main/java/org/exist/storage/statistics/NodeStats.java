@@ -126,6 +126,16 @@ class NodeStats {
         return s;
     }
 
+    protected long getNodeCount(QName name) {
+        long count = qname != null && qname.equals(name) ? nodeCount : 0;
+        if (children != null) {
+            for (NodeStats child : children) {
+                count += child.getNodeCount(name);
+            }
+        }
+        return count;
+    }
+
     protected void getMaxParentDepth(QName name, NodeStats max) {
         if (parent != null && qname != null && qname.equals(name)) {
             max.maxDepth = Math.max(parent.maxDepth, max.maxDepth);
@@ -24,6 +24,9 @@ package org.exist.storage.structural;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
@@ -31,11 +34,15 @@ import org.apache.logging.log4j.Logger;
 import org.exist.backup.RawDataBackup;
 import org.exist.dom.persistent.SymbolTable;
 import org.exist.indexing.AbstractIndex;
+import org.exist.indexing.BulkLoadSupport;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.BTreeException;
+import org.exist.storage.btree.BulkLoader;
 import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.Value;
 import org.exist.storage.index.BTreeStore;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.ManagedLock;
@@ -44,7 +51,7 @@ import org.exist.util.FileUtils;
 import org.exist.util.LockException;
 import org.w3c.dom.Element;
 
-public class NativeStructuralIndex extends AbstractIndex implements RawBackupSupport {
+public class NativeStructuralIndex extends AbstractIndex implements RawBackupSupport, BulkLoadSupport {
 
     protected static final Logger LOG = LogManager.getLogger(NativeStructuralIndex.class);
 
@@ -60,6 +67,13 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
     protected LockManager lockManager;
     protected SymbolTable symbols;
 
+    /**
+     * The bulk loads in progress, by the broker which started them. Only the entries
+     * added by that broker are deferred, those of other brokers are written directly,
+     * so that the documents they store are visible to queries. Guarded by the btree lock
+     */
+    private final Map<DBBroker, BulkLoad> bulkLoads = new IdentityHashMap<>();
+
     public NativeStructuralIndex() {
         //Nothing to do
     }
@@ -86,6 +100,18 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
 
     @Override
     public void close() throws DBException {
+        // do not lose the entries of the bulk loads which were not finished
+        try {
+            for (final BulkLoad bulkLoad : bulkLoads.values()) {
+                try {
+                    bulkLoad.load();
+                } finally {
+                    bulkLoad.loader.close();
+                }
+            }
+        } finally {
+            bulkLoads.clear();
+        }
         btree.close();
         btree = null;
     }
@@ -111,9 +137,127 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         btree.closeAndRemove();
     }
 
+    @Override
+    public void startBulkLoad(final DBBroker broker) throws DBException {
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+            bulkLoads.computeIfAbsent(broker, b -> new BulkLoad(new BulkLoader(btree))).nesting++;
+        } catch (final LockException e) {
+            throw new DBException("Failed to acquire lock for '" + FileUtils.fileName(btree.getFile()) + "': " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void finishBulkLoad(final DBBroker broker) throws DBException {
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+            final BulkLoad bulkLoad = bulkLoads.get(broker);
+            if (bulkLoad == null || --bulkLoad.nesting > 0) {
+                return;
+            }
+            bulkLoads.remove(broker);
+            try {
+                bulkLoad.load();
+            } finally {
+                bulkLoad.loader.close();
+            }
+        } catch (final LockException e) {
+            throw new DBException("Failed to acquire lock for '" + FileUtils.fileName(btree.getFile()) + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Add an entry to the btree, or defer it if the broker is bulk loading.
+     * The caller has to hold the btree write lock.
+     *
+     * @param broker the broker which stores the document
+     * @param docId the id of the document the entry belongs to
+     * @param key the key of the entry
+     * @param pointer the value of the entry
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the btree
+     */
+    protected void addEntry(final DBBroker broker, final int docId, final Value key, final long pointer) throws IOException, BTreeException {
+        final BulkLoad bulkLoad = bulkLoads.isEmpty() ? null : bulkLoads.get(broker);
+        if (bulkLoad == null) {
+            btree.addValue(key, pointer);
+        } else {
+            bulkLoad.add(docId, key, pointer);
+        }
+    }
+
+    /**
+     * Add an entry to the btree unless its key is already present, or defer it if the
+     * broker is bulk loading, which keeps only the last of the entries with equal keys.
+     * The caller has to hold the btree write lock.
+     *
+     * @param broker the broker which stores the document
+     * @param docId the id of the document the entry belongs to
+     * @param key the key of the entry
+     * @param pointer the value of the entry
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the btree
+     */
+    protected void addEntryIfAbsent(final DBBroker broker, final int docId, final Value key, final long pointer) throws IOException, BTreeException {
+        final BulkLoad bulkLoad = bulkLoads.isEmpty() ? null : bulkLoads.get(broker);
+        if (bulkLoad == null) {
+            if (btree.findValue(key) == -1) {
+                btree.addValue(key, pointer);
+            }
+        } else {
+            bulkLoad.add(docId, key, pointer);
+        }
+    }
+
+    /**
+     * Write the entries of the given document deferred by a bulk load, if any, so that they
+     * can be modified. The caller has to hold the btree write lock.
+     *
+     * @param docId the id of the document
+     *
+     * @throws DBException if the entries could not be written
+     */
+    protected void flushBulkEntries(final int docId) throws DBException {
+        for (final BulkLoad bulkLoad : bulkLoads.values()) {
+            if (bulkLoad.docs.get(docId)) {
+                bulkLoad.load();
+            }
+        }
+    }
+
+    /**
+     * The entries deferred by the bulk load of a broker.
+     */
+    private static class BulkLoad {
+        private final BulkLoader loader;
+        /** The ids of the documents having entries in the loader */
+        private final BitSet docs = new BitSet();
+        /** The number of bulk loads started by the broker, which may be nested */
+        private int nesting = 0;
+
+        BulkLoad(final BulkLoader loader) {
+            this.loader = loader;
+        }
+
+        void add(final int docId, final Value key, final long pointer) throws IOException {
+            loader.add(key, pointer);
+            docs.set(docId);
+        }
+
+        void load() throws DBException {
+            try {
+                loader.finish();
+            } catch (final IOException e) {
+                throw new DBException("Failed to load structural index entries: " + e.getMessage());
+            } finally {
+                docs.clear();
+            }
+        }
+    }
+
     @Override
     public IndexWorker getWorker(DBBroker broker) {
-        return new NativeStructuralIndexWorker(this);
+        return new NativeStructuralIndexWorker(this, broker);
     }
 
     @Override
@@ -33,6 +33,7 @@ import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.IStoredNode;
 import org.exist.dom.persistent.SymbolTable;
 import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.PackedNodeSet;
 import org.exist.dom.persistent.ExtNodeSet;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.collections.Collection;
@@ -42,6 +43,7 @@ import org.exist.numbering.NodeId;
 import org.exist.storage.*;
 import org.exist.storage.btree.BTree;
 import org.exist.storage.btree.BTreeCallback;
+import org.exist.storage.btree.DBException;
 import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 
@@ -70,6 +72,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     private final static Logger LOG = LogManager.getLogger(NativeStructuralIndexWorker.class);
 
     private NativeStructuralIndex index;
+    private final DBBroker broker;
     private ReindexMode mode = ReindexMode.STORE;
     private DocumentImpl document;
 
@@ -77,8 +80,9 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     //nameType out of QName
     private Map<QName, List<NodeProxy>> pending = new TreeMap<>(new TypedQNameComparator());
 
-    public NativeStructuralIndexWorker(NativeStructuralIndex index) {
+    public NativeStructuralIndexWorker(NativeStructuralIndex index, DBBroker broker) {
         this.index = index;
+        this.broker = broker;
     }
 
     public boolean matchElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector) {
@@ -263,6 +267,257 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         return result;
     }
 
+    /**
+     * Find all elements selected by a path of child and descendant steps, starting at the document
+     * nodes in docs.
+     *
+     * This implementation reads the index entries for the QName of every step (and of every condition
+     * attached to a step) in document order and merges them in a single pass, keeping one stack of
+     * open ancestors per step. A node is pushed onto the stack of its step only if the stack of the
+     * previous step holds a matching ancestor (or parent), so no node set is computed for the
+     * intermediate steps. The entries of a step are only read for documents which contain
+     * candidates for the previous step.
+     *
+     * @param path the steps of the path
+     * @param docs the document set
+     * @param parent the expression on whose behalf the index is queried, or null
+     *
+     * @return the elements selected by the last step
+     */
+    public NodeSet findDescendantsByPath(final StructuralPathStep[] path, final DocumentSet docs, final Expression parent) {
+        final QName leaf = path[path.length - 1].getQName();
+        final QName qname = leaf.getNameType() == ElementValue.ELEMENT ? leaf :
+                new QName(leaf.getLocalPart(), leaf.getNamespaceURI(), leaf.getPrefix(), ElementValue.ELEMENT);
+        // the result may be large and does not track contexts: keep it packed
+        final PackedNodeSet result = new PackedNodeSet(qname);
+
+        for (final Range range : getDocIdRanges(docs)) {
+            final NodeStream[] streams = new NodeStream[path.length];
+            List<Range> ranges = Collections.singletonList(range);
+            for (int i = 0; i < path.length && ranges != null; i++) {
+                NodeStream stream = readStream(ElementValue.ELEMENT, path[i].getQName(), ranges, parent);
+                for (final StructuralPathStep condition : path[i].getConditions()) {
+                    if (stream.size == 0) {
+                        break;
+                    }
+                    final NodeStream conditionStream = readStream(condition.getType(), condition.getQName(),
+                            stream.getDocIdRanges(), parent);
+                    stream = stream.selectByCondition(conditionStream, condition.getAxis());
+                }
+                streams[i] = stream;
+                // the next step can only match within documents which have candidates for this step
+                ranges = stream.size == 0 ? null : stream.getDocIdRanges();
+            }
+            if (ranges != null) {
+                joinPath(path, streams, docs, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merge the streams read for each step of the path, adding the nodes of the last stream which
+     * are connected to the document node by a chain of matching ancestors to result.
+     */
+    private void joinPath(final StructuralPathStep[] path, final NodeStream[] streams, final DocumentSet docs,
+                          final PackedNodeSet result) {
+        final int last = streams.length - 1;
+        final int[] positions = new int[streams.length];
+        final int[][] stacks = new int[last][8];
+        final int[] tops = new int[last];
+        Arrays.fill(tops, -1);
+
+        while (positions[last] < streams[last].size) {
+            // pick the stream whose next node comes first. If the same node is next in several streams,
+            // the later step goes first, so the node is not yet on the stack of the earlier step and
+            // cannot become its own ancestor.
+            int next = last;
+            for (int i = last - 1; i >= 0; i--) {
+                if (positions[i] < streams[i].size &&
+                        streams[i].compare(positions[i], streams[next], positions[next]) < 0) {
+                    next = i;
+                }
+            }
+            final NodeStream stream = streams[next];
+            final int pos = positions[next]++;
+
+            // pop all entries which are not ancestors of the current node: they cannot be ancestors
+            // of any following node either
+            for (int i = 0; i < last; i++) {
+                while (tops[i] >= 0 && !streams[i].isAncestorOrSelf(stacks[i][tops[i]], stream, pos)) {
+                    tops[i]--;
+                }
+                if (i != next && tops[i] < 0 && positions[i] == streams[i].size) {
+                    // no more candidates for this step: nothing left to find
+                    return;
+                }
+            }
+
+            final boolean matches;
+            final NodeId nodeId = stream.nodeIds[pos];
+            if (next == 0) {
+                matches = path[0].getAxis() == Constants.DESCENDANT_AXIS || nodeId.getTreeLevel() == 1;
+            } else {
+                final int top = tops[next - 1];
+                matches = top >= 0 && (path[next].getAxis() == Constants.DESCENDANT_AXIS ||
+                        nodeId.isChildOf(streams[next - 1].nodeIds[stacks[next - 1][top]]));
+            }
+            if (!matches) {
+                continue;
+            }
+
+            if (next == last) {
+                final DocumentImpl doc = docs.getDoc(stream.docIds[pos]);
+                if (doc != null) {
+                    result.add(doc, nodeId, Node.ELEMENT_NODE, stream.pointers[pos]);
+                }
+            } else {
+                if (++tops[next] == stacks[next].length) {
+                    stacks[next] = Arrays.copyOf(stacks[next], stacks[next].length << 1);
+                }
+                stacks[next][tops[next]] = pos;
+            }
+        }
+    }
+
+    /**
+     * Read the index entries for the given type and QName in the document id ranges, in document order.
+     */
+    private NodeStream readStream(final byte type, final QName qname, final List<Range> ranges, final Expression parent) {
+        final NodeStream stream = new NodeStream();
+        final BTreeCallback callback = (value, pointer) -> {
+            if (parent != null) {
+                parent.getContext().proceed(parent);
+            }
+            final byte[] key = value.getData();
+            stream.add(readDocId(key), readNodeId(key, pointer), pointer);
+            return true;
+        };
+        for (final Range range : ranges) {
+            final byte[] fromKey = computeKey(type, qname, range.start);
+            final byte[] toKey = computeKey(type, qname, range.end + 1);
+            final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
+
+            try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+                index.btree.query(query, callback);
+            } catch (final LockException e) {
+                NativeStructuralIndex.LOG.warn("Lock problem while searching structural index: {}", e.getMessage(), e);
+            } catch (final TerminatedException e) {
+                NativeStructuralIndex.LOG.warn("Query was terminated while searching structural index: {}", e.getMessage(), e);
+            } catch (final Exception e) {
+                NativeStructuralIndex.LOG.error("Error while searching structural index: {}", e.getMessage(), e);
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * Internal helper class used by
+     * {@link NativeStructuralIndexWorker#findDescendantsByPath(StructuralPathStep[], DocumentSet, Expression)}:
+     * the index entries of one QName, ordered by document id and node id.
+     */
+    static class NodeStream {
+        int size = 0;
+        int[] docIds = new int[16];
+        NodeId[] nodeIds = new NodeId[16];
+        long[] pointers = new long[16];
+
+        void add(final int docId, final NodeId nodeId, final long pointer) {
+            if (size == docIds.length) {
+                final int newLength = size << 1;
+                docIds = Arrays.copyOf(docIds, newLength);
+                nodeIds = Arrays.copyOf(nodeIds, newLength);
+                pointers = Arrays.copyOf(pointers, newLength);
+            }
+            docIds[size] = docId;
+            nodeIds[size] = nodeId;
+            pointers[size] = pointer;
+            size++;
+        }
+
+        int compare(final int pos, final NodeStream other, final int otherPos) {
+            final int cmp = Integer.compare(docIds[pos], other.docIds[otherPos]);
+            return cmp != 0 ? cmp : nodeIds[pos].compareTo(other.nodeIds[otherPos]);
+        }
+
+        boolean isAncestor(final int pos, final NodeStream other, final int otherPos) {
+            return docIds[pos] == other.docIds[otherPos] && other.nodeIds[otherPos].isDescendantOf(nodeIds[pos]);
+        }
+
+        boolean isAncestorOrSelf(final int pos, final NodeStream other, final int otherPos) {
+            return docIds[pos] == other.docIds[otherPos] && other.nodeIds[otherPos].isDescendantOrSelfOf(nodeIds[pos]);
+        }
+
+        /**
+         * Semi-join with the stream of a condition: returns the nodes in this stream which have a child
+         * (or attribute) in condition, or a descendant if axis is {@link Constants#DESCENDANT_AXIS}.
+         */
+        NodeStream selectByCondition(final NodeStream condition, final int axis) {
+            final boolean[] selected = new boolean[size];
+            int[] stack = new int[8];
+            int top = -1;
+            int pos = 0;
+            for (int conditionPos = 0; conditionPos < condition.size; ) {
+                // on equal nodes, the condition goes first: a node cannot satisfy its own condition
+                if (pos < size && compare(pos, condition, conditionPos) < 0) {
+                    while (top >= 0 && !isAncestor(stack[top], this, pos)) {
+                        top--;
+                    }
+                    if (++top == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length << 1);
+                    }
+                    stack[top] = pos++;
+                } else {
+                    while (top >= 0 && !isAncestor(stack[top], condition, conditionPos)) {
+                        top--;
+                    }
+                    if (top >= 0) {
+                        if (axis == Constants.DESCENDANT_AXIS) {
+                            // entries further down the stack were selected together with the first selected one
+                            for (int i = top; i >= 0 && !selected[stack[i]]; i--) {
+                                selected[stack[i]] = true;
+                            }
+                        } else if (condition.nodeIds[conditionPos].isChildOf(nodeIds[stack[top]])) {
+                            selected[stack[top]] = true;
+                        }
+                    }
+                    conditionPos++;
+                }
+            }
+
+            final NodeStream result = new NodeStream();
+            for (int i = 0; i < size; i++) {
+                if (selected[i]) {
+                    result.add(docIds[i], nodeIds[i], pointers[i]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return contiguous ranges of the document ids in this stream
+         */
+        List<Range> getDocIdRanges() {
+            final List<Range> ranges = new ArrayList<>();
+            Range next = null;
+            for (int i = 0; i < size; i++) {
+                final int docId = docIds[i];
+                if (next == null) {
+                    next = new Range(docId);
+                } else if (docId > next.end + 1) {
+                    ranges.add(next);
+                    next = new Range(docId);
+                } else {
+                    next.end = docId;
+                }
+            }
+            if (next != null) {
+                ranges.add(next);
+            }
+            return ranges;
+        }
+    }
+
     public NodeSet scanByType(byte type, int axis, NodeTest test, boolean useSelfAsContext, DocumentSet docs, 
     		NodeSet contextSet, int contextId) {
         final NewArrayNodeSet result = new NewArrayNodeSet();
@@ -484,6 +739,12 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         }
     }
 
+    @Override
+    public boolean isConcurrentFlushSafe() {
+        // processPending() only writes to the btree, under the btree lock
+        return true;
+    }
+
     protected void removeSome() {
         if (pending.size() == 0) {
             return;
@@ -493,6 +754,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
             for (final Map.Entry<QName,List<NodeProxy>> entry: pending.entrySet()) {
                 final QName qname = entry.getKey();
                 try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+                    index.flushBulkEntries(document.getDocId());
                     final List<NodeProxy> nodes = entry.getValue();
                     for (final NodeProxy proxy : nodes) {
                         final NodeId nodeId = proxy.getNodeId();
@@ -513,6 +775,13 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     protected void removeDocument(DocumentImpl docToRemove) {
         if (index.btree == null)
             {return;}
+        try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            index.flushBulkEntries(docToRemove.getDocId());
+        } catch (final LockException e) {
+            NativeStructuralIndex.LOG.warn("Failed to lock structural index: {}", e.getMessage(), e);
+        } catch (final DBException e) {
+            NativeStructuralIndex.LOG.warn("Exception caught while writing to structural index: {}", e.getMessage(), e);
+        }
         final List<QName> qnames = getQNamesForDoc(docToRemove);
         for (final QName qname : qnames) {
             final byte[] fromKey = computeKey(qname.getNameType(), qname, docToRemove.getDocId());
@@ -670,12 +939,10 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
                     for (final NodeProxy proxy : nodes) {
                         final NodeId nodeId = proxy.getNodeId();
                         final byte[] key = computeKey(qname.getNameType(), qname, document.getDocId(), nodeId);
-                        index.btree.addValue(new Value(key), computeValue(proxy));
+                        index.addEntry(broker, document.getDocId(), new Value(key), computeValue(proxy));
                     }
                     final Value docKey = new Value(computeDocKey(qname.getNameType(), document.getDocId(), qname));
-                    if (index.btree.findValue(docKey) == -1) {
-                        index.btree.addValue(docKey, 0);
-                    }
+                    index.addEntryIfAbsent(broker, document.getDocId(), docKey, 0);
                 } catch (final LockException e) {
                     NativeStructuralIndex.LOG.warn("Failed to lock structural index: {}", e.getMessage(), e);
                 // } catch (ReadOnlyException e) {
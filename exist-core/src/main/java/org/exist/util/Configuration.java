@@ -57,13 +57,17 @@ import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.btree.Paged;
 import org.exist.storage.journal.Journal;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
 import org.exist.validation.GrammarPool;
 import org.exist.xmldb.DatabaseImpl;
 import org.exist.xquery.FunctionFactory;
+import org.exist.xquery.GroupByClause;
+import org.exist.xquery.OrderByClause;
 import org.exist.xquery.PerformanceStats;
+import org.exist.xquery.UserDefinedFunction;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.XQueryWatchDog;
 import org.exist.xslt.TransformerFactoryAllocator;
@@ -386,6 +390,39 @@ public class Configuration implements ErrorHandler
         config.put( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL, Configuration.parseBoolean( raiseErrorOnFailedRetrieval, XQueryContext.XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT ) );
         LOG.debug(XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL + ": {}", config.get(XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL));
 
+        final String groupByMemoryBudget = getConfigAttributeValue( xquery, GroupByClause.GROUP_BY_MEMORY_BUDGET_ATTRIBUTE );
+
+        if( groupByMemoryBudget != null ) {
+            try {
+                config.put( GroupByClause.PROPERTY_GROUP_BY_MEMORY_BUDGET, parseSize( groupByMemoryBudget ) );
+                LOG.debug(GroupByClause.PROPERTY_GROUP_BY_MEMORY_BUDGET + ": {}", config.get(GroupByClause.PROPERTY_GROUP_BY_MEMORY_BUDGET));
+            } catch( final NumberFormatException nfe ) {
+                throw new DatabaseConfigurationException("Cannot convert " + GroupByClause.GROUP_BY_MEMORY_BUDGET_ATTRIBUTE + " value to a size: " + groupByMemoryBudget, nfe);
+            }
+        }
+
+        final String orderByMemoryBudget = getConfigAttributeValue( xquery, OrderByClause.ORDER_BY_MEMORY_BUDGET_ATTRIBUTE );
+
+        if( orderByMemoryBudget != null ) {
+            try {
+                config.put( OrderByClause.PROPERTY_ORDER_BY_MEMORY_BUDGET, parseSize( orderByMemoryBudget ) );
+                LOG.debug(OrderByClause.PROPERTY_ORDER_BY_MEMORY_BUDGET + ": {}", config.get(OrderByClause.PROPERTY_ORDER_BY_MEMORY_BUDGET));
+            } catch( final NumberFormatException nfe ) {
+                throw new DatabaseConfigurationException("Cannot convert " + OrderByClause.ORDER_BY_MEMORY_BUDGET_ATTRIBUTE + " value to a size: " + orderByMemoryBudget, nfe);
+            }
+        }
+
+        final String compileThreshold = getConfigAttributeValue( xquery, UserDefinedFunction.COMPILE_THRESHOLD_ATTRIBUTE );
+
+        if( compileThreshold != null ) {
+            try {
+                config.put( UserDefinedFunction.PROPERTY_COMPILE_THRESHOLD, Integer.valueOf( compileThreshold ) );
+                LOG.debug(UserDefinedFunction.PROPERTY_COMPILE_THRESHOLD + ": {}", config.get(UserDefinedFunction.PROPERTY_COMPILE_THRESHOLD));
+            } catch( final NumberFormatException nfe ) {
+                throw new DatabaseConfigurationException("Cannot convert " + UserDefinedFunction.COMPILE_THRESHOLD_ATTRIBUTE + " value to an integer: " + compileThreshold, nfe);
+            }
+        }
+
         final String trace = getConfigAttributeValue( xquery, PerformanceStats.CONFIG_ATTR_TRACE );
         config.put( PerformanceStats.CONFIG_PROPERTY_TRACE, trace );
 
@@ -907,6 +944,30 @@ public class Configuration implements ErrorHandler
             LOG.warn("Cannot convert " + DefaultCacheManager.SHRINK_THRESHOLD_PROPERTY + " value to integer: {}", cacheShrinkThreshold, nfe);
         }
 
+        final String offHeapCacheSize = getConfigAttributeValue( con, DefaultCacheManager.OFF_HEAP_CACHE_SIZE_ATTRIBUTE );
+
+        if( offHeapCacheSize != null ) {
+            try {
+                config.put( DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE, parseSize( offHeapCacheSize ) );
+                LOG.debug(DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE + ": {}", config.get(DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE));
+            } catch( final NumberFormatException nfe ) {
+                throw new DatabaseConfigurationException("Cannot convert " + DefaultCacheManager.OFF_HEAP_CACHE_SIZE_ATTRIBUTE + " value to a size: " + offHeapCacheSize, nfe);
+            }
+        }
+
+        String cacheBalancing = getConfigAttributeValue( con, DefaultCacheManager.CACHE_BALANCING_ATTRIBUTE );
+
+        if( cacheBalancing == null ) {
+            cacheBalancing = DefaultCacheManager.DEFAULT_CACHE_BALANCING;
+        }
+
+        if( !DefaultCacheManager.CACHE_BALANCING_STATIC.equals( cacheBalancing ) && !DefaultCacheManager.CACHE_BALANCING_ADAPTIVE.equals( cacheBalancing ) ) {
+            throw new DatabaseConfigurationException("Invalid value for " + DefaultCacheManager.CACHE_BALANCING_ATTRIBUTE + ": " + cacheBalancing + ", expected " + DefaultCacheManager.CACHE_BALANCING_STATIC + " or " + DefaultCacheManager.CACHE_BALANCING_ADAPTIVE);
+        }
+
+        config.put( DefaultCacheManager.PROPERTY_CACHE_BALANCING, cacheBalancing );
+        LOG.debug(DefaultCacheManager.PROPERTY_CACHE_BALANCING + ": {}", config.get(DefaultCacheManager.PROPERTY_CACHE_BALANCING));
+
         String collectionCache = getConfigAttributeValue(con, CollectionCache.CACHE_SIZE_ATTRIBUTE);
         if(collectionCache != null) {
             collectionCache = collectionCache.toLowerCase();
@@ -953,6 +1014,44 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String memoryMappedFiles = getConfigAttributeValue( con, Paged.MEMORY_MAPPED_FILES_ATTRIBUTE );
+
+        if( memoryMappedFiles != null ) {
+            final List<String> fileNames = Arrays.stream(memoryMappedFiles.split("[\\s,]+"))
+                    .filter(fileName -> !fileName.isEmpty())
+                    .collect(Collectors.toList());
+            config.put( Paged.PROPERTY_MEMORY_MAPPED_FILES, fileNames );
+            LOG.debug(Paged.PROPERTY_MEMORY_MAPPED_FILES + ": {}", config.get(Paged.PROPERTY_MEMORY_MAPPED_FILES));
+        }
+
+        final String filePageSizes = getConfigAttributeValue( con, Paged.FILE_PAGE_SIZES_ATTRIBUTE );
+
+        if( filePageSizes != null ) {
+            final Map<String, Integer> pageSizes = new HashMap<>();
+            for (final String filePageSize : filePageSizes.split("[\\s,]+")) {
+                if (filePageSize.isEmpty()) {
+                    continue;
+                }
+                final int idx = filePageSize.indexOf('=');
+                if (idx <= 0) {
+                    LOG.warn("Cannot parse " + Paged.PROPERTY_FILE_PAGE_SIZES + " entry, expected file=size: {}", filePageSize);
+                    continue;
+                }
+                try {
+                    final int filePageSizeBytes = Integer.parseInt(filePageSize.substring(idx + 1));
+                    if (Paged.isValidPageSize(filePageSizeBytes)) {
+                        pageSizes.put(filePageSize.substring(0, idx), filePageSizeBytes);
+                    } else {
+                        LOG.warn("Invalid " + Paged.PROPERTY_FILE_PAGE_SIZES + " entry, page size must be a power of two between {} and {}: {}", Paged.MIN_PAGE_SIZE, Paged.MAX_PAGE_SIZE, filePageSize);
+                    }
+                } catch (final NumberFormatException nfe) {
+                    LOG.warn("Cannot convert " + Paged.PROPERTY_FILE_PAGE_SIZES + " entry page size to integer: {}", filePageSize, nfe);
+                }
+            }
+            config.put( Paged.PROPERTY_FILE_PAGE_SIZES, pageSizes );
+            LOG.debug(Paged.PROPERTY_FILE_PAGE_SIZES + ": {}", config.get(Paged.PROPERTY_FILE_PAGE_SIZES));
+        }
+
         //Not clear : rather looks like a buffers count
         final String collCacheSize = getConfigAttributeValue( con, BrokerPool.COLLECTION_CACHE_SIZE_ATTRIBUTE );
 
@@ -1074,6 +1173,32 @@ public class Configuration implements ErrorHandler
         setProperty( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, parseBoolean( option, false ) );
         LOG.debug(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT + ": {}", config.get(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT));
 
+        option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_BATCH_COMMIT_ATTRIBUTE );
+        setProperty( BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT, parseBoolean( option, false ) );
+        LOG.debug(BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT + ": {}", config.get(BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT));
+
+        option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_BATCH_COMMIT_MAX_WAIT_ATTRIBUTE );
+        if( option != null ) {
+            try {
+                setProperty( BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT_MAX_WAIT, Long.valueOf( option ) );
+                LOG.debug(BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT_MAX_WAIT + ": {}ms", config.get(BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT_MAX_WAIT));
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "batch-commit-max-wait attribute in recovery section needs to be a number" ) );
+            }
+        }
+
+        option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_BATCH_COMMIT_SIZE_ATTRIBUTE );
+        if( option != null ) {
+            try {
+                setProperty( BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT_SIZE, Integer.valueOf( option ) );
+                LOG.debug(BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT_SIZE + ": {}", config.get(BrokerPool.PROPERTY_RECOVERY_BATCH_COMMIT_SIZE));
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "batch-commit-size attribute in recovery section needs to be a number" ) );
+            }
+        }
+
         option = getConfigAttributeValue( recovery, Journal.RECOVERY_JOURNAL_DIR_ATTRIBUTE );
 
         if(option != null) {
@@ -1323,6 +1448,19 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String acquireTimeout = getConfigAttributeValue( pool, BrokerPool.ACQUIRE_TIMEOUT_ATTRIBUTE );
+
+        if( acquireTimeout != null ) {
+
+            try {
+                config.put( BrokerPool.PROPERTY_ACQUIRE_TIMEOUT, Long.valueOf(acquireTimeout) );
+                LOG.debug(BrokerPool.PROPERTY_ACQUIRE_TIMEOUT + ": {}", config.get(BrokerPool.PROPERTY_ACQUIRE_TIMEOUT));
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
         final String maxShutdownWait = getConfigAttributeValue( pool, BrokerPool.SHUTDOWN_DELAY_ATTRIBUTE );
 
         if( maxShutdownWait != null ) {
@@ -1381,6 +1519,19 @@ public class Configuration implements ErrorHandler
             LOG.debug(Indexer.PROPERTY_PRESERVE_WS_MIXED_CONTENT + ": {}", config.get(Indexer.PROPERTY_PRESERVE_WS_MIXED_CONTENT));
         }
 
+        final String flushThreads = getConfigAttributeValue( indexer, IndexManager.FLUSH_THREADS_ATTRIBUTE );
+
+        if( flushThreads != null ) {
+
+            try {
+                config.put( IndexManager.PROPERTY_FLUSH_THREADS, Integer.parseInt( flushThreads ) );
+                LOG.debug(IndexManager.PROPERTY_FLUSH_THREADS + ": {}", config.get(IndexManager.PROPERTY_FLUSH_THREADS));
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
         // index settings
         final NodeList cl = doc.getElementsByTagName( Indexer.CONFIGURATION_INDEX_ELEMENT_NAME );
 
@@ -1623,6 +1774,35 @@ public class Configuration implements ErrorHandler
         }
     }
 
+    /**
+     * Converts a size with an optional unit suffix, i.e. one of k, kb, m, mb, g or gb
+     * (ignoring case), to a number of bytes.
+     *
+     * @param   value  The string to parse
+     *
+     * @return  The number of bytes
+     *
+     * @throws  NumberFormatException  if the value is not a valid size
+     */
+    static long parseSize(final String value) throws NumberFormatException {
+        String size = value.trim().toLowerCase();
+        if (size.endsWith("b")) {
+            size = size.substring(0, size.length() - 1);
+        }
+
+        final long multiplier;
+        if (size.endsWith("k")) {
+            multiplier = 1024L;
+        } else if (size.endsWith("m")) {
+            multiplier = 1024L * 1024L;
+        } else if (size.endsWith("g")) {
+            multiplier = 1024L * 1024L * 1024L;
+        } else {
+            return Long.parseLong(size);
+        }
+        return multiplier * Long.parseLong(size.substring(0, size.length() - 1));
+    }
+
     public int getInteger(final String name) {
         return Optional.ofNullable(getProperty(name))
                 .filter(v -> v instanceof Integer)
@@ -0,0 +1,131 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records values into power of two buckets, see {@link Snapshot}.
+ *
+ * Recording is lock-free, so that it may be called from many threads.
+ */
+@ThreadSafe
+public final class Log2Histogram {
+    private final AtomicLongArray counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param buckets the number of buckets, the last bucket collects all values
+     *     which are larger than the upper bound of the bucket before it
+     */
+    public Log2Histogram(final int buckets) {
+        this.counts = new AtomicLongArray(buckets);
+    }
+
+    public void record(final long value) {
+        final long v = Math.max(0, value);
+        final int bucket = Math.min(64 - Long.numberOfLeadingZeros(v), counts.length() - 1);
+        counts.incrementAndGet(bucket);
+        count.increment();
+        sum.add(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    public Snapshot snapshot() {
+        final int buckets = counts.length();
+        final long[] upperBounds = new long[buckets];
+        final long[] snapshotCounts = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            upperBounds[i] = i == buckets - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+            snapshotCounts[i] = counts.get(i);
+        }
+        return new Snapshot(upperBounds, snapshotCounts, count.sum(), sum.sum(), max.get());
+    }
+
+    /**
+     * A snapshot of a histogram with power of two buckets.
+     *
+     * The bucket at index {@code i} counts the values which are
+     * less than or equal to {@code upperBounds[i]} and greater than
+     * the upper bound of the previous bucket.
+     */
+    public static class Snapshot {
+        private final long[] upperBounds;
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        /**
+         * @param upperBounds the inclusive upper bound of each bucket
+         * @param counts the number of values recorded in each bucket
+         * @param count the total number of values recorded
+         * @param sum the sum of all values recorded
+         * @param max the largest value recorded
+         */
+        @ConstructorProperties({"upperBounds", "counts", "count", "sum", "max"})
+        public Snapshot(final long[] upperBounds, final long[] counts, final long count, final long sum, final long max) {
+            this.upperBounds = upperBounds;
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long[] getUpperBounds() {
+            return upperBounds;
+        }
+
+        public long[] getCounts() {
+            return counts;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the mean of all values recorded, or {@code 0} when nothing has been recorded.
+         *
+         * @return the mean value
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+    }
+}
+
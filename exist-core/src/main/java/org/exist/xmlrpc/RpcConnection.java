@@ -289,6 +289,21 @@ public class RpcConnection implements RpcAPI {
         throw new EXistException("Unable to beginProtected after " + BEGIN_PROTECTED_MAX_LOCKING_RETRIES + " retries");
     }
 
+    /**
+     * Creates the source of a query sent by the client, keyed by the static context
+     * which {@link #compile(DBBroker, Source, Map)} declares from the parameters, so
+     * that the query pool does not share a query compiled in another static context.
+     *
+     * @param query the query
+     * @param parameters the parameters of the query
+     *
+     * @return the source of the query
+     */
+    private static Source querySource(final String query, final Map<String, Object> parameters) {
+        return new StringSource(query, (String) parameters.get(RpcAPI.BASE_URI),
+                (String) parameters.get(RpcAPI.MODULE_LOAD_PATH), (Map<String, String>) parameters.get(RpcAPI.NAMESPACES));
+    }
+
     /**
      * @deprecated Use compileQuery lambda instead!
      * @param broker the broker to use
@@ -356,7 +371,7 @@ public class RpcConnection implements RpcAPI {
 
     @Override
     public String printDiagnostics(final String query, final Map<String, Object> parameters) throws EXistException, PermissionDeniedException {
-        final Source source = new StringSource(query);
+        final Source source = querySource(query, parameters);
         return withDb((broker, transaction) -> {
             try {
                 return this.<String>compileQuery(broker, transaction, source, parameters).apply(compiledQuery -> {
@@ -415,7 +430,7 @@ public class RpcConnection implements RpcAPI {
     @Override
     public int executeQuery(final String xpath, final Map<String, Object> parameters) throws EXistException, PermissionDeniedException {
         return withDb((broker, transaction) -> {
-            final Source source = new StringSource(xpath);
+            final Source source = querySource(xpath, parameters);
             final long startTime = System.currentTimeMillis();
             try {
                 final QueryResult result = this.<QueryResult>compileQuery(broker, transaction, source, parameters).apply(compiledQuery -> doQuery(broker, compiledQuery, null, parameters));
@@ -1642,7 +1657,7 @@ public class RpcConnection implements RpcAPI {
     }
 
     public Map<String, Object> compile(final String query, final Map<String, Object> parameters) throws EXistException, PermissionDeniedException {
-        final Source source = new StringSource(query);
+        final Source source = querySource(query, parameters);
 
         return withDb((broker, transaction) -> {
             final Map<String, Object> ret = new HashMap<>();
@@ -1662,7 +1677,7 @@ public class RpcConnection implements RpcAPI {
     public String query(final String xpath, final int howmany, final int start,
                         final Map<String, Object> parameters) throws EXistException, PermissionDeniedException {
 
-        final Source source = new StringSource(xpath);
+        final Source source = querySource(xpath, parameters);
 
         return withDb((broker, transaction) -> {
             final long startTime = System.currentTimeMillis();
@@ -1716,7 +1731,7 @@ public class RpcConnection implements RpcAPI {
     private Map<String, Object> queryP(final String xpath, final XmldbURI docUri,
                                        final String s_id, final Map<String, Object> parameters) throws EXistException, PermissionDeniedException {
 
-        final Source source = new StringSource(xpath);
+        final Source source = querySource(xpath, parameters);
         final Optional<String> sortBy = Optional.ofNullable(parameters.get(RpcAPI.SORT_EXPR)).map(Object::toString);
 
         return withDb((broker, transaction) -> {
@@ -1837,7 +1852,7 @@ public class RpcConnection implements RpcAPI {
     private Map<String, Object> queryPT(final String xquery, final XmldbURI docUri,
                                         final String s_id, final Map<String, Object> parameters) throws EXistException, PermissionDeniedException {
 
-        final Source source = new StringSource(xquery);
+        final Source source = querySource(xquery, parameters);
         final Optional<String> sortBy = Optional.ofNullable(parameters.get(RpcAPI.SORT_EXPR)).map(Object::toString);
 
         return withDb((broker, transaction) -> {
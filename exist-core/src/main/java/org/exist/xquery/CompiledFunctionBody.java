@@ -0,0 +1,95 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.xquery.value.Sequence;
+
+/**
+ * The body of a user defined function, compiled to bytecode by {@link ExpressionCompiler}.
+ *
+ * The generated subclasses evaluate the body from the values of the parameters of the
+ * function. The expressions which are not compiled are evaluated by the interpreter,
+ * so the parameters must still be declared as local variables.
+ *
+ * This class is public, as the generated subclasses are defined by their own class loader.
+ */
+public abstract class CompiledFunctionBody {
+
+    /**
+     * The expressions referenced by the generated code.
+     */
+    protected final Object[] constants;
+
+    protected CompiledFunctionBody(final Object[] constants) {
+        this.constants = constants;
+    }
+
+    /**
+     * Evaluates the function body.
+     *
+     * @param parameters the values of the parameters of the function
+     *
+     * @return the result of the function body
+     *
+     * @throws XPathException if an error occurs whilst evaluating the function body
+     */
+    public abstract Sequence eval(Sequence[] parameters) throws XPathException;
+
+    /**
+     * Evaluates an expression which is not compiled.
+     *
+     * @param expr the expression
+     *
+     * @return the result of the expression
+     *
+     * @throws XPathException if an error occurs whilst evaluating the expression
+     */
+    protected static Sequence delegate(final Expression expr) throws XPathException {
+        return expr.eval(null, null);
+    }
+
+    /**
+     * Checks whether the query may proceed with the next step of a path expression.
+     *
+     * @param expr the step
+     *
+     * @throws TerminatedException if the query was terminated
+     */
+    protected static void proceed(final Expression expr) throws TerminatedException {
+        expr.getContext().getWatchDog().proceed(expr);
+    }
+
+    /**
+     * Sets the location of an error which does not have one yet.
+     *
+     * @param e the error
+     * @param expr the expression whose location is used
+     *
+     * @return the error
+     */
+    protected static XPathException locate(final XPathException e, final Expression expr) {
+        if (e.getLine() < 1 || e.getColumn() < 1) {
+            e.setLocation(expr.getLine(), expr.getColumn());
+        }
+        return e;
+    }
+}
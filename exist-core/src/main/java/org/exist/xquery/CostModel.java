@@ -0,0 +1,211 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.storage.statistics.KeyStatistics;
+import org.exist.xquery.value.Sequence;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Estimates the cost of evaluating predicates with or without the help of an index.
+ * Used by the {@link Optimizer} to order the operands of a logical "and", and by the
+ * {@link org.exist.xquery.pragmas.Optimize} pragma to order the index lookups and to
+ * decide if an index should be used at all.
+ *
+ * The number of nodes an index lookup selects is estimated from the number of nodes
+ * with the compared name, as recorded by the DataGuide of the {@link IndexStatistics}
+ * module, and the selectivity reported by the {@link Optimizable}, which depends on the
+ * kind of index and comparison. If the statistics module is not enabled, all names are
+ * assumed to occur equally often, so only the selectivities are compared, and an index
+ * is always used if there is one. For an equality comparison, the selectivity is
+ * estimated from the number of distinct keys of the name, if the index serving the
+ * lookup maintains {@link KeyStatistics} about it, see
+ * {@link Optimizable#getEqualityKeyStatistics()}.
+ */
+public class CostModel {
+
+    /**
+     * Selectivity of an index lookup whose kind is not known.
+     */
+    public static final double DEFAULT_SELECTIVITY = 0.1;
+
+    /**
+     * Selectivity of an equality comparison on a range index.
+     */
+    public static final double EQUALITY_SELECTIVITY = 0.01;
+
+    /**
+     * Selectivity of an ordering comparison, e.g. less than, on a range index.
+     */
+    public static final double RANGE_SELECTIVITY = 0.33;
+
+    /**
+     * Selectivity of a full text query.
+     */
+    public static final double FULL_TEXT_SELECTIVITY = 0.05;
+
+    /**
+     * Selectivity of a substring or regular expression search, e.g. on an ngram index.
+     */
+    public static final double SUBSTRING_SELECTIVITY = 0.1;
+
+    /**
+     * The number of nodes assumed for a name which has no statistics.
+     */
+    static final long DEFAULT_NODE_COUNT = 10000;
+
+    /**
+     * The cost of evaluating a predicate on a node of the context sequence without
+     * an index, relative to the cost of reading a node selected by an index.
+     */
+    static final double STRUCTURAL_NODE_COST = 4.0;
+
+    @Nullable private final IndexStatistics statistics;
+
+    public CostModel(final XQueryContext context) {
+        this(getStatistics(context.getBroker()));
+    }
+
+    CostModel(@Nullable final IndexStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    private static @Nullable IndexStatistics getStatistics(@Nullable final DBBroker broker) {
+        if (broker == null) {
+            return null;
+        }
+        final BrokerPool pool = broker.getBrokerPool();
+        if (pool == null || pool.getIndexManager() == null) {
+            return null;
+        }
+        return (IndexStatistics) pool.getIndexManager().getIndexById(IndexStatistics.ID);
+    }
+
+    /**
+     * @return true if the estimates are based on statistics about the database
+     */
+    public boolean hasStatistics() {
+        return statistics != null;
+    }
+
+    /**
+     * Returns the number of nodes with the given name in the database.
+     *
+     * @param qname the name of the nodes
+     *
+     * @return the number of nodes, or -1 if unknown
+     */
+    public long getNodeCount(@Nullable final QName qname) {
+        if (statistics == null || qname == null || qname.getLocalPart() == null
+                || QName.WILDCARD.equals(qname.getLocalPart())) {
+            return -1;
+        }
+        return statistics.getNodeCount(qname);
+    }
+
+    /**
+     * Estimates the number of nodes selected by an index lookup.
+     *
+     * @param optimizable the expression which looks up the index
+     *
+     * @return the estimated number of nodes
+     */
+    public double estimateCount(final Optimizable optimizable) {
+        long nodeCount = getNodeCount(optimizable.getOptimizeQName());
+        if (nodeCount < 0) {
+            nodeCount = DEFAULT_NODE_COUNT;
+        }
+        return nodeCount * getSelectivity(optimizable);
+    }
+
+    /**
+     * Returns the selectivity of an index lookup, i.e. the fraction of the nodes
+     * with the compared name which it selects.
+     *
+     * @param optimizable the expression which looks up the index
+     *
+     * @return the selectivity
+     */
+    public double getSelectivity(final Optimizable optimizable) {
+        final KeyStatistics keyStatistics = optimizable.getEqualityKeyStatistics();
+        if (keyStatistics != null) {
+            final double estimate = keyStatistics.estimateEquals();
+            if (estimate >= 0) {
+                return estimate;
+            }
+        }
+        return optimizable.getSelectivity();
+    }
+
+    /**
+     * Sorts index lookups by their estimated number of nodes, the most selective first.
+     *
+     * @param optimizables the index lookups
+     */
+    public void sort(final Optimizable[] optimizables) {
+        final double[] counts = new double[optimizables.length];
+        final Integer[] order = new Integer[optimizables.length];
+        for (int i = 0; i < optimizables.length; i++) {
+            counts[i] = estimateCount(optimizables[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> counts[i]));
+
+        final Optimizable[] sorted = new Optimizable[optimizables.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = optimizables[order[i]];
+        }
+        System.arraycopy(sorted, 0, optimizables, 0, sorted.length);
+    }
+
+    /**
+     * Decides if evaluating the predicates on each node of the context sequence is cheaper
+     * than looking up the index, e.g. if the context sequence is small but the index would
+     * select a large part of the database. Only decided if there are statistics about the
+     * nodes selected by the most selective index lookup.
+     *
+     * @param contextSequence the context sequence of the predicates
+     * @param optimizables the index lookups, sorted by {@link #sort(Optimizable[])}
+     *
+     * @return true if the predicates should be evaluated without index
+     */
+    public boolean preferStructural(@Nullable final Sequence contextSequence, final Optimizable[] optimizables) {
+        if (contextSequence == null || optimizables.length == 0) {
+            return false;
+        }
+        final Optimizable first = optimizables[0];
+        final long nodeCount = getNodeCount(first.getOptimizeQName());
+        if (nodeCount < 0) {
+            return false;
+        }
+        final double indexCost = nodeCount * getSelectivity(first);
+        final double structuralCost = contextSequence.getItemCountLong() * STRUCTURAL_NODE_COST;
+        return structuralCost < indexCost;
+    }
+}
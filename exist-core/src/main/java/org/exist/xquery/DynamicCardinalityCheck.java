@@ -70,7 +70,23 @@ public class DynamicCardinalityCheck extends AbstractExpression {
                 {context.getProfiler().message(this, Profiler.START_SEQUENCES,
                 "CONTEXT ITEM", contextItem.toSequence());}
         }
-        final Sequence seq = expression.eval(contextSequence, contextItem);
+        final Sequence seq = check(expression.eval(contextSequence, contextItem));
+        if (context.getProfiler().isEnabled())
+            {context.getProfiler().end(this, "", seq);}
+        return seq;
+    }
+
+    /**
+     * Checks the cardinality of the result of the expression. Used by {@link #eval(Sequence, Item)},
+     * and by the function bodies which are compiled by {@link ExpressionCompiler}.
+     *
+     * @param seq the result of the expression
+     *
+     * @return the result of the expression
+     *
+     * @throws XPathException if the result does not have the required cardinality
+     */
+    public Sequence check(final Sequence seq) throws XPathException {
         Cardinality actualCardinality;
         if (seq.isEmpty())
             {actualCardinality = Cardinality.EMPTY_SEQUENCE;}
@@ -84,8 +100,6 @@ public class DynamicCardinalityCheck extends AbstractExpression {
                     seq.getItemCount());
             throw new XPathException(this, error.toString());
         }
-        if (context.getProfiler().isEnabled())
-            {context.getProfiler().end(this, "", seq);}
         return seq;
     }
 
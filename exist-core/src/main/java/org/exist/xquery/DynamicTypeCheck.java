@@ -57,7 +57,20 @@ public class DynamicTypeCheck extends AbstractExpression {
 		Sequence contextSequence,
 		Item contextItem)
 		throws XPathException {
-		final Sequence seq = expression.eval(contextSequence, contextItem);
+		return check(expression.eval(contextSequence, contextItem));
+	}
+
+	/**
+	 * Checks the type of the items in the result of the expression. Used by {@link #eval(Sequence, Item)},
+	 * and by the function bodies which are compiled by {@link ExpressionCompiler}.
+	 *
+	 * @param seq the result of the expression
+	 *
+	 * @return the result of the expression, with the items converted to the required type where needed
+	 *
+	 * @throws XPathException if an item is not of the required type
+	 */
+	public Sequence check(final Sequence seq) throws XPathException {
         Sequence result = null;
         if (Type.subTypeOf(requiredType, Type.ATOMIC) && !Type.subTypeOf(seq.getItemType(), requiredType)) {
             result = new ValueSequence();
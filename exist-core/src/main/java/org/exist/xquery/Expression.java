@@ -80,6 +80,12 @@ public interface Expression {
      */
     public final static int UNORDERED = 1024;
 
+    /**
+     * Indicates that the iterations of a "for" clause may be
+     * evaluated in parallel, e.g. by an enclosing exist:parallel pragma.
+     */
+    public final static int PARALLEL_EVALUATION = 2048;
+
     /**
      * Indicates that no context id is supplied to an expression.
      */
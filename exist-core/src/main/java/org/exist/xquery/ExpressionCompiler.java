@@ -0,0 +1,447 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.QName;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.BooleanValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Compiles the body of a user defined function to bytecode, once the function
+ * has been called often enough, see {@link HotFunctionBody}.
+ *
+ * Only the expressions which are common in the bodies of small, frequently called
+ * functions are compiled: literals, references to the parameters of the function,
+ * arithmetic, comparisons, the boolean operators, conditional expressions, the type
+ * and cardinality checks of arguments, and calls of other user defined functions.
+ * The generated code calls the same methods as the interpreter does for these
+ * expressions once their operands are evaluated, but without walking the expression
+ * tree or looking up the parameters in the local variable stack. Any other expression
+ * is evaluated by the interpreter, so the result is always the same.
+ *
+ * The compiled expressions are evaluated outside of a predicate and without a context
+ * sequence, which is how the interpreter evaluates them in a function body. The compiler
+ * only applies to an expression when the interpreter would not use an optimization
+ * for it, e.g. a node set comparison or the node set semantics of the boolean operators.
+ *
+ * The body is never compiled whilst a query is profiled or debugged, as the generated
+ * code neither reports to the profiler nor to the debugger.
+ */
+final class ExpressionCompiler {
+
+    private static final Logger LOG = LogManager.getLogger(ExpressionCompiler.class);
+
+    private static final String CLASS_NAME_PREFIX = "org/exist/xquery/compiled/UserFunction";
+    private static final AtomicLong CLASS_NAME_COUNTER = new AtomicLong();
+
+    private static final String COMPILED_FUNCTION_BODY = Type.getInternalName(CompiledFunctionBody.class);
+    private static final String SEQUENCE = Type.getInternalName(Sequence.class);
+    private static final String XPATH_EXCEPTION = Type.getInternalName(XPathException.class);
+    private static final String BOOLEAN_VALUE = Type.getInternalName(BooleanValue.class);
+
+    private static final String OBJECT_ARRAY_DESC = "[Ljava/lang/Object;";
+    private static final String EXPRESSION_DESC = Type.getDescriptor(Expression.class);
+    private static final String SEQUENCE_DESC = Type.getDescriptor(Sequence.class);
+    private static final String SEQUENCE_ARRAY_DESC = "[" + SEQUENCE_DESC;
+    private static final String XPATH_EXCEPTION_DESC = Type.getDescriptor(XPathException.class);
+
+    // the local variables of the generated eval method
+    private static final int THIS = 0;
+    private static final int PARAMETERS = 1;
+    private static final int CONSTANTS = 2;
+
+    private final List<QName> parameters;
+    private final List<Object> constants = new ArrayList<>();
+    private final List<Label[]> tryCatchBlocks = new ArrayList<>();
+    private MethodVisitor mv;
+
+    private ExpressionCompiler(final List<QName> parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Compiles the body of a user defined function.
+     *
+     * @param body the body of the function
+     * @param parameters the names of the parameters of the function
+     *
+     * @return the compiled body, or null if the body could not be compiled,
+     *     or would be evaluated by the interpreter as a whole
+     */
+    static @Nullable CompiledFunctionBody compile(final Expression body, final List<QName> parameters) {
+        final ExpressionCompiler compiler = new ExpressionCompiler(parameters);
+        if (!compiler.isCompiled(body)) {
+            return null;
+        }
+        final String className = CLASS_NAME_PREFIX + CLASS_NAME_COUNTER.incrementAndGet();
+        try {
+            final byte[] bytecode = compiler.generate(className, body);
+            final Class<?> compiledClass = new CompiledClassLoader(CompiledFunctionBody.class.getClassLoader())
+                    .define(className.replace('/', '.'), bytecode);
+            return (CompiledFunctionBody) compiledClass.getConstructor(Object[].class)
+                    .newInstance((Object) compiler.constants.toArray());
+        } catch (final ReflectiveOperationException | RuntimeException | LinkageError e) {
+            LOG.warn("Unable to compile the body of a user defined function, it will be interpreted: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Determines if code is generated for an expression, rather than evaluating it by the interpreter.
+     *
+     * @param expr the expression
+     *
+     * @return true if code is generated for the expression
+     */
+    private boolean isCompiled(final Expression expr) {
+        final Class<? extends Expression> type = expr.getClass();
+        if (type == LiteralValue.class || type == OpNumeric.class || type == ConditionalExpression.class
+                || type == DynamicCardinalityCheck.class || type == DynamicTypeCheck.class || type == Atomize.class) {
+            return true;
+        } else if (type == VariableReference.class) {
+            return parameters.contains(((VariableReference) expr).getName());
+        } else if (type == PathExpr.class) {
+            final PathExpr path = (PathExpr) expr;
+            return path.getLength() == 1 && isCompiled(path.getSubExpression(0));
+        } else if (type == DebuggableExpression.class) {
+            return isCompiled(((DebuggableExpression) expr).getExpression());
+        } else if (type == UnaryExpr.class) {
+            return ((UnaryExpr) expr).getLength() == 1;
+        } else if (type == GeneralComparison.class || type == ValueComparison.class) {
+            return ((GeneralComparison) expr).comparesOperands();
+        } else if (type == OpAnd.class || type == OpOr.class) {
+            final LogicalOp op = (LogicalOp) expr;
+            return !op.optimize && op.getLength() == 2;
+        } else if (type == FunctionCall.class) {
+            return ((FunctionCall) expr).getFunction() != null;
+        }
+        return false;
+    }
+
+    private byte[] generate(final String className, final Expression body) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(final String type1, final String type2) {
+                // the generated code only merges sequences, which the verifier treats as objects,
+                // so there is no need to load the classes
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, className, null, COMPILED_FUNCTION_BODY, null);
+
+        final MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + OBJECT_ARRAY_DESC + ")V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, THIS);
+        init.visitVarInsn(ALOAD, 1);
+        init.visitMethodInsn(INVOKESPECIAL, COMPILED_FUNCTION_BODY, "<init>", "(" + OBJECT_ARRAY_DESC + ")V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "eval", "(" + SEQUENCE_ARRAY_DESC + ")" + SEQUENCE_DESC, null, new String[] { XPATH_EXCEPTION });
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, THIS);
+        mv.visitFieldInsn(GETFIELD, COMPILED_FUNCTION_BODY, "constants", OBJECT_ARRAY_DESC);
+        mv.visitVarInsn(ASTORE, CONSTANTS);
+        compile(body);
+        mv.visitInsn(ARETURN);
+        // the blocks were added when they were completed, so that an inner block precedes the blocks enclosing it
+        for (final Label[] block : tryCatchBlocks) {
+            mv.visitTryCatchBlock(block[0], block[1], block[2], XPATH_EXCEPTION);
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generates the code which evaluates an expression, and leaves its result on the stack.
+     *
+     * @param expr the expression
+     */
+    private void compile(final Expression expr) {
+        final Class<? extends Expression> type = expr.getClass();
+        if (!isCompiled(expr)) {
+            pushConstant(expr, Expression.class);
+            mv.visitMethodInsn(INVOKESTATIC, COMPILED_FUNCTION_BODY, "delegate", "(" + EXPRESSION_DESC + ")" + SEQUENCE_DESC, false);
+
+        } else if (type == LiteralValue.class) {
+            // the value of a literal may be replaced by the optimizer, so it is not copied into the constants
+            pushConstant(expr, LiteralValue.class);
+            invokeVirtual(LiteralValue.class, "getValue", AtomicValue.class);
+            mv.visitTypeInsn(CHECKCAST, SEQUENCE);
+
+        } else if (type == VariableReference.class) {
+            mv.visitVarInsn(ALOAD, PARAMETERS);
+            push(parameters.indexOf(((VariableReference) expr).getName()));
+            mv.visitInsn(AALOAD);
+
+        } else if (type == PathExpr.class) {
+            final Expression step = ((PathExpr) expr).getSubExpression(0);
+            pushConstant(step, Expression.class);
+            mv.visitMethodInsn(INVOKESTATIC, COMPILED_FUNCTION_BODY, "proceed", "(" + EXPRESSION_DESC + ")V", false);
+            tryCatch(() -> compile(step), () -> locate(step));
+
+        } else if (type == DebuggableExpression.class) {
+            compile(((DebuggableExpression) expr).getExpression());
+
+        } else if (type == OpNumeric.class) {
+            final OpNumeric op = (OpNumeric) expr;
+            pushConstant(op, OpNumeric.class);
+            compile(op.getLeft());
+            compile(op.getRight());
+            invokeVirtual(OpNumeric.class, "apply", Sequence.class, Sequence.class, Sequence.class);
+
+        } else if (type == UnaryExpr.class) {
+            final UnaryExpr op = (UnaryExpr) expr;
+            pushConstant(op, UnaryExpr.class);
+            compile(op.getSubExpression(0));
+            invokeVirtual(UnaryExpr.class, "apply", Sequence.class, Sequence.class);
+
+        } else if (type == GeneralComparison.class || type == ValueComparison.class) {
+            final GeneralComparison comparison = (GeneralComparison) expr;
+            pushConstant(comparison, GeneralComparison.class);
+            compile(comparison.getLeft());
+            compile(comparison.getRight());
+            invokeVirtual(GeneralComparison.class, "compare", Sequence.class, Sequence.class, Sequence.class);
+
+        } else if (type == OpAnd.class || type == OpOr.class) {
+            // the left operand decides the result if it is false for "and", or true for "or"
+            final LogicalOp op = (LogicalOp) expr;
+            final int decidingJump = type == OpAnd.class ? IFEQ : IFNE;
+            final Label decided = new Label();
+            final Label end = new Label();
+            compile(op.getLeft());
+            effectiveBooleanValue();
+            mv.visitJumpInsn(decidingJump, decided);
+            compile(op.getRight());
+            effectiveBooleanValue();
+            mv.visitJumpInsn(decidingJump, decided);
+            pushBoolean(type == OpAnd.class);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(decided);
+            pushBoolean(type == OpOr.class);
+            mv.visitLabel(end);
+
+        } else if (type == ConditionalExpression.class) {
+            final ConditionalExpression conditional = (ConditionalExpression) expr;
+            tryCatch(() -> {
+                final Label otherwise = new Label();
+                final Label end = new Label();
+                compile(conditional.getTestExpr());
+                effectiveBooleanValue();
+                mv.visitJumpInsn(IFEQ, otherwise);
+                compile(conditional.getThenExpr());
+                mv.visitJumpInsn(GOTO, end);
+                mv.visitLabel(otherwise);
+                compile(conditional.getElseExpr());
+                mv.visitLabel(end);
+            }, () -> locate(conditional));
+
+        } else if (type == DynamicCardinalityCheck.class) {
+            pushConstant(expr, DynamicCardinalityCheck.class);
+            compile(expr.getSubExpression(0));
+            invokeVirtual(DynamicCardinalityCheck.class, "check", Sequence.class, Sequence.class);
+
+        } else if (type == DynamicTypeCheck.class) {
+            pushConstant(expr, DynamicTypeCheck.class);
+            compile(expr.getSubExpression(0));
+            invokeVirtual(DynamicTypeCheck.class, "check", Sequence.class, Sequence.class);
+
+        } else if (type == Atomize.class) {
+            compile(((Atomize) expr).getExpression());
+            mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Atomize.class), "atomize", "(" + SEQUENCE_DESC + ")" + SEQUENCE_DESC, false);
+
+        } else if (type == FunctionCall.class) {
+            final FunctionCall call = (FunctionCall) expr;
+            pushConstant(call, FunctionCall.class);
+            mv.visitInsn(ACONST_NULL);
+            mv.visitInsn(ACONST_NULL);
+            push(call.getArgumentCount());
+            mv.visitTypeInsn(ANEWARRAY, SEQUENCE);
+            for (int i = 0; i < call.getArgumentCount(); i++) {
+                final Expression argument = call.getArgument(i);
+                mv.visitInsn(DUP);
+                push(i);
+                tryCatch(() -> compile(argument), () -> {
+                    pushConstant(call, FunctionCall.class);
+                    mv.visitInsn(SWAP);
+                    invokeVirtual(FunctionCall.class, "argumentError", XPathException.class, XPathException.class);
+                });
+                mv.visitInsn(AASTORE);
+            }
+            invokeVirtual(FunctionCall.class, "call", Sequence.class, Sequence.class, Item.class, Sequence[].class);
+
+        } else {
+            throw new IllegalStateException("No code is generated for " + type.getName());
+        }
+    }
+
+    /**
+     * Generates a block which catches the {@link XPathException}s thrown by its code.
+     * The handler finds the exception on the stack, and must leave the exception to
+     * throw on the stack.
+     *
+     * @param block generates the code of the block
+     * @param handler generates the code of the handler
+     */
+    private void tryCatch(final Runnable block, final Runnable handler) {
+        final Label start = new Label();
+        final Label end = new Label();
+        final Label handlerStart = new Label();
+        final Label after = new Label();
+        mv.visitLabel(start);
+        block.run();
+        mv.visitLabel(end);
+        mv.visitJumpInsn(GOTO, after);
+        mv.visitLabel(handlerStart);
+        handler.run();
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(after);
+        tryCatchBlocks.add(new Label[] { start, end, handlerStart });
+    }
+
+    private void locate(final Expression expr) {
+        pushConstant(expr, Expression.class);
+        mv.visitMethodInsn(INVOKESTATIC, COMPILED_FUNCTION_BODY, "locate", "(" + XPATH_EXCEPTION_DESC + EXPRESSION_DESC + ")" + XPATH_EXCEPTION_DESC, false);
+    }
+
+    private void effectiveBooleanValue() {
+        mv.visitMethodInsn(INVOKEINTERFACE, SEQUENCE, "effectiveBooleanValue", "()Z", true);
+    }
+
+    private void pushBoolean(final boolean value) {
+        mv.visitFieldInsn(GETSTATIC, BOOLEAN_VALUE, value ? "TRUE" : "FALSE", Type.getDescriptor(BooleanValue.class));
+        mv.visitTypeInsn(CHECKCAST, SEQUENCE);
+    }
+
+    private void pushConstant(final Object constant, final Class<?> type) {
+        mv.visitVarInsn(ALOAD, CONSTANTS);
+        push(constants.size());
+        mv.visitInsn(AALOAD);
+        mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+        constants.add(constant);
+    }
+
+    private void push(final int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private void invokeVirtual(final Class<?> owner, final String name, final Class<?> returnType, final Class<?>... parameterTypes) {
+        final Type[] argumentTypes = new Type[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            argumentTypes[i] = Type.getType(parameterTypes[i]);
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(owner), name, Type.getMethodDescriptor(Type.getType(returnType), argumentTypes), false);
+    }
+
+    /**
+     * Defines the class of a single compiled function body, so that
+     * the class can be unloaded with the function.
+     */
+    private static final class CompiledClassLoader extends ClassLoader {
+
+        CompiledClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(final String name, final byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+
+    /**
+     * Counts the calls of the body of a user defined function, and holds the
+     * compiled body once the function has been called often enough.
+     *
+     * The clones of a function share its body, and therefore its instance of
+     * this class.
+     */
+    static final class HotFunctionBody {
+
+        private int threshold = -1;
+        private @Nullable Expression body;
+        private int calls;
+        private boolean compiled;
+        private @Nullable CompiledFunctionBody compiledBody;
+
+        /**
+         * Called for each call of the function.
+         *
+         * @param function the function
+         * @param body the current body of the function
+         *
+         * @return the compiled body of the function, or null if it should be evaluated by the interpreter
+         */
+        @Nullable CompiledFunctionBody called(final UserDefinedFunction function, final Expression body) {
+            final XQueryContext context = function.getContext();
+            if (context.getProfiler().isEnabled() || context.getDebuggeeJoint() != null) {
+                return null;
+            }
+            if (threshold < 0) {
+                final Object configured = context.getBroker().getConfiguration().getProperty(UserDefinedFunction.PROPERTY_COMPILE_THRESHOLD);
+                threshold = configured instanceof Integer ? Math.max(0, (Integer) configured) : UserDefinedFunction.DEFAULT_COMPILE_THRESHOLD;
+            }
+            if (body != this.body) {
+                this.body = body;
+                calls = 0;
+                compiled = false;
+                compiledBody = null;
+            }
+            if (compiled || threshold <= 0 || ++calls < threshold) {
+                return compiledBody;
+            }
+            // only try once, the body is interpreted if it cannot be compiled
+            compiled = true;
+            compiledBody = compile(body, function.getParameters());
+            if (compiledBody != null && LOG.isDebugEnabled()) {
+                LOG.debug("Compiled the body of {} after {} calls", function, calls);
+            }
+            return compiledBody;
+        }
+    }
+}
@@ -43,6 +43,9 @@ public class FilteredExpression extends AbstractExpression {
     final protected List<Predicate> predicates = new ArrayList<>(2);
     private Expression parent;
 
+    // the limit of an ordered FLWOR expression filtered by a positional predicate, if any
+    private OrderByClause.ResultLimit orderByLimit = null;
+
     public FilteredExpression(XQueryContext context, Expression expr) {
         super(context);
         this.expression = expr.simplify();
@@ -77,6 +80,8 @@ public class FilteredExpression extends AbstractExpression {
             for (final Predicate pred : predicates) {
                 pred.analyze(newContext);
             }
+            // an ordered FLWOR only has to sort the items selected by a positional predicate
+            orderByLimit = OrderByClause.limitResult(expression, OrderByClause.getPositionalLimit(predicates.get(0)));
         }
     }
 
@@ -98,7 +103,17 @@ public class FilteredExpression extends AbstractExpression {
         if (contextItem != null)
             {contextSequence = contextItem.toSequence();}
         Sequence result;
-        final Sequence seq = expression.eval(contextSequence, contextItem);
+        final Sequence seq;
+        if (orderByLimit != null) {
+            orderByLimit.enter();
+            try {
+                seq = expression.eval(contextSequence, contextItem);
+            } finally {
+                orderByLimit.exit();
+            }
+        } else {
+            seq = expression.eval(contextSequence, contextItem);
+        }
         if (seq.isEmpty())
             {result = Sequence.EMPTY_SEQUENCE;}
         else {
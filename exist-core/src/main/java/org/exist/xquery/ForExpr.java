@@ -31,12 +31,23 @@ import org.exist.xquery.value.*;
  * 
  * @author <a href="mailto:wolfgang@exist-db.org">Wolfgang Meier</a>
  */
-public class ForExpr extends BindingExpression {
+public class ForExpr extends BindingExpression implements LimitableResult {
 
     private String positionalVariable = null;
     private boolean allowEmpty = false;
     private boolean isOuterFor = true;
 
+    /**
+     * The number of threads to use for evaluating the iterations
+     * in parallel, or 0 if the iterations are evaluated sequentially.
+     */
+    private int parallelism = 0;
+
+    /**
+     * The number of items used from the start of the result, or -1 if all items are used.
+     */
+    private long resultLimit = -1;
+
     public ForExpr(XQueryContext context, boolean allowingEmpty) {
         super(context);
         this.allowEmpty = allowingEmpty;
@@ -57,6 +68,14 @@ public class ForExpr extends BindingExpression {
         positionalVariable = var;
     }
 
+    public String getPositionalVariable() {
+        return positionalVariable;
+    }
+
+    public boolean isAllowingEmpty() {
+        return allowEmpty;
+    }
+
 	/* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.Expression)
      */
@@ -89,6 +108,13 @@ public class ForExpr extends BindingExpression {
             final AnalyzeContextInfo newContextInfo = new AnalyzeContextInfo(contextInfo);
             newContextInfo.addFlag(SINGLE_STEP_EXECUTION);
             returnExpr.analyze(newContextInfo);
+
+            // parallel evaluation is restricted to simple "for" clauses with a thread-safe return clause
+            parallelism = ParallelForEvaluator.getParallelism(context, contextInfo.getFlags());
+            if (parallelism > 0 && (positionalVariable != null || sequenceType != null || allowEmpty
+                    || returnExpr instanceof FLWORClause || !ParallelForEvaluator.isThreadSafe(returnExpr))) {
+                parallelism = 0;
+            }
         } catch (final QName.IllegalQNameException e) {
             throw new XPathException(ErrorCodes.XPST0081, "No namespace defined for prefix");
         } finally {
@@ -118,7 +144,7 @@ public class ForExpr extends BindingExpression {
                 "CONTEXT ITEM", contextItem.toSequence());}
         }
         context.expressionStart(this);
-        LocalVariable var;
+        LocalVariable var = null;
         Sequence in;
         // Save the local variable stack
         LocalVariable mark = context.markLocalVariables(false);
@@ -128,7 +154,7 @@ public class ForExpr extends BindingExpression {
             in = inputSequence.eval(contextSequence, null);
             clearContext(getExpressionId(), in);
             // Declare the iteration variable
-            var = createVariable(varName);
+            var = isParallel() ? createThreadBoundVariable(varName) : createVariable(varName);
             var.setSequenceType(sequenceType);
             context.declareVariableBinding(var);
             registerUpdateListener(in);
@@ -182,8 +208,11 @@ public class ForExpr extends BindingExpression {
             int p = 0;
             if (in.isEmpty() && allowEmpty) {
                 processItem(var, AtomicValue.EMPTY_VALUE, Sequence.EMPTY_SEQUENCE, resultSequence, at, p);
+            } else if (var instanceof ThreadBoundVariable && resultLimit < 0 && ParallelForEvaluator.eval(this, returnExpr,
+                    (ThreadBoundVariable) var, in, parallelism, resultSequence)) {
+                // all items have been processed by the parallel evaluator
             } else {
-                for (final SequenceIterator i = in.iterate(); i.hasNext(); p++) {
+                for (final SequenceIterator i = in.iterate(); i.hasNext() && !isLimitReached(resultSequence); p++) {
                     processItem(var, i.nextItem(), in, resultSequence, at, p);
                 }
             }
@@ -192,6 +221,9 @@ public class ForExpr extends BindingExpression {
         } finally {
             // restore the local variable stack 
             context.popLocalVariables(mark, resultSequence);
+            if (var instanceof ThreadBoundVariable) {
+                ((ThreadBoundVariable) var).release();
+            }
         }
 
         clearContext(getExpressionId(), in);
@@ -230,6 +262,25 @@ public class ForExpr extends BindingExpression {
         return resultSequence;
     }
 
+    /**
+     * Parallel evaluation requires that the query is neither profiled nor debugged,
+     * as the profiler and the debugger keep track of the current expression.
+     */
+    boolean isParallel() {
+        return parallelism > 0 && !context.getProfiler().isEnabled()
+                && !context.getProfiler().traceFunctions() && !context.isDebugMode();
+    }
+
+    private LocalVariable createThreadBoundVariable(final String name) throws XPathException {
+        try {
+            final LocalVariable var = new ThreadBoundVariable(QName.parse(context, name, null));
+            firstVar = var;
+            return var;
+        } catch (final QName.IllegalQNameException e) {
+            throw new XPathException(ErrorCodes.XPST0081, "No namespace defined for prefix " + name);
+        }
+    }
+
     private void processItem(LocalVariable var, Item contextItem, Sequence in, Sequence resultSequence, LocalVariable
             at, int p) throws XPathException {
         context.proceed(this);
@@ -251,6 +302,29 @@ public class ForExpr extends BindingExpression {
         var.destroy(context, resultSequence);
     }
 
+    /**
+     * Stops the iteration once the first items of the result have been produced,
+     * unless a later clause reorders or groups the tuples, or the return
+     * expression may have side effects.
+     */
+    @Override
+    public void limitResult(final long limit) {
+        if (!LimitableResult.isSideEffectFree(returnExpr)) {
+            return;
+        }
+        for (Expression next = returnExpr; next instanceof FLWORClause; next = ((FLWORClause) next).getReturnExpression()) {
+            final ClauseType type = ((FLWORClause) next).getType();
+            if (type == ClauseType.ORDERBY || type == ClauseType.GROUPBY) {
+                return;
+            }
+        }
+        resultLimit = resultLimit < 0 ? limit : Math.max(resultLimit, limit);
+    }
+
+    private boolean isLimitReached(final Sequence resultSequence) {
+        return resultLimit > 0 && isOuterFor && resultSequence.getItemCountLong() >= resultLimit;
+    }
+
     private boolean callPostEval() {
         FLWORClause prev = getPreviousClause();
         while (prev != null) {
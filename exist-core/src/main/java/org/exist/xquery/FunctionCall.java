@@ -183,27 +183,60 @@ public class FunctionCall extends Function {
     @Override
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
         final Sequence[] seq = new Sequence[getArgumentCount()];
-        final DocumentSet[] contextDocs = new DocumentSet[getArgumentCount()];
         for(int i = 0; i < getArgumentCount(); i++) {
             try {
                 seq[i] = getArgument(i).eval(contextSequence, contextItem);
-                if(varDeps != null && varDeps[i] != null) {
+                //System.out.println("found " + seq[i].getLength() + " for " + getArgument(i).pprint());
+            } catch(final XPathException e) {
+                throw argumentError(e);
+            }
+        }
+        return call(contextSequence, contextItem, seq);
+    }
+
+    /**
+     * Adds the location of the function call to an error raised by
+     * the evaluation of an argument.
+     *
+     * @param e the error raised by the argument
+     *
+     * @return the error
+     */
+    public XPathException argumentError(final XPathException e) {
+        if(e.getLine() <= 0) {
+            e.setLocation(line, column, getSource());
+        }
+        // append location of the function call to the exception message:
+        e.addFunctionCall(functionDef, this);
+        return e;
+    }
+
+    /**
+     * Calls the function with the evaluated arguments, and checks the type of its result.
+     * Used by {@link #eval(Sequence, Item)}, and by the function bodies which are compiled
+     * by {@link ExpressionCompiler}.
+     *
+     * @param contextSequence the context sequence
+     * @param contextItem the context item
+     * @param seq the results of the arguments
+     *
+     * @return the result of the function
+     *
+     * @throws XPathException if an error occurs whilst evaluating the function
+     */
+    public Sequence call(final Sequence contextSequence, final Item contextItem, final Sequence[] seq) throws XPathException {
+        final DocumentSet[] contextDocs = new DocumentSet[getArgumentCount()];
+        if(varDeps != null) {
+            for(int i = 0; i < getArgumentCount(); i++) {
+                if(varDeps[i] != null) {
                     final Variable var = varDeps[i].getVariable(null);
                     if(var != null) {
                         contextDocs[i] = var.getContextDocs();
                     }
                 }
-                //System.out.println("found " + seq[i].getLength() + " for " + getArgument(i).pprint());
-            } catch(final XPathException e) {
-                if(e.getLine() <= 0) {
-                    e.setLocation(line, column, getSource());
-                }
-                // append location of the function call to the exception message:
-                e.addFunctionCall(functionDef, this);
-                throw e;
             }
         }
-        
+
         final Sequence result = evalFunction(contextSequence, contextItem, seq, contextDocs);
         try {
             //Don't check deferred calls : it would result in a stack overflow
@@ -212,7 +245,9 @@ public class FunctionCall extends Function {
             //TODO : add a prior cardinality check on wether an empty result is allowed or not
             //TODO : should we introduce a deffered type check on VirtualNodeSet 
             // and trigger it when the nodeSet is realized ?
-            if(!(result instanceof DeferredFunctionCall) && !(result instanceof VirtualNodeSet) && !result.isEmpty()) {
+            //Skip the check if any item is allowed, as determining the item type may have to scan the result
+            if(getSignature().getReturnType().getPrimaryType() != Type.ITEM &&
+                    !(result instanceof DeferredFunctionCall) && !(result instanceof VirtualNodeSet) && !result.isEmpty()) {
                 getSignature().getReturnType().checkType(result.getItemType());
             }
         } catch(final XPathException e) {
@@ -273,8 +308,11 @@ public class FunctionCall extends Function {
             //XXX: should we have it? org.exist.xquery.UserDefinedFunction do a call -shabanovd
             context.stackEnter(this);
 
-            long start = System.currentTimeMillis();
-            if(context.getProfiler().traceFunctions()) {
+            // only read the clock if function calls are traced
+            final boolean traceFunctions = context.getProfiler().traceFunctions();
+            long start = 0;
+            if(traceFunctions) {
+                start = System.currentTimeMillis();
                 if (context.tailRecursiveCall(getSignature()))
                     {start = -1;}
                 context.getProfiler().traceFunctionStart(this);
@@ -295,7 +333,7 @@ public class FunctionCall extends Function {
                     returnSeq = ((DeferredFunctionCall) returnSeq).execute();
                 }
                 
-                if(context.getProfiler().traceFunctions()) {
+                if(traceFunctions) {
                     context.getProfiler().traceFunctionEnd(this, start < 0 ? 0 : System.currentTimeMillis() - start);
                 }
                 
@@ -35,6 +35,8 @@ import org.exist.storage.DBBroker;
 import org.exist.storage.ElementValue;
 import org.exist.storage.IndexSpec;
 import org.exist.storage.Indexable;
+import org.exist.storage.statistics.KeyStatistics;
+import org.exist.storage.statistics.KeyStatisticsRegistry;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.Constants.Comparison;
 import org.exist.xquery.Constants.StringTruncationOperator;
@@ -270,6 +272,44 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
         return( axis );
     }
 
+    @Override
+    public QName getOptimizeQName()
+    {
+        return( contextQName );
+    }
+
+    @Override
+    public double getSelectivity()
+    {
+        if( truncation != StringTruncationOperator.NONE ) {
+            return( CostModel.SUBSTRING_SELECTIVITY );
+        }
+        switch( relation ) {
+
+            case EQ: {
+                return( CostModel.EQUALITY_SELECTIVITY );
+            }
+
+            case NEQ: {
+                return( 1.0 - CostModel.EQUALITY_SELECTIVITY );
+            }
+
+            default: {
+                return( CostModel.RANGE_SELECTIVITY );
+            }
+        }
+    }
+
+    @Override
+    public KeyStatistics getEqualityKeyStatistics()
+    {
+        // the lookups of preSelect are served by the qname index of the value index
+        if( ( truncation != StringTruncationOperator.NONE ) || ( relation != Comparison.EQ ) || ( contextQName == null ) ) {
+            return( null );
+        }
+        return( context.getBroker().getValueIndex().getKeyStatistics().find( KeyStatisticsRegistry.nameOf( contextQName ) ) );
+    }
+
 
     /* (non-Javadoc)
      * @see org.exist.xquery.BinaryOp#returnsType()
@@ -524,8 +564,69 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
 
     protected Sequence genericCompare( Sequence ls, Sequence contextSequence, Item contextItem ) throws XPathException
     {
-        final long           start    = System.currentTimeMillis();
-        final Sequence rs       = getRight().eval( contextSequence, contextItem );
+        final long     start  = System.currentTimeMillis();
+        final Sequence rs     = getRight().eval( contextSequence, contextItem );
+        final Sequence result = generalCompare( ls, rs, contextSequence );
+
+        if( context.getProfiler().traceFunctions() ) {
+            context.getProfiler().traceIndexUsage( context, PerformanceStats.RANGE_IDX_TYPE, this, PerformanceStats.NO_INDEX, System.currentTimeMillis() - start );
+        }
+        return( result );
+    }
+
+
+    /**
+     * Compares the results of the operands, which were evaluated without a context
+     * sequence outside of a predicate. Used by the function bodies which are
+     * compiled by {@link ExpressionCompiler}, in place of {@link #eval(Sequence, Item)}.
+     *
+     * @param   ls  the result of the left operand
+     * @param   rs  the result of the right operand
+     *
+     * @return  The Sequence resulting from the comparison
+     *
+     * @throws  XPathException in case of dynamic error
+     */
+    public Sequence compare( final Sequence ls, final Sequence rs ) throws XPathException
+    {
+        final Sequence result = compareOperands( ls, rs, null );
+        actualReturnType = result.getItemType();
+        return( result );
+    }
+
+
+    /**
+     * Determines if {@link #eval(Sequence, Item)} only compares the results of the operands
+     * when there is no context sequence, so that {@link #compare(Sequence, Sequence)} may be
+     * used in its place.
+     *
+     * @return  true if no optimization applies to the comparison
+     */
+    boolean comparesOperands()
+    {
+        return( !inPredicate && !inWhereClause && ( contextStep == null ) );
+    }
+
+
+    /**
+     * Compares the results of the operands, as done by {@link #genericCompare(Sequence, Item)}.
+     *
+     * @param   ls               the result of the left operand
+     * @param   rs               the result of the right operand
+     * @param   contextSequence  the context sequence
+     *
+     * @return  The Sequence resulting from the comparison
+     *
+     * @throws  XPathException in case of dynamic error
+     */
+    protected Sequence compareOperands( final Sequence ls, final Sequence rs, final Sequence contextSequence ) throws XPathException
+    {
+        return( generalCompare( ls, rs, contextSequence ) );
+    }
+
+
+    private Sequence generalCompare( final Sequence ls, final Sequence rs, final Sequence contextSequence ) throws XPathException
+    {
         final Collator collator = getCollator( contextSequence );
         Sequence       result   = BooleanValue.FALSE;
 
@@ -584,10 +685,6 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
                 }
             }
         }
-
-        if( context.getProfiler().traceFunctions() ) {
-            context.getProfiler().traceIndexUsage( context, PerformanceStats.RANGE_IDX_TYPE, this, PerformanceStats.NO_INDEX, System.currentTimeMillis() - start );
-        }
         return( result );
     }
 
@@ -27,7 +27,6 @@ import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
 import java.util.*;
-import java.util.stream.Stream;
 
 /**
  * Implements a "group by" clause inside a FLWOR.
@@ -36,6 +35,18 @@ import java.util.stream.Stream;
  */
 public class GroupByClause extends AbstractFLWORClause {
 
+    /**
+     * Configuration attribute of the xquery element for the memory budget of a group by clause.
+     */
+    public static final String GROUP_BY_MEMORY_BUDGET_ATTRIBUTE = "group-by-memory-budget";
+    public static final String PROPERTY_GROUP_BY_MEMORY_BUDGET = "xquery.group-by-memory-budget";
+
+    /**
+     * Default memory budget of a group by clause in bytes, after which
+     * groups are spilled to disk.
+     */
+    public static final long DEFAULT_GROUP_BY_MEMORY_BUDGET = 128L * 1024 * 1024;
+
     protected FLWORClause rootClause = null;
     private GroupSpec[] groupSpecs;
     private final Deque<GroupByData> stack = new ArrayDeque<>();
@@ -46,25 +57,15 @@ public class GroupByClause extends AbstractFLWORClause {
      * in a separate object and push it to a stack, otherwise recursive calls
      * would overwrite data.
      */
-    private class GroupByData {
+    private static class GroupByData {
 
-        private Map<List<AtomicValue>, Tuple> groupedMap = null;
-        private Map<QName, LocalVariable> variables = null;
-        private List<LocalVariable> groupingVars = null;
+        private GroupByTable table = null;
+        private Collator[] collators = null;
+        private final Map<QName, Integer> slots = new HashMap<>();
+        private final List<LocalVariable> variables = new ArrayList<>();
+        private final List<LocalVariable> groupingVars = new ArrayList<>();
 
         private boolean initialized = false;
-
-        public GroupByData() {
-            // check if we can use a hash map
-            if (usesDefaultCollator()) {
-                groupedMap = new HashMap<>();
-            } else {
-                // non-default collation: must use tree map
-                groupedMap = new TreeMap<>(GroupByClause.this::compareKeys);
-            }
-            variables = new HashMap<>();
-            groupingVars = new ArrayList<>();
-        }
     }
 
     public GroupByClause(XQueryContext context) {
@@ -87,9 +88,10 @@ public class GroupByClause extends AbstractFLWORClause {
         final GroupByData data = stack.peek();
 
         // Evaluate group spec to create grouping key sequence
-        final List<Sequence> groupingValues = new ArrayList<>();
-        final List<AtomicValue> groupingKeys = new ArrayList<>();
-        for (GroupSpec spec: groupSpecs) {
+        final Sequence[] groupingValues = new Sequence[groupSpecs.length];
+        final AtomicValue[] groupingKeys = new AtomicValue[groupSpecs.length];
+        for (int i = 0; i < groupSpecs.length; i++) {
+            final GroupSpec spec = groupSpecs[i];
             final Sequence groupingSeq = spec.getGroupExpression().eval(null);
             if (groupingSeq.getItemCount() > 1) {
                 throw new XPathException(this, ErrorCodes.XPTY0004, "Grouping variable " + spec.getKeyVarName() + " " +
@@ -103,28 +105,42 @@ public class GroupByClause extends AbstractFLWORClause {
                 groupingVar.setStaticType(groupingValue.getType());
                 data.groupingVars.add(groupingVar);
             }
-            groupingValues.add(groupingSeq);
-            groupingKeys.add(groupingValue);
+            groupingValues[i] = groupingSeq;
+            groupingKeys[i] = groupingValue;
         }
 
-        // collect the current tuples into the grouping map
-        final Tuple tuple = data.groupedMap.computeIfAbsent(groupingKeys, ks -> new Tuple(groupingValues));
+        if (!data.initialized) {
+            // on first call: initialize non-grouping variables for later use
+            for (LocalVariable nextVar = rootClause.getStartVariable(); nextVar != null; nextVar = nextVar.after) {
+                if (!data.slots.containsKey(nextVar.getQName())) {
+                    final LocalVariable var = new LocalVariable(nextVar.getQName());
+                    var.setSequenceType(nextVar.getSequenceType());
+                    var.setStaticType(nextVar.getStaticType());
+                    var.setContextDocs(nextVar.getContextDocs());
+                    data.slots.put(var.getQName(), data.variables.size());
+                    data.variables.add(var);
+                }
+            }
+            data.collators = getCollators();
+            data.table = new GroupByTable(this, data.variables.size(), getMemoryBudget(), this::groupingKey);
+        }
 
-        // scan in-scope variables to collect tuples
+        // scan in-scope variables to collect the current tuple into its group
+        final Sequence[] values = new Sequence[data.variables.size()];
         LocalVariable nextVar = rootClause.getStartVariable();
         Objects.requireNonNull(nextVar);
         while(nextVar != null) {
-            tuple.add(nextVar.getQName(), nextVar.getValue());
-            if (!data.initialized) {
-                // on first call: initialize non-grouping variable for later use
-                final LocalVariable var = new LocalVariable(nextVar.getQName());
-                var.setSequenceType(nextVar.getSequenceType());
-                var.setStaticType(nextVar.getStaticType());
-                var.setContextDocs(nextVar.getContextDocs());
-                data.variables.put(var.getQName(), var);
+            final int slot = data.slots.get(nextVar.getQName());
+            if (values[slot] == null) {
+                values[slot] = nextVar.getValue();
+            } else {
+                final ValueSequence temp = new ValueSequence(values[slot]);
+                temp.addAll(nextVar.getValue());
+                values[slot] = temp;
             }
             nextVar = nextVar.after;
         }
+        data.table.add(GroupKey.of(groupingKeys, data.collators), groupingValues, values);
 
         data.initialized = true;
         return contextSequence;
@@ -138,7 +154,7 @@ public class GroupByClause extends AbstractFLWORClause {
             final LocalVariable mark = context.markLocalVariables(false);
             try {
                 // declare non-grouping variables
-                for (LocalVariable var : data.variables.values()) {
+                for (LocalVariable var : data.variables) {
                     context.declareVariableBinding(var);
                 }
                 // declare grouping variables
@@ -146,29 +162,31 @@ public class GroupByClause extends AbstractFLWORClause {
                     context.declareVariableBinding(var);
                 }
                 // iterate over each group
-                for (Tuple tuple : data.groupedMap.values()) {
-                    context.proceed();
-
-                    // set grouping variable values
-                    final Iterator<Sequence> siter = tuple.groupingValues.iterator();
-                    for (LocalVariable var : data.groupingVars) {
-                        if (siter.hasNext()) {
-                            Sequence val = siter.next();
-                            var.setValue(val);
-                        } else {
+                if (data.table != null) {
+                    final Sequence groupResult = result;
+                    data.table.forEach((groupingValues, values) -> {
+                        context.proceed();
+
+                        // set grouping variable values
+                        if (groupingValues.length != data.groupingVars.size()) {
                             throw new XPathException(this, "Internal error: missing grouping value");
                         }
-                    }
-                    // set values of non-grouping variables
-                    for (Map.Entry<QName, Sequence> entry : tuple.entrySet()) {
-                        final LocalVariable var = data.variables.get(entry.getKey());
-                        var.setValue(entry.getValue());
-                    }
-                    final Sequence r = returnExpr.eval(null);
-                    result.addAll(r);
+                        for (int i = 0; i < groupingValues.length; i++) {
+                            data.groupingVars.get(i).setValue(groupingValues[i]);
+                        }
+                        // set values of non-grouping variables
+                        for (int i = 0; i < values.length; i++) {
+                            data.variables.get(i).setValue(values[i]);
+                        }
+                        final Sequence r = returnExpr.eval(null);
+                        groupResult.addAll(r);
+                    });
                 }
             } finally {
                 stack.pop();
+                if (data.table != null) {
+                    data.table.close();
+                }
                 context.popLocalVariables(mark, result);
             }
 
@@ -252,6 +270,11 @@ public class GroupByClause extends AbstractFLWORClause {
     @Override
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
+        for (final GroupByData data : stack) {
+            if (data.table != null) {
+                data.table.close();
+            }
+        }
         stack.clear();
         returnExpr.resetState(postOptimization);
         for (GroupSpec spec: groupSpecs) {
@@ -265,53 +288,26 @@ public class GroupByClause extends AbstractFLWORClause {
     }
 
     /**
-     * Compare keys using the collator given in the group spec. Used to
-     * sort keys into the grouping map.
+     * Compute the grouping key of a group from its grouping values.
      */
-    private int compareKeys(List<AtomicValue> s1, List<AtomicValue> s2) {
-        final int c1 = s1.size();
-        final int c2 = s2.size();
-        if (c1 == c2) {
-            try {
-                for (int i = 0; i < c1; i++) {
-                    final AtomicValue v1 = s1.get(i);
-                    final AtomicValue v2 = s2.get(i);
-                    final Collator collator = groupSpecs[i].getCollator();
-                    final int r = v1.compareTo(collator, v2);
-                    if (r != Constants.EQUAL) {
-                        return r;
-                    }
-                }
-                return Constants.EQUAL;
-            } catch (XPathException e) {
-                return Constants.INFERIOR;
-            }
+    private GroupKey groupingKey(final Sequence[] groupingValues) throws XPathException {
+        final AtomicValue[] keys = new AtomicValue[groupingValues.length];
+        for (int i = 0; i < groupingValues.length; i++) {
+            keys[i] = groupingValues[i].isEmpty() ? AtomicValue.EMPTY_VALUE : groupingValues[i].itemAt(0).atomize();
         }
-        return c1 < c2 ? Constants.INFERIOR : Constants.SUPERIOR;
+        return GroupKey.of(keys, getCollators());
     }
 
-    private boolean usesDefaultCollator() {
-        return Stream.of(groupSpecs).allMatch(spec -> spec.getCollator() == null);
-    }
-
-    static class Tuple extends HashMap<QName, Sequence> {
-
-        private final List<Sequence> groupingValues;
-
-        public Tuple(final List<Sequence> groupingValues) {
-            super();
-            this.groupingValues = groupingValues;
+    private Collator[] getCollators() {
+        final Collator[] collators = new Collator[groupSpecs.length];
+        for (int i = 0; i < groupSpecs.length; i++) {
+            collators[i] = groupSpecs[i].getCollator();
         }
+        return collators;
+    }
 
-        public void add(final QName name, final Sequence val) throws XPathException {
-            Sequence seq = get(name);
-            if (seq == null) {
-                final ValueSequence temp = new ValueSequence(val.getItemCount());
-                temp.addAll(val);
-                put(name, temp);
-            } else {
-                seq.addAll(val);
-            }
-        }
+    private long getMemoryBudget() {
+        final Object budget = context.getBroker().getConfiguration().getProperty(PROPERTY_GROUP_BY_MEMORY_BUDGET);
+        return budget instanceof Long ? (Long) budget : DEFAULT_GROUP_BY_MEMORY_BUDGET;
     }
 }
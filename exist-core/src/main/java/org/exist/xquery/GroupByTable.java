@@ -0,0 +1,326 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.xquery.value.*;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Collects the tuples of a "group by" clause into groups.
+ *
+ * Groups are held in a hash table in order of their first appearance. The
+ * memory used by the groups is estimated as tuples are added. Once it exceeds
+ * the memory budget, the groups are written to a fixed number of temporary
+ * partition files, chosen by the hash code of their key, and the table starts
+ * over empty. When the groups are finally read, each partition is loaded and
+ * merged on its own, so that only one partition has to fit into memory at a
+ * time. In this case, the groups are returned partition by partition.
+ *
+ * Only atomic values and persistent nodes can be written to a partition file.
+ * If a group holds any other item, e.g. a constructed node, the table stops
+ * spilling and keeps all further groups in memory.
+ */
+final class GroupByTable {
+
+    private final static Logger LOG = LogManager.getLogger(GroupByTable.class);
+
+    /**
+     * The number of partition files used when spilling.
+     */
+    static final int PARTITIONS = 16;
+
+    // rough estimate of the heap memory used by a group, besides its items
+    private static final int GROUP_OVERHEAD = 128;
+
+    /**
+     * Computes the grouping key of a group from its grouping values.
+     */
+    @FunctionalInterface
+    interface KeyFunction {
+        GroupKey key(Sequence[] groupingValues) throws XPathException;
+    }
+
+    /**
+     * Receives the groups of the table.
+     */
+    @FunctionalInterface
+    interface GroupConsumer {
+        void accept(Sequence[] groupingValues, Sequence[] values) throws XPathException;
+    }
+
+    private static final class Group {
+        final GroupKey key;
+        final Sequence[] groupingValues;
+        final ValueSequence[] values;
+
+        Group(final GroupKey key, final Sequence[] groupingValues, final int slots) {
+            this.key = key;
+            this.groupingValues = groupingValues;
+            this.values = new ValueSequence[slots];
+            for (int i = 0; i < slots; i++) {
+                values[i] = new ValueSequence();
+            }
+        }
+    }
+
+    private final Expression parent;
+    private final int slots;
+    private final long memoryBudget;
+    private final KeyFunction keyFunction;
+
+    private Map<GroupKey, Group> groups = new LinkedHashMap<>();
+    private long memoryUsed = 0;
+
+    private boolean spillable;
+    @Nullable private Path[] partitionFiles = null;
+    @Nullable private DataOutputStream[] partitionOutputs = null;
+    private final SpilledItemCodec codec = new SpilledItemCodec();
+
+    /**
+     * @param parent the expression on whose behalf the tuples are grouped, used for error reporting
+     * @param slots the number of non-grouping variables of each tuple
+     * @param memoryBudget the estimated number of bytes after which groups are spilled
+     *     to disk, or a value less than 1 to keep all groups in memory
+     * @param keyFunction computes the key of a group read back from disk
+     */
+    GroupByTable(final Expression parent, final int slots, final long memoryBudget, final KeyFunction keyFunction) {
+        this.parent = parent;
+        this.slots = slots;
+        this.memoryBudget = memoryBudget;
+        this.keyFunction = keyFunction;
+        this.spillable = memoryBudget > 0;
+    }
+
+    /**
+     * Adds a tuple to its group.
+     *
+     * @param key the grouping key of the tuple
+     * @param groupingValues the grouping values of the tuple, only used if the group does not yet exist
+     * @param values the values of the non-grouping variables of the tuple
+     *
+     * @throws XPathException if the groups cannot be spilled to disk
+     */
+    void add(final GroupKey key, final Sequence[] groupingValues, final Sequence[] values) throws XPathException {
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group(key, groupingValues, slots);
+            groups.put(key, group);
+            memoryUsed += GROUP_OVERHEAD + estimateMemory(groupingValues);
+        }
+        for (int i = 0; i < slots; i++) {
+            group.values[i].addAll(values[i]);
+        }
+        memoryUsed += estimateMemory(values);
+
+        if (spillable && memoryUsed > memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * @return true if groups have been spilled to disk
+     */
+    boolean isSpilled() {
+        return partitionFiles != null;
+    }
+
+    /**
+     * Passes each group to the consumer. The values of the non-grouping
+     * variables of a group are in the order in which the tuples were added.
+     *
+     * @param consumer the consumer of the groups
+     *
+     * @throws XPathException if the consumer fails or the groups cannot be read back from disk
+     */
+    void forEach(final GroupConsumer consumer) throws XPathException {
+        if (!isSpilled()) {
+            for (final Group group : groups.values()) {
+                consumer.accept(group.groupingValues, group.values);
+            }
+            return;
+        }
+
+        // groups which are still in memory are merged after the spilled parts of the same partition
+        final List<List<Group>> inMemory = new ArrayList<>(PARTITIONS);
+        for (int p = 0; p < PARTITIONS; p++) {
+            inMemory.add(new ArrayList<>());
+        }
+        for (final Group group : groups.values()) {
+            inMemory.get(partition(group.key)).add(group);
+        }
+        groups = new LinkedHashMap<>();
+        memoryUsed = 0;
+
+        try {
+            for (int p = 0; p < PARTITIONS; p++) {
+                partitionOutputs[p].close();
+                partitionOutputs[p] = null;
+            }
+        } catch (final IOException e) {
+            throw new XPathException(parent, "Unable to write group by partition: " + e.getMessage(), e);
+        }
+
+        for (int p = 0; p < PARTITIONS; p++) {
+            final Map<GroupKey, Group> partition = new LinkedHashMap<>();
+            try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(partitionFiles[p])))) {
+                int groupingCount;
+                while ((groupingCount = readCount(is)) >= 0) {
+                    final Sequence[] groupingValues = new Sequence[groupingCount];
+                    for (int i = 0; i < groupingCount; i++) {
+                        groupingValues[i] = codec.readSequence(is);
+                    }
+                    final GroupKey key = keyFunction.key(groupingValues);
+                    final Group group = partition.computeIfAbsent(key, k -> new Group(k, groupingValues, slots));
+                    for (int i = 0; i < slots; i++) {
+                        group.values[i].addAll(codec.readSequence(is));
+                    }
+                }
+            } catch (final IOException e) {
+                throw new XPathException(parent, "Unable to read group by partition: " + e.getMessage(), e);
+            }
+            for (final Group group : inMemory.get(p)) {
+                final Group spilled = partition.get(group.key);
+                if (spilled == null) {
+                    partition.put(group.key, group);
+                } else {
+                    for (int i = 0; i < slots; i++) {
+                        spilled.values[i].addAll(group.values[i]);
+                    }
+                }
+            }
+            inMemory.set(p, null);
+
+            for (final Group group : partition.values()) {
+                consumer.accept(group.groupingValues, group.values);
+            }
+        }
+    }
+
+    /**
+     * Discards all groups and deletes the partition files.
+     */
+    void close() {
+        groups = new LinkedHashMap<>();
+        memoryUsed = 0;
+        codec.clear();
+        if (partitionFiles != null) {
+            final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (partitionOutputs[p] != null) {
+                    try {
+                        partitionOutputs[p].close();
+                    } catch (final IOException e) {
+                        LOG.warn("Unable to close group by partition: {}", e.getMessage());
+                    }
+                }
+                if (partitionFiles[p] != null) {
+                    temporaryFileManager.returnTemporaryFile(partitionFiles[p]);
+                }
+            }
+            partitionFiles = null;
+            partitionOutputs = null;
+        }
+    }
+
+    private void spill() throws XPathException {
+        for (final Group group : groups.values()) {
+            if (!canSpill(group.groupingValues) || !canSpill(group.values)) {
+                LOG.debug("Group by exceeds its memory budget of {} bytes, but holds items which cannot be written to disk", memoryBudget);
+                spillable = false;
+                return;
+            }
+        }
+
+        try {
+            if (partitionFiles == null) {
+                final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+                partitionFiles = new Path[PARTITIONS];
+                partitionOutputs = new DataOutputStream[PARTITIONS];
+                for (int p = 0; p < PARTITIONS; p++) {
+                    partitionFiles[p] = temporaryFileManager.getTemporaryFile();
+                    partitionOutputs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partitionFiles[p])));
+                }
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Spilling {} groups of about {} bytes to disk", groups.size(), memoryUsed);
+            }
+            for (final Group group : groups.values()) {
+                final DataOutputStream os = partitionOutputs[partition(group.key)];
+                os.writeInt(group.groupingValues.length);
+                for (final Sequence groupingValue : group.groupingValues) {
+                    codec.writeSequence(os, groupingValue);
+                }
+                for (final Sequence value : group.values) {
+                    codec.writeSequence(os, value);
+                }
+            }
+        } catch (final IOException e) {
+            throw new XPathException(parent, "Unable to write group by partition: " + e.getMessage(), e);
+        }
+
+        groups = new LinkedHashMap<>();
+        memoryUsed = 0;
+    }
+
+    private static int partition(final GroupKey key) {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (PARTITIONS - 1);
+    }
+
+    private static boolean canSpill(final Sequence[] sequences) throws XPathException {
+        for (final Sequence sequence : sequences) {
+            if (!SpilledItemCodec.canSpillSequence(sequence)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long estimateMemory(final Sequence[] sequences) throws XPathException {
+        long size = 0;
+        for (final Sequence sequence : sequences) {
+            size += SpilledItemCodec.estimateSequenceMemory(sequence);
+        }
+        return size;
+    }
+
+    /**
+     * Reads the number of grouping values at the start of a group,
+     * or returns -1 at the end of the partition.
+     */
+    private static int readCount(final DataInputStream is) throws IOException {
+        final int b1 = is.read();
+        if (b1 < 0) {
+            return -1;
+        }
+        return (b1 << 24) | (is.readUnsignedByte() << 16) | (is.readUnsignedByte() << 8) | is.readUnsignedByte();
+    }
+}
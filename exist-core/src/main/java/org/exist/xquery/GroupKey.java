@@ -0,0 +1,170 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import com.ibm.icu.text.Collator;
+import org.exist.xquery.value.*;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The grouping key of a tuple in a "group by" clause.
+ *
+ * The atomized grouping values are normalized, so that keys which are equal
+ * according to the grouping rules of XQuery 3.1 are equal and have the same
+ * hash code. Numeric and boolean values are held as primitive longs, strings
+ * as {@link String} or, if a collation is given, as collation key. Values of
+ * other types are held as they are.
+ */
+final class GroupKey {
+
+    private static final byte EMPTY = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte NAN = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DECIMAL = 5;
+    private static final byte STRING = 6;
+    private static final byte OTHER = 7;
+
+    private final byte[] kinds;
+    private final long[] primitives;
+    @Nullable private final Object[] objects;
+    private final int hashCode;
+
+    private GroupKey(final byte[] kinds, final long[] primitives, @Nullable final Object[] objects) {
+        this.kinds = kinds;
+        this.primitives = primitives;
+        this.objects = objects;
+
+        int h = Arrays.hashCode(kinds);
+        h = 31 * h + Arrays.hashCode(primitives);
+        h = 31 * h + Arrays.hashCode(objects);
+        this.hashCode = h;
+    }
+
+    /**
+     * Creates the key for the grouping values of a tuple.
+     *
+     * @param values the atomized grouping values, {@link AtomicValue#EMPTY_VALUE} for an empty grouping value
+     * @param collators the collator of each grouping value, or null for the default collation
+     *
+     * @return the grouping key
+     *
+     * @throws XPathException if a value cannot be normalized
+     */
+    static GroupKey of(final AtomicValue[] values, final Collator[] collators) throws XPathException {
+        final byte[] kinds = new byte[values.length];
+        final long[] primitives = new long[values.length];
+        Object[] objects = null;
+
+        for (int i = 0; i < values.length; i++) {
+            final AtomicValue value = values[i];
+            final int type = value.getType();
+            if (value.isEmpty()) {
+                kinds[i] = EMPTY;
+            } else if (type == Type.BOOLEAN) {
+                kinds[i] = BOOLEAN;
+                primitives[i] = ((BooleanValue) value).getValue() ? 1 : 0;
+            } else if (value instanceof IntegerValue && ((IntegerValue) value).fitsInLong()) {
+                kinds[i] = LONG;
+                primitives[i] = ((IntegerValue) value).getValue();
+            } else if (value instanceof DoubleValue || value instanceof FloatValue) {
+                final NumericValue numeric = (NumericValue) value;
+                if (numeric.isNaN()) {
+                    kinds[i] = NAN;
+                } else {
+                    kinds[i] = normalize(numeric.getDouble(), primitives, i);
+                }
+            } else if (value instanceof NumericValue) {
+                // xs:decimal or an xs:integer beyond the range of a long
+                final BigDecimal decimal = ((DecimalValue) value.convertTo(Type.DECIMAL)).getValue().stripTrailingZeros();
+                final double d = decimal.doubleValue();
+                if (!Double.isInfinite(d) && new BigDecimal(d).compareTo(decimal) == 0) {
+                    kinds[i] = normalize(d, primitives, i);
+                } else {
+                    kinds[i] = DECIMAL;
+                    objects = set(objects, values.length, i, decimal);
+                }
+            } else if (Type.subTypeOf(type, Type.STRING) || type == Type.UNTYPED_ATOMIC || type == Type.ANY_URI) {
+                kinds[i] = STRING;
+                final String s = value.getStringValue();
+                final Collator collator = collators[i];
+                objects = set(objects, values.length, i, collator == null ? s : collator.getCollationKey(s));
+            } else {
+                kinds[i] = OTHER;
+                objects = set(objects, values.length, i, value);
+            }
+        }
+
+        return new GroupKey(kinds, primitives, objects);
+    }
+
+    private static byte normalize(final double d, final long[] primitives, final int i) {
+        if (d == Math.rint(d) && d >= Long.MIN_VALUE && d < Long.MAX_VALUE) {
+            primitives[i] = (long) d;
+            return LONG;
+        }
+        primitives[i] = Double.doubleToLongBits(d);
+        return DOUBLE;
+    }
+
+    private static Object[] set(@Nullable Object[] objects, final int length, final int i, final Object object) {
+        if (objects == null) {
+            objects = new Object[length];
+        }
+        objects[i] = object;
+        return objects;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof GroupKey)) {
+            return false;
+        }
+        final GroupKey other = (GroupKey) obj;
+        if (hashCode != other.hashCode || !Arrays.equals(kinds, other.kinds)
+                || !Arrays.equals(primitives, other.primitives)) {
+            return false;
+        }
+        if (objects == null || other.objects == null) {
+            return objects == other.objects;
+        }
+        for (int i = 0; i < objects.length; i++) {
+            if (!Objects.equals(objects[i], other.objects[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
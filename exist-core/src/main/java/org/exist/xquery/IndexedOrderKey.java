@@ -0,0 +1,66 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NodeSet;
+
+import javax.annotation.Nullable;
+
+/**
+ * Implemented by functions which look up the sort key of a node in an index
+ * that keeps the nodes in key order, e.g. <code>sort:index</code>.
+ *
+ * If such a function is the first order expression of an "order by" clause
+ * whose result is limited, e.g. by a positional predicate, the clause asks
+ * the index for the first nodes of the input sequence in key order, instead
+ * of evaluating the function for every node of the input sequence.
+ *
+ * @see OrderByClause#getResultLimit()
+ */
+public interface IndexedOrderKey {
+
+    /**
+     * Determines if the function returns the key of the node bound to
+     * the given variable, and uses no other variables.
+     *
+     * @param varName the name of the variable bound by a "for" clause
+     *
+     * @return true if the function returns the key of the bound node
+     */
+    boolean isKeyOf(QName varName);
+
+    /**
+     * Selects the nodes with the smallest keys from a node set, by reading
+     * the index in key order until enough nodes have been found.
+     *
+     * @param nodes the nodes to select from
+     * @param limit the number of nodes to select
+     *
+     * @return at least the <code>limit</code> nodes with the smallest keys,
+     *     or null if these cannot be determined from the index alone, e.g.
+     *     because fewer nodes of the node set are in the index
+     *
+     * @throws XPathException if the index cannot be read
+     */
+    @Nullable NodeSet selectFirst(NodeSet nodes, long limit) throws XPathException;
+}
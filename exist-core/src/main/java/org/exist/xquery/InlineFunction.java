@@ -52,6 +52,10 @@ public class InlineFunction extends AbstractExpression {
 		this.function = function;
 	}
 
+	public UserDefinedFunction getFunction() {
+		return function;
+	}
+
 	@Override
 	public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
 
@@ -0,0 +1,59 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+/**
+ * Implemented by expressions which can stop evaluating once they have
+ * produced the first items of their result, e.g. a "for" clause, the
+ * simple map operator or <code>fn:for-each</code>.
+ *
+ * The limit is determined statically by the expression consuming the
+ * result, if it only uses the first items of it, e.g. <code>fn:head</code>,
+ * <code>fn:subsequence</code> or a positional predicate. An expression only
+ * stops early if the expression it evaluates per item is
+ * {@link #isSideEffectFree(Expression) free of side effects}, as the items
+ * after the limit are then never evaluated.
+ *
+ * @see OrderByClause#limitResult(Expression, long)
+ */
+public interface LimitableResult {
+
+    /**
+     * Tells the expression that only the first items of its result are used.
+     * The expression may still return more items than requested.
+     *
+     * @param limit the number of items used from the start of the result
+     */
+    void limitResult(long limit);
+
+    /**
+     * Determines if an expression is known to be free of side effects,
+     * so that skipping its evaluation for some items cannot be observed.
+     *
+     * @param expr the expression evaluated per item
+     *
+     * @return true if the expression has no side effects
+     */
+    static boolean isSideEffectFree(final Expression expr) {
+        return ParallelForEvaluator.isSideEffectFree(expr);
+    }
+}
@@ -1197,44 +1197,47 @@ public class LocationStep extends Step {
     }
 
     /**
-     * Register the update listener
+     * Register the update listener, the step may be evaluated concurrently
+     * by the threads of a parallel "for" clause.
      */
     protected void registerUpdateListener() {
-        if (listener == null) {
-            listener = new UpdateListener() {
-                @Override
-                public void documentUpdated(final DocumentImpl document, final int event) {
-                    cached = null;
-                    if (document == null || event == UpdateListener.ADD || event == UpdateListener.REMOVE) {
-                        // clear all
-                        currentDocs = null;
-                        currentSet = null;
-                    } else {
-                        if (currentDocs != null && currentDocs.contains(document.getDocId())) {
+        synchronized (context) {
+            if (listener == null) {
+                listener = new UpdateListener() {
+                    @Override
+                    public void documentUpdated(final DocumentImpl document, final int event) {
+                        cached = null;
+                        if (document == null || event == UpdateListener.ADD || event == UpdateListener.REMOVE) {
+                            // clear all
                             currentDocs = null;
                             currentSet = null;
+                        } else {
+                            if (currentDocs != null && currentDocs.contains(document.getDocId())) {
+                                currentDocs = null;
+                                currentSet = null;
+                            }
                         }
                     }
-                }
 
-                @Override
-                public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
-                    //no-op
-                }
+                    @Override
+                    public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+                        //no-op
+                    }
 
-                @Override
-                public void unsubscribe() {
-                    LocationStep.this.listener = null;
-                }
+                    @Override
+                    public void unsubscribe() {
+                        LocationStep.this.listener = null;
+                    }
 
-                @Override
-                public void debug() {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("UpdateListener: Line: {}; id: {}", LocationStep.this.toString(), LocationStep.this.getExpressionId());
+                    @Override
+                    public void debug() {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("UpdateListener: Line: {}; id: {}", LocationStep.this.toString(), LocationStep.this.getExpressionId());
+                        }
                     }
-                }
-            };
-            context.registerUpdateListener(listener);
+                };
+                context.registerUpdateListener(listener);
+            }
         }
     }
 
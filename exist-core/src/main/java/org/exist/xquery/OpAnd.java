@@ -27,6 +27,8 @@ import org.exist.xquery.value.BooleanValue;
 import org.exist.xquery.value.Item;
 import org.exist.xquery.value.Sequence;
 
+import java.util.Collections;
+
 /**
  * Boolean operator "and".
  * 
@@ -109,6 +111,14 @@ public class OpAnd extends LogicalOp {
         return result;
     }
 
+    /**
+     * Swaps the left and the right operand, e.g. to evaluate
+     * the more selective operand first.
+     */
+    void swapOperands() {
+        Collections.swap(steps, 0, 1);
+    }
+
     public void accept(ExpressionVisitor visitor) {
         visitor.visitAndExpr(this);
     }
@@ -30,6 +30,7 @@ import org.exist.storage.DBBroker;
 import org.exist.xquery.Constants.ArithmeticOperator;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.ComputableValue;
+import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.Sequence;
@@ -111,8 +112,26 @@ public class OpNumeric extends BinaryOp {
                 {context.getProfiler().message(this, Profiler.START_SEQUENCES,
                     "CONTEXT ITEM", contextItem.toSequence());}
         }
-        final Sequence lseq = Atomize.atomize(getLeft().eval(contextSequence, contextItem));
-        final Sequence rseq = Atomize.atomize(getRight().eval(contextSequence, contextItem));
+        final Sequence result = apply(getLeft().eval(contextSequence, contextItem), getRight().eval(contextSequence, contextItem));
+        if (context.getProfiler().isEnabled())
+            {context.getProfiler().end(this, "", result);}
+        return result;
+    }
+
+    /**
+     * Applies the operator to the results of the operands. Used by {@link #eval(Sequence, Item)},
+     * and by the function bodies which are compiled by {@link ExpressionCompiler}.
+     *
+     * @param left the result of the left operand
+     * @param right the result of the right operand
+     *
+     * @return the result of the operation
+     *
+     * @throws XPathException if the operands are not valid for the operator
+     */
+    public Sequence apply(final Sequence left, final Sequence right) throws XPathException {
+        final Sequence lseq = Atomize.atomize(left);
+        final Sequence rseq = Atomize.atomize(right);
         if (lseq.hasMany())
             {throw new XPathException(this, ErrorCodes.XPTY0004,
                 "Too many operands at the left of " + operator.symbol);}
@@ -128,44 +147,50 @@ public class OpNumeric extends BinaryOp {
             Item lvalue = lseq.itemAt(0);
             Item rvalue = rseq.itemAt(0);
             try {
-                if (lvalue.getType() == Type.UNTYPED_ATOMIC || lvalue.getType() == Type.ATOMIC)
-                    {lvalue = lvalue.convertTo(Type.NUMBER);}
-                if (rvalue.getType() == Type.UNTYPED_ATOMIC || rvalue.getType() == Type.ATOMIC)
-                    {rvalue = rvalue.convertTo(Type.NUMBER);}
-                if (!(lvalue instanceof ComputableValue))
-                    {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
-                        Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")' can not be an operand for " +
-                        operator.symbol);}
-                if (!(rvalue instanceof ComputableValue))
-                    {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
-                        Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")' can not be an operand for " +
-                        operator.symbol);}
-                //TODO : move to implementations
-                if (operator == ArithmeticOperator.DIVISION_INTEGER) {
-                    if (!Type.subTypeOfUnion(lvalue.getType(), Type.NUMBER))
+                if (lvalue instanceof IntegerValue && rvalue instanceof IntegerValue
+                        && operator != ArithmeticOperator.DIVISION_INTEGER) {
+                    //Fast path: two integers need none of the conversions and checks below
+                    result = applyOperator((ComputableValue) lvalue, (ComputableValue) rvalue);
+                } else {
+                    if (lvalue.getType() == Type.UNTYPED_ATOMIC || lvalue.getType() == Type.ATOMIC)
+                        {lvalue = lvalue.convertTo(Type.NUMBER);}
+                    if (rvalue.getType() == Type.UNTYPED_ATOMIC || rvalue.getType() == Type.ATOMIC)
+                        {rvalue = rvalue.convertTo(Type.NUMBER);}
+                    if (!(lvalue instanceof ComputableValue))
                         {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
-                            Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")' can not be an operand for " + operator.symbol);}
-                    if (!Type.subTypeOfUnion(rvalue.getType(), Type.NUMBER))
+                            Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")' can not be an operand for " +
+                            operator.symbol);}
+                    if (!(rvalue instanceof ComputableValue))
                         {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
-                            Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")' can not be an operand for " + operator.symbol);}
-                    //If the divisor is (positive or negative) zero, then an error is raised [err:FOAR0001]
-                    if (((NumericValue)rvalue).isZero())
-                        {throw new XPathException(this, ErrorCodes.FOAR0001, "Division by zero");}
-                    //If either operand is NaN then an error is raised [err:FOAR0002].
-                    if (((NumericValue)lvalue).isNaN())
-                        {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " +
-                            Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")'");}
-                    //If either operand is NaN then an error is raised [err:FOAR0002].
-                    if (((NumericValue)rvalue).isNaN())
-                        {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " + 
-                            Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")'");}
-                    //If $arg1 is INF or -INF then an error is raised [err:FOAR0002].
-                    if (((NumericValue)lvalue).isInfinite())
-                        {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " +
-                            Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")'");}
-                    result = ((NumericValue) lvalue).idiv((NumericValue) rvalue);
-                } else {
-                    result = applyOperator((ComputableValue) lvalue, (ComputableValue) rvalue);
+                            Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")' can not be an operand for " +
+                            operator.symbol);}
+                    //TODO : move to implementations
+                    if (operator == ArithmeticOperator.DIVISION_INTEGER) {
+                        if (!Type.subTypeOfUnion(lvalue.getType(), Type.NUMBER))
+                            {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
+                                Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")' can not be an operand for " + operator.symbol);}
+                        if (!Type.subTypeOfUnion(rvalue.getType(), Type.NUMBER))
+                            {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
+                                Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")' can not be an operand for " + operator.symbol);}
+                        //If the divisor is (positive or negative) zero, then an error is raised [err:FOAR0001]
+                        if (((NumericValue)rvalue).isZero())
+                            {throw new XPathException(this, ErrorCodes.FOAR0001, "Division by zero");}
+                        //If either operand is NaN then an error is raised [err:FOAR0002].
+                        if (((NumericValue)lvalue).isNaN())
+                            {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " +
+                                Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")'");}
+                        //If either operand is NaN then an error is raised [err:FOAR0002].
+                        if (((NumericValue)rvalue).isNaN())
+                            {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " + 
+                                Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")'");}
+                        //If $arg1 is INF or -INF then an error is raised [err:FOAR0002].
+                        if (((NumericValue)lvalue).isInfinite())
+                            {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " +
+                                Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")'");}
+                        result = ((NumericValue) lvalue).idiv((NumericValue) rvalue);
+                    } else {
+                        result = applyOperator((ComputableValue) lvalue, (ComputableValue) rvalue);
+                    }
                 }
                 //TODO : type-checks on MOD operator : maybe the same ones than above -pb
             } catch (final XPathException e) {
@@ -173,8 +198,6 @@ public class OpNumeric extends BinaryOp {
                 throw e;
             }
         }
-        if (context.getProfiler().isEnabled())
-            {context.getProfiler().end(this, "", result);}
         //Sets the return type if not already set
         if (returnType == Type.ATOMIC)
             //TODO : refine previously set type ? -pb
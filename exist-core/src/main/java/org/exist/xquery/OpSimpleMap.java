@@ -30,11 +30,14 @@ import org.exist.xquery.value.ValueSequence;
 /**
  * Implements the XQuery 3.0 simple map operator "!".
  */
-public class OpSimpleMap extends AbstractExpression {
+public class OpSimpleMap extends AbstractExpression implements LimitableResult {
 
     private Expression left;
     private PathExpr right;
 
+    // the number of items used from the start of the result, or -1 if all items are used
+    private long resultLimit = -1;
+
     public OpSimpleMap(XQueryContext context, PathExpr left, PathExpr right) {
         super(context);
         this.left = left;
@@ -58,6 +61,9 @@ public class OpSimpleMap extends AbstractExpression {
         final ValueSequence result = new ValueSequence();
         int pos = 0;
         for (final SequenceIterator i = leftSeq.iterate(); i.hasNext(); pos++) {
+            if (resultLimit > 0 && result.getItemCountLong() >= resultLimit) {
+                break;
+            }
             context.setContextSequencePosition(pos, leftSeq);
             final Sequence rightSeq = right.eval(i.nextItem().toSequence());
             result.addAll(rightSeq);
@@ -65,6 +71,14 @@ public class OpSimpleMap extends AbstractExpression {
         return result;
     }
 
+    @Override
+    public void limitResult(final long limit) {
+        if (!LimitableResult.isSideEffectFree(right)) {
+            return;
+        }
+        resultLimit = resultLimit < 0 ? limit : Math.max(resultLimit, limit);
+    }
+
     @Override
     public int returnsType() {
         return right.returnsType();
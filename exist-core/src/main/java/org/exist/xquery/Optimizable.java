@@ -21,9 +21,13 @@
  */
 package org.exist.xquery;
 
+import org.exist.dom.QName;
 import org.exist.dom.persistent.NodeSet;
+import org.exist.storage.statistics.KeyStatistics;
 import org.exist.xquery.value.Sequence;
 
+import javax.annotation.Nullable;
+
 /**
  *
  */
@@ -38,4 +42,38 @@ public interface Optimizable extends Expression {
     NodeSet preSelect(Sequence contextSequence, boolean useContext) throws XPathException;
 
     int getOptimizeAxis();
+
+    /**
+     * Returns the name of the nodes selected by the index lookup, e.g. the
+     * name of the compared element. Used by the {@link CostModel} to look up
+     * the number of such nodes in the database.
+     *
+     * @return the name of the nodes, or null if not known
+     */
+    default @Nullable QName getOptimizeQName() {
+        return null;
+    }
+
+    /**
+     * Estimates the fraction of the nodes named by {@link #getOptimizeQName()}
+     * which the index lookup selects.
+     *
+     * @return the estimated selectivity, between 0 and 1
+     */
+    default double getSelectivity() {
+        return CostModel.DEFAULT_SELECTIVITY;
+    }
+
+    /**
+     * Returns the statistics about the keys of the nodes named by {@link #getOptimizeQName()},
+     * as maintained by the index which serves the lookup, if the lookup is an equality
+     * comparison. The {@link CostModel} then estimates the selectivity from the number
+     * of distinct keys, instead of {@link #getSelectivity()}.
+     *
+     * @return the key statistics, or null if the lookup is not an equality comparison
+     *     or the index does not maintain statistics about the keys
+     */
+    default @Nullable KeyStatistics getEqualityKeyStatistics() {
+        return null;
+    }
 }
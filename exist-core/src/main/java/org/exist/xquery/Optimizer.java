@@ -25,6 +25,7 @@ import org.exist.dom.QName;
 import org.exist.storage.DBBroker;
 import org.exist.xquery.functions.array.ArrayConstructor;
 import org.exist.xquery.pragmas.Optimize;
+import org.exist.xquery.pragmas.StructuralJoin;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.xquery.util.ExpressionDumper;
@@ -66,6 +67,8 @@ public class Optimizer extends DefaultExpressionVisitor {
 
     private List<QueryRewriter> rewriters;
 
+    private CostModel costModel = null;
+
     public Optimizer(XQueryContext context) {
         this.context = context;
         final DBBroker broker = context.getBroker();
@@ -155,6 +158,43 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    @Override
+    public void visitPathExpr(final PathExpr expression) {
+        super.visitPathExpr(expression);
+
+        // check if a chain of child and descendant steps can be evaluated in one pass
+        // over the structural index: enclose the steps in an (#exist:structural-join#) pragma
+        final List<LocationStep> steps = StructuralJoin.getJoinableSteps(expression);
+        if (steps == null) {
+            return;
+        }
+        try {
+            final LocationStep first = steps.get(0);
+            final PathExpr joined = new PathExpr(context);
+            for (final LocationStep step : steps) {
+                joined.add(step);
+            }
+            joined.setLocation(first.getLine(), first.getColumn());
+            final ExtensionExpression extension = new ExtensionExpression(context);
+            extension.setLocation(first.getLine(), first.getColumn());
+            extension.addPragma(new StructuralJoin(context, steps));
+            extension.setExpression(joined);
+
+            // Replace the old steps with the pragma
+            expression.replace(first, extension);
+            for (int i = 1; i < steps.size(); i++) {
+                expression.remove(steps.get(i));
+            }
+            hasOptimized = true;
+
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Rewritten expression: {}", ExpressionDumper.dump(expression));
+            }
+        } catch (final XPathException e) {
+            LOG.warn("Failed to optimize expression: {}: {}", expression, e.getMessage(), e);
+        }
+    }
+
     public void visitFilteredExpr(FilteredExpression filtered) {
         super.visitFilteredExpr(filtered);
 
@@ -255,17 +295,42 @@ public class Optimizer extends DefaultExpressionVisitor {
                 {
                     LOG.trace("Rewriting boolean expression: {}", ExpressionDumper.dump(and));}
             hasOptimized = true;
+            // the more selective operand becomes the first predicate
+            final boolean swap = isMoreSelective(and.getRight(), and.getLeft());
             final LocationStep step = (LocationStep) predicate.getParent();
             final Predicate newPred = new Predicate(context);
-            newPred.add(simplifyPath(and.getRight()));
+            newPred.add(simplifyPath(swap ? and.getLeft() : and.getRight()));
             step.insertPredicate(predicate, newPred);
-            path.replace(and, simplifyPath(and.getLeft()));
+            path.replace(and, simplifyPath(swap ? and.getRight() : and.getLeft()));
         } else if (and.isRewritable()) {
+            if (isMoreSelective(and.getRight(), and.getLeft())) {
+                and.swapOperands();
+                hasOptimized = true;
+            }
         	and.getLeft().accept(this);
 			and.getRight().accept(this);
         }
     }
 
+    /**
+     * Check if an operand of a logical "and" is estimated to select fewer nodes
+     * than the other operand, so it should be evaluated first. Only operands which
+     * are index lookups and do not depend on the context position are compared.
+     */
+    private boolean isMoreSelective(Expression operand, Expression other) {
+        operand = simplifyPath(operand);
+        other = simplifyPath(other);
+        if (!(operand instanceof Optimizable) || !(other instanceof Optimizable)
+                || Dependency.dependsOn(operand, Dependency.CONTEXT_POSITION)
+                || Dependency.dependsOn(other, Dependency.CONTEXT_POSITION)) {
+            return false;
+        }
+        if (costModel == null) {
+            costModel = new CostModel(context);
+        }
+        return costModel.estimateCount((Optimizable) operand) < costModel.estimateCount((Optimizable) other);
+    }
+
 	public void visitOrExpr(OpOr or) {
     	if (or.isRewritable()) {
         	or.getLeft().accept(this);
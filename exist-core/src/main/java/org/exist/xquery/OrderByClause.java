@@ -21,11 +21,17 @@
  */
 package org.exist.xquery;
 
+import org.exist.dom.persistent.NodeSet;
+import org.exist.xquery.functions.fn.FunPosition;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.OrderedValueSequence;
 import org.exist.xquery.value.Sequence;
 
+import javax.annotation.Nullable;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
@@ -36,8 +42,26 @@ import java.util.Stack;
  */
 public class OrderByClause extends AbstractFLWORClause {
 
+    /**
+     * Configuration attribute of the xquery element for the memory budget of an order by clause.
+     */
+    public static final String ORDER_BY_MEMORY_BUDGET_ATTRIBUTE = "order-by-memory-budget";
+    public static final String PROPERTY_ORDER_BY_MEMORY_BUDGET = "xquery.order-by-memory-budget";
+
+    /**
+     * Default memory budget of an order by clause in bytes, after which
+     * sorted runs are written to disk.
+     */
+    public static final long DEFAULT_ORDER_BY_MEMORY_BUDGET = 128L * 1024 * 1024;
+
     protected OrderSpec[] orderSpecs = null;
 
+    /**
+     * The number of items needed from the start of the ordered result, as set by the
+     * expressions which consume the result whilst they are evaluated, see {@link ResultLimit}.
+     */
+    private final Deque<Long> resultLimits = new ArrayDeque<>();
+
     /*  OrderByClause needs to keep state between calls to eval and postEval. We thus need
         to track state in a stack to avoid overwrites if we're called recursively. */
     private final Deque<OrderedValueSequence> stack = new ArrayDeque<>();
@@ -70,11 +94,17 @@ public class OrderByClause extends AbstractFLWORClause {
         returnExpr.analyze(newContextInfo);
     }
 
+    @Override
+    public Sequence preEval(final Sequence seq) throws XPathException {
+        final NodeSet selected = selectFromIndex(seq);
+        return super.preEval(selected == null ? seq : selected);
+    }
+
     @Override
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
         final OrderedValueSequence orderedResult;
         if (stack.isEmpty()) {
-            orderedResult = new OrderedValueSequence(orderSpecs, 100);
+            orderedResult = new OrderedValueSequence(orderSpecs, 100, getMemoryBudget(), getResultLimit());
         } else {
             orderedResult = stack.pop();
         }
@@ -121,6 +151,289 @@ public class OrderByClause extends AbstractFLWORClause {
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
         returnExpr.resetState(postOptimization);
+        for (final OrderedValueSequence orderedResult : stack) {
+            orderedResult.close();
+        }
         stack.clear();
     }
+
+    /**
+     * Returns the number of items needed from the start of the ordered result
+     * by the expression which is currently evaluating it.
+     *
+     * @return the number of items, or -1 if all items are needed
+     */
+    public long getResultLimit() {
+        final Long resultLimit = resultLimits.peek();
+        return resultLimit == null ? -1 : resultLimit;
+    }
+
+    /**
+     * If only the first items of the result are needed, and the first order expression
+     * looks up the key of the node bound by the "for" clause in an ordered index, asks
+     * the index for the first nodes of the input sequence in key order. Only these
+     * nodes have to be bound and sorted.
+     *
+     * @param in the input sequence of the "for" clause
+     *
+     * @return the selected nodes, or null if all nodes of the input sequence are needed
+     */
+    private @Nullable NodeSet selectFromIndex(final Sequence in) throws XPathException {
+        final long resultLimit = getResultLimit();
+        if (resultLimit < 1 || orderSpecs.length == 0 || !(in instanceof NodeSet) || !in.isPersistentSet()
+                || in.getItemCountLong() <= resultLimit) {
+            return null;
+        }
+
+        // nodes without a key come first if ordered ascending with "empty least", but cannot be found in the index
+        final OrderSpec spec = orderSpecs[0];
+        if ((spec.getModifiers() & (OrderSpec.DESCENDING_ORDER | OrderSpec.EMPTY_LEAST)) != 0) {
+            return null;
+        }
+        final Expression keyExpr = unwrap(spec.getSortExpression());
+        if (!(keyExpr instanceof IndexedOrderKey)) {
+            return null;
+        }
+
+        // the input sequence has to be the one of a single "for" clause, optionally followed by "let" clauses
+        FLWORClause clause = getPreviousClause();
+        while (clause != null && clause.getType() == ClauseType.LET) {
+            clause = clause.getPreviousClause();
+        }
+        if (!(clause instanceof ForExpr) || clause.getPreviousClause() != null) {
+            return null;
+        }
+        final ForExpr forExpr = (ForExpr) clause;
+        if (forExpr.getPositionalVariable() != null || forExpr.isAllowingEmpty()) {
+            return null;
+        }
+        // the "for" clause binds its whole input sequence to the variable before calling preEval
+        final Variable var = context.resolveVariable(forExpr.getVariable());
+        if (var == null || var.getValue() != in || !((IndexedOrderKey) keyExpr).isKeyOf(var.getQName())) {
+            return null;
+        }
+        return ((IndexedOrderKey) keyExpr).selectFirst((NodeSet) in, resultLimit);
+    }
+
+    private long getMemoryBudget() {
+        final Object budget = context.getBroker().getConfiguration().getProperty(PROPERTY_ORDER_BY_MEMORY_BUDGET);
+        return budget instanceof Long ? (Long) budget : DEFAULT_ORDER_BY_MEMORY_BUDGET;
+    }
+
+    /**
+     * Called by an expression which only uses the first items of the result
+     * of another expression, e.g. fn:subsequence or a positional predicate.
+     * If the other expression is a FLWOR expression whose last clause is an
+     * "order by" clause, that clause only has to keep the first items in sort
+     * order, instead of the whole result, whilst the calling expression
+     * evaluates it, see {@link ResultLimit}. If the other expression implements
+     * {@link LimitableResult}, it may stop evaluating after the first items.
+     *
+     * @param expr the expression whose result is limited
+     * @param limit the number of items used from the start of the result
+     *
+     * @return the limit of the "order by" clause, or null if the expression is not an ordered FLWOR expression
+     */
+    public static @Nullable ResultLimit limitResult(Expression expr, final long limit) {
+        expr = unwrap(expr);
+        if (limit < 1) {
+            return null;
+        }
+        if (expr instanceof LimitableResult) {
+            ((LimitableResult) expr).limitResult(limit);
+        }
+        if (!(expr instanceof FLWORClause)) {
+            return null;
+        }
+
+        FLWORClause clause = (FLWORClause) expr;
+        while (clause.getReturnExpression() instanceof FLWORClause) {
+            clause = (FLWORClause) clause.getReturnExpression();
+        }
+        if (clause instanceof OrderByClause) {
+            return new ResultLimit((OrderByClause) clause, limit);
+        }
+        return null;
+    }
+
+    /**
+     * Limits the result of an ordered FLWOR expression to the items
+     * selected by <code>fn:subsequence($expr, $start, $length)</code>,
+     * if start and length are literals.
+     *
+     * @param expr the first argument of fn:subsequence
+     * @param start the second argument of fn:subsequence
+     * @param length the third argument of fn:subsequence
+     *
+     * @return the limit of the "order by" clause, or null if there is none
+     */
+    public static @Nullable ResultLimit limitSubsequence(final Expression expr, final Expression start, final Expression length) {
+        final Expression lengthLiteral = unwrap(length);
+        if (!(lengthLiteral instanceof LiteralValue)) {
+            return null;
+        }
+        final AtomicValue lengthValue = ((LiteralValue) lengthLiteral).getValue();
+        if (!(lengthValue instanceof NumericValue)) {
+            return null;
+        }
+        try {
+            return limitSubsequence(expr, start, Math.round(((NumericValue) lengthValue).getDouble()));
+        } catch (final XPathException e) {
+            // not a limit which can be determined statically
+            return null;
+        }
+    }
+
+    /**
+     * Limits the result of an expression to the first items of
+     * <code>fn:subsequence($expr, $start)</code>, if start is a literal.
+     *
+     * @param expr the first argument of fn:subsequence
+     * @param start the second argument of fn:subsequence
+     * @param length the number of items used from the start of the subsequence
+     *
+     * @return the limit of the "order by" clause, or null if there is none
+     */
+    public static @Nullable ResultLimit limitSubsequence(final Expression expr, final Expression start, final long length) {
+        final Expression startLiteral = unwrap(start);
+        if (!(startLiteral instanceof LiteralValue)) {
+            return null;
+        }
+        final AtomicValue startValue = ((LiteralValue) startLiteral).getValue();
+        if (!(startValue instanceof NumericValue)) {
+            return null;
+        }
+        try {
+            // fn:subsequence selects the items at positions round($start) <= p < round($start) + round($length)
+            final double end = (double) Math.round(((NumericValue) startValue).getDouble()) + length - 1;
+            if (end >= 1 && end < Integer.MAX_VALUE) {
+                return limitResult(expr, (long) end);
+            }
+        } catch (final XPathException e) {
+            // not a limit which can be determined statically
+        }
+        return null;
+    }
+
+    /**
+     * Determines the number of items a positional predicate selects from the
+     * start of the context sequence, e.g. 10 for <code>[position() le 10]</code>.
+     *
+     * @param predicate the predicate
+     *
+     * @return the number of items, or -1 if the predicate is not a positional
+     *     predicate with a literal upper bound
+     */
+    public static long getPositionalLimit(final Predicate predicate) {
+        if (predicate.getSubExpressionCount() != 1) {
+            return -1;
+        }
+        final Expression inner = unwrap(predicate.getSubExpression(0));
+        if (inner instanceof LiteralValue) {
+            return getIntegerLiteral(inner);
+        }
+        if (inner instanceof GeneralComparison) {
+            final GeneralComparison comparison = (GeneralComparison) inner;
+            if (!(unwrap(comparison.getLeft()) instanceof FunPosition)) {
+                return -1;
+            }
+            final long bound = getIntegerLiteral(unwrap(comparison.getRight()));
+            if (bound < 1) {
+                return -1;
+            }
+            switch (comparison.getRelation()) {
+                case LT:
+                    return bound - 1;
+                case LTEQ:
+                case EQ:
+                    return bound;
+                default:
+                    return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static long getIntegerLiteral(final Expression expr) {
+        if (expr instanceof LiteralValue) {
+            final AtomicValue value = ((LiteralValue) expr).getValue();
+            if (value instanceof IntegerValue && ((IntegerValue) value).fitsInLong()) {
+                return ((IntegerValue) value).getValue();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the expression wrapped by the type and cardinality checks the
+     * compiler inserts around function arguments and enclosed expressions.
+     *
+     * @param expr the expression
+     *
+     * @return the wrapped expression, or the expression itself if it is not a check
+     */
+    public static Expression unwrap(Expression expr) {
+        while (true) {
+            if ((expr.getClass() == PathExpr.class || expr instanceof DynamicCardinalityCheck || expr instanceof DynamicTypeCheck
+                    || expr instanceof UntypedValueCheck || expr instanceof Atomize) && expr.getSubExpressionCount() == 1) {
+                expr = expr.getSubExpression(0);
+            } else if (expr instanceof InternalFunctionCall) {
+                expr = ((InternalFunctionCall) expr).getFunction();
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    /**
+     * The number of items used from the start of the result of an "order by"
+     * clause by the expression consuming it, as determined by
+     * {@link #limitResult(Expression, long)}.
+     *
+     * The limit is held by the consuming expression, and only applies to the
+     * "order by" clause whilst the consuming expression evaluates it, between
+     * {@link #enter()} and {@link #exit()}. A compiled query which is reused
+     * therefore never keeps the limit of another call site or evaluation.
+     */
+    public static final class ResultLimit {
+        private final OrderByClause orderBy;
+        private final long limit;
+
+        private ResultLimit(final OrderByClause orderBy, final long limit) {
+            this.orderBy = orderBy;
+            this.limit = limit;
+        }
+
+        /**
+         * Returns the narrower of two limits of the same result.
+         *
+         * @param a a limit, or null if there is none
+         * @param b another limit, or null if there is none
+         *
+         * @return the limit which needs fewer items, or null if there is none
+         */
+        public static @Nullable ResultLimit min(@Nullable final ResultLimit a, @Nullable final ResultLimit b) {
+            if (a == null) {
+                return b;
+            }
+            if (b == null) {
+                return a;
+            }
+            return a.limit <= b.limit ? a : b;
+        }
+
+        /**
+         * Applies the limit, called before the consuming expression evaluates the "order by" clause.
+         */
+        public void enter() {
+            orderBy.resultLimits.push(limit);
+        }
+
+        /**
+         * Removes the limit, called once the consuming expression has evaluated the "order by" clause.
+         */
+        public void exit() {
+            orderBy.resultLimits.pop();
+        }
+    }
 }
@@ -0,0 +1,399 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.security.Subject;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.util.ThreadUtils;
+import org.exist.xquery.functions.fn.*;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.ValueSequence;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Evaluates the iterations of a "for" clause in parallel.
+ *
+ * Parallel evaluation has to be requested, either by the option
+ * <code>declare option exist:parallel "enable=yes threads=8";</code>
+ * or by wrapping the expression into an exist:parallel pragma. It is only
+ * applied if {@link #isThreadSafe(Expression)} can establish that the return
+ * clause does not modify any shared state of the compiled query, i.e. it only
+ * consists of operators, side-effect free built-in functions and path steps
+ * applied to the variables in scope.
+ *
+ * The input sequence is split into contiguous partitions which are evaluated
+ * by the threads of a shared {@link ForkJoinPool}, each worker leasing its own
+ * broker for the subject of the query. The brokers of the workers are reserved
+ * up front without waiting, if they are not available immediately the input is
+ * evaluated sequentially instead. The value of the iteration variable is
+ * bound per thread by a {@link ThreadBoundVariable}, and the partial results are
+ * concatenated in input order.
+ */
+final class ParallelForEvaluator {
+
+    private final static Logger LOG = LogManager.getLogger(ParallelForEvaluator.class);
+
+    /**
+     * The minimum number of items of the input sequence per partition,
+     * smaller inputs are not worth the overhead of parallel evaluation.
+     */
+    static final int MIN_ITEMS_PER_PARTITION = 64;
+
+    private static final Set<Class<? extends Function>> THREAD_SAFE_FUNCTIONS = new HashSet<>(Arrays.asList(
+            FunAbs.class, FunBoolean.class, FunCeiling.class, FunCodepointsToString.class, FunConcat.class,
+            FunContains.class, FunCount.class, FunData.class, FunEmpty.class, FunEndsWith.class, FunExists.class,
+            FunFloor.class, FunLocalName.class, FunMax.class, FunMin.class, FunName.class, FunNormalizeSpace.class,
+            FunNot.class, FunNumber.class, FunRound.class, FunStartsWith.class, FunString.class,
+            FunStringJoin.class, FunStringToCodepoints.class, FunSubstring.class, FunSubstringAfter.class,
+            FunSubstringBefore.class, FunTranslate.class, FunTrueOrFalse.class, FunUpperOrLowerCase.class
+    ));
+
+    private ParallelForEvaluator() {
+    }
+
+    /**
+     * Determines the number of threads which should be used to evaluate
+     * a "for" clause.
+     *
+     * @param context the context of the query
+     * @param flags the flags of the static analysis of the "for" clause
+     *
+     * @return the number of threads, or 0 if parallel evaluation was not requested
+     */
+    static int getParallelism(final XQueryContext context, final int flags) {
+        boolean enabled = (flags & Expression.PARALLEL_EVALUATION) != 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        final Option option = context.getOption(Option.PARALLEL_QNAME);
+        if (option != null) {
+            for (final String token : option.tokenizeContents()) {
+                final String[] param = Option.parseKeyValuePair(token);
+                if (param == null) {
+                    continue;
+                }
+                if ("enable".equals(param[0])) {
+                    enabled = "yes".equals(param[1]);
+                } else if ("threads".equals(param[0])) {
+                    try {
+                        threads = Integer.parseInt(param[1]);
+                    } catch (final NumberFormatException e) {
+                        LOG.warn("Ignoring invalid number of threads for option {}: {}", Option.PARALLEL_QNAME, param[1]);
+                    }
+                }
+            }
+        }
+
+        return enabled && threads > 1 ? threads : 0;
+    }
+
+    /**
+     * Determines if an expression may be evaluated concurrently by several threads.
+     *
+     * This is a conservative check, only expressions which are known to not
+     * modify the state of the compiled expression tree or of the
+     * {@link XQueryContext} during evaluation are accepted.
+     *
+     * @param expr the expression to check
+     *
+     * @return true if the expression may be evaluated concurrently
+     */
+    static boolean isThreadSafe(final Expression expr) {
+        return isSafe(expr, true);
+    }
+
+    /**
+     * Determines if an expression is free of side effects, so that it may be
+     * evaluated for fewer items than the query asks for, e.g. when only the
+     * first items of a result are used.
+     *
+     * This accepts the same expressions and built-in functions as
+     * {@link #isThreadSafe(Expression)}, and in addition those which only keep
+     * the state of a single evaluation in the expression tree: location steps
+     * along any axis, predicates and nested FLWOR clauses.
+     *
+     * @param expr the expression to check
+     *
+     * @return true if the expression has no side effects
+     */
+    static boolean isSideEffectFree(final Expression expr) {
+        return isSafe(expr, false);
+    }
+
+    private static boolean isSafe(final Expression expr, final boolean concurrent) {
+        if (expr instanceof LiteralValue || expr instanceof VariableReference) {
+            return true;
+        }
+
+        if (expr instanceof GeneralComparison) {
+            // a comparison caches its result if it does not depend on the iteration variable
+            return (!concurrent || Dependency.dependsOn(expr, Dependency.LOCAL_VARS)) && isSafe((BinaryOp) expr, concurrent);
+        }
+        if (expr instanceof OpNumeric || expr instanceof LogicalOp) {
+            return isSafe((BinaryOp) expr, concurrent);
+        }
+
+        if (expr instanceof ConditionalExpression) {
+            final ConditionalExpression conditional = (ConditionalExpression) expr;
+            return isSafe(conditional.getTestExpr(), concurrent)
+                    && isSafe(conditional.getThenExpr(), concurrent)
+                    && isSafe(conditional.getElseExpr(), concurrent);
+        }
+
+        if (expr instanceof InternalFunctionCall) {
+            return isSafe(((InternalFunctionCall) expr).getFunction(), concurrent);
+        }
+        if (expr instanceof Function) {
+            final Function function = (Function) expr;
+            if (!THREAD_SAFE_FUNCTIONS.contains(function.getClass())) {
+                return false;
+            }
+            for (int i = 0; i < function.getArgumentCount(); i++) {
+                if (!isSafe(function.getArgument(i), concurrent)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (expr instanceof AtomicToString) {
+            return isSafe(((AtomicToString) expr).expression, concurrent);
+        }
+
+        if (expr instanceof LocationStep) {
+            if (concurrent) {
+                return expr.getClass() == LocationStep.class && isThreadSafe((LocationStep) expr);
+            }
+            final Predicate[] predicates = ((LocationStep) expr).getPredicates();
+            return predicates == null || areSideEffectFree(Arrays.asList(predicates));
+        }
+
+        if (!concurrent) {
+            if (expr instanceof FilteredExpression) {
+                final FilteredExpression filtered = (FilteredExpression) expr;
+                return isSideEffectFree(filtered.getExpression()) && areSideEffectFree(filtered.getPredicates());
+            }
+            if (expr instanceof ForExpr || expr instanceof LetExpr) {
+                final BindingExpression binding = (BindingExpression) expr;
+                return isSideEffectFree(binding.getInputSequence()) && isSideEffectFree(binding.getReturnExpression());
+            }
+            if (expr instanceof WhereClause) {
+                final WhereClause where = (WhereClause) expr;
+                return isSideEffectFree(where.getWhereExpr()) && isSideEffectFree(where.getReturnExpression());
+            }
+        }
+
+        final Class<?> type = expr.getClass();
+        if (type == PathExpr.class || type == UnaryExpr.class || type == ConcatExpr.class
+                || type == Atomize.class || type == DynamicTypeCheck.class
+                || type == DynamicCardinalityCheck.class || type == UntypedValueCheck.class
+                || (!concurrent && (type == Predicate.class || type == SequenceConstructor.class))) {
+            for (int i = 0; i < expr.getSubExpressionCount(); i++) {
+                if (!isSafe(expr.getSubExpression(i), concurrent)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private static boolean isSafe(final BinaryOp op, final boolean concurrent) {
+        return isSafe(op.getLeft(), concurrent) && isSafe(op.getRight(), concurrent);
+    }
+
+    private static boolean areSideEffectFree(final List<? extends Expression> exprs) {
+        for (final Expression expr : exprs) {
+            if (!isSideEffectFree(expr)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A step along the child, descendant or attribute axis only reads the nodes
+     * below its context, through the broker of the thread which evaluates it.
+     * Predicates keep the state of their evaluation in the expression tree,
+     * as do the steps along the other axes.
+     */
+    private static boolean isThreadSafe(final LocationStep step) {
+        if (step.hasPredicates()) {
+            return false;
+        }
+        switch (step.getAxis()) {
+            case Constants.CHILD_AXIS:
+            case Constants.DESCENDANT_AXIS:
+            case Constants.DESCENDANT_SELF_AXIS:
+            case Constants.ATTRIBUTE_AXIS:
+            case Constants.DESCENDANT_ATTRIBUTE_AXIS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Evaluates the return clause of a "for" clause for each item of the input sequence.
+     *
+     * @param forExpr the "for" clause
+     * @param returnExpr the return clause
+     * @param var the iteration variable
+     * @param in the input sequence
+     * @param parallelism the maximum number of threads to use
+     * @param resultSequence the sequence to which the results are added in input order
+     *
+     * @return true if the input was evaluated, false if the input is too small
+     *     or the brokers for the workers could not be reserved, and the caller should evaluate
+     *     the input sequentially
+     *
+     * @throws XPathException if the evaluation of the return clause fails
+     */
+    static boolean eval(final ForExpr forExpr, final Expression returnExpr, final ThreadBoundVariable var,
+            final Sequence in, final int parallelism, final Sequence resultSequence) throws XPathException {
+        final XQueryContext context = forExpr.getContext();
+        final DBBroker broker = context.getBroker();
+        final int size = in.getItemCount();
+        if (broker == null || size < MIN_ITEMS_PER_PARTITION * 2) {
+            return false;
+        }
+
+        final int partitions = Math.min(parallelism, size / MIN_ITEMS_PER_PARTITION);
+        if (partitions < 2) {
+            return false;
+        }
+
+        final Item[] items = new Item[size];
+        int n = 0;
+        for (final SequenceIterator i = in.iterate(); i.hasNext(); ) {
+            items[n++] = i.nextItem();
+        }
+
+        // each additional partition leases a broker of its own, which must not wait for other queries
+        final BrokerPool brokerPool = broker.getBrokerPool();
+        if (!brokerPool.tryReserve(partitions - 1)) {
+            return false;
+        }
+
+        final Subject subject = broker.getCurrentSubject();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final List<ForkJoinTask<Sequence>> tasks = new ArrayList<>(partitions - 1);
+        XPathException error = null;
+        for (int p = 1; p < partitions; p++) {
+            final int from = (int) ((long) size * p / partitions);
+            final int to = (int) ((long) size * (p + 1) / partitions);
+            try {
+                tasks.add(WorkerPool.POOL.submit(() -> {
+                    try (final DBBroker workerBroker = brokerPool.getReserved(Optional.of(subject))) {
+                        return evalPartition(forExpr, returnExpr, var, items, from, to, failed);
+                    } catch (final EXistException e) {
+                        failed.set(true);
+                        throw new XPathException(forExpr, "Unable to obtain a broker for parallel evaluation: " + e.getMessage(), e);
+                    } finally {
+                        var.release();
+                    }
+                }));
+            } catch (final RejectedExecutionException e) {
+                // the workers which were not submitted will not take their brokers
+                brokerPool.cancelReservation(partitions - p);
+                failed.set(true);
+                error = new XPathException(forExpr, "Unable to start parallel evaluation: " + e.getMessage(), e);
+                break;
+            }
+        }
+
+        // the first partition is evaluated by the calling thread
+        if (error == null) {
+            try {
+                resultSequence.addAll(evalPartition(forExpr, returnExpr, var, items, 0, size / partitions, failed));
+            } catch (final XPathException e) {
+                failed.set(true);
+                error = e;
+            }
+        }
+
+        // always wait for all of the workers, as they access the variables of the query
+        for (final ForkJoinTask<Sequence> task : tasks) {
+            try {
+                final Sequence partial = task.get();
+                if (error == null) {
+                    resultSequence.addAll(partial);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.set(true);
+                if (error == null) {
+                    error = new XPathException(forExpr, "Interrupted whilst waiting for parallel evaluation", e);
+                }
+            } catch (final ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof XPathException ? (XPathException) e.getCause()
+                            : new XPathException(forExpr, e.getCause());
+                }
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+        return true;
+    }
+
+    private static Sequence evalPartition(final ForExpr forExpr, final Expression returnExpr,
+            final ThreadBoundVariable var, final Item[] items, final int from, final int to,
+            final AtomicBoolean failed) throws XPathException {
+        final XQueryContext context = forExpr.getContext();
+        final ValueSequence result = new ValueSequence();
+        for (int i = from; i < to && !failed.get(); i++) {
+            context.proceed(forExpr);
+            var.setValue(items[i].toSequence());
+            result.addAll(returnExpr.eval(null));
+            var.destroy(context, result);
+        }
+        return result;
+    }
+
+    /**
+     * Holder of the fork-join pool which is shared by all queries,
+     * created on first use.
+     */
+    private static final class WorkerPool {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(ThreadUtils.nameGlobalThread("parallel-for-" + thread.getPoolIndex()));
+            return thread;
+        }, null, false);
+    }
+}
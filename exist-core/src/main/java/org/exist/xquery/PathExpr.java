@@ -385,6 +385,10 @@ public class PathExpr extends AbstractExpression implements CompiledXQuery,
         this.staticContext = staticContext;
     }
 
+    public boolean isUseStaticContext() {
+        return staticContext;
+    }
+
     @Override
     public void accept(final ExpressionVisitor visitor) {
         visitor.visitPathExpr(this);
@@ -173,7 +173,8 @@ public class PerformanceStats implements BrokerPoolService {
     }
 
     public enum OptimizationType {
-        PositionalPredicate
+        PositionalPredicate,
+        StructuralJoin
     }
 
     private static class CompareByTime implements Comparator<FunctionStats> {
@@ -38,10 +38,32 @@ public class RangeSequence extends AbstractSequence {
 
     private final IntegerValue start;
     private final IntegerValue end;
+    private final long itemCount;
 
     public RangeSequence(final IntegerValue start, final IntegerValue end) {
         this.start = start;
         this.end = end;
+        this.itemCount = countItems(start, end);
+    }
+
+    private static long countItems(final IntegerValue start, final IntegerValue end) {
+        if (start.compareTo(end) > 0) {
+            return 0;
+        }
+        if (start.fitsInLong() && end.fitsInLong()) {
+            try {
+                return Math.addExact(Math.subtractExact(end.getLong(), start.getLong()), 1);
+            } catch (final ArithmeticException e) {
+                // the range holds more items than can be counted
+                return Long.MAX_VALUE;
+            }
+        }
+        try {
+            return ((IntegerValue) end.minus(start)).getLong() + 1;
+        } catch (final XPathException e) {
+            LOG.warn("Unexpected exception when processing result of range expression: {}", e.getMessage(), e);
+            return 0;
+        }
     }
 
     @Override
@@ -146,15 +168,7 @@ public class RangeSequence extends AbstractSequence {
 
     @Override
     public long getItemCountLong() {
-        if (start.compareTo(end) > 0) {
-            return 0;
-        }
-        try {
-            return ((IntegerValue) end.minus(start)).getLong() + 1;
-        } catch (final XPathException e) {
-            LOG.warn("Unexpected exception when processing result of range expression: {}", e.getMessage(), e);
-            return 0;
-        }
+        return itemCount;
     }
 
     @Override
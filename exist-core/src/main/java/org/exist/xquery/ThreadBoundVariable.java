@@ -0,0 +1,64 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * A local variable whose value is held separately for each thread,
+ * so that the same variable binding can be evaluated concurrently
+ * by the workers of a parallel "for" clause.
+ *
+ * The declaration (name, type and context document set) is shared by
+ * all threads, only the value is thread specific.
+ */
+class ThreadBoundVariable extends LocalVariable {
+
+    private final ThreadLocal<LocalVariable> bound = ThreadLocal.withInitial(() -> new LocalVariable(getQName()));
+
+    ThreadBoundVariable(final QName qname) {
+        super(qname);
+    }
+
+    @Override
+    public void setValue(final Sequence val) {
+        bound.get().setValue(val);
+    }
+
+    @Override
+    public Sequence getValue() {
+        return bound.get().getValue();
+    }
+
+    @Override
+    public void destroy(final XQueryContext context, final Sequence contextSequence) {
+        bound.get().destroy(context, contextSequence);
+    }
+
+    /**
+     * Discards the value held for the current thread.
+     */
+    void release() {
+        bound.remove();
+    }
+}
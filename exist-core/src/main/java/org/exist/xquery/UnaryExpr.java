@@ -63,9 +63,25 @@ public class UnaryExpr extends PathExpr {
 		if(getLength() == 0)
 			{throw new XPathException(this, "unary expression requires an operand");}
         
-        Sequence result;
+        final Sequence result = apply(getExpression(0).eval(contextSequence));
+
+        if (context.getProfiler().isEnabled()) 
+            {context.getProfiler().end(this, "", result);}
         
-        final Sequence item = getExpression(0).eval(contextSequence);
+        return result;        
+	}
+
+	/**
+	 * Applies the sign to the result of the operand. Used by {@link #eval(Sequence, Item)},
+	 * and by the function bodies which are compiled by {@link ExpressionCompiler}.
+	 *
+	 * @param item the result of the operand
+	 *
+	 * @return the result of the operation
+	 *
+	 * @throws XPathException if the operand is not numeric
+	 */
+	public Sequence apply(final Sequence item) throws XPathException {
         if (item.isEmpty())
         	{return item;}
         
@@ -81,14 +97,9 @@ public class UnaryExpr extends PathExpr {
 		}
 
 		if(mode == ArithmeticOperator.SUBTRACTION)
-            {result = value.negate();}
+            {return value.negate();}
 		else
-            {result =  value;}
-        
-        if (context.getProfiler().isEnabled()) 
-            {context.getProfiler().end(this, "", result);}
-        
-        return result;        
+            {return value;}
 	}
 
 	@Override
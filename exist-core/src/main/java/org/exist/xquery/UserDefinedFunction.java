@@ -35,7 +35,18 @@ import java.util.List;
  */
 public class UserDefinedFunction extends Function implements Cloneable {
 
+	public static final String COMPILE_THRESHOLD_ATTRIBUTE = "function-compile-threshold";
+	public static final String PROPERTY_COMPILE_THRESHOLD = "xquery.function-compile-threshold";
+
+	/**
+	 * By default the bodies of user defined functions are not compiled to bytecode, see {@link ExpressionCompiler}.
+	 */
+	public static final int DEFAULT_COMPILE_THRESHOLD = 0;
+
 	private Expression body;
+
+	// shared with the clones of the function, as is the body
+	private final ExpressionCompiler.HotFunctionBody hotBody = new ExpressionCompiler.HotFunctionBody();
 	
 	private List<QName> parameters = new ArrayList<>(5);
 	
@@ -137,6 +148,9 @@ public class UserDefinedFunction extends Function implements Cloneable {
         	{context.restoreStack(closureVariables);}
         Sequence result = null;
 		try {
+			// the parameters are declared even if the body is compiled, as the parts which are not compiled are interpreted
+			final CompiledFunctionBody compiledBody = hotBody.called(this, body);
+			final Sequence[] values = compiledBody == null ? null : new Sequence[parameters.size()];
 			QName varName;
 			LocalVariable var;
 			int j = 0;
@@ -147,18 +161,26 @@ public class UserDefinedFunction extends Function implements Cloneable {
 				if (contextDocs != null)
 					{var.setContextDocs(contextDocs[i]);}
 				context.declareVariableBinding(var);
-				
+				if (values != null)
+					{values[i] = var.getValue();}
+
+				final Cardinality expectedCardinality = getSignature().getArgumentTypes()[j].getCardinality();
+				// any argument is valid for a parameter of cardinality *, so do not realize a lazy sequence
+				if (expectedCardinality == Cardinality.ZERO_OR_MORE) {
+					continue;
+				}
+
 				Cardinality actualCardinality;
 				if (currentArguments[j].isEmpty()) {actualCardinality = Cardinality.EMPTY_SEQUENCE;}
 				else if (currentArguments[j].hasMany()) {actualCardinality = Cardinality._MANY;}
 				else {actualCardinality = Cardinality.EXACTLY_ONE;}
 				
-				if (!getSignature().getArgumentTypes()[j].getCardinality().isSuperCardinalityOrEqualOf(actualCardinality))
+				if (!expectedCardinality.isSuperCardinalityOrEqualOf(actualCardinality))
 					{throw new XPathException(this, ErrorCodes.XPTY0004, "Invalid cardinality for parameter $" + varName +  
- 						". Expected " + getSignature().getArgumentTypes()[j].getCardinality().getHumanDescription() +
+ 						". Expected " + expectedCardinality.getHumanDescription() +
  						", got " + currentArguments[j].getItemCount());}
 			}
-			result = body.eval(null, null);
+			result = compiledBody == null ? body.eval(null, null) : compiledBody.eval(values);
 			return result;
 		} finally {
 			// restore the local variable stack
@@ -45,6 +45,7 @@ import org.exist.source.FileSource;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.DBBroker;
+import org.exist.storage.XQueryPool;
 import org.exist.xquery.parser.XQueryLexer;
 import org.exist.xquery.parser.XQueryParser;
 import org.exist.xquery.parser.XQueryTreeParser;
@@ -473,6 +474,22 @@ public class XQuery {
         }
     }
 
+    /**
+     * Compiles and executes an XQuery from a String in the default static context.
+     *
+     * The expression is compiled on each call, rather than borrowed from the
+     * {@link XQueryPool}, as the returned sequence may still be evaluated lazily
+     * against the context of the compiled XQuery after this method returns.
+     *
+     * @param broker the database broker
+     * @param expression the expression to execute
+     * @param contextSequence the context sequence, or null
+     *
+     * @return the result of the XQuery
+     *
+     * @throws XPathException if an error occurs during compilation or execution
+     * @throws PermissionDeniedException if the caller is not permitted to execute the XQuery
+     */
     public Sequence execute(final DBBroker broker, final String expression, final Sequence contextSequence) throws XPathException, PermissionDeniedException {
         final XQueryContext context = new XQueryContext(broker.getBrokerPool());
         final CompiledXQuery compiled = compile(context, expression);
@@ -34,6 +34,12 @@ import org.exist.xquery.util.ExpressionDumper;
 
 
 /**
+ * Terminates a query which has been killed, or which exceeds its time or output limits.
+ *
+ * The checks may be called concurrently by the threads which evaluate parts of
+ * the same query in parallel, and {@link #kill(long)} may be called from any thread,
+ * so the state of the watchdog is held in volatile fields.
+ *
  * @author wolf
  */
 @ConfigurationClass("watchdog")
@@ -49,16 +55,16 @@ public class XQueryWatchDog {
     private final XQueryContext context;
     
     @ConfigurationFieldAsAttribute("query-timeout")
-    private long timeout = Long.MAX_VALUE;
+    private volatile long timeout = Long.MAX_VALUE;
     
     @ConfigurationFieldAsAttribute("output-size-limit")
-    private int maxNodesLimit = Integer.MAX_VALUE;
+    private volatile int maxNodesLimit = Integer.MAX_VALUE;
     
-    private long startTime;
+    private volatile long startTime;
     
-    private boolean terminate = false;
+    private volatile boolean terminate = false;
 
-    private String runningThread = null;
+    private volatile String runningThread = null;
 
     public XQueryWatchDog(XQueryContext context) {
         this.context = context;
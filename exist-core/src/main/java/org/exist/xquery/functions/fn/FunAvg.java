@@ -103,9 +103,24 @@ public class FunAvg extends Function {
             }
             //Set the first value
             ComputableValue sum = (ComputableValue) value;
+            //Add up xs:integer values as a primitive long until another type or an overflow is encountered
+            boolean isLongSum = sum instanceof IntegerValue && sum.getType() == Type.INTEGER && ((IntegerValue) sum).fitsInLong();
+            long longSum = isLongSum ? ((IntegerValue) sum).getValue() : 0;
             while (iter.hasNext()) {
                 item = iter.nextItem();
                 value = item.atomize();
+                if (isLongSum) {
+                    if (value instanceof IntegerValue && ((IntegerValue) value).fitsInLong()) {
+                        try {
+                            longSum = Math.addExact(longSum, ((IntegerValue) value).getValue());
+                            continue;
+                        } catch (final ArithmeticException e) {
+                            //Overflow: continue with BigInteger arithmetic
+                        }
+                    }
+                    sum = new IntegerValue(longSum);
+                    isLongSum = false;
+                }
                 //Any value of type xdt:untypedAtomic are cast to xs:double
                 if (value.getType() == Type.UNTYPED_ATOMIC) 
                     {value = value.convertTo(Type.DOUBLE);}
@@ -130,6 +145,9 @@ public class FunAvg extends Function {
                     throw new XPathException(this, ErrorCodes.FORG0006, e.getMessage());
                 }
             }
+            if (isLongSum) {
+                sum = new IntegerValue(longSum);
+            }
             result = sum.div(new IntegerValue(inner.getItemCount()));
         }
         if (!gotInfinity) {
@@ -28,10 +28,12 @@ import org.exist.xquery.Cardinality;
 import org.exist.xquery.ErrorCodes;
 import org.exist.xquery.Function;
 import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.OrderByClause;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.Item;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceType;
 import org.exist.xquery.value.Type;
@@ -56,6 +58,9 @@ public class FunHeadTail extends BasicFunction {
                     },
                 new FunctionReturnSequenceType(Type.ITEM, Cardinality.ZERO_OR_MORE, "the resulting sequence")) };
 	
+	// the limit of the ordered FLWOR expression of the argument of fn:head, if any
+	private OrderByClause.ResultLimit orderByLimit = null;
+
 	public FunHeadTail(XQueryContext context, FunctionSignature signature) {
 		super(context, signature);
 	}
@@ -67,6 +72,23 @@ public class FunHeadTail extends BasicFunction {
 			throw new XPathException(this, ErrorCodes.EXXQDY0003, "Function " + 
 					getSignature().getName() + " is only supported for xquery version \"3.0\" and later.");
 		}
+		if (isCalledAs("head")) {
+			// only the first item of the argument is used
+			orderByLimit = OrderByClause.limitResult(getArgument(0), 1);
+		}
+	}
+
+	@Override
+	public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+		if (orderByLimit == null) {
+			return super.eval(contextSequence, contextItem);
+		}
+		orderByLimit.enter();
+		try {
+			return super.eval(contextSequence, contextItem);
+		} finally {
+			orderByLimit.exit();
+		}
 	}
 	
 	@Override
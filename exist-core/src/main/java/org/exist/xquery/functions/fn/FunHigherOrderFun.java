@@ -36,7 +36,7 @@ import org.exist.xquery.value.ValueSequence;
 
 import javax.annotation.Nullable;
 
-public class FunHigherOrderFun extends BasicFunction {
+public class FunHigherOrderFun extends BasicFunction implements LimitableResult {
 
     public final static FunctionSignature FN_FOR_EACH = new FunctionSignature(
             new QName("for-each", Function.BUILTIN_FUNCTION_NS),
@@ -108,6 +108,9 @@ public class FunHigherOrderFun extends BasicFunction {
 
     private AnalyzeContextInfo cachedContextInfo;
 
+    // the number of items used from the start of the result, or -1 if all items are used
+    private long resultLimit = -1;
+
     public FunHigherOrderFun(XQueryContext context, FunctionSignature signature) {
         super(context, signature);
     }
@@ -130,6 +133,32 @@ public class FunHigherOrderFun extends BasicFunction {
         super.analyze(cachedContextInfo);
     }
 
+    @Override
+    public void limitResult(final long limit) {
+        if ((isCalledAs("for-each") || isCalledAs("filter") || isCalledAs("for-each-pair")) && isSideEffectFree()) {
+            resultLimit = resultLimit < 0 ? limit : Math.max(resultLimit, limit);
+        }
+    }
+
+    /**
+     * The function which is applied to the items is only known statically
+     * if it is given as an inline function, whose body then has to be free
+     * of side effects.
+     */
+    private boolean isSideEffectFree() {
+        Expression function = OrderByClause.unwrap(getArgument(getArgumentCount() - 1));
+        if (isCalledAs("filter") && !(function instanceof InlineFunction)) {
+            // the parameters of filter may be given in reverse order, see checkArgument
+            function = OrderByClause.unwrap(getArgument(0));
+        }
+        return function instanceof InlineFunction
+                && LimitableResult.isSideEffectFree(((InlineFunction) function).getFunction().getFunctionBody());
+    }
+
+    private boolean isLimitReached(final Sequence result) {
+        return resultLimit > 0 && result.getItemCountLong() >= resultLimit;
+    }
+
     @Override
     public Sequence eval(final Sequence[] args, final Sequence contextSequence)
             throws XPathException {
@@ -142,7 +171,7 @@ public class FunHigherOrderFun extends BasicFunction {
                     throw new XPathException(this, ErrorCodes.XPTY0004,
                             "The supplied function (" + ref.getStringValue() + ") has " + ref.getSignature().getArgumentCount() + " arguments - expected 1");
                 }
-                for (final SequenceIterator i = args[0].iterate(); i.hasNext(); ) {
+                for (final SequenceIterator i = args[0].iterate(); i.hasNext() && !isLimitReached(result); ) {
                     final Item item = i.nextItem();
                     final Sequence r = ref.evalFunction(null, null, new Sequence[]{item.toSequence()});
                     result.addAll(r);
@@ -167,7 +196,7 @@ public class FunHigherOrderFun extends BasicFunction {
                             "The supplied function (" + ref.getStringValue() + ") has " + ref.getSignature().getArgumentCount() + " arguments - expected 1");
                 }
 
-                for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+                for (final SequenceIterator i = seq.iterate(); i.hasNext() && !isLimitReached(result); ) {
                     final Item item = i.nextItem();
                     final Sequence r = ref.evalFunction(null, null, new Sequence[]{item.toSequence()});
 
@@ -216,7 +245,7 @@ public class FunHigherOrderFun extends BasicFunction {
                 }
                 final SequenceIterator i1 = args[0].iterate();
                 final SequenceIterator i2 = args[1].iterate();
-                while (i1.hasNext() && i2.hasNext()) {
+                while (i1.hasNext() && i2.hasNext() && !isLimitReached(result)) {
                     final Sequence r = ref.evalFunction(null, null,
                             new Sequence[]{i1.nextItem().toSequence(), i2.nextItem().toSequence()});
                     result.addAll(r);
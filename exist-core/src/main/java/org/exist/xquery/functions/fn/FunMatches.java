@@ -196,6 +196,16 @@ public class FunMatches extends Function implements Optimizable, IndexUseReporte
         return axis;
     }
 
+    @Override
+    public QName getOptimizeQName() {
+        return contextQName;
+    }
+
+    @Override
+    public double getSelectivity() {
+        return CostModel.SUBSTRING_SELECTIVITY;
+    }
+
     @Override
     public NodeSet preSelect(final Sequence contextSequence, final boolean useContext) throws XPathException {
         final long start = System.currentTimeMillis();
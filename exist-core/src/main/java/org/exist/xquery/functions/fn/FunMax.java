@@ -39,6 +39,7 @@ import org.exist.xquery.value.DurationValue;
 import org.exist.xquery.value.FloatValue;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.QNameValue;
@@ -168,8 +169,13 @@ public class FunMax extends CollatingFunction {
                 
                 if (max == null)
                     {max = value;}
-                
-                else {
+
+                else if (max instanceof IntegerValue && value instanceof IntegerValue) {
+                    //Fast path: two integers need neither type promotion nor NaN handling
+                    max = max.max(collator, value);
+                    computableProcessing = true;
+
+                } else {
                 	if (Type.getCommonSuperType(max.getType(), value.getType()) == Type.ATOMIC) {
                 		throw new XPathException(this, ErrorCodes.FORG0006, "Cannot compare " + Type.getTypeName(max.getType()) +
                 				" and " + Type.getTypeName(value.getType()), max);
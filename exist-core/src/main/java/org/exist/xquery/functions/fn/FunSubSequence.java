@@ -32,7 +32,7 @@ import javax.annotation.Nullable;
  *
  * @author <a href="mailto:wolfgang@exist-db.org">Wolfgang Meier</a>
  */
-public class FunSubSequence extends Function {
+public class FunSubSequence extends Function implements LimitableResult {
 
     public static final FunctionSignature[] signatures = {
             new FunctionSignature(
@@ -57,6 +57,11 @@ public class FunSubSequence extends Function {
                     },
                     new FunctionReturnSequenceType(Type.ITEM, Cardinality.ZERO_OR_MORE, "the subsequence"))};
 
+    /**
+     * The limit of the ordered FLWOR expression of the first argument, if any.
+     */
+    @Nullable private OrderByClause.ResultLimit orderByLimit = null;
+
     public FunSubSequence(final XQueryContext context, final FunctionSignature signature) {
         super(context, signature);
     }
@@ -89,6 +94,15 @@ public class FunSubSequence extends Function {
             }
         }
         argumentsChecked = true;
+
+        // an ordered FLWOR only has to sort the items up to the end of the subsequence
+        orderByLimit = getArgumentCount() == 3 ? OrderByClause.limitSubsequence(getArgument(0), getArgument(1), getArgument(2)) : null;
+    }
+
+    @Override
+    public void limitResult(final long limit) {
+        // only the first items of the subsequence are used
+        orderByLimit = OrderByClause.ResultLimit.min(orderByLimit, OrderByClause.limitSubsequence(getArgument(0), getArgument(1), limit));
     }
 
     @Override
@@ -109,7 +123,17 @@ public class FunSubSequence extends Function {
         }
 
         final Sequence result;
-        final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
+        final Sequence seq;
+        if (orderByLimit != null) {
+            orderByLimit.enter();
+            try {
+                seq = getArgument(0).eval(contextSequence, contextItem);
+            } finally {
+                orderByLimit.exit();
+            }
+        } else {
+            seq = getArgument(0).eval(contextSequence, contextItem);
+        }
         if (seq.isEmpty()) {
             result = Sequence.EMPTY_SEQUENCE;
         } else {
@@ -106,10 +106,26 @@ public class FunSum extends Function {
     		
     		//Set the first value
     		ComputableValue sum = (ComputableValue) value;
+    		//Add up xs:integer values as a primitive long until another type or an overflow is encountered
+    		boolean isLongSum = sum instanceof IntegerValue && sum.getType() == Type.INTEGER && ((IntegerValue) sum).fitsInLong();
+    		long longSum = isLongSum ? ((IntegerValue) sum).getValue() : 0;
     		while (iter.hasNext()) {
     			item = iter.nextItem();
     			value = item.atomize();
 
+    			if (isLongSum) {
+    				if (value instanceof IntegerValue && ((IntegerValue) value).fitsInLong()) {
+    					try {
+    						longSum = Math.addExact(longSum, ((IntegerValue) value).getValue());
+    						continue;
+    					} catch (final ArithmeticException e) {
+    						//Overflow: continue with BigInteger arithmetic
+    					}
+    				}
+    				sum = new IntegerValue(longSum);
+    				isLongSum = false;
+    			}
+
             	value = check(value, sum);
     			
         		if (Type.subTypeOfUnion(value.getType(), Type.NUMBER)) {
@@ -124,7 +140,7 @@ public class FunSum extends Function {
     			//Aggregate next values
     			sum = sum.plus((ComputableValue) value);
     		}
-    		result = sum;
+    		result = isLongSum ? new IntegerValue(longSum) : sum;
         }
         
 		if (!gotInfinity) {
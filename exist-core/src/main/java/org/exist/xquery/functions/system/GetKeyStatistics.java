@@ -0,0 +1,115 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.system;
+
+import org.exist.dom.QName;
+import org.exist.dom.memtree.MemTreeBuilder;
+import org.exist.storage.statistics.KeyStatistics;
+import org.exist.storage.statistics.KeyStatisticsRegistry;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.NodeValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+
+import java.util.Map;
+
+/**
+ * Returns the distribution of the keys of the indexes which maintain
+ * {@link KeyStatistics}, i.e. the value index and the new range index.
+ */
+public class GetKeyStatistics extends BasicFunction {
+
+    private static final int DEFAULT_BUCKETS = 10;
+
+    public final static FunctionSignature[] signatures = {
+        new FunctionSignature(
+            new QName("get-key-statistics", SystemModule.NAMESPACE_URI, SystemModule.PREFIX),
+            "Returns the number of keys, the estimated number of distinct keys and an equi-depth " +
+            "histogram of " + DEFAULT_BUCKETS + " buckets for each name indexed by the value index " +
+            "and the range index (dba role only).",
+            null,
+            new FunctionReturnSequenceType(Type.ELEMENT, Cardinality.EXACTLY_ONE, "the key statistics")),
+        new FunctionSignature(
+            new QName("get-key-statistics", SystemModule.NAMESPACE_URI, SystemModule.PREFIX),
+            "Returns the number of keys, the estimated number of distinct keys and an equi-depth " +
+            "histogram for each name indexed by the value index and the range index (dba role only).",
+            new SequenceType[] {
+                new FunctionParameterSequenceType("buckets", Type.INTEGER, Cardinality.EXACTLY_ONE,
+                    "the maximum number of buckets of each histogram")
+            },
+            new FunctionReturnSequenceType(Type.ELEMENT, Cardinality.EXACTLY_ONE, "the key statistics"))
+    };
+
+    public GetKeyStatistics(final XQueryContext context, final FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
+        if (!context.getSubject().hasDbaRole()) {
+            throw new XPathException(this, "Permission denied, calling user '" + context.getSubject().getName() +
+                    "' must be a DBA to get the key statistics");
+        }
+        final int buckets = args.length > 0 ? ((IntegerValue) args[0].itemAt(0)).getInt() : DEFAULT_BUCKETS;
+
+        context.pushDocumentContext();
+        try {
+            final MemTreeBuilder builder = context.getDocumentBuilder();
+            builder.startDocument();
+            builder.startElement(new QName("key-statistics", SystemModule.NAMESPACE_URI, SystemModule.PREFIX), null);
+            for (final KeyStatisticsRegistry registry : KeyStatisticsRegistry.getAll(context.getBroker().getBrokerPool())) {
+                builder.startElement(new QName("index", SystemModule.NAMESPACE_URI, SystemModule.PREFIX), null);
+                builder.addAttribute(new QName("name", null, null), registry.getIndexName());
+                for (final Map.Entry<String, KeyStatistics> entry : registry.getAll().entrySet()) {
+                    final KeyStatistics stats = entry.getValue();
+                    builder.startElement(new QName("key", SystemModule.NAMESPACE_URI, SystemModule.PREFIX), null);
+                    builder.addAttribute(new QName("name", null, null), entry.getKey());
+                    builder.addAttribute(new QName("count", null, null), Long.toString(stats.getCount()));
+                    builder.addAttribute(new QName("distinct", null, null), Long.toString(stats.getDistinctCount()));
+                    for (final byte[] bound : stats.getHistogram(buckets)) {
+                        builder.startElement(new QName("bucket", SystemModule.NAMESPACE_URI, SystemModule.PREFIX), null);
+                        final String upper = KeyStatistics.toString(bound);
+                        if (upper != null) {
+                            builder.addAttribute(new QName("upper", null, null), upper);
+                        }
+                        builder.endElement();
+                    }
+                    builder.endElement();
+                }
+                builder.endElement();
+            }
+            builder.endElement();
+            builder.endDocument();
+            return (NodeValue) builder.getDocument().getDocumentElement();
+        } finally {
+            context.popDocumentContext();
+        }
+    }
+}
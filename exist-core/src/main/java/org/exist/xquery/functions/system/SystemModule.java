@@ -70,6 +70,8 @@ public class SystemModule extends AbstractInternalModule {
 			new FunctionDef(AsUser.FS_FUNCTION_AS_USER, AsUser.class),
             new FunctionDef(GetIndexStatistics.signature, GetIndexStatistics.class),
             new FunctionDef(UpdateStatistics.signature, UpdateStatistics.class),
+            new FunctionDef(GetKeyStatistics.signatures[0], GetKeyStatistics.class),
+            new FunctionDef(GetKeyStatistics.signatures[1], GetKeyStatistics.class),
             new FunctionDef(GetRunningXQueries.signature, GetRunningXQueries.class),
             new FunctionDef(KillRunningXQuery.signatures[0], KillRunningXQuery.class),
             new FunctionDef(KillRunningXQuery.signatures[1], KillRunningXQuery.class),
@@ -64,6 +64,10 @@ public class XMLDBModule extends AbstractInternalModule {
             new FunctionDef(XMLDBLoadFromPattern.signatures[1], XMLDBLoadFromPattern.class),
             new FunctionDef(XMLDBLoadFromPattern.signatures[2], XMLDBLoadFromPattern.class),
             new FunctionDef(XMLDBLoadFromPattern.signatures[3], XMLDBLoadFromPattern.class),
+            new FunctionDef(XMLDBStoreBulk.signatures[0], XMLDBStoreBulk.class),
+            new FunctionDef(XMLDBStoreBulk.signatures[1], XMLDBStoreBulk.class),
+            new FunctionDef(XMLDBStoreBulk.signatures[2], XMLDBStoreBulk.class),
+            new FunctionDef(XMLDBStoreBulk.signatures[3], XMLDBStoreBulk.class),
             new FunctionDef(XMLDBXUpdate.signature, XMLDBXUpdate.class),
             new FunctionDef(XMLDBCopy.FS_COPY_COLLECTION[0], XMLDBCopy.class),
             new FunctionDef(XMLDBCopy.FS_COPY_COLLECTION[1], XMLDBCopy.class),
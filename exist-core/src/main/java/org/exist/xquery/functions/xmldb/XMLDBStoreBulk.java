@@ -0,0 +1,99 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.xmldb;
+
+import org.exist.dom.QName;
+import org.exist.indexing.IndexManager;
+import org.exist.storage.DBBroker;
+import org.exist.storage.btree.DBException;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.xmldb.api.base.Collection;
+
+/**
+ * Implements xmldb:store-bulk(), which stores files like xmldb:store-files-from-pattern(),
+ * but defers the index entries of the stored documents until all files are stored, see
+ * {@link IndexManager#startBulkLoad(DBBroker)}.
+ */
+public class XMLDBStoreBulk extends XMLDBLoadFromPattern {
+
+    protected final static QName FUNCTION_NAME = new QName("store-bulk", XMLDBModule.NAMESPACE_URI, XMLDBModule.PREFIX);
+
+    protected final static String FUNCTION_DESCRIPTION = "Stores a large number of new resources into the database. " +
+            "Resources are read from the server's file system, using file patterns, as with xmldb:store-files-from-pattern(). " +
+            "The index entries of the stored documents are written in one go after all resources have been stored, " +
+            "which is much faster for large loads, but some index entries are not visible to queries until the function returns. " +
+            "The user must be a DBA. " +
+            "The function returns a sequence of all document paths added " +
+            "to the db. These can be directly passed to fn:doc() to retrieve the document(s).";
+
+    public final static FunctionSignature[] signatures = {
+            new FunctionSignature(
+                    FUNCTION_NAME,
+                    FUNCTION_DESCRIPTION,
+                    new SequenceType[]{PARAM_COLLECTION, PARAM_FS_DIRECTORY, PARAM_FS_PATTERN},
+                    RETURN_TYPE
+            ),
+            new FunctionSignature(
+                    FUNCTION_NAME,
+                    FUNCTION_DESCRIPTION,
+                    new SequenceType[]{PARAM_COLLECTION, PARAM_FS_DIRECTORY, PARAM_FS_PATTERN, PARAM_MIME_TYPE},
+                    RETURN_TYPE
+            ),
+            new FunctionSignature(
+                    FUNCTION_NAME,
+                    FUNCTION_DESCRIPTION,
+                    new SequenceType[]{PARAM_COLLECTION, PARAM_FS_DIRECTORY, PARAM_FS_PATTERN, PARAM_MIME_TYPE, PARAM_PRESERVE_STRUCTURE},
+                    RETURN_TYPE
+            ),
+            new FunctionSignature(
+                    FUNCTION_NAME,
+                    FUNCTION_DESCRIPTION,
+                    new SequenceType[]{PARAM_COLLECTION, PARAM_FS_DIRECTORY, PARAM_FS_PATTERN, PARAM_MIME_TYPE, PARAM_PRESERVE_STRUCTURE, PARAM_EXCLUDES},
+                    RETURN_TYPE
+            )
+    };
+
+    public XMLDBStoreBulk(final XQueryContext context, final FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    @Override
+    protected Sequence evalWithCollection(final Collection collection, final Sequence[] args, final Sequence contextSequence)
+            throws XPathException {
+        if (!context.getSubject().hasDbaRole()) {
+            throw new XPathException(this, "Permission denied, user '" + context.getSubject().getName() +
+                    "' must be a DBA to bulk load resources");
+        }
+
+        // the resources are stored through the broker of the query, which is that of the current thread
+        final DBBroker broker = context.getBroker();
+        try (final IndexManager.BulkLoad bulkLoad = broker.getBrokerPool().getIndexManager().startBulkLoad(broker)) {
+            return super.evalWithCollection(collection, args, contextSequence);
+        } catch (final DBException e) {
+            throw new XPathException(this, "Failed to write the index entries of the stored resources: " + e.getMessage(), e);
+        }
+    }
+}
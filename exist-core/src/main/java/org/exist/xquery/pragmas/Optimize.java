@@ -48,6 +48,7 @@ public class Optimize extends Pragma {
     private boolean enabled = true;
     private XQueryContext context;
     private Optimizable optimizables[];
+    private CostModel costModel = null;
     private Expression innerExpr = null;
     private LocationStep contextStep = null;
     private VariableReference contextVar = null;
@@ -106,6 +107,12 @@ public class Optimize extends Pragma {
                             break;
                         }
                     }
+                    // a small context sequence may be cheaper to filter than the nodes selected by the index
+                    if (optimize && costModel.preferStructural(contextSequence, optimizables)) {
+                        if (LOG.isTraceEnabled())
+                            {LOG.trace("exist:optimize: context sequence is cheaper to evaluate without index");}
+                        optimize = false;
+                    }
                 }
             }
         }
@@ -237,6 +244,12 @@ public class Optimize extends Pragma {
             }
         });
 
+        if (optimizables != null) {
+            // look up the most selective index first, so the following lookups are restricted to its result
+            costModel = new CostModel(context);
+            costModel.sort(optimizables);
+        }
+
         contextStep = BasicExpressionVisitor.findFirstStep(innerExpr);
         if (contextStep != null && contextStep.getTest().isWildcardTest())
             {contextStep = null;}
@@ -0,0 +1,65 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.*;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Allows the iterations of the "for" clauses within the enclosed
+ * expression to be evaluated in parallel, e.g.
+ *
+ * <pre>(# exist:parallel #) { for $i in $items return f($i) }</pre>
+ *
+ * This is only a hint, a "for" clause will still be evaluated sequentially
+ * if its return clause is not known to be safe for concurrent evaluation.
+ * The number of threads may be configured with the exist:parallel option.
+ */
+public class ParallelPragma extends Pragma {
+
+    public final static QName PARALLEL_PRAGMA = new QName("parallel", Namespaces.EXIST_NS, "exist");
+
+    public ParallelPragma(final QName qname, final String contents) throws XPathException {
+        super(qname, contents);
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        contextInfo.addFlag(Expression.PARALLEL_EVALUATION);
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        return null;
+    }
+
+    @Override
+    public void before(final XQueryContext context, final Expression expression, final Sequence contextSequence) throws XPathException {
+    }
+
+    @Override
+    public void after(final XQueryContext context, final Expression expression) throws XPathException {
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.dom.persistent.VirtualNodeSet;
+import org.exist.indexing.StructuralIndex;
+import org.exist.indexing.StructuralPathStep;
+import org.exist.numbering.NodeId;
+import org.exist.storage.ElementValue;
+import org.exist.xquery.*;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.Type;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates a chain of child and descendant steps, e.g. <code>//article[author]/section//title</code>,
+ * in a single pass over the structural index instead of step by step, see
+ * {@link StructuralIndex#findDescendantsByPath(StructuralPathStep[], org.exist.dom.persistent.DocumentSet, Expression)}.
+ *
+ * The pragma is inserted by the {@link Optimizer}. It only applies if the steps are evaluated
+ * against a set of stored document nodes and no context information needs to be tracked. In all
+ * other cases, the enclosed steps are evaluated as usual.
+ */
+public class StructuralJoin extends Pragma {
+
+    public  final static QName STRUCTURAL_JOIN_PRAGMA = new QName("structural-join", Namespaces.EXIST_NS, "exist");
+
+    private final static Logger LOG = LogManager.getLogger(StructuralJoin.class);
+
+    private final XQueryContext context;
+    private final StructuralPathStep[] path;
+    private boolean enabled = true;
+    private Expression innerExpr = null;
+
+    public StructuralJoin(final XQueryContext context, final List<LocationStep> steps) throws XPathException {
+        super(STRUCTURAL_JOIN_PRAGMA, null);
+        this.context = context;
+        this.path = new StructuralPathStep[steps.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = toPathStep(steps.get(i));
+        }
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        super.analyze(contextInfo);
+        // the steps have to keep track of their context nodes, or indexes were switched off
+        enabled = contextInfo.getContextId() == Expression.NO_CONTEXT_ID &&
+                (contextInfo.getFlags() & (Expression.IN_PREDICATE | Expression.USE_TREE_TRAVERSAL)) == 0;
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        if (!enabled || contextItem != null || contextSequence == null || !contextSequence.isPersistentSet() ||
+                contextSequence instanceof VirtualNodeSet) {
+            return null;
+        }
+        final NodeSet contextSet = contextSequence.toNodeSet();
+        if (contextSet.isEmpty()) {
+            return null;
+        }
+        for (final NodeProxy node : contextSet) {
+            if (node.getNodeId() != NodeId.DOCUMENT_NODE) {
+                return null;
+            }
+        }
+
+        final StructuralIndex index = context.getBroker().getStructuralIndex();
+        if (context.getProfiler().isEnabled()) {
+            context.getProfiler().message(innerExpr, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                    "Using structural index '" + index.toString() + "' to join path steps");
+        }
+        if (context.getProfiler().traceFunctions()) {
+            context.getProfiler().traceOptimization(context, PerformanceStats.OptimizationType.StructuralJoin, innerExpr);
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("exist:structural-join: evaluating {} steps in one pass", path.length);
+        }
+        return index.findDescendantsByPath(path, contextSet.getDocumentSet(), innerExpr);
+    }
+
+    @Override
+    public void before(final XQueryContext context, final Expression expression, final Sequence contextSequence) throws XPathException {
+        innerExpr = expression;
+    }
+
+    @Override
+    public void after(final XQueryContext context, final Expression expression) throws XPathException {
+    }
+
+    /**
+     * Find the steps of a path expression which can be evaluated by a structural join:
+     * all steps following the first expression of the path, provided there are at least two
+     * of them and they start with a chain of simple steps (see {@link #canJoin(LocationStep)}).
+     * Any steps after the chain must not have predicates, as those may be optimized based on the
+     * steps preceding them.
+     *
+     * @param path the path expression
+     * @return the steps to join, or null if the path cannot be rewritten
+     */
+    public static @Nullable List<LocationStep> getJoinableSteps(final PathExpr path) {
+        if (path.getClass() != PathExpr.class || path.isUseStaticContext() || path.getLength() < 3 ||
+                path.getExpression(0) instanceof LocationStep) {
+            return null;
+        }
+        final List<LocationStep> steps = new ArrayList<>(path.getLength() - 1);
+        for (int i = 1; i < path.getLength(); i++) {
+            final Expression expr = path.getExpression(i);
+            if (steps.size() == i - 1 && expr instanceof LocationStep && canJoin((LocationStep) expr)) {
+                steps.add((LocationStep) expr);
+            } else if (expr instanceof ExtensionExpression || (expr instanceof Step && ((Step) expr).hasPredicates())) {
+                // predicates of the following steps may be optimized based on the preceding steps
+                return null;
+            }
+        }
+        return steps.size() < 2 ? null : steps;
+    }
+
+    /**
+     * A step can be joined if it selects elements by name on the child or descendant axis,
+     * and all its predicates are simple existence tests like <code>[author]</code>,
+     * <code>[descendant::note]</code> or <code>[@type]</code>.
+     */
+    private static boolean canJoin(final LocationStep step) {
+        if (!isNameStep(step, Type.ELEMENT, Constants.CHILD_AXIS, Constants.DESCENDANT_AXIS)) {
+            return false;
+        }
+        @Nullable final Predicate[] predicates = step.getPredicates();
+        if (predicates != null) {
+            for (final Predicate predicate : predicates) {
+                if (getCondition(predicate) == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static @Nullable LocationStep getCondition(final Predicate predicate) {
+        if (predicate.getLength() != 1 || predicate.getExecutionMode() != Predicate.ExecutionMode.NODE) {
+            return null;
+        }
+        Expression inner = predicate.getExpression(0);
+        while (inner instanceof PathExpr && inner.getClass() == PathExpr.class && ((PathExpr) inner).getLength() == 1) {
+            inner = ((PathExpr) inner).getExpression(0);
+        }
+        if (!(inner instanceof LocationStep)) {
+            return null;
+        }
+        final LocationStep step = (LocationStep) inner;
+        if (step.hasPredicates() ||
+                !(isNameStep(step, Type.ELEMENT, Constants.CHILD_AXIS, Constants.DESCENDANT_AXIS) ||
+                isNameStep(step, Type.ATTRIBUTE, Constants.ATTRIBUTE_AXIS, Constants.ATTRIBUTE_AXIS))) {
+            return null;
+        }
+        return step;
+    }
+
+    private static boolean isNameStep(final LocationStep step, final int type, final int axis1, final int axis2) {
+        final NodeTest test = step.getTest();
+        return (step.getAxis() == axis1 || step.getAxis() == axis2) && test.getType() == type &&
+                !test.isWildcardTest() && test.getName() != null;
+    }
+
+    private static StructuralPathStep toPathStep(final LocationStep step) {
+        final StructuralPathStep pathStep = new StructuralPathStep(ElementValue.ELEMENT, step.getTest().getName(), step.getAxis());
+        @Nullable final Predicate[] predicates = step.getPredicates();
+        if (predicates != null) {
+            for (final Predicate predicate : predicates) {
+                final LocationStep condition = getCondition(predicate);
+                final byte type = condition.getAxis() == Constants.ATTRIBUTE_AXIS ? ElementValue.ATTRIBUTE : ElementValue.ELEMENT;
+                pathStep.addCondition(new StructuralPathStep(type, condition.getTest().getName(), condition.getAxis()));
+            }
+        }
+        return pathStep;
+    }
+}
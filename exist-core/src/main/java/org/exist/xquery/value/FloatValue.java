@@ -134,7 +134,7 @@ public class FloatValue extends NumericValue {
     protected @Nullable IntSupplier createComparisonWith(final NumericValue other) {
         final IntSupplier comparison;
         if (other instanceof IntegerValue) {
-            comparison = () -> BigDecimal.valueOf(value).compareTo(new BigDecimal(((IntegerValue)other).value));
+            comparison = () -> BigDecimal.valueOf(value).compareTo(((IntegerValue)other).toBigDecimal());
         } else if (other instanceof DecimalValue) {
             comparison = () -> BigDecimal.valueOf(value).compareTo(((DecimalValue)other).value);
         } else if (other instanceof DoubleValue) {
@@ -22,7 +22,6 @@
 package org.exist.xquery.value;
 
 import com.ibm.icu.text.Collator;
-import org.exist.xquery.Constants;
 import org.exist.xquery.ErrorCodes;
 import org.exist.xquery.XPathException;
 
@@ -38,6 +37,11 @@ import java.util.function.IntSupplier;
  * The value space of integer is the infinite set {...,-2,-1,0,1,2,...}.
  * The base type of integer is decimal.
  * See http://www.w3.org/TR/xmlschema-2/#integer
+ *
+ * Values within the range of a long are held as a primitive long, and only
+ * values beyond that range are held as a {@link BigInteger}. Arithmetic on
+ * two long values is carried out on the primitive values and only promotes
+ * the result to a {@link BigInteger} if it overflows.
  */
 public class IntegerValue extends NumericValue {
 
@@ -46,58 +50,49 @@ public class IntegerValue extends NumericValue {
 
     public static final IntegerValue ZERO = new IntegerValue(0);
 
-    private static final BigInteger ZERO_BIGINTEGER = new BigInteger("0");
-    private static final BigInteger ONE_BIGINTEGER = new BigInteger("1");
-    private static final BigInteger MINUS_ONE_BIGINTEGER = new BigInteger("-1");
-
-    private static final BigInteger LARGEST_LONG = new BigInteger("9223372036854775807");
-    private static final BigInteger SMALLEST_LONG = new BigInteger("-9223372036854775808");
-
     private static final BigInteger LARGEST_UNSIGNED_LONG = new BigInteger("18446744073709551615");
 
-    private static final BigInteger LARGEST_INT = new BigInteger("2147483647");
-    private static final BigInteger SMALLEST_INT = new BigInteger("-2147483648");
-
-    private static final BigInteger LARGEST_UNSIGNED_INT = new BigInteger("4294967295");
-
-    private static final BigInteger LARGEST_SHORT = new BigInteger("32767");
-    private static final BigInteger SMALLEST_SHORT = new BigInteger("-32768");
-
-    private static final BigInteger LARGEST_UNSIGNED_SHORT = new BigInteger("65535");
+    private static final long LARGEST_UNSIGNED_INT = 4294967295L;
+    private static final long LARGEST_UNSIGNED_SHORT = 65535L;
+    private static final long LARGEST_UNSIGNED_BYTE = 255L;
 
-    private static final BigInteger LARGEST_BYTE = new BigInteger("127");
-    private static final BigInteger SMALLEST_BYTE = new BigInteger("-128");
+    // the value, truncated to its low order 64 bits if it is held by bigValue
+    private final long longValue;
 
-    private static final BigInteger LARGEST_UNSIGNED_BYTE = new BigInteger("255");
+    // the value if it is beyond the range of a long, null otherwise
+    @Nullable private final BigInteger bigValue;
 
-    final BigInteger value;
     private final int type;
 
     public IntegerValue(final long value) {
-        this.value = BigInteger.valueOf(value);
+        this.longValue = value;
+        this.bigValue = null;
         this.type = Type.INTEGER;
     }
 
     public IntegerValue(final BigInteger integer) {
-        this.value = integer;
+        this.longValue = integer.longValue();
+        this.bigValue = integer.bitLength() < Long.SIZE ? null : integer;
         this.type = Type.INTEGER;
     }
 
     public IntegerValue(final long value, final int type) throws XPathException {
-        this(BigInteger.valueOf(value), type);
+        this(value, null, type, true);
     }
 
     public IntegerValue(final BigInteger value, final int requiredType) throws XPathException {
-        this(value, requiredType, true);
+        this(value.longValue(), value.bitLength() < Long.SIZE ? null : value, requiredType, true);
     }
 
-    private IntegerValue(final BigInteger value, final int requiredType, boolean checkType) throws XPathException {
-        this.value = value;
+    private IntegerValue(final long longValue, @Nullable final BigInteger bigValue, final int requiredType,
+            final boolean checkType) throws XPathException {
+        this.longValue = longValue;
+        this.bigValue = bigValue;
         this.type = requiredType;
 
         if (checkType && !checkType()) {
             throw new XPathException(ErrorCodes.FORG0001, "can not convert '" +
-                    value + "' to " + Type.getTypeName(type));
+                    getStringValue() + "' to " + Type.getTypeName(type));
         }
     }
 
@@ -107,7 +102,16 @@ public class IntegerValue extends NumericValue {
 
     public IntegerValue(final String stringValue, final int requiredType) throws XPathException {
         try {
-            this.value = new BigInteger(StringValue.trimWhitespace(stringValue));
+            final String trimmed = StringValue.trimWhitespace(stringValue);
+            // up to 18 digits always fit into a long
+            if (trimmed.length() <= 18) {
+                this.longValue = Long.parseLong(trimmed);
+                this.bigValue = null;
+            } else {
+                final BigInteger integer = new BigInteger(trimmed);
+                this.longValue = integer.longValue();
+                this.bigValue = integer.bitLength() < Long.SIZE ? null : integer;
+            }
             this.type = requiredType;
             if (!(checkType())) {
                 throw new XPathException(ErrorCodes.FORG0001, "can not convert '" +
@@ -124,55 +128,83 @@ public class IntegerValue extends NumericValue {
 
             case Type.LONG:
                 // jmv: add test since now long is not the default implementation anymore:
-                return value.compareTo(SMALLEST_LONG) >= 0 &&
-                        value.compareTo(LARGEST_LONG) <= 0;
+                return bigValue == null;
 
             case Type.UNSIGNED_LONG:
-                return value.compareTo(ZERO_BIGINTEGER) >= 0 &&
-                        value.compareTo(LARGEST_UNSIGNED_LONG) <= 0;
+                if (bigValue == null) {
+                    return longValue >= 0;
+                }
+                return bigValue.signum() >= 0 && bigValue.compareTo(LARGEST_UNSIGNED_LONG) <= 0;
 
             case Type.INTEGER:
             case Type.DECIMAL:
                 return true;
 
             case Type.POSITIVE_INTEGER:
-                return value.compareTo(ZERO_BIGINTEGER) == 1; // >0
+                return signum() > 0;
             case Type.NON_NEGATIVE_INTEGER:
-                return value.compareTo(MINUS_ONE_BIGINTEGER) == 1; // > -1
+                return signum() >= 0;
 
             case Type.NEGATIVE_INTEGER:
-                return value.compareTo(ZERO_BIGINTEGER) == -1; // <0
+                return signum() < 0;
             case Type.NON_POSITIVE_INTEGER:
-                return value.compareTo(ONE_BIGINTEGER) == -1; // <1
+                return signum() <= 0;
 
             case Type.INT:
-                return value.compareTo(SMALLEST_INT) >= 0 &&
-                        value.compareTo(LARGEST_INT) <= 0;
+                return isInRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
 
             case Type.UNSIGNED_INT:
-                return value.compareTo(ZERO_BIGINTEGER) >= 0 &&
-                        value.compareTo(LARGEST_UNSIGNED_INT) <= 0;
+                return isInRange(0, LARGEST_UNSIGNED_INT);
 
             case Type.SHORT:
-                return value.compareTo(SMALLEST_SHORT) >= 0 &&
-                        value.compareTo(LARGEST_SHORT) <= 0;
+                return isInRange(Short.MIN_VALUE, Short.MAX_VALUE);
 
             case Type.UNSIGNED_SHORT:
-                return value.compareTo(ZERO_BIGINTEGER) >= 0 &&
-                        value.compareTo(LARGEST_UNSIGNED_SHORT) <= 0;
+                return isInRange(0, LARGEST_UNSIGNED_SHORT);
 
             case Type.BYTE:
-                return value.compareTo(SMALLEST_BYTE) >= 0 &&
-                        value.compareTo(LARGEST_BYTE) <= 0;
+                return isInRange(Byte.MIN_VALUE, Byte.MAX_VALUE);
 
             case Type.UNSIGNED_BYTE:
-                return value.compareTo(ZERO_BIGINTEGER) >= 0 &&
-                        value.compareTo(LARGEST_UNSIGNED_BYTE) <= 0;
+                return isInRange(0, LARGEST_UNSIGNED_BYTE);
         }
 
         throw new XPathException("Unknown type: " + Type.getTypeName(type));
     }
 
+    private boolean isInRange(final long min, final long max) {
+        return bigValue == null && longValue >= min && longValue <= max;
+    }
+
+    private int signum() {
+        return bigValue == null ? Long.signum(longValue) : bigValue.signum();
+    }
+
+    /**
+     * Returns the value as a {@link BigInteger}.
+     *
+     * @return the value
+     */
+    BigInteger toBigInteger() {
+        return bigValue == null ? BigInteger.valueOf(longValue) : bigValue;
+    }
+
+    /**
+     * Returns the value as a {@link BigDecimal}.
+     *
+     * @return the value
+     */
+    BigDecimal toBigDecimal() {
+        return bigValue == null ? BigDecimal.valueOf(longValue) : new BigDecimal(bigValue);
+    }
+
+    private int compareValue(final IntegerValue other) {
+        if (bigValue == null && other.bigValue == null) {
+            return Long.compare(longValue, other.longValue);
+        }
+        return toBigInteger().compareTo(other.toBigInteger());
+    }
+
     @Override
     public int getType() {
         return type;
@@ -189,13 +221,21 @@ public class IntegerValue extends NumericValue {
     }
 
     public long getValue() {
-        return value.longValue();
+        return longValue;
+    }
+
+    /**
+     * Checks if the value can be returned by {@link #getValue()} without loss.
+     *
+     * @return true if the value is within the range of a long
+     */
+    public boolean fitsInLong() {
+        return bigValue == null;
     }
 
     @Override
     public String getStringValue() {
-        return // Long.toString(value);
-                value.toString();
+        return bigValue == null ? Long.toString(longValue) : bigValue.toString();
     }
 
     @Override
@@ -210,31 +250,30 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public boolean isZero() {
-        return value.signum() == 0;
-        //return value.compareTo(ZERO_BIGINTEGER) == Constants.EQUAL;
+        return signum() == 0;
     }
 
     @Override
     public boolean isNegative() {
-        return value.signum() < 0;
+        return signum() < 0;
     }
 
     @Override
     public boolean isPositive() {
-        return value.signum() > 0;
+        return signum() > 0;
     }
 
     @Override
     protected @Nullable IntSupplier createComparisonWith(final NumericValue other) {
         final IntSupplier comparison;
         if (other instanceof IntegerValue) {
-            comparison = () -> value.compareTo(((IntegerValue)other).value);
+            comparison = () -> compareValue((IntegerValue) other);
         } else if (other instanceof DecimalValue) {
-            comparison = () -> new BigDecimal(value).compareTo(((DecimalValue)other).value);
+            comparison = () -> toBigDecimal().compareTo(((DecimalValue)other).value);
         } else if (other instanceof DoubleValue) {
-            comparison = () -> new BigDecimal(value).compareTo(BigDecimal.valueOf(((DoubleValue)other).value));
+            comparison = () -> toBigDecimal().compareTo(BigDecimal.valueOf(((DoubleValue)other).value));
         } else if (other instanceof FloatValue) {
-            comparison = () -> new BigDecimal(value).compareTo(BigDecimal.valueOf(((FloatValue)other).value));
+            comparison = () -> toBigDecimal().compareTo(BigDecimal.valueOf(((FloatValue)other).value));
         } else {
             return null;
         }
@@ -252,11 +291,11 @@ public class IntegerValue extends NumericValue {
             case Type.ITEM:
                 return this;
             case Type.DECIMAL:
-                return new DecimalValue(new BigDecimal(value));
+                return new DecimalValue(toBigDecimal());
             case Type.UNTYPED_ATOMIC:
                 return new UntypedAtomicValue(getStringValue());
             case Type.NUMBER:
-                return new IntegerValue(value, requiredType, false);
+                return new IntegerValue(longValue, bigValue, requiredType, false);
             case Type.LONG:
             case Type.INTEGER:
             case Type.NON_POSITIVE_INTEGER:
@@ -270,21 +309,21 @@ public class IntegerValue extends NumericValue {
             case Type.UNSIGNED_SHORT:
             case Type.UNSIGNED_BYTE:
             case Type.POSITIVE_INTEGER:
-                return new IntegerValue(value, requiredType);
+                return new IntegerValue(longValue, bigValue, requiredType, true);
             case Type.DOUBLE:
-                return new DoubleValue(value.doubleValue());
+                return new DoubleValue(getDouble());
             case Type.FLOAT:
-                return new FloatValue(value.floatValue());
+                return new FloatValue(bigValue == null ? (float) longValue : bigValue.floatValue());
             case Type.STRING:
                 return new StringValue(getStringValue());
             case Type.BOOLEAN:
-                return (value.compareTo(ZERO_BIGINTEGER) == 0) ? BooleanValue.FALSE : BooleanValue.TRUE;
+                return isZero() ? BooleanValue.FALSE : BooleanValue.TRUE;
             default:
                 throw new XPathException(ErrorCodes.FORG0001,
                         "cannot convert '"
                                 + Type.getTypeName(this.getType())
                                 + " ("
-                                + value
+                                + getStringValue()
                                 + ")' into "
                                 + Type.getTypeName(requiredType));
         }
@@ -292,17 +331,17 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public int getInt() {
-        return value.intValue();
+        return (int) longValue;
     }
 
     @Override
     public long getLong() {
-        return value.longValue();
+        return longValue;
     }
 
     @Override
     public double getDouble() {
-        return value.doubleValue();
+        return bigValue == null ? (double) longValue : bigValue.doubleValue();
     }
 
     @Override
@@ -335,10 +374,16 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public ComputableValue minus(final ComputableValue other) throws XPathException {
-        if (Type.subTypeOf(other.getType(), Type.INTEGER))
-        // return new IntegerValue(value - ((IntegerValue) other).value, type);
-        {
-            return new IntegerValue(value.subtract(((IntegerValue) other).value), type);
+        if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
+            final IntegerValue o = (IntegerValue) other;
+            if (bigValue == null && o.bigValue == null) {
+                try {
+                    return new IntegerValue(Math.subtractExact(longValue, o.longValue), type);
+                } catch (final ArithmeticException e) {
+                    // overflow, fall back to BigInteger
+                }
+            }
+            return new IntegerValue(toBigInteger().subtract(o.toBigInteger()), type);
         } else {
             return ((ComputableValue) convertTo(other.getType())).minus(other);
         }
@@ -346,10 +391,16 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public ComputableValue plus(final ComputableValue other) throws XPathException {
-        if (Type.subTypeOf(other.getType(), Type.INTEGER))
-        // return new IntegerValue(value + ((IntegerValue) other).value, type);
-        {
-            return new IntegerValue(value.add(((IntegerValue) other).value), type);
+        if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
+            final IntegerValue o = (IntegerValue) other;
+            if (bigValue == null && o.bigValue == null) {
+                try {
+                    return new IntegerValue(Math.addExact(longValue, o.longValue), type);
+                } catch (final ArithmeticException e) {
+                    // overflow, fall back to BigInteger
+                }
+            }
+            return new IntegerValue(toBigInteger().add(o.toBigInteger()), type);
         } else {
             return ((ComputableValue) convertTo(other.getType())).plus(other);
         }
@@ -358,7 +409,15 @@ public class IntegerValue extends NumericValue {
     @Override
     public ComputableValue mult(final ComputableValue other) throws XPathException {
         if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
-            return new IntegerValue(value.multiply(((IntegerValue) other).value), type);
+            final IntegerValue o = (IntegerValue) other;
+            if (bigValue == null && o.bigValue == null) {
+                try {
+                    return new IntegerValue(Math.multiplyExact(longValue, o.longValue), type);
+                } catch (final ArithmeticException e) {
+                    // overflow, fall back to BigInteger
+                }
+            }
+            return new IntegerValue(toBigInteger().multiply(o.toBigInteger()), type);
         } else if (Type.subTypeOf(other.getType(), Type.DURATION)) {
             return other.mult(this);
         } else {
@@ -378,8 +437,8 @@ public class IntegerValue extends NumericValue {
                 throw new XPathException(ErrorCodes.FOAR0001, "division by zero");
             }
             //http://www.w3.org/TR/xpath20/#mapping : numeric; but xs:decimal if both operands are xs:integer
-            final BigDecimal d = new BigDecimal(value);
-            final BigDecimal od = new BigDecimal(((IntegerValue) other).value);
+            final BigDecimal d = toBigDecimal();
+            final BigDecimal od = ((IntegerValue) other).toBigDecimal();
             final int scale = Math.max(18, Math.max(d.scale(), od.scale()));
             return new DecimalValue(d.divide(od, scale, RoundingMode.HALF_DOWN));
         } else {
@@ -395,6 +454,14 @@ public class IntegerValue extends NumericValue {
         {
             throw new XPathException(ErrorCodes.FOAR0001, "division by zero");
         }
+        if (other instanceof IntegerValue) {
+            final IntegerValue o = (IntegerValue) other;
+            // Long.MIN_VALUE idiv -1 overflows
+            if (bigValue == null && o.bigValue == null && (longValue != Long.MIN_VALUE || o.longValue != -1)) {
+                return new IntegerValue(longValue / o.longValue);
+            }
+            return new IntegerValue(toBigInteger().divide(o.toBigInteger()));
+        }
         final ComputableValue result = div(other);
         return new IntegerValue(((IntegerValue) result.convertTo(Type.INTEGER)).getLong());
     }
@@ -406,9 +473,11 @@ public class IntegerValue extends NumericValue {
                 throw new XPathException(ErrorCodes.FOAR0001, "division by zero");
             }
 
-            // long ov = ((IntegerValue) other).value.longValue();
-            final BigInteger ov = ((IntegerValue) other).value;
-            return new IntegerValue(value.remainder(ov), type);
+            final IntegerValue o = (IntegerValue) other;
+            if (bigValue == null && o.bigValue == null) {
+                return new IntegerValue(longValue % o.longValue, type);
+            }
+            return new IntegerValue(toBigInteger().remainder(o.toBigInteger()), type);
         } else {
             return ((NumericValue) convertTo(other.getType())).mod(other);
         }
@@ -416,18 +485,25 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public NumericValue negate() {
-        return new IntegerValue(value.negate());
+        if (bigValue == null && longValue != Long.MIN_VALUE) {
+            return new IntegerValue(-longValue);
+        }
+        return new IntegerValue(toBigInteger().negate());
     }
 
     @Override
     public NumericValue abs() throws XPathException {
-        return new IntegerValue(value.abs(), type);
+        if (bigValue == null && longValue != Long.MIN_VALUE) {
+            return new IntegerValue(Math.abs(longValue), type);
+        }
+        return new IntegerValue(toBigInteger().abs(), type);
     }
 
     @Override
     public AtomicValue max(final Collator collator, final AtomicValue other) throws XPathException {
         if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
-            return new IntegerValue(value.max(((IntegerValue) other).value));
+            final IntegerValue o = (IntegerValue) other;
+            return toInteger(compareValue(o) >= 0 ? this : o);
         } else {
             return convertTo(other.getType()).max(collator, other);
         }
@@ -436,12 +512,20 @@ public class IntegerValue extends NumericValue {
     @Override
     public AtomicValue min(final Collator collator, final AtomicValue other) throws XPathException {
         if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
-            return new IntegerValue(value.min(((IntegerValue) other).value));
+            final IntegerValue o = (IntegerValue) other;
+            return toInteger(compareValue(o) <= 0 ? this : o);
         } else {
             return convertTo(other.getType()).min(collator, other);
         }
     }
 
+    private static IntegerValue toInteger(final IntegerValue value) throws XPathException {
+        if (value.type == Type.INTEGER) {
+            return value;
+        }
+        return new IntegerValue(value.longValue, value.bigValue, Type.INTEGER, false);
+    }
+
     @Override
     public int conversionPreference(final Class<?> javaClass) {
         if (javaClass.isAssignableFrom(IntegerValue.class)) {
@@ -484,17 +568,16 @@ public class IntegerValue extends NumericValue {
         if (target.isAssignableFrom(IntegerValue.class)) {
             return (T) this;
         } else if (target == Long.class || target == long.class) {
-            // ?? jmv: return new Long(value);
-            return (T) Long.valueOf(value.longValue());
+            return (T) Long.valueOf(longValue);
         } else if (target == Integer.class || target == int.class) {
             final IntegerValue v = (IntegerValue) convertTo(Type.INT);
-            return (T) Integer.valueOf(v.value.intValue());
+            return (T) Integer.valueOf((int) v.longValue);
         } else if (target == Short.class || target == short.class) {
             final IntegerValue v = (IntegerValue) convertTo(Type.SHORT);
-            return (T) Short.valueOf(v.value.shortValue());
+            return (T) Short.valueOf((short) v.longValue);
         } else if (target == Byte.class || target == byte.class) {
             final IntegerValue v = (IntegerValue) convertTo(Type.BYTE);
-            return (T) Byte.valueOf(v.value.byteValue());
+            return (T) Byte.valueOf((byte) v.longValue);
         } else if (target == Double.class || target == double.class) {
             final DoubleValue v = (DoubleValue) convertTo(Type.DOUBLE);
             return (T) Double.valueOf(v.getValue());
@@ -504,11 +587,11 @@ public class IntegerValue extends NumericValue {
         } else if (target == Boolean.class || target == boolean.class) {
             return (T) new BooleanValue(effectiveBooleanValue());
         } else if (target == String.class) {
-            return (T) value.toString();
+            return (T) getStringValue();
         } else if (target == BigInteger.class) {
-            return (T) new BigInteger(value.toByteArray());
+            return (T) toBigInteger();
         } else if (target == Object.class) {
-            return (T) value; // Long(value);
+            return (T) toBigInteger();
         }
 
         throw new XPathException("cannot convert value of type " + Type.getTypeName(getType()) +
@@ -519,7 +602,7 @@ public class IntegerValue extends NumericValue {
     public int compareTo(final Object o) {
         final AtomicValue other = (AtomicValue) o;
         if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
-            return value.compareTo(((IntegerValue) other).value);
+            return compareValue((IntegerValue) other);
         } else {
             return getType() > other.getType() ? 1 : -1;
         }
@@ -527,6 +610,6 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return bigValue == null ? Long.hashCode(longValue) : bigValue.hashCode();
     }
 }
@@ -21,6 +21,8 @@
  */
 package org.exist.xquery.value;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.exist.dom.memtree.DocumentImpl;
 import org.exist.dom.memtree.NodeImpl;
 import org.exist.dom.persistent.AVLTreeNodeSet;
@@ -30,13 +32,20 @@ import org.exist.numbering.NodeId;
 import org.exist.xquery.Constants;
 import org.exist.xquery.OrderSpec;
 import org.exist.xquery.XPathException;
+import org.exist.util.io.TemporaryFileManager;
 import org.exist.xquery.util.ExpressionDumper;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A sequence that sorts its entries in the order specified by the order specs of
@@ -46,36 +55,83 @@ import java.util.stream.Stream;
  * all order expressions are evaluated once for each item in the sequence
  * <b>while</b> items are added.
  *
+ * If a limit is given, only the first items in sort order are needed: the
+ * sequence is sorted and truncated to the limit whenever it holds twice as
+ * many items.
+ *
+ * If a memory budget is given and the estimated memory used by the items
+ * exceeds it, the items are sorted and written to a temporary file as a run,
+ * and the sequence starts over empty. {@link #sort()} then sorts the remaining
+ * items, and the runs are merged lazily while the sequence is iterated. Only
+ * atomic values and persistent nodes can be written to a run, see
+ * {@link SpilledItemCodec}; if other items are added, all items are kept in
+ * memory. Random access to a sequence with runs reads all of the runs back
+ * into memory.
+ *
  * @author wolf
  */
 public class OrderedValueSequence extends AbstractSequence {
 
+    private static final Logger LOG = LogManager.getLogger(OrderedValueSequence.class);
+
+    // rough estimate of the heap memory used by an entry, besides its item and sort keys
+    private static final int ENTRY_OVERHEAD = 40;
+
     private final OrderSpec[] orderSpecs;
     private Entry[] items;
     private int count = 0;
+    private long position = 0;
     private int state = 0;
 
     // used to keep track of the type of added items.
     private int itemType = Type.ANY_TYPE;
 
+    private final long limit;
+    private final long memoryBudget;
+    private long memoryUsed = 0;
+    private boolean spillable;
+    @Nullable private SortedRuns runs = null;
+    private long spilledCount = 0;
+
+    // the iterators which are still reading from the sorted runs
+    private final List<MergingIterator> openIterators = new ArrayList<>();
+
     public OrderedValueSequence(final OrderSpec orderSpecs[], final int size) {
+        this(orderSpecs, size, -1, -1);
+    }
+
+    /**
+     * @param orderSpecs the order specs of the "order by" clause
+     * @param size the initial capacity
+     * @param memoryBudget the estimated number of bytes after which items are written
+     *     to disk, or a value less than 1 to keep all items in memory
+     * @param limit the number of items which are needed from the start of the sorted
+     *     sequence, or a value less than 1 if all items are needed
+     */
+    public OrderedValueSequence(final OrderSpec orderSpecs[], final int size, final long memoryBudget, final long limit) {
         this.orderSpecs = orderSpecs;
         this.items = new Entry[size == 0 ? 1 : size];
+        this.limit = limit > 0 && limit < Integer.MAX_VALUE / 2 ? limit : -1;
+        this.memoryBudget = memoryBudget;
+        this.spillable = memoryBudget > 0 && this.limit < 0;
     }
 
     @Override
     public SequenceIterator iterate() {
+        if (runs != null) {
+            return new MergingIterator();
+        }
         return new OrderedValueSequenceIterator();
     }
 
     @Override
     public SequenceIterator unorderedIterator() {
-        return new OrderedValueSequenceIterator();
+        return iterate();
     }
 
     @Override
     public long getItemCountLong() {
-        return (items == null) ? 0 : count;
+        return (items == null) ? 0 : spilledCount + count;
     }
 
     @Override
@@ -104,9 +160,25 @@ public class OrderedValueSequence extends AbstractSequence {
             System.arraycopy(items, 0, newItems, 0, count);
             items = newItems;
         }
-        items[count] = new Entry(item, count++);
+        final Entry entry = new Entry(item, position++);
+        items[count++] = entry;
         checkItemType(item.getType());
         setHasChanged();
+
+        if (limit > 0) {
+            if (count >= limit * 2) {
+                truncate();
+            }
+        } else if (spillable) {
+            if (!entry.canSpill()) {
+                spillable = false;
+            } else {
+                memoryUsed += entry.estimateMemory();
+                if (memoryUsed > memoryBudget) {
+                    spill();
+                }
+            }
+        }
     }
 
     @Override
@@ -127,11 +199,104 @@ public class OrderedValueSequence extends AbstractSequence {
 //		FastQSort.sort(items, 0, count - 1);
 
         Arrays.parallelSort(items, 0, count);
-        Arrays.stream(items, 0, count).parallel().forEach(Entry::clear);
+        if (limit > 0 && count > limit) {
+            Arrays.fill(items, (int) limit, count, null);
+            count = (int) limit;
+            hasOne = count == 1;
+        }
+        if (runs == null) {
+            Arrays.stream(items, 0, count).parallel().forEach(Entry::clear);
+        }
+    }
+
+    /**
+     * Sorts the items and drops all items beyond the limit.
+     */
+    private void truncate() {
+        Arrays.parallelSort(items, 0, count);
+        Arrays.fill(items, (int) limit, count, null);
+        count = (int) limit;
+        hasOne = count == 1;
+    }
+
+    /**
+     * Sorts the items and writes them to a new run.
+     */
+    private void spill() throws XPathException {
+        Arrays.parallelSort(items, 0, count);
+
+        if (runs == null) {
+            runs = new SortedRuns(this);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Writing a sorted run of {} items of about {} bytes to disk", count, memoryUsed);
+        }
+        try {
+            final Path file = TemporaryFileManager.getInstance().getTemporaryFile();
+            runs.files.add(file);
+            runs.counts.add((long) count);
+            try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                for (int i = 0; i < count; i++) {
+                    items[i].write(os, runs.codec);
+                }
+            }
+        } catch (final IOException e) {
+            throw new XPathException("Unable to write sorted run: " + e.getMessage(), e);
+        }
+
+        spilledCount += count;
+        items = new Entry[items.length];
+        count = 0;
+        memoryUsed = 0;
+    }
+
+    /**
+     * Checks if items have been written to disk.
+     *
+     * @return true if the items are merged from sorted runs on disk
+     */
+    public boolean isSpilled() {
+        return runs != null;
+    }
+
+    /**
+     * Closes the iterators which are still reading from the sorted runs,
+     * and deletes the sorted runs written to disk. The sequence
+     * cannot be used afterwards if it had been spilled.
+     */
+    public void close() {
+        for (final MergingIterator iterator : new ArrayList<>(openIterators)) {
+            iterator.close();
+        }
+        if (runs != null) {
+            runs.delete();
+        }
+    }
+
+    /**
+     * Merges all runs back into memory for random access.
+     */
+    private void materialize() {
+        if (runs == null) {
+            return;
+        }
+        final Entry[] merged = new Entry[(int) Math.min(Integer.MAX_VALUE - 8, spilledCount + count)];
+        int n = 0;
+        try (final MergingIterator i = new MergingIterator()) {
+            while (i.hasNext()) {
+                merged[n++] = i.nextEntry();
+            }
+        }
+        items = merged;
+        count = n;
+        spilledCount = 0;
+        runs.delete();
+        runs = null;
     }
 
     @Override
     public Item itemAt(final int pos) {
+        materialize();
         if (items != null && pos > -1 && pos < count) {
             return items[pos].item;
         } else {
@@ -156,6 +321,7 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public NodeSet toNodeSet() throws XPathException {
+        materialize();
         //return early
         if (isEmpty()) {
             return NodeSet.EMPTY_SET;
@@ -224,6 +390,7 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public boolean isPersistentSet() {
+        materialize();
         if (count == 0) {
             return true;
         }
@@ -241,6 +408,7 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public MemoryNodeSet toMemNodeSet() throws XPathException {
+        materialize();
         if (count == 0) {
             return MemoryNodeSet.EMPTY;
         }
@@ -259,6 +427,7 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public String toString() {
+        materialize();
         final StringBuilder builder = new StringBuilder();
         for (int i = 0; i < count; i++) {
             builder.append(items[i].toString());
@@ -293,14 +462,14 @@ public class OrderedValueSequence extends AbstractSequence {
     private class Entry implements Comparable<Entry> {
         Item item;
         AtomicValue values[];
-        private final int pos;
+        private final long pos;
 
         /**
          * @param item     the item in the sequence
          * @param position the original position of the item in the result sequence
          * @throws XPathException
          */
-        public Entry(final Item item, final int position) throws XPathException {
+        public Entry(final Item item, final long position) throws XPathException {
             this.item = item;
             this.pos = position;
             values = new AtomicValue[orderSpecs.length];
@@ -317,6 +486,46 @@ public class OrderedValueSequence extends AbstractSequence {
             }
         }
 
+        /**
+         * Reads an entry written by {@link #write(DataOutputStream, SpilledItemCodec)}.
+         */
+        Entry(final DataInputStream is, final SpilledItemCodec codec) throws IOException, XPathException {
+            this.pos = is.readLong();
+            values = new AtomicValue[orderSpecs.length];
+            for (int i = 0; i < orderSpecs.length; i++) {
+                values[i] = (AtomicValue) codec.readItem(is);
+            }
+            this.item = codec.readItem(is);
+        }
+
+        void write(final DataOutputStream os, final SpilledItemCodec codec) throws IOException, XPathException {
+            os.writeLong(pos);
+            for (final AtomicValue value : values) {
+                codec.writeItem(os, value);
+            }
+            codec.writeItem(os, item);
+        }
+
+        boolean canSpill() {
+            if (!SpilledItemCodec.canSpill(item)) {
+                return false;
+            }
+            for (final AtomicValue value : values) {
+                if (!SpilledItemCodec.canSpill(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long estimateMemory() throws XPathException {
+            long size = ENTRY_OVERHEAD + SpilledItemCodec.estimateMemory(item);
+            for (final AtomicValue value : values) {
+                size += SpilledItemCodec.estimateMemory(value);
+            }
+            return size;
+        }
+
         @Override
         public int compareTo(final Entry other) {
             int cmp = 0;
@@ -425,4 +634,182 @@ public class OrderedValueSequence extends AbstractSequence {
             return skip;
         }
     }
+
+    /**
+     * Returns the items in sort order by merging the sorted runs on disk
+     * with the sorted items held in memory.
+     *
+     * The stream of each run is closed as soon as the run has been read,
+     * and all streams are closed once the last item has been returned, or
+     * the sequence is closed.
+     */
+    private class MergingIterator implements SequenceIterator, AutoCloseable {
+        private final List<DataInputStream> inputs = new ArrayList<>();
+        private final PriorityQueue<RunCursor> queue = new PriorityQueue<>();
+        private final long total = spilledCount + count;
+        private long returned = 0;
+
+        MergingIterator() {
+            try {
+                for (int i = 0; i < runs.files.size(); i++) {
+                    final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.files.get(i))));
+                    inputs.add(is);
+                    final RunCursor cursor = new RunCursor(is, runs.counts.get(i), null);
+                    if (cursor.advance()) {
+                        queue.add(cursor);
+                    }
+                }
+                final RunCursor inMemory = new RunCursor(null, 0, new OrderedValueSequenceIterator());
+                if (inMemory.advance()) {
+                    queue.add(inMemory);
+                }
+                if (queue.isEmpty()) {
+                    close();
+                } else {
+                    openIterators.add(this);
+                }
+            } catch (final IOException e) {
+                close();
+                throw new UncheckedIOException("Unable to read sorted run: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Item nextItem() {
+            final Entry entry = nextEntry();
+            return entry == null ? null : entry.item;
+        }
+
+        Entry nextEntry() {
+            final RunCursor cursor = queue.poll();
+            if (cursor == null) {
+                return null;
+            }
+            final Entry entry = cursor.current;
+            returned++;
+            if (cursor.advance()) {
+                queue.add(cursor);
+            } else if (queue.isEmpty()) {
+                close();
+            }
+            return entry;
+        }
+
+        @Override
+        public long skippable() {
+            return total - returned;
+        }
+
+        @Override
+        public long skip(final long n) {
+            long skipped = 0;
+            while (skipped < n && nextEntry() != null) {
+                skipped++;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            for (final DataInputStream is : inputs) {
+                closeRun(is);
+            }
+            inputs.clear();
+            queue.clear();
+            openIterators.remove(this);
+        }
+    }
+
+    private static void closeRun(final DataInputStream is) {
+        try {
+            is.close();
+        } catch (final IOException e) {
+            LOG.warn("Unable to close sorted run: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * The current entry of a sorted run, either read from disk or from memory.
+     */
+    private class RunCursor implements Comparable<RunCursor> {
+        @Nullable private final DataInputStream is;
+        @Nullable private final OrderedValueSequenceIterator inMemory;
+        private long remaining;
+        private Entry current;
+
+        RunCursor(@Nullable final DataInputStream is, final long count, @Nullable final OrderedValueSequenceIterator inMemory) {
+            this.is = is;
+            this.remaining = count;
+            this.inMemory = inMemory;
+        }
+
+        boolean advance() {
+            if (inMemory != null) {
+                if (inMemory.pos < count) {
+                    current = items[inMemory.pos++];
+                    return true;
+                }
+                return false;
+            }
+            try {
+                if (remaining == 0) {
+                    // release the stream of the run as soon as it has been read
+                    closeRun(is);
+                    return false;
+                }
+                current = new Entry(is, runs.codec);
+                remaining--;
+                return true;
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Unable to read sorted run: " + e.getMessage(), e);
+            } catch (final XPathException e) {
+                throw new IllegalStateException("Unable to read sorted run: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public int compareTo(final RunCursor other) {
+            return current.compareTo(other.current);
+        }
+    }
+
+    /**
+     * The files of the sorted runs of a sequence. They are deleted by {@link #close()},
+     * when the sequence is materialized, or else once the sequence has been garbage
+     * collected, e.g. if it was returned as the result of the query.
+     */
+    private static final class SortedRuns extends PhantomReference<OrderedValueSequence> {
+        private static final ReferenceQueue<OrderedValueSequence> COLLECTED = new ReferenceQueue<>();
+        private static final Set<SortedRuns> LIVE = ConcurrentHashMap.newKeySet();
+
+        final List<Path> files = new ArrayList<>();
+        final List<Long> counts = new ArrayList<>();
+        final SpilledItemCodec codec = new SpilledItemCodec();
+
+        SortedRuns(final OrderedValueSequence sequence) {
+            super(sequence, COLLECTED);
+            // delete the runs of sequences which are no longer used
+            Reference<? extends OrderedValueSequence> collected;
+            while ((collected = COLLECTED.poll()) != null) {
+                ((SortedRuns) collected).delete();
+            }
+            LIVE.add(this);
+        }
+
+        void delete() {
+            LIVE.remove(this);
+            final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+            for (final Path file : files) {
+                temporaryFileManager.returnTemporaryFile(file);
+            }
+            files.clear();
+            counts.clear();
+            codec.clear();
+        }
+    }
 }
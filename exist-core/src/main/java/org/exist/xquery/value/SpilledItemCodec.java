@@ -0,0 +1,251 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.numbering.NodeIdFactory;
+import org.exist.xquery.XPathException;
+
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes items to, and reads them back from, the temporary files used
+ * by operators which spill intermediate results to disk.
+ *
+ * Only atomic values and persistent nodes are supported, see {@link #canSpill(Item)}.
+ * Atomic values are written as their type and string value, persistent nodes as
+ * their document id and node id. The documents of the nodes which have been written
+ * are remembered, so an instance can only read back the nodes it has written itself.
+ */
+public final class SpilledItemCodec {
+
+    private static final byte EMPTY_VALUE = 0;
+    private static final byte ATOMIC_VALUE = 1;
+    private static final byte PERSISTENT_NODE = 2;
+
+    // rough estimates of the heap memory used by an item
+    private static final int ATOMIC_VALUE_SIZE = 48;
+    private static final int NODE_SIZE = 80;
+
+    private final Map<Integer, DocumentImpl> documents = new HashMap<>();
+    @Nullable private NodeIdFactory nodeIdFactory = null;
+
+    /**
+     * Determines if an item can be written by this codec.
+     *
+     * @param item the item
+     *
+     * @return true if the item is an atomic value of a type which
+     *     can be restored from its string value, or a persistent node
+     */
+    public static boolean canSpill(final Item item) {
+        if (item instanceof NodeProxy || item == AtomicValue.EMPTY_VALUE) {
+            return true;
+        }
+        if (!(item instanceof AtomicValue)) {
+            return false;
+        }
+        final int type = item.getType();
+        return Type.subTypeOf(type, Type.ATOMIC) && !Type.subTypeOf(type, Type.QNAME)
+                && !Type.subTypeOf(type, Type.NOTATION) && type != Type.BASE64_BINARY && type != Type.HEX_BINARY;
+    }
+
+    /**
+     * Determines if all items of a sequence can be written by this codec.
+     *
+     * @param sequence the sequence
+     *
+     * @return true if {@link #canSpill(Item)} is true for each item of the sequence
+     *
+     * @throws XPathException if the sequence cannot be iterated
+     */
+    public static boolean canSpillSequence(final Sequence sequence) throws XPathException {
+        for (final SequenceIterator i = sequence.iterate(); i.hasNext(); ) {
+            if (!canSpill(i.nextItem())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the heap memory used by an item.
+     *
+     * @param item the item
+     *
+     * @return the estimated size in bytes
+     *
+     * @throws XPathException if the string value of the item cannot be determined
+     */
+    public static long estimateMemory(final Item item) throws XPathException {
+        if (item instanceof StringValue) {
+            return ATOMIC_VALUE_SIZE + 2L * item.getStringValue().length();
+        } else if (item instanceof AtomicValue) {
+            return ATOMIC_VALUE_SIZE;
+        } else {
+            return NODE_SIZE;
+        }
+    }
+
+    /**
+     * Estimates the heap memory used by the items of a sequence.
+     *
+     * @param sequence the sequence
+     *
+     * @return the estimated size in bytes
+     *
+     * @throws XPathException if the sequence cannot be iterated
+     */
+    public static long estimateSequenceMemory(final Sequence sequence) throws XPathException {
+        long size = 0;
+        for (final SequenceIterator i = sequence.iterate(); i.hasNext(); ) {
+            size += estimateMemory(i.nextItem());
+        }
+        return size;
+    }
+
+    /**
+     * Writes an item.
+     *
+     * @param os the output to write to
+     * @param item the item, for which {@link #canSpill(Item)} must be true
+     *
+     * @throws IOException if the item cannot be written
+     * @throws XPathException if the string value of the item cannot be determined
+     */
+    public void writeItem(final DataOutput os, final Item item) throws IOException, XPathException {
+        if (item instanceof NodeProxy) {
+            final NodeProxy node = (NodeProxy) item;
+            final DocumentImpl doc = node.getOwnerDocument();
+            documents.putIfAbsent(doc.getDocId(), doc);
+            if (nodeIdFactory == null) {
+                nodeIdFactory = doc.getBrokerPool().getNodeFactory();
+            }
+            final NodeId nodeId = node.getNodeId();
+            final byte[] data = new byte[nodeId.size()];
+            nodeId.serialize(data, 0);
+
+            os.writeByte(PERSISTENT_NODE);
+            os.writeInt(doc.getDocId());
+            os.writeShort(node.getNodeType());
+            os.writeLong(node.getInternalAddress());
+            os.writeInt(nodeId.units());
+            os.writeInt(data.length);
+            os.write(data);
+        } else if (item == AtomicValue.EMPTY_VALUE) {
+            os.writeByte(EMPTY_VALUE);
+        } else {
+            final byte[] data = item.getStringValue().getBytes(StandardCharsets.UTF_8);
+            os.writeByte(ATOMIC_VALUE);
+            os.writeInt(item.getType());
+            os.writeInt(data.length);
+            os.write(data);
+        }
+    }
+
+    /**
+     * Reads an item written by {@link #writeItem(DataOutput, Item)}.
+     *
+     * @param is the input to read from
+     *
+     * @return the item
+     *
+     * @throws IOException if the item cannot be read
+     * @throws XPathException if an atomic value cannot be restored from its string value
+     */
+    public Item readItem(final DataInput is) throws IOException, XPathException {
+        final byte kind = is.readByte();
+        if (kind == PERSISTENT_NODE) {
+            final DocumentImpl doc = documents.get(is.readInt());
+            final short nodeType = is.readShort();
+            final long address = is.readLong();
+            final int units = is.readInt();
+            final byte[] data = new byte[is.readInt()];
+            is.readFully(data);
+            return new NodeProxy(doc, nodeIdFactory.createFromData(units, data, 0), nodeType, address);
+        } else if (kind == EMPTY_VALUE) {
+            return AtomicValue.EMPTY_VALUE;
+        }
+
+        final int type = is.readInt();
+        final byte[] data = new byte[is.readInt()];
+        is.readFully(data);
+        final String value = new String(data, StandardCharsets.UTF_8);
+        if (type == Type.STRING) {
+            return new StringValue(value);
+        } else if (type == Type.UNTYPED_ATOMIC) {
+            return new UntypedAtomicValue(value);
+        } else {
+            return new StringValue(value).convertTo(type);
+        }
+    }
+
+    /**
+     * Writes the items of a sequence.
+     *
+     * @param os the output to write to
+     * @param sequence the sequence, for which {@link #canSpillSequence(Sequence)} must be true
+     *
+     * @throws IOException if the sequence cannot be written
+     * @throws XPathException if the string value of an item cannot be determined
+     */
+    public void writeSequence(final DataOutput os, final Sequence sequence) throws IOException, XPathException {
+        os.writeInt(sequence.getItemCount());
+        for (final SequenceIterator i = sequence.iterate(); i.hasNext(); ) {
+            writeItem(os, i.nextItem());
+        }
+    }
+
+    /**
+     * Reads a sequence written by {@link #writeSequence(DataOutput, Sequence)}.
+     *
+     * @param is the input to read from
+     *
+     * @return the sequence
+     *
+     * @throws IOException if the sequence cannot be read
+     * @throws XPathException if an atomic value cannot be restored from its string value
+     */
+    public Sequence readSequence(final DataInput is) throws IOException, XPathException {
+        final int count = is.readInt();
+        final ValueSequence sequence = new ValueSequence(count);
+        for (int i = 0; i < count; i++) {
+            sequence.add(readItem(is));
+        }
+        return sequence;
+    }
+
+    /**
+     * Forgets the documents of the nodes which have been written.
+     */
+    public void clear() {
+        documents.clear();
+    }
+}
@@ -71,7 +71,7 @@ public class Conditional extends Modification {
 		LOG.debug("Processing xupdate:if ...");
 		final XQuery xquery = broker.getBrokerPool().getXQueryService();
 		final XQueryPool pool = broker.getBrokerPool().getXQueryPool();
-		final Source source = new StringSource(selectStmt);
+		final Source source = new StringSource(selectStmt, null, null, namespaces);
 		CompiledXQuery compiled = pool.borrowCompiledXQuery(broker, source);
 		XQueryContext context;
 		if(compiled == null) {
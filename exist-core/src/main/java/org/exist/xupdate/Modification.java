@@ -152,7 +152,7 @@ public abstract class Modification {
 		throws PermissionDeniedException, EXistException, XPathException {
 		final XQuery xquery = broker.getBrokerPool().getXQueryService();
 		final XQueryPool pool = broker.getBrokerPool().getXQueryPool();
-		final Source source = new StringSource(selectStmt);
+		final Source source = new StringSource(selectStmt, null, null, namespaces);
 		CompiledXQuery compiled = pool.borrowCompiledXQuery(broker, source);
 		XQueryContext context;
 		if(compiled == null) {
@@ -0,0 +1,264 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.dom.persistent;
+
+import org.exist.numbering.DLN;
+import org.exist.numbering.NodeId;
+import org.exist.xquery.Expression;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class PackedNodeSetTest {
+
+    @Test
+    public void addInDocumentOrder() {
+        final DocumentImpl doc = mockDocument(1);
+        final List<String> ids = tree(3, 5);
+        final PackedNodeSet set = packed(doc, ids);
+
+        assertEquals(ids.size(), set.getLength());
+        assertEquals(ids, toIds(set));
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), set.get(i).getNodeId().toString());
+            assertTrue(set.contains(new NodeProxy(doc, new DLN(ids.get(i)))));
+        }
+        assertFalse(set.contains(new NodeProxy(doc, new DLN("1.6"))));
+        assertFalse(set.contains(new NodeProxy(doc, new DLN("1.2.3.6"))));
+        assertFalse(set.contains(new NodeProxy(mockDocument(2), new DLN("1.2"))));
+    }
+
+    @Test
+    public void addUnordered() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final DocumentImpl doc2 = mockDocument(2);
+        final PackedNodeSet set = new PackedNodeSet();
+        set.add(new NodeProxy(doc2, new DLN("1.1"), Node.ELEMENT_NODE));
+        set.add(new NodeProxy(doc1, new DLN("1.3"), Node.ELEMENT_NODE));
+        set.add(new NodeProxy(doc1, new DLN("1.2.1"), Node.ELEMENT_NODE));
+        set.add(new NodeProxy(doc1, new DLN("1.3"), Node.ELEMENT_NODE));
+        set.add(new NodeProxy(doc2, new DLN("1"), Node.ELEMENT_NODE));
+
+        assertEquals(4, set.getLength());
+        final List<NodeProxy> nodes = new ArrayList<>();
+        set.forEach(nodes::add);
+        assertSame(doc1, nodes.get(0).getOwnerDocument());
+        assertEquals("1.2.1", nodes.get(0).getNodeId().toString());
+        assertEquals("1.3", nodes.get(1).getNodeId().toString());
+        assertSame(doc2, nodes.get(2).getOwnerDocument());
+        assertEquals("1", nodes.get(2).getNodeId().toString());
+        assertEquals("1.1", nodes.get(3).getNodeId().toString());
+    }
+
+    @Test
+    public void intersectionAndUnion() {
+        final DocumentImpl doc = mockDocument(1);
+        final List<String> ids = tree(3, 4);
+        final List<String> even = new ArrayList<>();
+        final List<String> thirds = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 2 == 0) {
+                even.add(ids.get(i));
+            }
+            if (i % 3 == 0) {
+                thirds.add(ids.get(i));
+            }
+        }
+        final PackedNodeSet left = packed(doc, even);
+        final PackedNodeSet right = packed(doc, thirds);
+
+        final List<String> intersection = new ArrayList<>();
+        final List<String> union = new ArrayList<>();
+        final List<String> except = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 6 == 0) {
+                intersection.add(ids.get(i));
+            }
+            if (i % 2 == 0 || i % 3 == 0) {
+                union.add(ids.get(i));
+            }
+            if (i % 2 == 0 && i % 3 != 0) {
+                except.add(ids.get(i));
+            }
+        }
+        assertEquals(intersection, toIds(left.intersection(right)));
+        assertEquals(union, toIds(left.union(right)));
+        assertEquals(except, toIds(left.except(right)));
+    }
+
+    @Test
+    public void selectParentChild() {
+        final DocumentImpl doc = mockDocument(1);
+        final List<String> ids = tree(3, 4);
+        final List<String> parents = new ArrayList<>();
+        final List<String> children = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 3 == 0) {
+                parents.add(ids.get(i));
+            }
+            if (i % 2 == 1) {
+                children.add(ids.get(i));
+            }
+        }
+        final PackedNodeSet al = packed(doc, parents);
+        final PackedNodeSet dl = packed(doc, children);
+
+        assertEquals(select(children, parents, false),
+                toIds(dl.selectParentChild(al, NodeSet.DESCENDANT, Expression.NO_CONTEXT_ID)));
+        assertEquals(select(parents, children, true),
+                toIds(dl.selectParentChild(al, NodeSet.ANCESTOR, Expression.NO_CONTEXT_ID)));
+    }
+
+    @Test
+    public void selectAncestorDescendant() {
+        final DocumentImpl doc = mockDocument(1);
+        final List<String> ids = tree(4, 3);
+        final List<String> ancestors = new ArrayList<>();
+        final List<String> descendants = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 5 == 0) {
+                ancestors.add(ids.get(i));
+            }
+            if (i % 2 == 0) {
+                descendants.add(ids.get(i));
+            }
+        }
+        final PackedNodeSet al = packed(doc, ancestors);
+        final PackedNodeSet dl = packed(doc, descendants);
+
+        for (final boolean includeSelf : new boolean[] { false, true }) {
+            assertEquals(selectDescendants(descendants, ancestors, includeSelf),
+                    toIds(dl.selectAncestorDescendant(al, NodeSet.DESCENDANT, includeSelf, Expression.NO_CONTEXT_ID, false)));
+            assertEquals(selectAncestors(ancestors, descendants, includeSelf),
+                    toIds(dl.selectAncestorDescendant(al, NodeSet.ANCESTOR, includeSelf, Expression.NO_CONTEXT_ID, false)));
+        }
+    }
+
+    @Test
+    public void selfAsContext() {
+        final DocumentImpl doc = mockDocument(1);
+        final PackedNodeSet set = packed(doc, tree(2, 2));
+        set.setSelfAsContext(1);
+        for (final NodeProxy node : set) {
+            assertEquals(node, node.getContext().getNode());
+        }
+        set.clearContext(1);
+        for (final NodeProxy node : set) {
+            assertNull(node.getContext());
+        }
+    }
+
+    /**
+     * Returns the ids of a complete tree with the given depth and fan-out, in document order.
+     */
+    private static List<String> tree(final int depth, final int fanOut) {
+        final List<String> ids = new ArrayList<>();
+        addSubtree("1", depth, fanOut, ids);
+        return ids;
+    }
+
+    private static void addSubtree(final String id, final int depth, final int fanOut, final List<String> ids) {
+        ids.add(id);
+        if (depth > 0) {
+            for (int i = 1; i <= fanOut; i++) {
+                addSubtree(id + '.' + i, depth - 1, fanOut, ids);
+            }
+        }
+    }
+
+    private static List<String> select(final List<String> candidates, final List<String> others,
+            final boolean ancestors) {
+        final List<String> selected = new ArrayList<>();
+        for (final String candidate : candidates) {
+            final NodeId candidateId = new DLN(candidate);
+            for (final String other : others) {
+                final NodeId otherId = new DLN(other);
+                if (ancestors ? otherId.isChildOf(candidateId) : candidateId.isChildOf(otherId)) {
+                    selected.add(candidate);
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static List<String> selectDescendants(final List<String> descendants, final List<String> ancestors,
+            final boolean includeSelf) {
+        final List<String> selected = new ArrayList<>();
+        for (final String descendant : descendants) {
+            final NodeId descendantId = new DLN(descendant);
+            for (final String ancestor : ancestors) {
+                final NodeId ancestorId = new DLN(ancestor);
+                if (includeSelf ? descendantId.isDescendantOrSelfOf(ancestorId) : descendantId.isDescendantOf(ancestorId)) {
+                    selected.add(descendant);
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static List<String> selectAncestors(final List<String> ancestors, final List<String> descendants,
+            final boolean includeSelf) {
+        final List<String> selected = new ArrayList<>();
+        for (final String ancestor : ancestors) {
+            final NodeId ancestorId = new DLN(ancestor);
+            for (final String descendant : descendants) {
+                final NodeId descendantId = new DLN(descendant);
+                if (includeSelf ? descendantId.isDescendantOrSelfOf(ancestorId) : descendantId.isDescendantOf(ancestorId)) {
+                    selected.add(ancestor);
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static PackedNodeSet packed(final DocumentImpl doc, final List<String> ids) {
+        final PackedNodeSet set = new PackedNodeSet();
+        for (final String id : ids) {
+            set.add(new NodeProxy(doc, new DLN(id), Node.ELEMENT_NODE));
+        }
+        return set;
+    }
+
+    private static List<String> toIds(final NodeSet set) {
+        final List<String> ids = new ArrayList<>();
+        for (final NodeProxy node : set) {
+            ids.add(node.getNodeId().toString());
+        }
+        return ids;
+    }
+
+    private static DocumentImpl mockDocument(final int docId) {
+        final DocumentImpl doc = createMock(DocumentImpl.class);
+        expect(doc.getDocId()).andReturn(docId).anyTimes();
+        replay(doc);
+        return doc;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http.servlets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class VirtualThreadDispatcherTest {
+
+    private ExecutorService executor;
+    private VirtualThreadDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        dispatcher = new VirtualThreadDispatcher("test", executor);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void requestHandledOnExecutor() throws Exception {
+        final HttpServletRequest request = mockRequest(DispatcherType.REQUEST, true);
+        final HttpServletResponse response = createMock(HttpServletResponse.class);
+        final AsyncContext asyncContext = createMock(AsyncContext.class);
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        expect(request.startAsync(request, response)).andReturn(asyncContext);
+        asyncContext.setTimeout(0);
+        expect(asyncContext.getRequest()).andReturn(request);
+        expect(asyncContext.getResponse()).andReturn(response);
+        asyncContext.complete();
+        expectLastCall().andAnswer(() -> {
+            completed.countDown();
+            return null;
+        });
+        replay(request, response, asyncContext);
+
+        final AtomicReference<Thread> handledBy = new AtomicReference<>();
+        dispatcher.dispatch(request, response, (req, resp) -> handledBy.set(Thread.currentThread()));
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertNotNull(handledBy.get());
+        assertNotSame(Thread.currentThread(), handledBy.get());
+        verify(request, response, asyncContext);
+    }
+
+    @Test
+    public void forwardHandledInline() throws Exception {
+        final HttpServletRequest request = mockRequest(DispatcherType.FORWARD, true);
+        final HttpServletResponse response = createMock(HttpServletResponse.class);
+        replay(request, response);
+
+        final AtomicReference<Thread> handledBy = new AtomicReference<>();
+        dispatcher.dispatch(request, response, (req, resp) -> handledBy.set(Thread.currentThread()));
+
+        assertSame(Thread.currentThread(), handledBy.get());
+        verify(request, response);
+    }
+
+    @Test
+    public void asyncNotSupportedHandledInline() throws Exception {
+        final HttpServletRequest request = mockRequest(DispatcherType.REQUEST, false);
+        final HttpServletResponse response = createMock(HttpServletResponse.class);
+        replay(request, response);
+
+        final AtomicReference<Thread> handledBy = new AtomicReference<>();
+        dispatcher.dispatch(request, response, (req, resp) -> handledBy.set(Thread.currentThread()));
+
+        assertSame(Thread.currentThread(), handledBy.get());
+        verify(request, response);
+    }
+
+    @Test
+    public void errorSendsInternalServerError() throws Exception {
+        final HttpServletRequest request = mockRequest(DispatcherType.REQUEST, true);
+        final HttpServletResponse response = createMock(HttpServletResponse.class);
+        final AsyncContext asyncContext = createMock(AsyncContext.class);
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        expect(request.startAsync(request, response)).andReturn(asyncContext);
+        asyncContext.setTimeout(0);
+        expect(asyncContext.getRequest()).andReturn(request);
+        expect(asyncContext.getResponse()).andReturn(response);
+        expect(response.isCommitted()).andReturn(false);
+        response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "failed");
+        asyncContext.complete();
+        expectLastCall().andAnswer(() -> {
+            completed.countDown();
+            return null;
+        });
+        replay(request, response, asyncContext);
+
+        dispatcher.dispatch(request, response, (req, resp) -> {
+            throw new IOException("failed");
+        });
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        verify(request, response, asyncContext);
+    }
+
+    private static HttpServletRequest mockRequest(final DispatcherType dispatcherType, final boolean asyncSupported) {
+        final HttpServletRequest request = createMock(HttpServletRequest.class);
+        expect(request.getDispatcherType()).andReturn(dispatcherType).anyTimes();
+        expect(request.isAsyncSupported()).andReturn(asyncSupported).anyTimes();
+        expect(request.isAsyncStarted()).andReturn(false).anyTimes();
+        return request;
+    }
+}
@@ -273,4 +273,36 @@ public class DLNTest {
         dln = (DLN) left.insertNode(right);
         assertEquals("1.1/0/34", dln.toString());
     }
+
+    @Test
+    public void parentChecks() {
+        final String[] ids = { "1", "1.1", "1.2", "1.2.1", "1.2.3", "1.2/1", "1.2/1.1", "1.10", "1.10.7", "1.80.2",
+                "1.600.1/5", "1.600.2", "1.1.1.1.1.1" };
+        for (final String id1 : ids) {
+            final DLN dln1 = new DLN(id1);
+            for (final String id2 : ids) {
+                final DLN dln2 = new DLN(id2);
+                final int expected = dln1.getParentId().compareTo(dln2.getParentId());
+                assertEquals(id1 + " <> " + id2, Integer.signum(expected), Integer.signum(dln1.compareParentIds(dln2)));
+                assertEquals(id1 + " ~ " + id2, dln2.isChildOf(dln1.getParentId()), dln1.isSiblingOf(dln2));
+            }
+        }
+    }
+
+    @Test
+    public void cachedTreeLevel() {
+        final DLN dln = new DLN("1.2.3");
+        assertEquals(3, dln.getTreeLevel());
+        dln.addLevelId(4, false);
+        assertEquals(4, dln.getTreeLevel());
+        dln.addLevelId(1, true);
+        assertEquals(4, dln.getTreeLevel());
+        assertEquals(4, new DLN(dln).getTreeLevel());
+
+        final DLN ancestor = new DLN("1.2.3.4");
+        ancestor.getTreeLevel();
+        assertTrue(dln.isDescendantOf(new DLN("1.2.3")));
+        assertFalse(dln.isDescendantOf(ancestor));
+        assertFalse(ancestor.isDescendantOf(dln));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,205 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.security.Subject;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that brokers are handed out in the order in which they
+ * were requested, that waiting for a broker can time out, and
+ * that brokers can be reserved without waiting.
+ */
+public class BrokerPoolAcquireTest {
+
+    private static final int MAX_BROKERS = 2;
+    private static final long ACQUIRE_TIMEOUT = 2000;
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(config(), true, true);
+
+    private static Properties config() {
+        // NOTE: the values must be typed, as they are placed directly into the configuration
+        final Properties properties = new Properties();
+        properties.put(BrokerPoolConstants.PROPERTY_MAX_CONNECTIONS, MAX_BROKERS);
+        properties.put(BrokerPoolConstants.PROPERTY_ACQUIRE_TIMEOUT, ACQUIRE_TIMEOUT);
+        return properties;
+    }
+
+    @Test
+    public void acquireTimesOutWhenSaturated() throws InterruptedException, ExecutionException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        assertEquals(ACQUIRE_TIMEOUT, pool.getAcquireTimeout());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(MAX_BROKERS);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        try {
+            final List<Future<Void>> holders = holdAllBrokers(pool, executor, releaseLatch);
+
+            final long start = System.nanoTime();
+            try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getGuestSubject()))) {
+                fail("Expected no broker to be available, but got: " + broker.getId());
+            } catch (final EXistException e) {
+                // expected
+            }
+            final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("Expected to wait for at least the acquire timeout, but waited: " + waited + " ms", waited >= ACQUIRE_TIMEOUT - 50);
+
+            releaseLatch.countDown();
+            for (final Future<Void> holder : holders) {
+                holder.get();
+            }
+
+            final BrokerWaitStatistics statistics = pool.getBrokerWaitStatistics();
+            assertEquals(1, statistics.getTimeouts());
+            assertEquals(0, statistics.getWaiting());
+
+            final BrokerWaitStatistics.CallerWaitStatistics guest = findCaller(statistics, pool.getSecurityManager().getGuestSubject().getName());
+            assertNotNull(guest);
+            assertEquals(1, guest.getTimeouts());
+        } finally {
+            releaseLatch.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waitersAreServedInArrivalOrder() throws InterruptedException, ExecutionException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Subject guest = pool.getSecurityManager().getGuestSubject();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(MAX_BROKERS + 2);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        try {
+            final List<Future<Void>> holders = holdAllBrokers(pool, executor, releaseLatch);
+
+            final BlockingQueue<String> order = new LinkedBlockingQueue<>();
+            final List<Future<Void>> waiters = new ArrayList<>();
+            for (final String name : new String[] {"first", "second"}) {
+                final int waiting = pool.countWaitingForBroker();
+                waiters.add(executor.submit(() -> {
+                    try (final DBBroker broker = pool.get(Optional.of(guest))) {
+                        order.add(name);
+                    }
+                    return null;
+                }));
+                awaitWaiting(pool, waiting + 1);
+            }
+
+            // releasing a single broker must serve the waiters one after the other, oldest first
+            releaseLatch.countDown();
+            for (final Future<Void> waiter : waiters) {
+                waiter.get();
+            }
+            for (final Future<Void> holder : holders) {
+                holder.get();
+            }
+
+            assertEquals("first", order.poll());
+            assertEquals("second", order.poll());
+
+            final BrokerWaitStatistics statistics = pool.getBrokerWaitStatistics();
+            assertEquals(0, statistics.getTimeouts());
+            assertTrue(statistics.getContended() >= 2);
+            assertTrue(statistics.getWaitMicros().getCount() >= 2);
+        } finally {
+            releaseLatch.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void reservationDoesNotWait() throws InterruptedException, ExecutionException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Subject guest = pool.getSecurityManager().getGuestSubject();
+
+        assertFalse(pool.tryReserve(MAX_BROKERS + 1));
+        assertTrue(pool.tryReserve(MAX_BROKERS));
+
+        // all of the brokers are reserved, so a further reservation must fail immediately
+        final long start = System.nanoTime();
+        assertFalse(pool.tryReserve(1));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < ACQUIRE_TIMEOUT);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+                try (final DBBroker broker = pool.getReserved(Optional.of(guest))) {
+                    assertEquals(1, pool.countActiveBrokers());
+                }
+                return null;
+            }).get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the broker taken from the reservation has been returned, the other is not needed
+        pool.cancelReservation(MAX_BROKERS - 1);
+        assertTrue(pool.tryReserve(MAX_BROKERS));
+        pool.cancelReservation(MAX_BROKERS);
+    }
+
+    private static List<Future<Void>> holdAllBrokers(final BrokerPool pool, final ExecutorService executor,
+            final CountDownLatch releaseLatch) throws InterruptedException {
+        final CountDownLatch acquiredLatch = new CountDownLatch(MAX_BROKERS);
+        final List<Future<Void>> holders = new ArrayList<>();
+        for (int i = 0; i < MAX_BROKERS; i++) {
+            holders.add(executor.submit(() -> {
+                try (final DBBroker broker = pool.getBroker()) {
+                    acquiredLatch.countDown();
+                    releaseLatch.await();
+                }
+                return null;
+            }));
+        }
+        assertTrue("Timed out taking all brokers", acquiredLatch.await(10, TimeUnit.SECONDS));
+        return holders;
+    }
+
+    private static void awaitWaiting(final BrokerPool pool, final int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (pool.countWaitingForBroker() < expected) {
+            assertTrue("Timed out waiting for " + expected + " threads to wait for a broker", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static BrokerWaitStatistics.CallerWaitStatistics findCaller(final BrokerWaitStatistics statistics, final String caller) {
+        for (final BrokerWaitStatistics.CallerWaitStatistics callerStatistics : statistics.getCallers()) {
+            if (callerStatistics.getCaller().equals(caller)) {
+                return callerStatistics;
+            }
+        }
+        return null;
+    }
+}
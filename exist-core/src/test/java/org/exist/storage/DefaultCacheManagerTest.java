@@ -0,0 +1,219 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.Cacheable;
+import org.exist.storage.cache.TwoQueueCache;
+import org.exist.util.Configuration;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultCacheManagerTest {
+
+    private static final int PAGE_SIZE = 4096;
+
+    /**
+     * 1MB of cache memory, i.e. 256 pages.
+     */
+    private static final int CACHE_SIZE = 1;
+
+    @Test
+    public void staticBalancingDoesNotMovePages() {
+        final DefaultCacheManager cacheManager = newCacheManager(DefaultCacheManager.CACHE_BALANCING_STATIC);
+        assertFalse(cacheManager.isAdaptive());
+
+        final Cache<TestCacheable> thrashing = newCache("thrashing", 64);
+        final Cache<TestCacheable> hot = newCache("hot", 128);
+        cacheManager.registerCache(thrashing);
+        cacheManager.registerCache(hot);
+
+        for (int i = 0; i < 5; i++) {
+            cycle(thrashing, 1_000, 3);
+            cacheManager.checkDistribution();
+        }
+
+        assertEquals(64, thrashing.getBuffers());
+        assertEquals(128, hot.getBuffers());
+        assertEquals(0, cacheManager.getRebalances());
+        assertTrue(cacheManager.getMarginalGains().isEmpty());
+    }
+
+    @Test
+    public void adaptiveBalancingMovesPagesToCacheWithHighestGain() {
+        final DefaultCacheManager cacheManager = newCacheManager(DefaultCacheManager.CACHE_BALANCING_ADAPTIVE);
+        assertTrue(cacheManager.isAdaptive());
+
+        final Cache<TestCacheable> thrashing = newCache("thrashing", 64);
+        final Cache<TestCacheable> hot = newCache("hot", 128);
+        cacheManager.registerCache(thrashing);
+        cacheManager.registerCache(hot);
+        assertEquals(192 * PAGE_SIZE, cacheManager.getCurrentSize());
+
+        // the free pages are handed out first
+        cycle(thrashing, 1_000, 3);
+        cycle(hot, 16, 3);
+        cacheManager.checkDistribution();
+        assertEquals(128, thrashing.getBuffers());
+        assertEquals(128, hot.getBuffers());
+
+        // then pages are taken from the cache with the lowest gain
+        cycle(thrashing, 1_000, 3);
+        cycle(hot, 16, 3);
+        cacheManager.checkCaches();
+        assertEquals(192, thrashing.getBuffers());
+        assertEquals(64, hot.getBuffers());
+        assertEquals(256 * PAGE_SIZE, cacheManager.getCurrentSize());
+
+        // but never below the minimum size
+        cycle(thrashing, 1_000, 3);
+        cacheManager.checkDistribution();
+        assertEquals(192, thrashing.getBuffers());
+        assertEquals(64, hot.getBuffers());
+
+        assertEquals(2, cacheManager.getRebalances());
+
+        final Map<String, Integer> allocation = cacheManager.getAllocation();
+        assertEquals(Integer.valueOf(192), allocation.get("thrashing/DATA"));
+        assertEquals(Integer.valueOf(64), allocation.get("hot/DATA"));
+
+        final Map<String, Double> gains = cacheManager.getMarginalGains();
+        assertTrue(gains.get("thrashing/DATA") > gains.get("hot/DATA"));
+    }
+
+    @Test
+    public void adaptiveBalancingIgnoresFixedSizeCaches() {
+        final DefaultCacheManager cacheManager = newCacheManager(DefaultCacheManager.CACHE_BALANCING_ADAPTIVE);
+
+        final Cache<TestCacheable> fixed = new TwoQueueCache<>("fixed", 64, 0.0, 1000.0, Cache.CacheType.DATA);
+        cacheManager.registerCache(fixed);
+
+        cycle(fixed, 1_000, 3);
+        cacheManager.checkDistribution();
+        assertEquals(64, fixed.getBuffers());
+        assertEquals(0, cacheManager.getRebalances());
+    }
+
+    private static DefaultCacheManager newCacheManager(final String balancing) {
+        final Configuration mockConfiguration = createNiceMock(Configuration.class);
+        expect(mockConfiguration.getInteger(BrokerPool.PROPERTY_PAGE_SIZE)).andReturn(PAGE_SIZE);
+        expect(mockConfiguration.getInteger(DefaultCacheManager.PROPERTY_CACHE_SIZE)).andReturn(CACHE_SIZE);
+        expect(mockConfiguration.getInteger(DefaultCacheManager.SHRINK_THRESHOLD_PROPERTY)).andReturn(DefaultCacheManager.DEFAULT_SHRINK_THRESHOLD);
+        expect(mockConfiguration.getProperty(DefaultCacheManager.PROPERTY_CACHE_CHECK_MAX_SIZE)).andReturn(true);
+        expect(mockConfiguration.getProperty(DefaultCacheManager.PROPERTY_CACHE_BALANCING)).andReturn(balancing);
+        replay(mockConfiguration);
+
+        final BrokerPool mockBrokerPool = createNiceMock(BrokerPool.class);
+        expect(mockBrokerPool.getId()).andReturn("test").anyTimes();
+        expect(mockBrokerPool.getConfiguration()).andReturn(mockConfiguration).anyTimes();
+        replay(mockBrokerPool);
+
+        return new DefaultCacheManager(mockBrokerPool);
+    }
+
+    /**
+     * Creates a cache which may be resized by the cache manager,
+     * but which never requests to grow by itself.
+     */
+    private static Cache<TestCacheable> newCache(final String name, final int size) {
+        return new TwoQueueCache<>(name, size, 1.5, 1000.0, Cache.CacheType.DATA);
+    }
+
+    /**
+     * Reads the pages 0 to {@code pages} from the cache, {@code rounds} times.
+     */
+    private static void cycle(final Cache<TestCacheable> cache, final int pages, final int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            for (long key = 0; key < pages; key++) {
+                if (cache.get(key) == null) {
+                    cache.add(new TestCacheable(key));
+                }
+            }
+        }
+    }
+
+    private static class TestCacheable implements Cacheable {
+        private final long key;
+        private int referenceCount;
+        private int timestamp;
+
+        TestCacheable(final long key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return referenceCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            return ++referenceCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return --referenceCount;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.referenceCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            return false;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return true;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationException;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.indexing.IndexManager;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Stores documents with the index workers flushed in parallel, see {@link IndexManager#PROPERTY_FLUSH_THREADS}.
+ */
+public class ParallelIndexFlushTest {
+
+    private static final int DOC_COUNT = 50;
+    private static final int ITEM_COUNT = 100;
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "	<index>" +
+            "		<create qname=\"item\" type=\"xs:string\"/>" +
+            "	</index>" +
+            "</collection>";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(IndexManager.PROPERTY_FLUSH_THREADS, 2)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void structuralIndex() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals(DOC_COUNT * ITEM_COUNT, count("collection('" + TestConstants.TEST_COLLECTION_URI + "')//item"));
+        assertEquals(DOC_COUNT * ITEM_COUNT, count("collection('" + TestConstants.TEST_COLLECTION_URI + "')//test/item/@id"));
+        assertEquals(ITEM_COUNT, count("doc('" + TestConstants.TEST_COLLECTION_URI + "/test7.xml')//item"));
+    }
+
+    @Test
+    public void valueIndex() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals(DOC_COUNT, count("collection('" + TestConstants.TEST_COLLECTION_URI + "')//item[. = 'item 7']"));
+        assertEquals(1, count("collection('" + TestConstants.TEST_COLLECTION_URI + "')//item[. = 'item 7'][@doc = 'test7.xml']"));
+    }
+
+    private int count(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final Sequence seq = xquery.execute(broker, query, null);
+            return seq.getItemCount();
+        }
+    }
+
+    @BeforeClass
+    public static void storeDocuments() throws EXistException, PermissionDeniedException, IOException, SAXException, CollectionConfigurationException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction();
+                final Collection root = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI)) {
+
+            broker.saveCollection(transaction, root);
+
+            final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+            mgr.addConfiguration(transaction, broker, root, COLLECTION_CONFIG);
+
+            for (int i = 0; i < DOC_COUNT; i++) {
+                final String docName = "test" + i + ".xml";
+                final StringBuilder xml = new StringBuilder("<test>");
+                for (int j = 0; j < ITEM_COUNT; j++) {
+                    xml.append("<item id='").append(j).append("' doc='").append(docName).append("'>item ").append(j).append("</item>");
+                }
+                xml.append("</test>");
+                broker.storeDocument(transaction, XmldbURI.create(docName), new StringInputSource(xml.toString()), MimeType.XML_TYPE, root);
+            }
+
+            transact.commit(transaction);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.util.Configuration;
+import org.exist.xquery.CompiledXQuery;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class XQueryPoolTest {
+
+    @Test
+    public void maxStackSize() throws PermissionDeniedException {
+        final Configuration configuration = createMock(Configuration.class);
+        expect(configuration.getProperty(XQueryPool.PROPERTY_MAX_STACK_SIZE)).andReturn(2);
+        expect(configuration.getProperty(XQueryPool.PROPERTY_POOL_SIZE)).andReturn(null);
+        final DBBroker broker = createMock(DBBroker.class);
+        final Source source = new StringSource("1 + 1");
+        final CompiledXQuery first = compiled(source);
+        final CompiledXQuery second = compiled(source);
+        final CompiledXQuery third = compiled(source);
+        replay(configuration, broker, first, second, third);
+
+        final XQueryPool pool = new XQueryPool();
+        pool.configure(configuration);
+        pool.returnCompiledXQuery(source, first);
+        pool.returnCompiledXQuery(source, second);
+        pool.returnCompiledXQuery(source, third);
+
+        assertSame(second, pool.borrowCompiledXQuery(broker, source));
+        assertSame(first, pool.borrowCompiledXQuery(broker, source));
+        assertNull(pool.borrowCompiledXQuery(broker, source));
+    }
+
+    @Test
+    public void stringQueriesKeyedByStaticContext() throws PermissionDeniedException {
+        final Configuration configuration = createMock(Configuration.class);
+        expect(configuration.getProperty(XQueryPool.PROPERTY_MAX_STACK_SIZE)).andReturn(null);
+        expect(configuration.getProperty(XQueryPool.PROPERTY_POOL_SIZE)).andReturn(null);
+        final DBBroker broker = createMock(DBBroker.class);
+        final Source source = new StringSource("//x:a", null, null, Collections.singletonMap("x", "urn:one"));
+        final CompiledXQuery compiled = compiled(source);
+        replay(configuration, broker, compiled);
+
+        final XQueryPool pool = new XQueryPool();
+        pool.configure(configuration);
+        pool.returnCompiledXQuery(source, compiled);
+
+        // the prefix is bound to another namespace, so the query has to be compiled again
+        assertNull(pool.borrowCompiledXQuery(broker, new StringSource("//x:a", null, null, Collections.singletonMap("x", "urn:two"))));
+        assertNull(pool.borrowCompiledXQuery(broker, new StringSource("//x:a")));
+        assertSame(compiled, pool.borrowCompiledXQuery(broker, new StringSource("//x:a", null, null, Collections.singletonMap("x", "urn:one"))));
+
+        // the default static context is keyed like a plain string
+        assertEquals(new StringSource("1 + 1"), new StringSource("1 + 1", null, null, Collections.emptyMap()));
+    }
+
+    private static CompiledXQuery compiled(final Source source) {
+        final CompiledXQuery compiled = createMock(CompiledXQuery.class);
+        expect(compiled.getSource()).andReturn(source).anyTimes();
+        expect(compiled.isValid()).andReturn(true).anyTimes();
+        return compiled;
+    }
+}
@@ -39,6 +39,9 @@ import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
@@ -350,6 +353,124 @@ public class BTreeTest {
         }
     }
 
+    @Test
+    public void bulkLoad() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            // add the keys in random order, with a memory limit low enough to spill sorted runs to disk
+            final List<Integer> order = new ArrayList<>();
+            for (int i = 1; i <= COUNT; i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, new Random(COUNT));
+
+            String prefixStr = "K";
+            try (final BulkLoader loader = new BulkLoader(btree, BulkLoader.DEFAULT_FILL_FACTOR, 16 * 1024)) {
+                for (final int i : order) {
+                    loader.add(new Value(prefixStr + Integer.toString(i)), i);
+                }
+                // the pointer added last wins
+                loader.add(new Value(prefixStr + Integer.toString(1)), COUNT + 1);
+                assertEquals(COUNT, loader.finish());
+            }
+            assertFalse(btree.isEmpty());
+
+            assertEquals(COUNT + 1, btree.findValue(new Value(prefixStr + Integer.toString(1))));
+            for (int i = 2; i <= COUNT; i++) {
+                long p = btree.findValue(new Value(prefixStr + Integer.toString(i)));
+                assertEquals(i, p);
+            }
+
+            //Testing IndexQuery.TRUNC_RIGHT
+            IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr));
+            btree.query(query, new StringIndexCallback());
+            assertEquals(COUNT, count);
+
+            query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr + "1"));
+            btree.query(query, new StringIndexCallback());
+            assertEquals(1111, count);
+
+            // the loaded tree is updated as usual
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("C" + Integer.toString(i)), i);
+            }
+            query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr));
+            btree.remove(query, new StringIndexCallback());
+            assertEquals(COUNT, count);
+            btree.flush();
+
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value("C" + Integer.toString(i))));
+                assertEquals(-1, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+            }
+        }
+    }
+
+    @Test
+    public void bulkLoadLongStrings() throws DBException, IOException {
+        // long keys give a tree with several levels of branch pages
+        final Random rand = new Random(COUNT);
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            Map<String, Integer> keys = new TreeMap<>();
+            try (final BulkLoader loader = new BulkLoader(btree)) {
+                for (int i = 1; i <= COUNT; i++) {
+                    StringBuilder buf = new StringBuilder();
+                    buf.append('C').append(Integer.toString(i));
+                    int nextLen = 512 + rand.nextInt(1500);
+                    for (int j = 0; j < nextLen; j++) {
+                        buf.append('x');
+                    }
+                    final String key = buf.toString();
+
+                    loader.add(new Value(key), i);
+                    keys.put(key, i);
+                }
+                assertEquals(COUNT, loader.finish());
+            }
+
+            btree.flush();
+
+            for (Map.Entry<String, Integer> entry: keys.entrySet()) {
+                long p = btree.findValue(new Value(entry.getKey()));
+                assertEquals(entry.getValue().intValue(), p);
+            }
+        }
+    }
+
+    @Test
+    public void bulkLoadIntoNonEmptyTree() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            for (int i = 1; i <= COUNT; i += 2) {
+                btree.addValue(new Value("K" + Integer.toString(i)), i);
+            }
+
+            // the keys are inserted into the existing tree
+            try (final BulkLoader loader = new BulkLoader(btree)) {
+                for (int i = COUNT; i > 0; i--) {
+                    loader.add(new Value("K" + Integer.toString(i)), COUNT + i);
+                }
+                assertEquals(COUNT, loader.finish());
+            }
+
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(COUNT + i, btree.findValue(new Value("K" + Integer.toString(i))));
+            }
+
+            IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value("K"));
+            btree.query(query, new StringIndexCallback());
+            assertEquals(COUNT, count);
+        }
+    }
+
     @ClassRule
     public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
 
@@ -0,0 +1,146 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MappedPageStoreTest {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readBeyondEndOfFileIsZero() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final MappedPageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), false)) {
+            final byte[] buf = new byte[PAGE_SIZE];
+            Arrays.fill(buf, (byte) 0x7F);
+            store.read(PAGE_SIZE * 10, buf, 0, buf.length);
+            assertArrayEquals(new byte[PAGE_SIZE], buf);
+            assertEquals(0, store.length());
+        }
+    }
+
+    @Test
+    public void appendThenOverwrite() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        final Random random = new Random(1234);
+        final int pages = 64;
+        final byte[][] expected = new byte[pages][PAGE_SIZE];
+
+        try (final MappedPageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), false)) {
+            // append pages, these are written through the channel
+            for (int i = 0; i < pages; i++) {
+                random.nextBytes(expected[i]);
+                store.write((long) i * PAGE_SIZE, expected[i], 0, PAGE_SIZE);
+            }
+            assertEquals((long) pages * PAGE_SIZE, store.length());
+
+            // overwrite pages in place, the file is shorter than a region so these are also written through the channel
+            for (int i = 0; i < pages; i += 3) {
+                random.nextBytes(expected[i]);
+                store.write((long) i * PAGE_SIZE, expected[i], 0, PAGE_SIZE);
+            }
+
+            final byte[] buf = new byte[PAGE_SIZE];
+            for (int i = 0; i < pages; i++) {
+                store.read((long) i * PAGE_SIZE, buf, 0, PAGE_SIZE);
+                assertArrayEquals(expected[i], buf);
+            }
+        }
+
+        // the file must be identical when read through a RandomAccessFile
+        assertEquals((long) pages * PAGE_SIZE, Files.size(file));
+        try (final RandomAccessPageStore store = new RandomAccessPageStore(new RandomAccessFile(file.toFile(), "r"))) {
+            final byte[] buf = new byte[PAGE_SIZE];
+            for (int i = 0; i < pages; i++) {
+                store.read((long) i * PAGE_SIZE, buf, 0, PAGE_SIZE);
+                assertArrayEquals(expected[i], buf);
+            }
+        }
+    }
+
+    @Test
+    public void accessAcrossRegionBoundary() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        final long offset = MappedPageStore.REGION_SIZE - 100;
+        final byte[] data = new byte[200];
+        new Random(5678).nextBytes(data);
+
+        try (final MappedPageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), false)) {
+            store.write(offset, data, 0, data.length);
+            assertEquals(offset + data.length, store.length());
+
+            final byte[] buf = new byte[data.length];
+            store.read(offset, buf, 0, buf.length);
+            assertArrayEquals(data, buf);
+
+            // rewrite in place, through the mapping of the first region and the channel for the partial second region
+            Arrays.fill(data, (byte) 1);
+            store.write(offset, data, 0, data.length);
+            store.read(offset, buf, 0, buf.length);
+            assertArrayEquals(data, buf);
+        }
+    }
+
+    @Test
+    public void mapsWholeRegionsAfterGrowth() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        final Random random = new Random(91011);
+        final int pages = MappedPageStore.REGION_SIZE / PAGE_SIZE + 2;
+        final byte[][] expected = new byte[pages][PAGE_SIZE];
+
+        try (final MappedPageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), false)) {
+            final byte[] buf = new byte[PAGE_SIZE];
+            for (int i = 0; i < pages; i++) {
+                random.nextBytes(expected[i]);
+                store.write((long) i * PAGE_SIZE, expected[i], 0, PAGE_SIZE);
+
+                // reading back while the file grows must not map the partial region at the end of the file
+                store.read((long) i * PAGE_SIZE, buf, 0, PAGE_SIZE);
+                assertArrayEquals(expected[i], buf);
+            }
+
+            for (int i = 0; i < pages; i++) {
+                store.read((long) i * PAGE_SIZE, buf, 0, PAGE_SIZE);
+                assertArrayEquals(expected[i], buf);
+            }
+        }
+
+        // the mappings are released on close
+        Files.delete(file);
+    }
+}
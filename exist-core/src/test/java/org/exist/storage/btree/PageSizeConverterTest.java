@@ -0,0 +1,143 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.exist.storage.BrokerPool;
+import org.exist.storage.index.BFile;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.ReadOnlyException;
+import org.exist.xquery.TerminatedException;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class PageSizeConverterTest {
+
+    private final static byte TEST_FILE_ID = 0x7F;
+    private final static short TEST_FILE_VERSION = Short.MIN_VALUE;
+    private static final int COUNT = 5000;
+    private static final int NEW_PAGE_SIZE = 16384;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void convertBTree() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Path file = temporaryFolder.getRoot().toPath().resolve("convert-btree.dbx");
+
+        try (final BTree btree = new BTree(pool, TEST_FILE_ID, TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("K" + i), i);
+            }
+        }
+
+        assertTrue(PageSizeConverter.convert(file, NEW_PAGE_SIZE));
+        assertTrue(Files.exists(file.resolveSibling("convert-btree.dbx" + PageSizeConverter.BACKUP_SUFFIX)));
+
+        try (final BTree btree = new BTree(pool, TEST_FILE_ID, TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.open(TEST_FILE_VERSION));
+            assertEquals(NEW_PAGE_SIZE, btree.getFileHeader().getPageSize());
+
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value("K" + i)));
+            }
+
+            // the larger pages must be usable for new keys
+            for (int i = COUNT + 1; i <= COUNT * 2; i++) {
+                btree.addValue(new Value("K" + i), i);
+            }
+            for (int i = 1; i <= COUNT * 2; i++) {
+                assertEquals(i, btree.findValue(new Value("K" + i)));
+            }
+        }
+    }
+
+    @Test
+    public void convertBFile() throws DBException, IOException, ReadOnlyException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Path file = temporaryFolder.getRoot().toPath().resolve("convert-bfile.dbx");
+
+        try (final BFile bfile = new BFile(pool, TEST_FILE_ID, TEST_FILE_VERSION, false, file, pool.getCacheManager(), 1.0, 0.01)) {
+            for (int i = 1; i <= COUNT; i++) {
+                bfile.put(new Value("K" + i), ("value-" + i).getBytes(UTF_8), true);
+            }
+        }
+
+        assertTrue(PageSizeConverter.convert(file, NEW_PAGE_SIZE));
+
+        try (final BFile bfile = new BFile(pool, TEST_FILE_ID, TEST_FILE_VERSION, false, file, pool.getCacheManager(), 1.0, 0.01)) {
+            assertEquals(NEW_PAGE_SIZE, bfile.getFileHeader().getPageSize());
+            for (int i = 1; i <= COUNT; i++) {
+                assertArrayEquals(("value-" + i).getBytes(UTF_8), bfile.get(new Value("K" + i)).getData());
+            }
+
+            for (int i = COUNT + 1; i <= COUNT * 2; i++) {
+                bfile.put(new Value("K" + i), ("value-" + i).getBytes(UTF_8), true);
+            }
+            for (int i = 1; i <= COUNT * 2; i++) {
+                assertArrayEquals(("value-" + i).getBytes(UTF_8), bfile.get(new Value("K" + i)).getData());
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void multiPageValuesAreNotConverted() throws DBException, IOException, ReadOnlyException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Path file = temporaryFolder.getRoot().toPath().resolve("convert-multi-page.dbx");
+
+        try (final BFile bfile = new BFile(pool, TEST_FILE_ID, TEST_FILE_VERSION, false, file, pool.getCacheManager(), 1.0, 0.01)) {
+            bfile.put(new Value("large"), new byte[pool.getPageSize() * 3], true);
+        }
+
+        try {
+            PageSizeConverter.convert(file, NEW_PAGE_SIZE);
+        } finally {
+            assertFalse(Files.exists(file.resolveSibling("convert-multi-page.dbx" + PageSizeConverter.BACKUP_SUFFIX)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void pageSizeCannotBeDecreased() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Path file = temporaryFolder.getRoot().toPath().resolve("convert-decrease.dbx");
+
+        try (final BTree btree = new BTree(pool, TEST_FILE_ID, TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+        }
+
+        PageSizeConverter.convert(file, NEW_PAGE_SIZE);
+        PageSizeConverter.convert(file, 8192);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapPageCacheTest {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @Test
+    public void putAndGet() {
+        final OffHeapPageCache cache = new OffHeapPageCache(1024 * 1024);
+        final int file1 = cache.register();
+        final int file2 = cache.register();
+
+        cache.put(file1, 1, page(PAGE_SIZE, 1));
+        cache.put(file2, 1, page(PAGE_SIZE, 2));
+
+        final byte[] buf = new byte[PAGE_SIZE];
+        assertTrue(cache.get(file1, 1, buf));
+        assertArrayEquals(page(PAGE_SIZE, 1), buf);
+        assertTrue(cache.get(file2, 1, buf));
+        assertArrayEquals(page(PAGE_SIZE, 2), buf);
+        assertFalse(cache.get(file1, 2, buf));
+
+        // pages are replaced when written again
+        cache.put(file1, 1, page(PAGE_SIZE, 3));
+        assertTrue(cache.get(file1, 1, buf));
+        assertArrayEquals(page(PAGE_SIZE, 3), buf);
+
+        assertEquals(2, cache.getPages());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getFails());
+    }
+
+    @Test
+    public void pageSizes() {
+        final OffHeapPageCache cache = new OffHeapPageCache(1024 * 1024);
+        final int file = cache.register();
+
+        cache.put(file, 1, page(PAGE_SIZE, 1));
+
+        // a page of a different size is a different page
+        final byte[] large = new byte[PAGE_SIZE * 4];
+        assertFalse(cache.get(file, 1, large));
+
+        cache.put(file, 1, page(PAGE_SIZE * 4, 2));
+        assertTrue(cache.get(file, 1, large));
+        assertArrayEquals(page(PAGE_SIZE * 4, 2), large);
+    }
+
+    @Test
+    public void capacityIsRespected() {
+        final long capacity = 256 * 1024;
+        final OffHeapPageCache cache = new OffHeapPageCache(capacity);
+        final int file = cache.register();
+
+        for (long pageNum = 0; pageNum < 1000; pageNum++) {
+            cache.put(file, pageNum, page(PAGE_SIZE, pageNum));
+        }
+
+        assertTrue(cache.getAllocated() <= capacity);
+        assertEquals(capacity / PAGE_SIZE, cache.getPages());
+        assertEquals(1000 - cache.getPages(), cache.getEvictions());
+
+        // every page which is still cached has its own content
+        final byte[] buf = new byte[PAGE_SIZE];
+        int cached = 0;
+        for (long pageNum = 0; pageNum < 1000; pageNum++) {
+            if (cache.get(file, pageNum, buf)) {
+                assertArrayEquals(page(PAGE_SIZE, pageNum), buf);
+                cached++;
+            }
+        }
+        assertEquals(cache.getPages(), cached);
+    }
+
+    @Test
+    public void referencedPagesAreRetained() {
+        final OffHeapPageCache cache = new OffHeapPageCache(64 * 1024);
+        final int file = cache.register();
+        final byte[] buf = new byte[PAGE_SIZE];
+
+        for (long pageNum = 0; pageNum < 2000; pageNum++) {
+            cache.put(file, pageNum, page(PAGE_SIZE, pageNum));
+            if (pageNum == 0 || cache.get(file, 0, buf)) {
+                continue;
+            }
+            cache.put(file, 0, page(PAGE_SIZE, 0));
+        }
+
+        assertTrue(cache.get(file, 0, buf));
+    }
+
+    @Test
+    public void invalidate() {
+        final OffHeapPageCache cache = new OffHeapPageCache(1024 * 1024);
+        final int file1 = cache.register();
+        final int file2 = cache.register();
+
+        for (long pageNum = 0; pageNum < 10; pageNum++) {
+            cache.put(file1, pageNum, page(PAGE_SIZE, pageNum));
+            cache.put(file2, pageNum, page(PAGE_SIZE, pageNum));
+        }
+        cache.invalidate(file1);
+
+        final byte[] buf = new byte[PAGE_SIZE];
+        for (long pageNum = 0; pageNum < 10; pageNum++) {
+            assertFalse(cache.get(file1, pageNum, buf));
+            assertTrue(cache.get(file2, pageNum, buf));
+        }
+        assertEquals(10, cache.getPages());
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final OffHeapPageCache cache = new OffHeapPageCache(512 * 1024);
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int file = cache.register();
+                futures.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    final byte[] buf = new byte[PAGE_SIZE];
+                    for (int i = 0; i < 20_000; i++) {
+                        final long pageNum = random.nextInt(256);
+                        if (cache.get(file, pageNum, buf)) {
+                            assertArrayEquals(page(PAGE_SIZE, file * 1000 + pageNum), buf);
+                        } else {
+                            cache.put(file, pageNum, page(PAGE_SIZE, file * 1000 + pageNum));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.getAllocated() <= 512 * 1024);
+    }
+
+    private static byte[] page(final int pageSize, final long seed) {
+        final byte[] page = new byte[pageSize];
+        Arrays.fill(page, (byte) seed);
+        page[0] = (byte) (seed >>> 8);
+        page[pageSize - 1] = (byte) (seed >>> 16);
+        return page;
+    }
+}
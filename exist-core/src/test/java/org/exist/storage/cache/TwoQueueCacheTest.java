@@ -0,0 +1,313 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TwoQueueCacheTest {
+
+    @Test
+    public void addAndGet() {
+        final TwoQueueCache<TestCacheable> cache = new TwoQueueCache<>("test", 10, 0.0, 1.0, Cache.CacheType.DATA);
+        final TestCacheable item = new TestCacheable(1);
+        cache.add(item);
+
+        assertSame(item, cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getFails());
+        assertEquals(1, cache.getUsedBuffers());
+
+        // adding an item with the same key replaces it
+        final TestCacheable replacement = new TestCacheable(1);
+        cache.add(replacement);
+        assertSame(replacement, cache.get(1));
+        assertEquals(1, cache.getUsedBuffers());
+
+        cache.remove(replacement);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void evictedItemsAreSynced() {
+        final TwoQueueCache<TestCacheable> cache = new TwoQueueCache<>("test", 10, 0.0, 1.0, Cache.CacheType.DATA);
+        final List<TestCacheable> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final TestCacheable item = new TestCacheable(i);
+            items.add(item);
+            cache.add(item);
+        }
+
+        assertEquals(10, cache.getUsedBuffers());
+        assertEquals(10, cache.getEvictions());
+        int synced = 0;
+        for (final TestCacheable item : items) {
+            if (item.syncs > 0) {
+                assertNull(cache.get(item.getKey()));
+                synced++;
+            }
+        }
+        assertEquals(10, synced);
+    }
+
+    @Test
+    public void scanDoesNotEvictWorkingSet() {
+        final TwoQueueCache<TestCacheable> cache = new TwoQueueCache<>("test", 100, 0.0, 1.0, Cache.CacheType.DATA);
+
+        // establish the working set, the items are evicted from probation by a short scan...
+        for (int i = 0; i < 50; i++) {
+            cache.add(new TestCacheable(i));
+        }
+        scan(cache, 1_000, 100);
+
+        // ...and as they are still remembered, they are admitted to the main queue when re-read
+        for (int i = 0; i < 50; i++) {
+            assertNull(cache.get(i));
+            cache.add(new TestCacheable(i));
+        }
+
+        // a large scan
+        scan(cache, 10_000, 10_000);
+
+        for (int i = 0; i < 50; i++) {
+            assertNotNull("Expected working set item " + i + " to survive the scan", cache.get(i));
+        }
+    }
+
+    @Test
+    public void preferredItemsAreAdmittedDirectly() {
+        final TwoQueueCache<TestCacheable> cache = new TwoQueueCache<>("test", 100, 0.0, 1.0, Cache.CacheType.DATA);
+        for (int i = 0; i < 10; i++) {
+            cache.add(new TestCacheable(i), 2);
+        }
+
+        scan(cache, 1_000, 10_000);
+
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get(i));
+        }
+    }
+
+    @Test
+    public void pinnedItemsAreNotEvicted() {
+        final TwoQueueCache<TestCacheable> cache = new TwoQueueCache<>("test", 5, 0.0, 1.0, Cache.CacheType.DATA);
+        for (int i = 0; i < 5; i++) {
+            final TestCacheable item = new TestCacheable(i);
+            item.allowUnload = false;
+            cache.add(item);
+        }
+
+        // the cache may not evict anything, so it has to exceed its size
+        cache.add(new TestCacheable(5));
+        assertEquals(6, cache.getUsedBuffers());
+        for (int i = 0; i <= 5; i++) {
+            assertNotNull(cache.get(i));
+        }
+    }
+
+    @Test
+    public void innerPagesAreRetained() {
+        final BTreeTwoQueueCache<TestBTreeCacheable> cache = new BTreeTwoQueueCache<>("test", 10, 0.0, 1.0, Cache.CacheType.BTREE);
+        for (int i = 0; i < 10; i++) {
+            cache.add(new TestBTreeCacheable(i, i < 3), 2);
+        }
+        for (int i = 10; i < 20; i++) {
+            cache.add(new TestBTreeCacheable(i, false), 2);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(cache.get(i));
+        }
+    }
+
+    @Test
+    public void resize() {
+        final TwoQueueCache<TestCacheable> cache = new TwoQueueCache<>("test", 20, 0.0, 1.0, Cache.CacheType.DATA);
+        for (int i = 0; i < 20; i++) {
+            cache.add(new TestCacheable(i));
+        }
+
+        cache.resize(5);
+        assertEquals(5, cache.getBuffers());
+        assertEquals(5, cache.getUsedBuffers());
+
+        cache.resize(40);
+        for (int i = 100; i < 140; i++) {
+            cache.add(new TestCacheable(i));
+        }
+        assertEquals(40, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void flush() {
+        final TwoQueueCache<TestCacheable> cache = new TwoQueueCache<>("test", 10, 0.0, 1.0, Cache.CacheType.DATA);
+        final TestCacheable clean = new TestCacheable(1);
+        final TestCacheable dirty = new TestCacheable(2);
+        dirty.dirty = true;
+        cache.add(clean);
+        cache.add(dirty);
+
+        assertTrue(cache.hasDirtyItems());
+        assertTrue(cache.flush());
+        assertEquals(0, clean.syncs);
+        assertEquals(1, dirty.syncs);
+        assertTrue(!cache.hasDirtyItems());
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final TwoQueueCache<TestCacheable> cache = new TwoQueueCache<>("test", 64, 0.0, 1.0, Cache.CacheType.DATA);
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 100_000; i++) {
+                        final long key = random.nextInt(256);
+                        final TestCacheable item = cache.get(key);
+                        if (item == null) {
+                            cache.add(new TestCacheable(key));
+                        } else {
+                            assertEquals(key, item.getKey());
+                            if (random.nextInt(100) == 0) {
+                                cache.remove(item);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.getUsedBuffers() <= 64);
+        assertEquals(threads * 100_000, cache.getHits() + cache.getFails());
+    }
+
+    private static void scan(final Cache<TestCacheable> cache, final long from, final int count) {
+        for (long key = from; key < from + count; key++) {
+            if (cache.get(key) == null) {
+                cache.add(new TestCacheable(key));
+            }
+        }
+    }
+
+    private static class TestCacheable implements Cacheable {
+        private final long key;
+        private int referenceCount;
+        private int timestamp;
+        boolean dirty = false;
+        boolean allowUnload = true;
+        int syncs = 0;
+
+        TestCacheable(final long key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return referenceCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            return ++referenceCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return --referenceCount;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.referenceCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            syncs++;
+            final boolean wasDirty = dirty;
+            dirty = false;
+            return wasDirty;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return allowUnload;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return dirty;
+        }
+    }
+
+    private static class TestBTreeCacheable extends TestCacheable implements BTreeCacheable {
+        private final boolean innerPage;
+
+        TestBTreeCacheable(final long key, final boolean innerPage) {
+            super(key);
+            this.innerPage = innerPage;
+        }
+
+        @Override
+        public boolean isInnerPage() {
+            return innerPage;
+        }
+    }
+}
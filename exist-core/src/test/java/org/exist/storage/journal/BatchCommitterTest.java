@@ -0,0 +1,167 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchCommitterTest {
+
+    @Test
+    public void concurrentCommitsAreBatched() throws Exception {
+        final FakeJournal journal = new FakeJournal(10);
+        final BatchCommitter committer = new BatchCommitter(journal, 50, 8);
+        committer.start(Thread::new);
+        try {
+            commitConcurrently(committer, journal, 32);
+        } finally {
+            committer.shutdown();
+        }
+
+        assertTrue("Expected fewer flushes than commits, but was: " + journal.flushes.get(), journal.flushes.get() < 32);
+
+        final BatchCommitStatistics statistics = committer.getStatistics();
+        assertEquals(32, statistics.getCommitCount());
+        assertEquals(32, statistics.getCommitLatencyMicros().getCount());
+        assertTrue(statistics.getBatchCount() > 0);
+        assertTrue(statistics.getBatchSize().getSum() <= 32);
+        assertTrue(statistics.getBatchSize().getMax() <= 32);
+    }
+
+    @Test
+    public void fullBatchIsFlushedWithoutWaiting() throws Exception {
+        final FakeJournal journal = new FakeJournal(0);
+        final BatchCommitter committer = new BatchCommitter(journal, TimeUnit.SECONDS.toMillis(30), 4);
+        committer.start(Thread::new);
+        try {
+            final long start = System.nanoTime();
+            commitConcurrently(committer, journal, 4);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(20));
+        } finally {
+            committer.shutdown();
+        }
+    }
+
+    @Test
+    public void commitAfterShutdownIsRejected() throws Exception {
+        final FakeJournal journal = new FakeJournal(0);
+        final BatchCommitter committer = new BatchCommitter(journal, 5, 4);
+        committer.start(Thread::new);
+        committer.shutdown();
+
+        assertFalse(committer.awaitDurable(journal.write()));
+        assertEquals(0, journal.flushes.get());
+    }
+
+    @Test
+    public void flushFailureIsReported() throws Exception {
+        final BatchCommitter committer = new BatchCommitter(() -> {
+            throw new IllegalStateException("disk on fire");
+        }, 0, 1);
+        committer.start(Thread::new);
+        try {
+            committer.awaitDurable(new Lsn((short) 1, 1));
+            fail("Expected JournalException");
+        } catch (final JournalException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            committer.shutdown();
+        }
+    }
+
+    private static void commitConcurrently(final BatchCommitter committer, final FakeJournal journal, final int commits) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(commits);
+        try {
+            final CountDownLatch ready = new CountDownLatch(commits);
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < commits; i++) {
+                futures.add(executor.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    final Lsn lsn = journal.write();
+                    assertTrue(committer.awaitDurable(lsn));
+                    assertTrue(journal.flushedLsn().compareTo(lsn) >= 0);
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Assigns increasing LSNs to writes, and simulates a slow fsync on flush.
+     */
+    private static class FakeJournal implements Supplier<Lsn> {
+        private final long flushDelay;
+        private final AtomicInteger flushes = new AtomicInteger();
+        private long written = 0;
+        private long flushed = 0;
+
+        FakeJournal(final long flushDelay) {
+            this.flushDelay = flushDelay;
+        }
+
+        synchronized Lsn write() {
+            return new Lsn((short) 1, ++written);
+        }
+
+        synchronized Lsn flushedLsn() {
+            return new Lsn((short) 1, flushed);
+        }
+
+        @Override
+        public Lsn get() {
+            final long upTo;
+            synchronized (this) {
+                upTo = written;
+            }
+            try {
+                Thread.sleep(flushDelay);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushes.incrementAndGet();
+            synchronized (this) {
+                flushed = Math.max(flushed, upTo);
+            }
+            return new Lsn((short) 1, upTo);
+        }
+    }
+}
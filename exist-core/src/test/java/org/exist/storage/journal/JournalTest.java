@@ -26,6 +26,7 @@ import org.easymock.CaptureType;
 import org.exist.EXistException;
 import org.exist.scheduler.Scheduler;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.txn.TxnStart;
 import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
 import org.exist.util.ReadOnlyException;
@@ -39,9 +40,16 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -412,6 +420,72 @@ public class JournalTest {
         verify(mockBrokerPool, mockConfiguration);
     }
 
+    @Test
+    public void concurrentWriteToLog() throws EXistException, IOException, ReadOnlyException, InterruptedException, ExecutionException, LogException {
+        final BrokerPool mockBrokerPool = mock(BrokerPool.class);
+        final Configuration mockConfiguration = mock(Configuration.class);
+        final Scheduler mockScheduler = createNiceMock(Scheduler.class);
+        expect(mockBrokerPool.getConfiguration()).andReturn(mockConfiguration);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, Journal.DEFAULT_SYNC_ON_COMMIT)).andReturn(Journal.DEFAULT_SYNC_ON_COMMIT);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR)).andReturn(null);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_MIN, Journal.DEFAULT_MIN_SIZE)).andReturn(Journal.DEFAULT_MIN_SIZE);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_LIMIT, Journal.DEFAULT_MAX_SIZE)).andReturn(Journal.DEFAULT_MAX_SIZE);
+        expect(mockBrokerPool.getScheduler()).andReturn(mockScheduler);
+
+        replay(mockBrokerPool, mockConfiguration);
+
+        final Path tempJournalDir = TEMPORARY_FOLDER.newFolder().toPath();
+        final Journal journal = new Journal(mockBrokerPool, tempJournalDir);
+        journal.initialize();
+        journal.switchFiles();
+
+        // enough entries to fill the buffer several times over
+        final int threads = 16;
+        final int entriesPerThread = 10_000;
+        final Map<Long, Lsn> written = new ConcurrentHashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final long firstTxnId = (long) t * entriesPerThread;
+                futures.add(executor.submit(() -> {
+                    for (long txnId = firstTxnId; txnId < firstTxnId + entriesPerThread; txnId++) {
+                        final TxnStart entry = new TxnStart(txnId);
+                        journal.writeToLog(entry);
+                        written.put(txnId, entry.getLsn());
+                        if (txnId % 1000 == 0) {
+                            journal.flushToLog(true);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        journal.flushToLog(true, true);
+        final short fileNumber = journal.getCurrentJournalFileNumber();
+        journal.close();
+
+        // every entry must be in the journal file, at the position given by its LSN
+        int read = 0;
+        try (final JournalReader reader = new JournalReader(null, journal.getFile(fileNumber), fileNumber)) {
+            Loggable entry;
+            while ((entry = reader.nextEntry()) != null) {
+                assertEquals(LogEntryTypes.TXN_START, entry.getLogType());
+                assertEquals(written.get(entry.getTransactionId()), entry.getLsn());
+                read++;
+            }
+        }
+        assertEquals(threads * entriesPerThread, read);
+
+        verify(mockBrokerPool, mockConfiguration);
+    }
+
     private static Path createTempDirWithFiles(final List<String> fileNames) throws IOException {
         final Path tempFolder = TEMPORARY_FOLDER.newFolder().toPath();
         Files.createDirectories(tempFolder);
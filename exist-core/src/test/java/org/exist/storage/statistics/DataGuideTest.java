@@ -0,0 +1,57 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.statistics;
+
+import org.exist.dom.QName;
+import org.exist.storage.NodePath;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DataGuideTest {
+
+    @Test
+    public void nodeCount() {
+        final QName root = new QName("root");
+        final QName section = new QName("section");
+        final QName title = new QName("title");
+
+        final DataGuide dataGuide = new DataGuide();
+        final NodePath path = new NodePath(root);
+        dataGuide.add(path);
+        path.addComponent(title);
+        dataGuide.add(path);
+        path.removeLastComponent();
+        path.addComponent(section);
+        for (int i = 0; i < 3; i++) {
+            dataGuide.add(path);
+            path.addComponent(title);
+            dataGuide.add(path);
+            path.removeLastComponent();
+        }
+
+        assertEquals(1, dataGuide.getNodeCount(root));
+        assertEquals(3, dataGuide.getNodeCount(section));
+        assertEquals(4, dataGuide.getNodeCount(title));
+        assertEquals(0, dataGuide.getNodeCount(new QName("para")));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.statistics;
+
+import org.exist.EXistException;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.StringValue;
+import org.junit.Test;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+public class KeyStatisticsTest {
+
+    @Test
+    public void distinctCount() throws EXistException {
+        final KeyStatistics stats = new KeyStatistics();
+        for (int i = 0; i < 100_000; i++) {
+            stats.add(key(i % 20_000), 1);
+        }
+        assertEquals(100_000, stats.getCount());
+        assertEquals(20_000, stats.getDistinctCount(), 20_000 * 0.05);
+        assertEquals(1.0 / 20_000, stats.estimateEquals(), 1.0 / 20_000 * 0.1);
+    }
+
+    @Test
+    public void histogram() throws EXistException {
+        final KeyStatistics stats = new KeyStatistics();
+        for (int i = 0; i < 10_000; i++) {
+            stats.add(key(i), 1);
+        }
+        final byte[][] histogram = stats.getHistogram(4);
+        assertEquals(4, histogram.length);
+        for (int i = 1; i < histogram.length; i++) {
+            assertTrue(KeyStatistics.compare(histogram[i - 1], histogram[i]) < 0);
+        }
+        assertEquals(2500, Long.parseLong(KeyStatistics.toString(histogram[0])), 1000);
+        assertEquals(9999, Long.parseLong(KeyStatistics.toString(histogram[3])), 500);
+
+        assertEquals(0.1, stats.estimateRange(null, key(1000), false), 0.05);
+        assertEquals(0.5, stats.estimateRange(key(2500), key(7500), true), 0.1);
+    }
+
+    @Test
+    public void remove() throws EXistException {
+        final KeyStatistics stats = new KeyStatistics();
+        final byte[] key = new StringValue("a").serializeValue(0);
+        stats.add(key, 3);
+        assertEquals(3, stats.getCount());
+        assertEquals(1, stats.getDistinctCount());
+
+        stats.remove(key, 2);
+        assertEquals(1, stats.getCount());
+
+        stats.remove(key, 1);
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getDistinctCount());
+        assertEquals(-1, stats.estimateEquals(), 0);
+        assertEquals(0, stats.getHistogram(10).length);
+    }
+
+    @Test
+    public void writeAndRead() throws EXistException, IOException {
+        final KeyStatistics stats = new KeyStatistics();
+        for (int i = 0; i < 1000; i++) {
+            stats.add(key(i % 100), 2);
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream os = new DataOutputStream(bytes)) {
+            stats.write(os);
+        }
+        final KeyStatistics read = new KeyStatistics();
+        try (final DataInputStream is = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read.read(is);
+        }
+
+        assertEquals(stats.getCount(), read.getCount());
+        assertEquals(stats.getDistinctCount(), read.getDistinctCount());
+        assertArrayEquals(stats.getHistogram(5), read.getHistogram(5));
+    }
+
+    private static byte[] key(final long value) throws EXistException {
+        return new IntegerValue(value).serializeValue(0);
+    }
+}
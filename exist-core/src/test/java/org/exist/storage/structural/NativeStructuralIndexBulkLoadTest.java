@@ -0,0 +1,108 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.structural;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.indexing.IndexManager;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.btree.DBException;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that a bulk load only defers the structural index entries of the
+ * documents stored by the broker which started it.
+ */
+public class NativeStructuralIndexBulkLoadTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI TEST_COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("bulk-load-test");
+
+    @Test
+    public void otherBrokersWriteDirectly() throws EXistException, PermissionDeniedException, XPathException, DBException,
+            IOException, SAXException, LockException, InterruptedException, ExecutionException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final IndexManager.BulkLoad bulkLoad = pool.getIndexManager().startBulkLoad(broker)) {
+                store(broker, "bulk.xml");
+
+                // a broker of another thread stores and queries a document whilst the bulk load is in progress
+                final long found = otherThread.submit(() -> {
+                    try (final DBBroker otherBroker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                        store(otherBroker, "other.xml");
+                        return count(otherBroker, "other.xml");
+                    }
+                }).get();
+                assertEquals(2, found);
+
+                // the entries of the bulk load are still deferred
+                assertEquals(0, count(broker, "bulk.xml"));
+            }
+
+            assertEquals(2, count(broker, "bulk.xml"));
+            assertEquals(2, count(broker, "other.xml"));
+        } finally {
+            otherThread.shutdownNow();
+        }
+    }
+
+    private static void store(final DBBroker broker, final String name) throws EXistException, PermissionDeniedException,
+            IOException, SAXException, LockException {
+        final BrokerPool pool = broker.getBrokerPool();
+        try (final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            broker.storeDocument(transaction, XmldbURI.create(name), new StringInputSource("<a><x>1</x><b><x>2</x></b></a>"),
+                    MimeType.XML_TYPE, collection);
+            transaction.commit();
+        }
+    }
+
+    private static long count(final DBBroker broker, final String name) throws XPathException, PermissionDeniedException {
+        final Sequence result = broker.getBrokerPool().getXQueryService().execute(broker,
+                "count(doc('" + TEST_COLLECTION_URI.append(name) + "')//x)", null);
+        return result.itemAt(0).toJavaObject(Long.class);
+    }
+}
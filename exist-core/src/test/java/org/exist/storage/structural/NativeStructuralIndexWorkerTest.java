@@ -43,7 +43,7 @@ public class NativeStructuralIndexWorkerTest {
 
     @Test
     public void getDocIdRanges_singleContiguous() {
-        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null, null);
 
         final DocumentSet docs = documentIdSet(Arrays.asList(1,2,3,4,5,6));
 
@@ -57,7 +57,7 @@ public class NativeStructuralIndexWorkerTest {
 
     @Test
     public void getDocIdRanges_multipleContiguous() {
-        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null, null);
 
         final DocumentSet docs = documentIdSet(Arrays.asList(1,2,3,4,5,6, 88,89, 3,4,5,6, 77, 10,11,12));
 
@@ -83,7 +83,7 @@ public class NativeStructuralIndexWorkerTest {
 
     @Test
     public void getDocIdRanges_singleId() {
-        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null, null);
 
         final DocumentSet docs = documentIdSet(Arrays.asList(6574));
 
@@ -97,7 +97,7 @@ public class NativeStructuralIndexWorkerTest {
 
     @Test
     public void getDocIdRanges_singleId_followed_by_continguousIds() {
-        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null, null);
 
         final DocumentSet docs = documentIdSet(Arrays.asList(6574, 11,12,13,14,15));
 
@@ -114,7 +114,7 @@ public class NativeStructuralIndexWorkerTest {
 
     @Test
     public void getDocIdRanges_contiguousIds_followed_by_single() {
-        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null, null);
 
         final DocumentSet docs = documentIdSet(Arrays.asList(11,12,13,14,15, 6574));
 
@@ -131,7 +131,7 @@ public class NativeStructuralIndexWorkerTest {
 
     @Test
     public void getDocIdRanges_multiple_singleIds() {
-        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null, null);
 
         final DocumentSet docs = documentIdSet(Arrays.asList(6574, 200, 12, 24));
 
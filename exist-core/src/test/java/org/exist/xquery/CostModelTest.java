@@ -0,0 +1,129 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.EXistException;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.storage.statistics.KeyStatistics;
+import org.exist.storage.statistics.KeyStatisticsRegistry;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Sequence;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class CostModelTest {
+
+    private static final QName TITLE = new QName("title");
+    private static final QName PARA = new QName("p");
+
+    @Test
+    public void sortBySelectivity() {
+        final CostModel costModel = new CostModel((IndexStatistics) null);
+        final Optimizable range = optimizable(TITLE, CostModel.RANGE_SELECTIVITY);
+        final Optimizable equality = optimizable(TITLE, CostModel.EQUALITY_SELECTIVITY);
+        final Optimizable fullText = optimizable(TITLE, CostModel.FULL_TEXT_SELECTIVITY);
+        replay(range, equality, fullText);
+
+        final Optimizable[] optimizables = { range, equality, fullText };
+        costModel.sort(optimizables);
+        assertArrayEquals(new Optimizable[] { equality, fullText, range }, optimizables);
+    }
+
+    @Test
+    public void sortByNodeCount() {
+        final IndexStatistics statistics = createMock(IndexStatistics.class);
+        expect(statistics.getNodeCount(TITLE)).andReturn(100L).anyTimes();
+        expect(statistics.getNodeCount(PARA)).andReturn(1000000L).anyTimes();
+        final Optimizable onPara = optimizable(PARA, CostModel.EQUALITY_SELECTIVITY);
+        final Optimizable onTitle = optimizable(TITLE, CostModel.RANGE_SELECTIVITY);
+        replay(statistics, onPara, onTitle);
+
+        final CostModel costModel = new CostModel(statistics);
+        final Optimizable[] optimizables = { onPara, onTitle };
+        costModel.sort(optimizables);
+        assertArrayEquals(new Optimizable[] { onTitle, onPara }, optimizables);
+    }
+
+    @Test
+    public void preferStructuralForSmallContext() {
+        final IndexStatistics statistics = createMock(IndexStatistics.class);
+        expect(statistics.getNodeCount(PARA)).andReturn(1000000L).anyTimes();
+        final Optimizable onPara = optimizable(PARA, CostModel.EQUALITY_SELECTIVITY);
+        final Sequence small = createMock(Sequence.class);
+        expect(small.getItemCountLong()).andReturn(10L).anyTimes();
+        final Sequence large = createMock(Sequence.class);
+        expect(large.getItemCountLong()).andReturn(100000L).anyTimes();
+        replay(statistics, onPara, small, large);
+
+        final CostModel costModel = new CostModel(statistics);
+        final Optimizable[] optimizables = { onPara };
+        assertTrue(costModel.preferStructural(small, optimizables));
+        assertFalse(costModel.preferStructural(large, optimizables));
+        assertFalse(costModel.preferStructural(null, optimizables));
+    }
+
+    @Test
+    public void alwaysUseIndexWithoutStatistics() {
+        final Optimizable onPara = optimizable(PARA, CostModel.RANGE_SELECTIVITY);
+        final Sequence small = createMock(Sequence.class);
+        expect(small.getItemCountLong()).andReturn(1L).anyTimes();
+        replay(onPara, small);
+
+        assertFalse(new CostModel((IndexStatistics) null).preferStructural(small, new Optimizable[] { onPara }));
+    }
+
+    @Test
+    public void equalitySelectivityFromKeyStatistics() throws EXistException {
+        final KeyStatisticsRegistry registry = new KeyStatisticsRegistry("values", Paths.get("values.stats"));
+        for (int i = 0; i < 10; i++) {
+            registry.get(KeyStatisticsRegistry.nameOf(TITLE)).add(new IntegerValue(i).serializeValue(0), 10);
+        }
+        final Optimizable onTitle = optimizable(TITLE, CostModel.EQUALITY_SELECTIVITY,
+                registry.find(KeyStatisticsRegistry.nameOf(TITLE)));
+        final Optimizable rangeOnTitle = optimizable(TITLE, CostModel.RANGE_SELECTIVITY);
+        final Optimizable onPara = optimizable(PARA, CostModel.EQUALITY_SELECTIVITY,
+                registry.find(KeyStatisticsRegistry.nameOf(PARA)));
+        replay(onTitle, rangeOnTitle, onPara);
+
+        final CostModel costModel = new CostModel((IndexStatistics) null);
+        assertEquals(0.1, costModel.getSelectivity(onTitle), 0.001);
+        assertEquals(CostModel.RANGE_SELECTIVITY, costModel.getSelectivity(rangeOnTitle), 0);
+        assertEquals(CostModel.EQUALITY_SELECTIVITY, costModel.getSelectivity(onPara), 0);
+    }
+
+    private static Optimizable optimizable(final QName qname, final double selectivity) {
+        return optimizable(qname, selectivity, null);
+    }
+
+    private static Optimizable optimizable(final QName qname, final double selectivity, final KeyStatistics keyStatistics) {
+        final Optimizable optimizable = createMock(Optimizable.class);
+        expect(optimizable.getOptimizeQName()).andReturn(qname).anyTimes();
+        expect(optimizable.getSelectivity()).andReturn(selectivity).anyTimes();
+        expect(optimizable.getEqualityKeyStatistics()).andReturn(keyStatistics).anyTimes();
+        return optimizable;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that the bodies of user defined functions which are compiled
+ * to bytecode give the same results as when they are interpreted.
+ */
+public class ExpressionCompilerTest {
+
+    private static final int COMPILE_THRESHOLD = 3;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(config(), true, true);
+
+    private static Properties config() {
+        // NOTE: the values must be typed, as they are placed directly into the configuration
+        final Properties properties = new Properties();
+        properties.put(UserDefinedFunction.PROPERTY_COMPILE_THRESHOLD, COMPILE_THRESHOLD);
+        return properties;
+    }
+
+    private static final String FIBONACCI =
+            "declare function local:fib($n as xs:integer) as xs:integer {\n" +
+            "    if ($n < 2) then $n else local:fib($n - 1) + local:fib($n - 2)\n" +
+            "};\n";
+
+    @Test
+    public void recursion() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("6765", execute(FIBONACCI + "local:fib(20)").getStringValue());
+    }
+
+    @Test
+    public void operators() throws EXistException, PermissionDeniedException, XPathException {
+        final Sequence result = execute(
+                "declare function local:f($a as xs:integer, $b as xs:integer) {\n" +
+                "    if ($a eq $b or ($a > 10 and $b = 0)) then -$a else $a * 2\n" +
+                "};\n" +
+                "for $i in 1 to 20 return local:f($i, $i mod 5)");
+        assertEquals(20, result.getItemCount());
+        for (int i = 1; i <= 20; i++) {
+            final int expected = (i == i % 5 || (i > 10 && i % 5 == 0)) ? -i : i * 2;
+            assertEquals(String.valueOf(expected), result.itemAt(i - 1).getStringValue());
+        }
+    }
+
+    @Test
+    public void interpretedParts() throws EXistException, PermissionDeniedException, XPathException {
+        // the FLWOR expression and the path expressions are interpreted, and use the parameters as variables
+        final Sequence result = execute(
+                "declare function local:f($x as xs:integer, $e as element()) {\n" +
+                "    if ($e/@a) then $x + count(for $i in 1 to $x return $i) else string($e)\n" +
+                "};\n" +
+                "for $i in 1 to 10 return local:f($i, if ($i mod 2 = 0) then <e a='1'/> else <e>{$i}</e>)");
+        assertEquals(10, result.getItemCount());
+        for (int i = 1; i <= 10; i++) {
+            final int expected = i % 2 == 0 ? i * 2 : i;
+            assertEquals(String.valueOf(expected), result.itemAt(i - 1).getStringValue());
+        }
+    }
+
+    @Test
+    public void error() throws EXistException, PermissionDeniedException {
+        try {
+            execute("declare function local:d($x) { 10 idiv $x };\n" +
+                    "for $i in (5, 4, 3, 2, 1, 0) return local:d($i)");
+            fail("Expected a division by zero error");
+        } catch (final XPathException e) {
+            assertEquals(ErrorCodes.FOAR0001, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void argumentCardinality() throws EXistException, PermissionDeniedException {
+        try {
+            execute("declare function local:inc($x as xs:integer) { $x + 1 };\n" +
+                    "declare function local:f($x) { local:inc(if ($x > 4) then ($x, $x) else $x) };\n" +
+                    "for $i in 1 to 5 return local:f($i)");
+            fail("Expected a cardinality error");
+        } catch (final XPathException e) {
+            // the arguments of compiled function calls are checked as by the interpreter
+        }
+    }
+
+    @Test
+    public void compilable() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(broker.getBrokerPool());
+            xquery.compile(context, FIBONACCI +
+                    "declare function local:flwor($n) { for $i in 1 to $n return $i };\n" +
+                    "local:fib(2), local:flwor(2)");
+
+            final UserDefinedFunction fib = context.resolveFunction(new QName("fib", Namespaces.XQUERY_LOCAL_NS, "local"), 1);
+            assertNotNull(ExpressionCompiler.compile(fib.getFunctionBody(), fib.getParameters()));
+
+            // a body which would be interpreted as a whole is not compiled
+            final UserDefinedFunction flwor = context.resolveFunction(new QName("flwor", Namespaces.XQUERY_LOCAL_NS, "local"), 1);
+            assertNull(ExpressionCompiler.compile(flwor.getFunctionBody(), flwor.getParameters()));
+        }
+    }
+
+    private static Sequence execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            return xquery.execute(broker, query, null);
+        }
+    }
+}
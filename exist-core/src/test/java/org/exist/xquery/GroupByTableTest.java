@@ -0,0 +1,125 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import com.ibm.icu.text.Collator;
+import org.exist.xquery.value.*;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GroupByTableTest {
+
+    private static final Collator[] NO_COLLATOR = new Collator[1];
+
+    @Test
+    public void equalNumericKeys() throws XPathException {
+        final GroupKey key = key(new IntegerValue(1));
+        assertEquals(key, key(new DecimalValue(new BigDecimal("1.00"))));
+        assertEquals(key, key(new DoubleValue(1.0)));
+        assertEquals(key, key(new FloatValue(1.0f)));
+        assertEquals(key(new DoubleValue(Double.NaN)), key(new FloatValue(Float.NaN)));
+        assertEquals(key(new DecimalValue(new BigDecimal("0.5"))), key(new DoubleValue(0.5)));
+        assertNotEquals(key, key(new IntegerValue(2)));
+        assertNotEquals(key, key(new StringValue("1")));
+    }
+
+    @Test
+    public void equalStringKeys() throws XPathException {
+        assertEquals(key(new StringValue("a")), key(new UntypedAtomicValue("a")));
+        assertEquals(key(new StringValue("a")), key(new AnyURIValue("a")));
+        assertNotEquals(key(new StringValue("a")), key(new StringValue("A")));
+        assertEquals(key(AtomicValue.EMPTY_VALUE), key(AtomicValue.EMPTY_VALUE));
+        assertNotEquals(key(AtomicValue.EMPTY_VALUE), key(new StringValue("")));
+    }
+
+    @Test
+    public void collationKeys() throws XPathException {
+        final Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.PRIMARY);
+        final Collator[] collators = { collator };
+        assertEquals(GroupKey.of(new AtomicValue[] { new StringValue("Dusseldorf") }, collators),
+                GroupKey.of(new AtomicValue[] { new StringValue("düsseldorf") }, collators));
+    }
+
+    @Test
+    public void inMemory() throws XPathException {
+        final Map<String, String> groups = group(1000, 0);
+        assertEquals(7, groups.size());
+        assertEquals(expected(1000, 3), groups.get("3"));
+    }
+
+    @Test
+    public void spilled() throws XPathException {
+        final GroupByTable[] table = new GroupByTable[1];
+        final Map<String, String> groups = group(5000, 4096, table);
+        assertTrue(table[0].isSpilled());
+        assertEquals(7, groups.size());
+        for (int i = 0; i < 7; i++) {
+            assertEquals(expected(5000, i), groups.get(Integer.toString(i)));
+        }
+    }
+
+    private static Map<String, String> group(final int count, final long memoryBudget) throws XPathException {
+        return group(count, memoryBudget, new GroupByTable[1]);
+    }
+
+    private static Map<String, String> group(final int count, final long memoryBudget, final GroupByTable[] table)
+            throws XPathException {
+        table[0] = new GroupByTable(null, 1, memoryBudget, groupingValues -> key((AtomicValue) groupingValues[0].itemAt(0)));
+        try {
+            for (int i = 0; i < count; i++) {
+                final IntegerValue groupingValue = new IntegerValue(i % 7);
+                table[0].add(key(groupingValue), new Sequence[] { groupingValue },
+                        new Sequence[] { new StringValue("value " + i) });
+            }
+
+            final Map<String, String> groups = new HashMap<>();
+            table[0].forEach((groupingValues, values) -> {
+                final StringBuilder builder = new StringBuilder();
+                for (final SequenceIterator i = values[0].iterate(); i.hasNext(); ) {
+                    builder.append(i.nextItem().getStringValue()).append(';');
+                }
+                assertNull(groups.put(groupingValues[0].getStringValue(), builder.toString()));
+            });
+            return groups;
+        } finally {
+            table[0].close();
+        }
+    }
+
+    private static String expected(final int count, final int group) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = group; i < count; i += 7) {
+            builder.append("value ").append(i).append(';');
+        }
+        return builder.toString();
+    }
+
+    private static GroupKey key(final AtomicValue value) throws XPathException {
+        return GroupKey.of(new AtomicValue[] { value }, NO_COLLATOR);
+    }
+}
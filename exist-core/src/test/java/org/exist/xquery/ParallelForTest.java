@@ -0,0 +1,174 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelForTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final String PARALLEL_OPTION = "declare option exist:parallel \"enable=yes threads=4\";\n";
+
+    private static final int DOCUMENTS = 300;
+
+    @BeforeClass
+    public static void storeDocuments() throws EXistException, PermissionDeniedException, XPathException {
+        execute("xmldb:store('/db', 'parallel-for.xml', <items>{ for $i in 1 to 2000 return <item n='{$i}'>item {$i}</item> }</items>)");
+        execute("xmldb:create-collection('/db', 'parallel-for'), " +
+                "for $i in 1 to " + DOCUMENTS + " return xmldb:store('/db/parallel-for', 'doc' || $i || '.xml', " +
+                "<doc id='{$i}'><head><title>title {$i}</title></head><body><p>text {$i}</p></body></doc>)");
+    }
+
+    @Test
+    public void atomicValues() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $i in 1 to 5000 return $i * 2 + 1";
+        assertSameResult(query, PARALLEL_OPTION + query, 5000);
+    }
+
+    @Test
+    public void functionCalls() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $i in 1 to 5000 return if ($i mod 3 = 0) then concat('n', $i) else upper-case(string($i))";
+        assertSameResult(query, PARALLEL_OPTION + query, 5000);
+    }
+
+    @Test
+    public void pragma() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $i in 1 to 5000 return string-length(string($i))";
+        assertSameResult(query, "(# exist:parallel #) { " + query + " }", 5000);
+    }
+
+    @Test
+    public void persistentNodes() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $item in doc('/db/parallel-for.xml')//item return normalize-space($item)";
+        assertSameResult(query, PARALLEL_OPTION + query, 2000);
+    }
+
+    @Test
+    public void pathSteps() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $d in collection('/db/parallel-for') return concat($d/doc/@id, ':', $d//title/string())";
+        assertTrue(isParallel(PARALLEL_OPTION + query));
+        assertSameResult(query, PARALLEL_OPTION + query, DOCUMENTS);
+    }
+
+    @Test
+    public void unsafeReturnClause() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $i in 1 to 1000 return <a>{$i}</a>";
+        assertSameResult(query, PARALLEL_OPTION + query, 1000);
+    }
+
+    @Test
+    public void disabled() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $i in 1 to 1000 return $i + 1";
+        assertSameResult(query, "declare option exist:parallel \"enable=no\";\n(# exist:parallel #) { " + query + " }", 1000);
+    }
+
+    @Test
+    public void error() throws EXistException, PermissionDeniedException {
+        try {
+            execute(PARALLEL_OPTION + "for $i in 1 to 5000 return 1 idiv ($i - 4000)");
+            fail("Expected a division by zero error");
+        } catch (final XPathException e) {
+            assertEquals(ErrorCodes.FOAR0001, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void threadSafety() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertTrue(isThreadSafeReturn(xquery, broker, "for $i in (1, 2) return concat('a', $i + 1)"));
+            assertFalse(isThreadSafeReturn(xquery, broker, "for $i in (1, 2) return <a>{$i}</a>"));
+            assertFalse(isThreadSafeReturn(xquery, broker, "for $i in (1, 2) return util:log('info', $i)"));
+            assertTrue(isThreadSafeReturn(xquery, broker, "for $d in (<a/>, <b/>) return $d//title/@n/string()"));
+            assertFalse(isThreadSafeReturn(xquery, broker, "for $d in (<a/>, <b/>) return $d//title[1]"));
+            assertFalse(isThreadSafeReturn(xquery, broker, "for $d in (<a/>, <b/>) return $d/following::title"));
+        }
+    }
+
+    private static boolean isThreadSafeReturn(final XQuery xquery, final DBBroker broker, final String query)
+            throws XPathException, PermissionDeniedException {
+        final XQueryContext context = new XQueryContext(broker.getBrokerPool());
+        final CompiledXQuery compiled = xquery.compile(context, query);
+        final ForExpr forExpr = findFor((Expression) compiled);
+        return ParallelForEvaluator.isThreadSafe(forExpr.getReturnExpression());
+    }
+
+    private static boolean isParallel(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(broker.getBrokerPool());
+            final CompiledXQuery compiled = xquery.compile(context, query);
+            return findFor((Expression) compiled).isParallel();
+        }
+    }
+
+    private static ForExpr findFor(final Expression expr) {
+        if (expr instanceof ForExpr) {
+            return (ForExpr) expr;
+        }
+        for (int i = 0; i < expr.getSubExpressionCount(); i++) {
+            final ForExpr found = findFor(expr.getSubExpression(i));
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static void assertSameResult(final String sequentialQuery, final String parallelQuery, final int expectedCount)
+            throws EXistException, PermissionDeniedException, XPathException {
+        final Sequence sequential = execute(sequentialQuery);
+        final Sequence parallel = execute(parallelQuery);
+        assertEquals(expectedCount, sequential.getItemCount());
+        assertEquals(sequential.getItemCount(), parallel.getItemCount());
+        for (int i = 0; i < sequential.getItemCount(); i++) {
+            assertEquals(sequential.itemAt(i).getStringValue(), parallel.itemAt(i).getStringValue());
+        }
+    }
+
+    private static Sequence execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            return xquery.execute(broker, query, null);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.xquery.XPathException;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class IntegerValueTest {
+
+    private static final IntegerValue MAX = new IntegerValue(Long.MAX_VALUE);
+    private static final IntegerValue MIN = new IntegerValue(Long.MIN_VALUE);
+    private static final IntegerValue ONE = new IntegerValue(1);
+    private static final IntegerValue MINUS_ONE = new IntegerValue(-1);
+
+    @Test
+    public void longArithmetic() throws XPathException {
+        assertEquals(42, ((IntegerValue) new IntegerValue(40).plus(new IntegerValue(2))).getLong());
+        assertEquals(38, ((IntegerValue) new IntegerValue(40).minus(new IntegerValue(2))).getLong());
+        assertEquals(80, ((IntegerValue) new IntegerValue(40).mult(new IntegerValue(2))).getLong());
+        assertEquals(-3, new IntegerValue(-7).idiv(new IntegerValue(2)).getLong());
+        assertEquals(-1, ((IntegerValue) new IntegerValue(-7).mod(new IntegerValue(2))).getLong());
+        assertTrue(((IntegerValue) new IntegerValue(40).plus(new IntegerValue(2))).fitsInLong());
+    }
+
+    @Test
+    public void promotesOnOverflow() throws XPathException {
+        final BigInteger max = BigInteger.valueOf(Long.MAX_VALUE);
+        final BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+
+        assertBig(max.add(BigInteger.ONE), MAX.plus(ONE));
+        assertBig(min.subtract(BigInteger.ONE), MIN.minus(ONE));
+        assertBig(max.multiply(max), MAX.mult(MAX));
+        assertBig(min.negate(), MIN.negate());
+        assertBig(min.negate(), MIN.abs());
+        assertBig(min.negate(), MIN.idiv(MINUS_ONE));
+    }
+
+    @Test
+    public void demotesWithinRange() throws XPathException {
+        final IntegerValue big = (IntegerValue) MAX.plus(ONE);
+        assertFalse(big.fitsInLong());
+
+        final IntegerValue back = (IntegerValue) big.minus(ONE);
+        assertTrue(back.fitsInLong());
+        assertEquals(Long.MAX_VALUE, back.getLong());
+        assertEquals(MAX.hashCode(), back.hashCode());
+        assertEquals(0, MAX.compareTo(back));
+        assertTrue(new IntegerValue(new BigInteger("123")).fitsInLong());
+    }
+
+    @Test
+    public void compare() throws XPathException {
+        final IntegerValue big = (IntegerValue) MAX.plus(ONE);
+        assertTrue(big.compareTo(MAX) > 0);
+        assertTrue(MIN.compareTo(big) < 0);
+        assertTrue(ONE.compareTo(MINUS_ONE) > 0);
+        assertEquals(big, MAX.max(null, big));
+        assertEquals(MIN, MIN.min(null, big));
+    }
+
+    @Test
+    public void parse() throws XPathException {
+        assertEquals(12, new IntegerValue(" +12 ").getLong());
+        assertEquals("123456789012345678901234567890", new IntegerValue("123456789012345678901234567890").getStringValue());
+        assertEquals(Long.MIN_VALUE, new IntegerValue("-9223372036854775808").getLong());
+        assertTrue(new IntegerValue("-9223372036854775808").fitsInLong());
+        assertFalse(new IntegerValue("9223372036854775808").fitsInLong());
+    }
+
+    @Test(expected = XPathException.class)
+    public void typeCheckOnOverflow() throws XPathException {
+        new IntegerValue(Integer.MAX_VALUE, Type.INT).plus(new IntegerValue(1, Type.INT));
+    }
+
+    private static void assertBig(final BigInteger expected, final ComputableValue actual) {
+        final IntegerValue value = (IntegerValue) actual;
+        assertFalse(value.fitsInLong());
+        assertEquals(expected, value.toBigInteger());
+        assertEquals(expected.toString(), value.getStringValue());
+    }
+}
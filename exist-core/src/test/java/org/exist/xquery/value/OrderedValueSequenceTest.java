@@ -27,10 +27,15 @@ import org.exist.xquery.OrderSpec;
 import org.exist.xquery.XPathException;
 import org.junit.Test;
 
+import java.util.Iterator;
+import java.util.stream.IntStream;
+
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class OrderedValueSequenceTest {
 
@@ -96,6 +101,83 @@ public class OrderedValueSequenceTest {
         assertEquals(69, count);
     }
 
+    @Test
+    public void limit() throws XPathException {
+        final OrderedValueSequence orderedValueSequence = sortedSequence(1000, -1, 5);
+        assertFalse(orderedValueSequence.isSpilled());
+        assertEquals(5, orderedValueSequence.getItemCount());
+        assertSorted(orderedValueSequence, 5);
+    }
+
+    @Test
+    public void spill() throws XPathException {
+        final OrderedValueSequence orderedValueSequence = sortedSequence(1000, 4096, -1);
+        try {
+            assertTrue(orderedValueSequence.isSpilled());
+            assertEquals(1000, orderedValueSequence.getItemCount());
+
+            // the runs may be merged more than once
+            assertSorted(orderedValueSequence, 1000);
+            assertSorted(orderedValueSequence, 1000);
+
+            final SequenceIterator it = orderedValueSequence.iterate();
+            assertEquals(1000, it.skippable());
+            assertEquals(990, it.skip(990));
+            assertEquals(10, it.skippable());
+
+            // random access reads the runs back into memory
+            assertEquals("key 0 item 199", orderedValueSequence.itemAt(1).getStringValue());
+            assertFalse(orderedValueSequence.isSpilled());
+            assertSorted(orderedValueSequence, 1000);
+        } finally {
+            orderedValueSequence.close();
+        }
+    }
+
+    @Test
+    public void closeReleasesAbandonedIterators() throws XPathException {
+        final OrderedValueSequence orderedValueSequence = sortedSequence(1000, 4096, -1);
+        assertTrue(orderedValueSequence.isSpilled());
+
+        final SequenceIterator it = orderedValueSequence.iterate();
+        assertEquals(10, it.skip(10));
+        assertTrue(it.hasNext());
+
+        // the streams of the iterator are closed with the sequence, instead of when it is garbage collected
+        orderedValueSequence.close();
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Creates a sequence of string items which are ordered by a key that is
+     * the reverse of the position of the item modulo 100, so that the sort
+     * has to keep items with equal keys in their original order.
+     */
+    private static OrderedValueSequence sortedSequence(final int size, final long memoryBudget, final long limit) throws XPathException {
+        final Iterator<Integer> keys = IntStream.range(0, size).map(i -> 99 - (i % 100)).iterator();
+        final Expression sortExpr = createMock(Expression.class);
+        expect(sortExpr.eval(null)).andAnswer(() -> new IntegerValue(keys.next())).anyTimes();
+        replay(sortExpr);
+
+        final OrderedValueSequence orderedValueSequence = new OrderedValueSequence(new OrderSpec[] { new OrderSpec(null, sortExpr) }, 10, memoryBudget, limit);
+        for (int i = 0; i < size; i++) {
+            orderedValueSequence.add(new StringValue("key " + (99 - (i % 100)) + " item " + i));
+        }
+        orderedValueSequence.sort();
+        return orderedValueSequence;
+    }
+
+    private static void assertSorted(final OrderedValueSequence orderedValueSequence, final int expectedCount) throws XPathException {
+        final int itemsPerKey = 10;
+        int count = 0;
+        for (final SequenceIterator it = orderedValueSequence.iterate(); it.hasNext(); count++) {
+            final int key = count / itemsPerKey;
+            final int item = 99 - key + (count % itemsPerKey) * 100;
+            assertEquals("key " + key + " item " + item, it.nextItem().getStringValue());
+        }
+        assertEquals(expectedCount, count);
+    }
+
     private static OrderedValueSequence mockOrderedValueSequence(final int size) throws XPathException {
         final Expression mockSortExpr = createMock(Expression.class);
         expect(mockSortExpr.eval(null)).andReturn(Sequence.EMPTY_SEQUENCE).anyTimes();
@@ -196,6 +196,16 @@ public class Query extends Function implements Optimizable {
         return axis;
     }
 
+    @Override
+    public QName getOptimizeQName() {
+        return contextQName;
+    }
+
+    @Override
+    public double getSelectivity() {
+        return CostModel.FULL_TEXT_SELECTIVITY;
+    }
+
     public NodeSet preSelect(Sequence contextSequence, boolean useContext) throws XPathException {
         // guard against an empty contextSequence
     	if (contextSequence == null || !contextSequence.isPersistentSet()) {
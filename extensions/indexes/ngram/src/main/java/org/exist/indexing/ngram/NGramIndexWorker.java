@@ -177,6 +177,12 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
     }
 
+    @Override
+    public boolean isConcurrentFlushSafe() {
+        // saveIndex() only appends to the ngram file, under its lock
+        return true;
+    }
+
     private void saveIndex() {
         if (ngrams.isEmpty()) {
             return;
@@ -211,6 +211,16 @@ public class NGramSearch extends Function implements Optimizable {
         return axis;
     }
 
+    @Override
+    public QName getOptimizeQName() {
+        return contextQName;
+    }
+
+    @Override
+    public double getSelectivity() {
+        return CostModel.SUBSTRING_SELECTIVITY;
+    }
+
     @Override
     public NodeSet preSelect(Sequence contextSequence, boolean useContext) throws XPathException {
         // the expression can be called multiple times, so we need to clear the previous preselectResult
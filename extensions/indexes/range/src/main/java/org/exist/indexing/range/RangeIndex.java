@@ -28,6 +28,10 @@ import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.lucene.LuceneIndex;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.DBException;
+import org.exist.storage.statistics.KeyStatisticsProvider;
+import org.exist.storage.statistics.KeyStatisticsRegistry;
+import org.exist.util.DatabaseConfigurationException;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -37,7 +41,7 @@ import java.util.Map;
  *
  * @author Wolfgang Meier
  */
-public class RangeIndex extends LuceneIndex {
+public class RangeIndex extends LuceneIndex implements KeyStatisticsProvider {
 
     protected static final Logger LOG = LogManager.getLogger(RangeIndex.class);
 
@@ -89,8 +93,50 @@ public class RangeIndex extends LuceneIndex {
 
     private static final String DIR_NAME = "range";
 
+    private static final String STATISTICS_FILE_NAME = "keys.stats";
+
     private Analyzer defaultAnalyzer = new KeywordAnalyzer();
 
+    private KeyStatisticsRegistry keyStatistics;
+
+    @Override
+    public void open() throws DatabaseConfigurationException {
+        super.open();
+        keyStatistics = new KeyStatisticsRegistry("range", getDataDir().resolve(DIR_NAME).resolve(STATISTICS_FILE_NAME));
+        keyStatistics.load();
+    }
+
+    @Override
+    public synchronized void close() throws DBException {
+        super.close();
+        keyStatistics.save();
+    }
+
+    @Override
+    public synchronized void sync() throws DBException {
+        super.sync();
+        keyStatistics.save();
+    }
+
+    @Override
+    public void remove() throws DBException {
+        super.remove();
+        keyStatistics.remove();
+    }
+
+    /**
+     * Returns the distribution of the keys of the range index. Keys are added as
+     * nodes are indexed. As the index removes nodes by document, the keys of removed
+     * nodes are not known, so the statistics are only reset when the entire database
+     * is reindexed.
+     *
+     * @return the key statistics
+     */
+    @Override
+    public KeyStatisticsRegistry getKeyStatistics() {
+        return keyStatistics;
+    }
+
     @Override
     public String getDirName() {
         return DIR_NAME;
@@ -38,6 +38,7 @@ import org.exist.xquery.value.*;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import javax.annotation.Nullable;
 import javax.xml.datatype.XMLGregorianCalendar;
 import java.io.IOException;
 import java.util.Map;
@@ -142,41 +143,45 @@ public class RangeIndexConfigElement {
             return custom.toField(fieldName, content);
         }
         // no converter: handle default types
+        final AtomicValue value = convertToValue(fieldName, content);
+        return value == null ? null : convertToField(fieldName, value);
+    }
+
+    /**
+     * Converts the content of a field to a value of the type of the index,
+     * ignoring any custom converter.
+     *
+     * @param fieldName the name of the field
+     * @param content the content of the field
+     *
+     * @return the value, or null if the content is not a valid value of the type
+     */
+    public @Nullable AtomicValue convertToValue(String fieldName, String content) {
         final int fieldType = getType(fieldName);
         try {
             switch (fieldType) {
                 case Type.INTEGER:
                 case Type.LONG:
                 case Type.UNSIGNED_LONG:
-                    long lvalue = Long.parseLong(content);
-                    return new LongField(fieldName, lvalue, LongField.TYPE_NOT_STORED);
+                    return new IntegerValue(Long.parseLong(content));
                 case Type.INT:
                 case Type.UNSIGNED_INT:
                 case Type.SHORT:
                 case Type.UNSIGNED_SHORT:
-                    int ivalue = Integer.parseInt(content);
-                    return new IntField(fieldName, ivalue, IntField.TYPE_NOT_STORED);
+                    return new IntegerValue(Integer.parseInt(content));
                 case Type.DECIMAL:
                 case Type.DOUBLE:
-                    double dvalue = Double.parseDouble(content);
-                    return new DoubleField(fieldName, dvalue, DoubleField.TYPE_NOT_STORED);
+                    return new DoubleValue(Double.parseDouble(content));
                 case Type.FLOAT:
-                    float fvalue = Float.parseFloat(content);
-                    return new FloatField(fieldName, fvalue, FloatField.TYPE_NOT_STORED);
+                    return new FloatValue(Float.parseFloat(content));
                 case Type.DATE:
-                    DateValue dv = new DateValue(content);
-                    long dl = dateToLong(dv);
-                    return new LongField(fieldName, dl, LongField.TYPE_NOT_STORED);
+                    return new DateValue(content);
                 case Type.TIME:
-                    TimeValue tv = new TimeValue(content);
-                    long tl = timeToLong(tv);
-                    return new LongField(fieldName, tl, LongField.TYPE_NOT_STORED);
+                    return new TimeValue(content);
                 case Type.DATE_TIME:
-                    DateTimeValue dtv = new DateTimeValue(content);
-                    String dateStr = dateTimeToString(dtv);
-                    return new TextField(fieldName, dateStr, Field.Store.NO);
+                    return new DateTimeValue(content);
                 default:
-                    return new TextField(fieldName, content, Field.Store.NO);
+                    return new StringValue(content);
             }
         } catch (NumberFormatException | XPathException e) {
             // wrong type: ignore
@@ -184,6 +189,47 @@ public class RangeIndexConfigElement {
         return null;
     }
 
+    /**
+     * Converts a value returned by {@link #convertToValue(String, String)} to
+     * the lucene field which indexes it.
+     *
+     * @param fieldName the name of the field
+     * @param value the value of the field
+     *
+     * @return the lucene field, or null if the value cannot be indexed
+     */
+    public Field convertToField(String fieldName, AtomicValue value) {
+        try {
+            switch (getType(fieldName)) {
+                case Type.INTEGER:
+                case Type.LONG:
+                case Type.UNSIGNED_LONG:
+                    return new LongField(fieldName, ((IntegerValue) value).getLong(), LongField.TYPE_NOT_STORED);
+                case Type.INT:
+                case Type.UNSIGNED_INT:
+                case Type.SHORT:
+                case Type.UNSIGNED_SHORT:
+                    return new IntField(fieldName, ((IntegerValue) value).getInt(), IntField.TYPE_NOT_STORED);
+                case Type.DECIMAL:
+                case Type.DOUBLE:
+                    return new DoubleField(fieldName, ((DoubleValue) value).getDouble(), DoubleField.TYPE_NOT_STORED);
+                case Type.FLOAT:
+                    return new FloatField(fieldName, ((FloatValue) value).getValue(), FloatField.TYPE_NOT_STORED);
+                case Type.DATE:
+                    return new LongField(fieldName, dateToLong((DateValue) value), LongField.TYPE_NOT_STORED);
+                case Type.TIME:
+                    return new LongField(fieldName, timeToLong((TimeValue) value), LongField.TYPE_NOT_STORED);
+                case Type.DATE_TIME:
+                    return new TextField(fieldName, dateTimeToString((DateTimeValue) value), Field.Store.NO);
+                default:
+                    return new TextField(fieldName, value.getStringValue(), Field.Store.NO);
+            }
+        } catch (XPathException e) {
+            // wrong type: ignore
+        }
+        return null;
+    }
+
     public static BytesRef convertToBytes(final AtomicValue content) throws XPathException {
         final BytesRefBuilder bytes = new BytesRefBuilder();
         switch(content.getType()) {
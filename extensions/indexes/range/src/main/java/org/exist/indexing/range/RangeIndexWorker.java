@@ -44,6 +44,7 @@ import org.apache.lucene.search.*;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
+import org.exist.EXistException;
 import org.exist.collections.Collection;
 import org.exist.indexing.*;
 import org.exist.indexing.StreamListener.ReindexMode;
@@ -54,15 +55,18 @@ import org.exist.numbering.NodeId;
 import org.exist.security.PermissionDeniedException;
 import org.exist.storage.DBBroker;
 import org.exist.storage.ElementValue;
+import org.exist.storage.Indexable;
 import org.exist.storage.IndexSpec;
 import org.exist.storage.NodePath;
 import org.exist.storage.NodePath2;
 import org.exist.storage.btree.DBException;
+import org.exist.storage.statistics.KeyStatisticsRegistry;
 import org.exist.storage.txn.Txn;
 import org.exist.util.ByteConversion;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.LockException;
 import org.exist.util.Occurrences;
+import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
 import org.exist.xquery.modules.range.RangeQueryRewriter;
 import org.exist.xquery.value.*;
@@ -354,6 +358,12 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
     }
 
+    @Override
+    public boolean isConcurrentFlushSafe() {
+        // write() only adds the collected fields to the shared, thread safe lucene writer
+        return true;
+    }
+
     @Override
     public void removeCollection(Collection collection, DBBroker broker, boolean reindex) throws PermissionDeniedException {
         if (LOG.isDebugEnabled())
@@ -373,6 +383,9 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } finally {
             index.releaseWriter(writer);
             if (reindex) {
+                if (collection.getURI().equals(XmldbURI.ROOT_COLLECTION_URI)) {
+                    index.getKeyStatistics().clear();
+                }
                 try {
                     index.sync();
                 } catch (DBException e) {
@@ -385,6 +398,21 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             LOG.debug("Collection removed.");
     }
 
+    /**
+     * Records a key stored in the index, serialized as its typed value, so keys
+     * are ordered like the values they were converted from.
+     */
+    private void updateStatistics(String name, AtomicValue value) {
+        if (!(value instanceof Indexable)) {
+            return;
+        }
+        try {
+            index.getKeyStatistics().get(name).add(((Indexable) value).serializeValue(0), 1);
+        } catch (EXistException e) {
+            LOG.debug("Unable to update key statistics: {}", e.getMessage());
+        }
+    }
+
     protected void removeDocument(int docId) {
         IndexWriter writer = null;
         try {
@@ -492,9 +520,18 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                         contentField = field.getName();
                     else
                         contentField = LuceneUtil.encodeQName(pending.getQName(), index.getBrokerPool().getSymbols());
-                    Field fld = pending.getConfig().convertToField(contentField, field.getContent().toString());
+                    // the typed value is converted once, for both the lucene field and the key statistics
+                    RangeIndexConfigElement fieldConfig = pending.getConfig();
+                    String content = field.getContent().toString();
+                    AtomicValue value = fieldConfig.convertToValue(contentField, content);
+                    Field fld;
+                    if (fieldConfig.getTypeConverter(contentField) != null)
+                        fld = fieldConfig.convertToField(contentField, content);
+                    else
+                        fld = value == null ? null : fieldConfig.convertToField(contentField, value);
                     if (fld != null) {
                         doc.add(fld);
+                        updateStatistics(field.isNamed() ? field.getName() : KeyStatisticsRegistry.nameOf(pending.getQName()), value);
                     }
                 }
                 fDocIdIdx.setIntValue(currentDoc.getDocId());
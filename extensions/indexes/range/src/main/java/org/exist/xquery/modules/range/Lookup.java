@@ -33,6 +33,8 @@ import org.exist.indexing.range.RangeIndexWorker;
 import org.exist.storage.ElementValue;
 import org.exist.storage.IndexSpec;
 import org.exist.storage.NodePath;
+import org.exist.storage.statistics.KeyStatistics;
+import org.exist.storage.statistics.KeyStatisticsRegistry;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
 import org.exist.xquery.value.*;
@@ -445,6 +447,45 @@ public class Lookup extends Function implements Optimizable {
         return axis;
     }
 
+    @Override
+    public QName getOptimizeQName() {
+        return contextQName;
+    }
+
+    @Override
+    public double getSelectivity() {
+        final RangeIndex.Operator operator = getOperator();
+        if (operator == null) {
+            return CostModel.DEFAULT_SELECTIVITY;
+        }
+        switch (operator) {
+            case EQ:
+                return CostModel.EQUALITY_SELECTIVITY;
+            case NE:
+                return 1.0 - CostModel.EQUALITY_SELECTIVITY;
+            case GT:
+            case LT:
+            case GE:
+            case LE:
+                return CostModel.RANGE_SELECTIVITY;
+            default:
+                return CostModel.SUBSTRING_SELECTIVITY;
+        }
+    }
+
+    @Override
+    public KeyStatistics getEqualityKeyStatistics() {
+        if (!canOptimize) {
+            return fallback instanceof Optimizable ? ((Optimizable) fallback).getEqualityKeyStatistics() : null;
+        }
+        if (contextQName == null || getOperator() != RangeIndex.Operator.EQ) {
+            return null;
+        }
+        // the lookup is served by the range index, not by the value index
+        final RangeIndex index = (RangeIndex) context.getBroker().getBrokerPool().getIndexManager().getIndexById(RangeIndex.ID);
+        return index == null ? null : index.getKeyStatistics().find(KeyStatisticsRegistry.nameOf(contextQName));
+    }
+
     @Override
     public int getDependencies() {
         final Expression stringArg = getArgument(0);
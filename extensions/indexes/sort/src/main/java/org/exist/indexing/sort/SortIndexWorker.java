@@ -29,8 +29,10 @@ import org.exist.indexing.IndexWorker;
 import org.exist.indexing.MatchListener;
 import org.exist.indexing.StreamListener;
 import org.exist.indexing.StreamListener.ReindexMode;
+import org.exist.numbering.NodeId;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NodePath;
+import org.exist.storage.btree.BTree;
 import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.btree.BTreeException;
 import org.exist.storage.btree.IndexQuery;
@@ -43,6 +45,7 @@ import org.exist.xquery.TerminatedException;
 import org.exist.xquery.XQueryContext;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -105,7 +108,14 @@ public class SortIndexWorker implements IndexWorker {
             long idx = 0;
             for (final SortItem item : items) {
                 final byte[] key = computeKey(id, item.getNode());
-                index.btree.addValue(new Value(key), idx++);
+                // the node may already be in the index at another position
+                final long oldIdx = index.btree.findValue(new Value(key));
+                if (oldIdx != BTree.KEY_NOT_FOUND) {
+                    index.btree.removeValue(new Value(computeOrderedKey(key, oldIdx)));
+                }
+                index.btree.addValue(new Value(key), idx);
+                index.btree.addValue(new Value(computeOrderedKey(key, idx)), item.getNode().getNodeId().units());
+                idx++;
             }
         } catch (final LockException | IOException | BTreeException e) {
             throw new EXistException("Exception caught while creating sort index: " + e.getMessage(), e);
@@ -138,6 +148,41 @@ public class SortIndexWorker implements IndexWorker {
         }
     }
 
+    /**
+     * Selects the nodes with the smallest positions in the specified index from
+     * the given node set. The index is read in the order of the positions and
+     * the scan stops as soon as enough nodes of the node set have been found.
+     *
+     * @param name  the name of the index
+     * @param nodes the nodes to select from
+     * @param limit the number of nodes to select
+     *
+     * @return the selected nodes, or null if the index contains fewer than
+     * <code>limit</code> nodes of the node set or has been created by a version
+     * which did not store the nodes in the order of their positions
+     *
+     * @throws EXistException if an error occurs with the database
+     * @throws LockException if a locking error occurs
+     */
+    public @Nullable NodeSet getFirst(final String name, final NodeSet nodes, final long limit) throws EXistException, LockException {
+        final short id = getId(name);
+        if (id < 0) {
+            return null;
+        }
+        final byte[] fromKey = computeOrderedKey(id);
+        final byte[] toKey = computeOrderedKey((short) (id + 1));
+        final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
+        final FindFirstCallback callback = new FindFirstCallback(nodes, limit);
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+            index.btree.query(query, callback);
+        } catch (final LimitReachedException e) {
+            // enough nodes have been found
+        } catch (final IOException | TerminatedException | BTreeException e) {
+            throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
+        }
+        return callback.result.getItemCount() < limit ? null : callback.result;
+    }
+
     /**
      * Completely remove the index identified by its name.
      *
@@ -154,6 +199,10 @@ public class SortIndexWorker implements IndexWorker {
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
             index.btree.remove(query, null);
 
+            final byte[] fromOrderedKey = computeOrderedKey(id);
+            final byte[] toOrderedKey = computeOrderedKey((short) (id + 1));
+            index.btree.remove(new IndexQuery(IndexQuery.RANGE, new Value(fromOrderedKey), new Value(toOrderedKey)), null);
+
             removeId(name);
         } catch (final BTreeException | TerminatedException | IOException e) {
             throw new EXistException("Exception caught while deleting sort index: " + e.getMessage(), e);
@@ -170,7 +219,14 @@ public class SortIndexWorker implements IndexWorker {
             final byte[] fromKey = computeKey(id, doc.getDocId());
             final byte[] toKey = computeKey(id, doc.getDocId() + 1);
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
-            index.btree.remove(query, null);
+            final List<Value> orderedKeys = new ArrayList<>();
+            index.btree.remove(query, (value, pointer) -> {
+                orderedKeys.add(new Value(computeOrderedKey(value.getData(), pointer)));
+                return true;
+            });
+            for (final Value orderedKey : orderedKeys) {
+                index.btree.removeValue(orderedKey);
+            }
         } catch (final BTreeException | TerminatedException | IOException e) {
             throw new EXistException("Exception caught while deleting sort index: " + e.getMessage(), e);
         }
@@ -281,6 +337,28 @@ public class SortIndexWorker implements IndexWorker {
         return data;
     }
 
+    /**
+     * Computes the key under which a node is stored in the order of its position,
+     * from the key under which its position is stored. The layout of the key is
+     * <code>[2, id, position, docId, nodeId]</code>, the value stored under the key is
+     * the number of units of the node id.
+     */
+    private byte[] computeOrderedKey(final byte[] key, final long position) {
+        final byte[] data = new byte[key.length + 8];
+        data[0] = 2;
+        System.arraycopy(key, 1, data, 1, 2);
+        ByteConversion.longToByte(position, data, 3);
+        System.arraycopy(key, 3, data, 11, key.length - 3);
+        return data;
+    }
+
+    private byte[] computeOrderedKey(final short id) {
+        final byte[] data = new byte[3];
+        data[0] = 2;
+        ByteConversion.shortToByteH(id, data, 1);
+        return data;
+    }
+
     public Object configure(final IndexController controller, final NodeList configNodes, final Map<String, String> namespaces) throws DatabaseConfigurationException {
         return null;
     }
@@ -325,6 +403,45 @@ public class SortIndexWorker implements IndexWorker {
         return new Occurrences[0];
     }
 
+    private final static class FindFirstCallback implements BTreeCallback {
+        private final NodeSet nodes;
+        private final long limit;
+        private final NodeSet result = new NewArrayNodeSet();
+
+        private FindFirstCallback(final NodeSet nodes, final long limit) {
+            this.nodes = nodes;
+            this.limit = limit;
+        }
+
+        public boolean indexInfo(final Value value, final long pointer) throws TerminatedException {
+            final byte[] data = value.getData();
+            final DocumentImpl doc = nodes.getDocumentSet().getDoc(ByteConversion.byteToIntH(data, 11));
+            if (doc != null) {
+                final NodeId nodeId = doc.getBrokerPool().getNodeFactory().createFromData((int) pointer, data, 15);
+                final NodeProxy node = nodes.get(doc, nodeId);
+                if (node != null) {
+                    result.add(node);
+                    if (result.getItemCount() >= limit) {
+                        throw new LimitReachedException();
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Thrown to stop the scan of the index, as the BTree does not
+     * cancel the enumeration if a callback returns false.
+     */
+    private final static class LimitReachedException extends TerminatedException {
+        private static final long serialVersionUID = 2386531093540911870L;
+
+        private LimitReachedException() {
+            super("Limit reached");
+        }
+    }
+
     private final static class FindIdCallback implements BTreeCallback {
         long max = 0;
         List<Long> allIds = null;
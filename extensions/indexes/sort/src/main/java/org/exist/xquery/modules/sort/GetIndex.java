@@ -24,13 +24,16 @@ package org.exist.xquery.modules.sort;
 import org.exist.EXistException;
 import org.exist.dom.QName;
 import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
 import org.exist.indexing.sort.SortIndex;
 import org.exist.indexing.sort.SortIndexWorker;
 import org.exist.util.LockException;
 import org.exist.xquery.*;
 import org.exist.xquery.value.*;
 
-public class GetIndex extends BasicFunction {
+import javax.annotation.Nullable;
+
+public class GetIndex extends BasicFunction implements IndexedOrderKey {
 
     public final static FunctionSignature signature =
             new FunctionSignature(
@@ -68,4 +71,25 @@ public class GetIndex extends BasicFunction {
         }
         return pos < 0 ? Sequence.EMPTY_SEQUENCE : new IntegerValue(pos, Type.LONG);
     }
+
+    @Override
+    public boolean isKeyOf(final QName varName) {
+        final Expression node = OrderByClause.unwrap(getArgument(1));
+        return OrderByClause.unwrap(getArgument(0)) instanceof LiteralValue && node instanceof VariableReference
+                && ((VariableReference) node).getName().equals(varName);
+    }
+
+    @Override
+    public @Nullable NodeSet selectFirst(final NodeSet nodes, final long limit) throws XPathException {
+        final String id = ((LiteralValue) OrderByClause.unwrap(getArgument(0))).getValue().getStringValue();
+        final SortIndexWorker index = (SortIndexWorker)
+                context.getBroker().getIndexController().getWorkerByIndexId(SortIndex.ID);
+        try {
+            return index.getFirst(id, nodes, limit);
+        } catch (final EXistException e) {
+            throw new XPathException(this, e.getMessage(), e);
+        } catch (final LockException e) {
+            throw new XPathException(this, "Caught lock error while searching index. Giving up.", e);
+        }
+    }
 }